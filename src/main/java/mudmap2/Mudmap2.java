@@ -17,15 +17,18 @@
 
 /*  File description
  *
- *  Main class, it creates the Mainwindow and provides version information
+ *  Main class, it creates the Mainwindow and provides version information.
+ *  With --batch it processes world files without the GUI
  */
 
 package mudmap2;
 
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
+import mudmap2.backend.batch.BatchProcessor;
 import mudmap2.frontend.Mainwindow;
 
 /**
@@ -42,6 +45,12 @@ public final class Mudmap2 {
      * @param args the command line arguments
      */
     public static void main(String[] args) {
+        if(args.length > 0 && args[0].equals("--batch")){
+            // convert and validate world files without the GUI
+            System.setProperty("java.awt.headless", "true");
+            System.exit(BatchProcessor.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
 
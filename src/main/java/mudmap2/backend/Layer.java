@@ -24,6 +24,7 @@
 package mudmap2.backend;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -60,6 +61,9 @@ public class Layer implements WorldChangeListener {
     boolean placeNameCacheNeedsUpdate = true;
     boolean sizeCacheNeedsUpdated = true;
 
+    // fills the layer on first access, null if the places are in the layer
+    LayerLoader loader = null;
+
     /**
      * Constructor, sets layer id
      * @param id layer id
@@ -108,6 +112,7 @@ public class Layer implements WorldChangeListener {
      */
     public void setName(final String name) {
         this.name = name;
+        world.callListeners(this);
     }
 
     /**
@@ -118,13 +123,57 @@ public class Layer implements WorldChangeListener {
         return name != null;
     }
 
+    /**
+     * Sets a loader that fills the layer when its places are accessed the
+     * first time. Layers are filled on the thread that modifies the world
+     * @param loader loader or null
+     */
+    public void setLoader(final LayerLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Gets the loader that fills the layer on first access
+     * @return loader or null if the layer is loaded
+     */
+    public LayerLoader getLoader() {
+        return loader;
+    }
+
+    /**
+     * Checks whether the places of the layer are loaded
+     * @return false if the layer will be filled on first access
+     */
+    public boolean isLoaded() {
+        return loader == null;
+    }
+
+    /**
+     * Fills the layer if it has a loader
+     */
+    private void load() {
+        final LayerLoader layerLoader = loader;
+        if (layerLoader != null) {
+            loader = null;
+            ++world.loadingLayers;
+            try {
+                layerLoader.load(this);
+            } finally {
+                --world.loadingLayers;
+            }
+        }
+    }
+
     /**
      * Use this only to set an optimized quadtree after construction
      * @param center_x
      * @param center_y
      */
     public void setQuadtree(final int center_x, final int center_y) {
-        elements = new Quadtree<>(center_x, center_y);
+        // replacing the quadtree would drop the places of the layer
+        if (elements.isEmpty()) {
+            elements = new Quadtree<>(center_x, center_y);
+        }
     }
 
     /**
@@ -215,10 +264,13 @@ public class Layer implements WorldChangeListener {
      * @throws mudmap2.backend.Layer.PlaceNotInsertedException
      */
     public void put(final LayerElement element) throws PlaceNotInsertedException {
+        load();
         try {
-            // remove element from other layer if one is set
-            if(element.getLayer() != null){
-                element.getLayer().remove(element);
+            // remove element from other layer if one is set, a new element
+            // that only knows this layer isn't at its position in the tree
+            final Layer oldLayer = element.getLayer();
+            if(oldLayer != null && (oldLayer != this || elements.get(element.getX(), element.getY()) == element)){
+                oldLayer.remove(element);
             }
 
             elements.insert(element, element.getX(), element.getY());
@@ -229,6 +281,30 @@ public class Layer implements WorldChangeListener {
         }
     }
 
+    /**
+     * Adds places that were created for this layer without a layer, eg. by a
+     * file reader. The world change listeners aren't called, so different
+     * layers can be filled in parallel
+     * @param places places to be added
+     * @return places that couldn't be inserted
+     */
+    public List<Place> putAll(final Collection<Place> places) {
+        load();
+        final ArrayList<Place> failed = new ArrayList<>();
+        for(final Place place: places){
+            try {
+                place.setPosition(place.getX(), place.getY(), this);
+                elements.insert(place, place.getX(), place.getY());
+            } catch (final Exception ex) {
+                place.setPosition(place.getX(), place.getY(), null);
+                failed.add(place);
+            }
+        }
+        sizeCacheNeedsUpdated = true;
+        placeNameCacheNeedsUpdate = true;
+        return failed;
+    }
+
     /**
      * Gets the element at a position
      * @param x x coordinate
@@ -236,6 +312,7 @@ public class Layer implements WorldChangeListener {
      * @return element at that position or null
      */
     public Place get(final int x, final int y) {
+        load();
         LayerElement layerElement = elements.get(x, y);
         if(layerElement != null && layerElement instanceof Place) {
             return (Place) layerElement;
@@ -287,7 +364,12 @@ public class Layer implements WorldChangeListener {
      * @param element
      */
     public void remove(final LayerElement element) {
+        load();
         elements.remove(element);
+        if (element instanceof Place) {
+            world.topologyChanged();
+            world.callListeners(element);
+        }
         world.callListeners(this);
     }
 
@@ -298,6 +380,7 @@ public class Layer implements WorldChangeListener {
      * @return true, if an element exists
      */
     public boolean exist(final int x, final int y) {
+        load();
         return elements.exist(x, y);
     }
 
@@ -306,6 +389,7 @@ public class Layer implements WorldChangeListener {
      * @return true if empty
      */
     public boolean isEmpty() {
+        load();
         return elements.isEmpty();
     }
 
@@ -314,6 +398,16 @@ public class Layer implements WorldChangeListener {
      * @return set of all elements or empty set
      */
     public HashSet<Place> getPlaces(){
+        load();
+        return new HashSet(elements.values());
+    }
+
+    /**
+     * Gets the places that are in the layer without loading it. If the
+     * layer isn't loaded, some or all of its places might be missing
+     * @return set of the places or empty set
+     */
+    public HashSet<Place> getLoadedPlaces(){
         return new HashSet(elements.values());
     }
 
@@ -322,6 +416,7 @@ public class Layer implements WorldChangeListener {
      * @return
      */
     public HashSet<LayerElement> getLayerElements(){
+        load();
         return elements.values();
     }
 
@@ -406,6 +501,7 @@ public class Layer implements WorldChangeListener {
     }
 
     private void updateSizeCache(){
+        load();
         if(sizeCacheNeedsUpdated){
             maxX = Integer.MIN_VALUE;
             minX = Integer.MAX_VALUE;
@@ -439,7 +535,7 @@ public class Layer implements WorldChangeListener {
     @Override
     public void worldChanged(final Object source) {
         // if source is a place on this layer
-        if (source instanceof Place && elements.contains((Place) source) || source instanceof Layer && source == this) {
+        if (source instanceof Place && ((Place) source).getLayer() == this || source instanceof Layer && source == this) {
             placeNameCacheNeedsUpdate = true;
         }
     }
@@ -0,0 +1,95 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+/*  File description
+ *
+ *  Fills layers that are created before their places are read. The places
+ *  of a layer that isn't loaded can also be read without adding them to the
+ *  layer, eg. to write the world or to find a place by its id
+ */
+package mudmap2.backend;
+
+import java.util.ArrayList;
+
+/**
+ * Loads the places of a layer on first access, eg. when the layer is
+ * displayed, searched or the world is routed through
+ * @author neop
+ */
+public interface LayerLoader {
+
+    /**
+     * A place that wasn't added to its layer
+     */
+    public static class PlaceData {
+        public int id;
+        public String name;
+        public int x, y;
+        public PlaceGroup area; // null if the place has no area
+        public RiskLevel riskLevel; // null if the place has no risk level
+        public int levelMin, levelMax;
+        public int[] children; // place ids, null if empty
+        public String[] flags; // set flags, null if empty
+        public String comments; // null if empty
+    }
+
+    /**
+     * Places of a layer that aren't in the layer yet, and the paths and
+     * child connections to them that aren't connected yet
+     */
+    public static class LayerData {
+        public final int centerX, centerY;
+        public final ArrayList<PlaceData> places = new ArrayList<>();
+        // paths, two entries per path
+        public final ArrayList<Integer> pathPlaces = new ArrayList<>();
+        public final ArrayList<String> pathExits = new ArrayList<>();
+        // child connections of places that are in their layers, two entries
+        // per connection: parent and child id
+        public final ArrayList<Integer> children = new ArrayList<>();
+
+        public LayerData(int centerX, int centerY){
+            this.centerX = centerX;
+            this.centerY = centerY;
+        }
+    }
+
+    /**
+     * Called once when the places of the layer are accessed the first time.
+     * The loader of the layer is already removed, the layer can be filled
+     * with Layer.put()
+     * @param layer layer to fill
+     */
+    public void load(Layer layer);
+
+    /**
+     * Checks whether a place that isn't in its layer yet is on a layer,
+     * without loading it. Has to be called on the thread that modifies the
+     * world
+     * @param layer layer of this loader
+     * @param id place id
+     * @return true if loading the layer adds the place
+     */
+    public boolean containsPlace(Layer layer, int id);
+
+    /**
+     * Reads the places of a layer that aren't in the layer yet, without
+     * adding them. Has to be called on the thread that modifies the world
+     * @param layer layer of this loader
+     * @return places, their paths and child connections
+     */
+    public LayerData read(Layer layer);
+
+}
@@ -75,6 +75,17 @@ public class Place extends LayerElement implements Comparable<Place>, BreadthSea
         id = nextID++;
     }
 
+    /**
+     * Makes sure that new places get a greater id, eg. for places that will
+     * be loaded later
+     * @param id used place id
+     */
+    public static void reserveId(final int id) {
+        if (id >= nextID) {
+            nextID = id + 1;
+        }
+    }
+
     /**
      * Gets the place id
      * @return place id
@@ -193,6 +204,7 @@ public class Place extends LayerElement implements Comparable<Place>, BreadthSea
      */
     public void setComments(String comments) {
         this.comments = comments;
+        callWorldChangeListeners();
     }
 
     /**
@@ -237,8 +249,11 @@ public class Place extends LayerElement implements Comparable<Place>, BreadthSea
      * @param path
      */
     public void removePath(final Path path) {
-        paths.remove(path);
+        final boolean removed = paths.remove(path);
         path.getOtherPlace(this).paths.remove(path);
+        if (removed && getWorld() != null) {
+            getWorld().callPathRemoved(path);
+        }
         callWorldChangeListeners();
     }
 
@@ -293,6 +308,9 @@ public class Place extends LayerElement implements Comparable<Place>, BreadthSea
             if (!exitOccupied) {
                 paths.add(path);
                 other.paths.add(path);
+                if (getWorld() != null) {
+                    getWorld().callPathConnected(path);
+                }
             }
         }
 
@@ -509,9 +527,17 @@ public class Place extends LayerElement implements Comparable<Place>, BreadthSea
      * Call world change listeners on place changes
      */
     private void callWorldChangeListeners() {
-        if (getLayer() != null && getLayer().getWorld() != null) {
-            getLayer().getWorld().callListeners(this);
+        if (getWorld() != null) {
+            getWorld().callListeners(this);
         }
     }
 
+    /**
+     * Gets the world of the place's layer
+     * @return world or null
+     */
+    private World getWorld() {
+        return getLayer() != null ? getLayer().getWorld() : null;
+    }
+
 }
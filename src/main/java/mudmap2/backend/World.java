@@ -29,6 +29,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.TreeMap;
 import java.util.logging.Level;
@@ -36,6 +37,10 @@ import java.util.logging.Logger;
 import mudmap2.backend.Layer.PlaceNotInsertedException;
 import mudmap2.backend.WorldFileReader.WorldFile;
 import mudmap2.backend.sssp.BreadthSearchGraph;
+import mudmap2.backend.sssp.ConnectivityIndex;
+import mudmap2.backend.sssp.PathFinder;
+import mudmap2.backend.sssp.Route;
+import mudmap2.backend.sssp.RouteCache;
 import org.json.JSONObject;
 
 /**
@@ -74,6 +79,24 @@ public class World implements BreadthSearchGraph {
 
     // Listeners
     final LinkedList<WorldChangeListener> changeListeners = new LinkedList<>();
+    final LinkedList<PathChangeListener> pathChangeListeners = new LinkedList<>();
+
+    // weighted path search, created on first use
+    PathFinder pathFinder = null;
+    // reachability of places, created on first use
+    ConnectivityIndex connectivityIndex = null;
+    // results of breadth searches
+    final RouteCache routeCache = new RouteCache();
+    // increased when paths are connected or removed or places are removed
+    long topologyVersion = 0;
+    // number of layers that are being filled by their loader
+    int loadingLayers = 0;
+    // increased on every change, eg. to find unsaved changes
+    long modificationCount = 0;
+    // number of nested updates, see beginUpdate()
+    int updateDepth = 0;
+    // objects changed during an update, in order of their first change
+    final LinkedHashSet<Object> pendingChanges = new LinkedHashSet<>();
 
     /**
      * Creates an empty world
@@ -157,6 +180,17 @@ public class World implements BreadthSearchGraph {
      */
     public void setHome(WorldCoordinate home){
         this.home = home;
+        callListeners(this);
+    }
+
+    /**
+     * Gets the place at the home position
+     * @return place or null
+     */
+    public Place getHomePlace(){
+        Layer layer = getLayer(home.getLayer());
+        if(layer == null) return null;
+        return layer.get((int) Math.round(home.getX()), (int) Math.round(home.getY()));
     }
 
     // --------- places --------------------------------------------------------
@@ -221,6 +255,22 @@ public class World implements BreadthSearchGraph {
         callListeners(layer);
     }
 
+    /**
+     * Removes a layer and its places
+     * @param layer layer to remove
+     */
+    public void removeLayer(Layer layer){
+        if(layer == null) throw new NullPointerException();
+        if(layers.get(layer.getId()) != layer) return;
+        for(Place place: layer.getPlaces()){
+            place.removeConnections();
+            layer.remove(place);
+        }
+        layers.remove(layer.getId());
+        removeChangeListener(layer);
+        callListeners(layer);
+    }
+
     /**
      * Creates a new and empty layer
      * @param name layer name
@@ -269,6 +319,26 @@ public class World implements BreadthSearchGraph {
         return layers.values();
     }
 
+    /**
+     * Checks whether the places of all layers are loaded
+     * @return false if a layer will be loaded on first access
+     */
+    public boolean isLoaded(){
+        for(Layer layer: getLayers()){
+            if(!layer.isLoaded()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a layer is being filled by its loader. Listeners are
+     * called for the loaded places and paths, but they aren't changes
+     * @return true while a layer is loaded
+     */
+    public boolean isLoadingLayers(){
+        return loadingLayers > 0;
+    }
+
     // --------- colors --------------------------------------------------------
     /**
      * Gets the standard path color
@@ -435,7 +505,8 @@ public class World implements BreadthSearchGraph {
      */
     public void removePlaceGroup(PlaceGroup placeGroup){
         for(Layer layer: getLayers()){
-            for(Place p: layer.getPlaces()){
+            // places that aren't read yet don't get removed areas
+            for(Place p: layer.getLoadedPlaces()){
                 if(p.getPlaceGroup() == placeGroup) p.setPlaceGroup(null);
             }
         }
@@ -501,7 +572,7 @@ public class World implements BreadthSearchGraph {
             riskLevels.remove(rl.getId());
             // removePlace from places
             for(Layer layer: getLayers()){
-                for(Place place: layer.getPlaces()){
+                for(Place place: layer.getLoadedPlaces()){
                     if(place.getRiskLevel() == rl) place.setRiskLevel(null);
                 }
             }
@@ -525,6 +596,7 @@ public class World implements BreadthSearchGraph {
      */
     public void setPreferences(JSONObject preferences) {
         this.preferences = preferences;
+        callListeners(this);
     }
 
     // --------- path finding --------------------------------------------------
@@ -537,8 +609,20 @@ public class World implements BreadthSearchGraph {
      */
     @Override
     public Place breadthSearch(Place start, Place end) {
+        Route cached = routeCache.get(start, end, null, topologyVersion);
+        if(cached != null){
+            // restore the predecessors of the cached route
+            Place predecessor = null;
+            for(Place place: cached.getPlaces()){
+                place.getBreadthSearchData().marked = true;
+                place.getBreadthSearchData().predecessor = predecessor;
+                predecessor = place;
+            }
+            return end;
+        }
+
         for(Layer layer: getLayers()){
-            for(Place place: layer.getPlaces()){
+            for(Place place: layer.getLoadedPlaces()){
                 place.breadthSearchReset();
             }
         }
@@ -549,7 +633,14 @@ public class World implements BreadthSearchGraph {
 
         while(!queue.isEmpty()){
             Place v = queue.pollFirst();
-            if(v == end) return v;
+            if(v == end){
+                LinkedList<Place> places = new LinkedList<>();
+                for(Place place = v; place != null; place = place.getBreadthSearchData().predecessor){
+                    places.addFirst(place);
+                }
+                routeCache.put(start, end, null, topologyVersion, new Route(places, places.size() - 1));
+                return v;
+            }
 
             for(Path pa: v.getPaths()){
                 Place vi = pa.getOtherPlace(v);
@@ -563,6 +654,61 @@ public class World implements BreadthSearchGraph {
         return null;
     }
 
+    /**
+     * Gets the cache of breadth search results
+     * @return route cache
+     */
+    public RouteCache getRouteCache(){
+        return routeCache;
+    }
+
+    /**
+     * Gets the modification count. It's increased whenever the change
+     * listeners are called, except for places of lazily loaded layers
+     * @return modification count
+     */
+    public long getModificationCount(){
+        return modificationCount;
+    }
+
+    /**
+     * Gets the topology version. It changes whenever paths are connected or
+     * removed or places are removed
+     * @return topology version
+     */
+    public long getTopologyVersion(){
+        return topologyVersion;
+    }
+
+    /**
+     * Increases the topology version
+     */
+    void topologyChanged(){
+        ++topologyVersion;
+    }
+
+    /**
+     * Gets the path finder for weighted path searches
+     * @return path finder
+     */
+    public PathFinder getPathFinder(){
+        if(pathFinder == null){
+            pathFinder = new PathFinder(this);
+        }
+        return pathFinder;
+    }
+
+    /**
+     * Gets the connected components of places
+     * @return connectivity index
+     */
+    public ConnectivityIndex getConnectivityIndex(){
+        if(connectivityIndex == null){
+            connectivityIndex = new ConnectivityIndex(this);
+        }
+        return connectivityIndex;
+    }
+
     // --------- listeners -----------------------------------------------------
     /**
      * Add change listener
@@ -585,8 +731,89 @@ public class World implements BreadthSearchGraph {
      * @param source changed object
      */
     public void callListeners(Object source){
+        // loaded places aren't changes
+        if(loadingLayers == 0) ++modificationCount;
+        if(updateDepth > 0){
+            pendingChanges.add(source);
+            return;
+        }
         for(WorldChangeListener listener: changeListeners){
             listener.worldChanged(source);
         }
     }
+
+    /**
+     * Starts an update, eg. to add many places at once. Until the matching
+     * call of endUpdate() the change listeners aren't called, afterwards
+     * they are called once for every changed object. Path change listeners
+     * are still called immediately. Updates can be nested
+     */
+    public void beginUpdate(){
+        ++updateDepth;
+    }
+
+    /**
+     * Ends an update that was started by beginUpdate() and calls the change
+     * listeners for the objects that were changed during the update
+     */
+    public void endUpdate(){
+        if(updateDepth == 0){
+            throw new IllegalStateException("endUpdate() without beginUpdate()");
+        }
+        if(--updateDepth == 0 && !pendingChanges.isEmpty()){
+            ArrayList<Object> changes = new ArrayList<>(pendingChanges);
+            pendingChanges.clear();
+            for(Object source: changes){
+                for(WorldChangeListener listener: changeListeners){
+                    listener.worldChanged(source);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether an update was started by beginUpdate()
+     * @return true during an update
+     */
+    public boolean isUpdating(){
+        return updateDepth > 0;
+    }
+
+    /**
+     * Add path change listener
+     * @param listener listener to add
+     */
+    public void addPathChangeListener(PathChangeListener listener){
+        if(!pathChangeListeners.contains(listener)) pathChangeListeners.add(listener);
+    }
+
+    /**
+     * Remove path change listener
+     * @param listener listener to remove
+     */
+    public void removePathChangeListener(PathChangeListener listener){
+        pathChangeListeners.remove(listener);
+    }
+
+    /**
+     * Call path change listeners for a connected path
+     * @param path connected path
+     */
+    public void callPathConnected(Path path){
+        topologyChanged();
+        for(PathChangeListener listener: pathChangeListeners){
+            listener.pathConnected(path);
+        }
+    }
+
+    /**
+     * Call path change listeners for a removed path
+     * @param path removed path
+     */
+    public void callPathRemoved(Path path){
+        topologyChanged();
+        for(PathChangeListener listener: pathChangeListeners){
+            listener.pathRemoved(path);
+        }
+    }
 }
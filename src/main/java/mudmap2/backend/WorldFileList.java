@@ -25,7 +25,9 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import mudmap2.Environment;
@@ -45,6 +47,7 @@ public class WorldFileList {
     static final int MAX_HISTORY_ENTRIES = 15;
 
     private static final String HISTORY_FILENAME = "history";
+    private static final String NAME_CACHE_FILENAME = "worldnames";
     @Deprecated
     private static final String AVAILABLE_WORLDS_FILENAME = "worlds";
 
@@ -52,6 +55,10 @@ public class WorldFileList {
     // world file history <file, world name>
     private static final LinkedList<WorldFileEntry> worldFileHistory = new LinkedList<>();
 
+    // world names of files <absolute path, name>, valid while the file
+    // isn't modified, kept in the name cache file between sessions
+    private static final HashMap<String, CachedWorldName> worldNameCache = new HashMap<>();
+
     /**
      * Get File describing path and name of history file
      * @return file object
@@ -60,6 +67,14 @@ public class WorldFileList {
         return new File(Environment.getUserDataDir() + File.separator + HISTORY_FILENAME);
     }
 
+    /**
+     * Get File describing path and name of world name cache file
+     * @return file object
+     */
+    private static File getNameCacheFile(){
+        return new File(Environment.getUserDataDir() + File.separator + NAME_CACHE_FILENAME);
+    }
+
     /**
      * Get File describing path and name of available worlds file
      * @return file object
@@ -141,6 +156,53 @@ public class WorldFileList {
         }
     }
 
+    /**
+     * Gets the world name of a file. The name is read from the file once
+     * and kept until the file is modified, eg. for file choosers
+     * @param file world file
+     * @return world name, null or "" if the file isn't a world file
+     */
+    public static String getWorldName(File file){
+        return getCachedWorldName(file).worldName;
+    }
+
+    /**
+     * Gets the cached world name of a file. The file is only read if it
+     * isn't in the cache or was modified since
+     * @param file world file
+     * @return cached world name and whether the file is a world file
+     */
+    private static CachedWorldName getCachedWorldName(File file){
+        String path = file.getAbsolutePath();
+        long modified = file.lastModified();
+        long length = file.length();
+
+        synchronized(worldNameCache){
+            CachedWorldName cached = worldNameCache.get(path);
+            if(cached != null && cached.modified == modified && cached.length == length){
+                return cached;
+            }
+        }
+
+        String worldName = null;
+        // the constructor detects the file type, canRead() uses the result
+        WorldFileDefault worldFile = new WorldFileDefault(path);
+        boolean readable = worldFile.canRead();
+        if(readable){
+            try {
+                worldName = worldFile.readWorldName();
+            } catch (Exception ex) {
+                Logger.getLogger(WorldFileList.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+
+        CachedWorldName cached = new CachedWorldName(worldName, readable, modified, length);
+        synchronized(worldNameCache){
+            worldNameCache.put(path, cached);
+        }
+        return cached;
+    }
+
     // ------------------- list file handling ----------------------------------
 
     /**
@@ -154,6 +216,16 @@ public class WorldFileList {
 
         worldFileHistory.clear();
 
+        // read cached world names, the legacy worlds file uses them
+        final File nameCacheFile = getNameCacheFile();
+        try {
+            if(nameCacheFile.exists() && nameCacheFile.canRead()){
+                readNameCacheJSON(nameCacheFile);
+            }
+        } catch (Exception ex){
+            Logger.getLogger(WorldFileList.class.getName()).log(Level.WARNING, null, ex);
+        }
+
         // read history
         try {
             if(historyFile.exists() && historyFile.canRead()){
@@ -193,6 +265,9 @@ public class WorldFileList {
             System.err.println("Could not write world history file "
                     + historyFile.getAbsolutePath());
         }
+
+        // write cached world names
+        writeNameCacheJSON(getNameCacheFile());
     }
 
     /**
@@ -288,6 +363,84 @@ public class WorldFileList {
         }
     }
 
+    /**
+     * Read JSON-formatted world name cache file, entries of files that were
+     * modified since are skipped
+     * @param file
+     * @throws IOException
+     */
+    private static void readNameCacheJSON(File file) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(file.getAbsolutePath()));
+        JSONObject jRoot = new JSONObject(new String(bytes));
+
+        String[] split = jRoot.getString("ver").split("\\.");
+        if(split.length < 2 || Integer.decode(split[0]) != FILE_VER_MAJOR) return;
+
+        if(jRoot.has("names")){
+            JSONArray jNames = jRoot.getJSONArray("names");
+            for(int i = 0; i < jNames.length(); ++i){
+                JSONObject jElement = jNames.getJSONObject(i);
+                if(!jElement.has("file") || !jElement.has("modified") || !jElement.has("length")) continue;
+
+                File entryFile = new File(jElement.getString("file"));
+                long modified = jElement.getLong("modified");
+                long length = jElement.getLong("length");
+                if(entryFile.lastModified() != modified || entryFile.length() != length) continue;
+
+                CachedWorldName cached = new CachedWorldName(
+                        jElement.has("name") ? jElement.getString("name") : null,
+                        jElement.optBoolean("readable"), modified, length);
+                synchronized(worldNameCache){
+                    // names read in this session are newer
+                    if(!worldNameCache.containsKey(entryFile.getAbsolutePath())){
+                        worldNameCache.put(entryFile.getAbsolutePath(), cached);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write JSON-formatted world name cache file, entries of deleted or
+     * modified files are dropped
+     * @param file
+     */
+    private static void writeNameCacheJSON(File file){
+        JSONObject jRoot = new JSONObject();
+        jRoot.put("ver", "" + FILE_VER_MAJOR + "." + FILE_VER_MINOR);
+
+        JSONArray jNames = new JSONArray();
+        jRoot.put("names", jNames);
+
+        synchronized(worldNameCache){
+            for(Map.Entry<String, CachedWorldName> entry: worldNameCache.entrySet()){
+                File entryFile = new File(entry.getKey());
+                CachedWorldName cached = entry.getValue();
+                if(entryFile.lastModified() != cached.modified || entryFile.length() != cached.length) continue;
+
+                JSONObject jElement = new JSONObject();
+                jNames.put(jElement);
+
+                jElement.put("file", entry.getKey());
+                jElement.put("modified", cached.modified);
+                jElement.put("length", cached.length);
+                jElement.put("readable", cached.readable);
+                if(cached.worldName != null) jElement.put("name", cached.worldName);
+            }
+        }
+
+        File parentDir = file.getParentFile();
+        if(!parentDir.exists()){
+            parentDir.mkdirs();
+        }
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            jRoot.write(writer, 4, 0);
+        } catch (IOException ex) {
+            Logger.getLogger(WorldFileList.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
     /**
      * Read available worlds file (legacy)
      */
@@ -303,14 +456,10 @@ public class WorldFileList {
                 if(line.startsWith("f ")){ // world file entry
                     String fileName = line.substring(2).trim();
 
-                    WorldFileDefault worldFile = new WorldFileDefault(fileName);
-                    if(worldFile.canRead()){ // is world file
-                        String name;
-                        try {
-                            // get world name
-                            name = worldFile.readWorldName();
-                        } catch (Exception ex) {
-                            Logger.getLogger(WorldManager.class.getName()).log(Level.SEVERE, null, ex);
+                    CachedWorldName cached = getCachedWorldName(new File(fileName));
+                    if(cached.readable){ // is world file
+                        String name = cached.worldName;
+                        if(name == null || name.isEmpty()){
                             // use file name if world name not found
                             name = fileName.substring(fileName.lastIndexOf('/') + 1);
                         }
@@ -324,6 +473,20 @@ public class WorldFileList {
         }
     }
 
+    private static class CachedWorldName {
+        final String worldName;
+        final boolean readable;
+        final long modified;
+        final long length;
+
+        CachedWorldName(String worldName, boolean readable, long modified, long length){
+            this.worldName = worldName;
+            this.readable = readable;
+            this.modified = modified;
+            this.length = length;
+        }
+    }
+
     public static class WorldFileEntry {
 
         String worldName;
@@ -0,0 +1,254 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Creates rotated backups of world files on a background thread. Backups
+ *  are stored in <world file>.backups, named by the modification time of
+ *  the world file version they contain. The journal of a world file is
+ *  stored next to the backup with the same time stamp
+ */
+package mudmap2.backend.WorldFileReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import mudmap2.backend.WorldFileReader.current.WorldJournal;
+
+/**
+ * Keeps the last versions of world files. World files are replaced, not
+ * modified, when they are written, so a backup of a compressed or binary
+ * file is a hard link. Other files and journals, which are appended to, are
+ * stored compressed
+ * @author neop
+ */
+public class BackupManager {
+
+    public static final int DEFAULT_BACKUP_COUNT = 5;
+
+    static final String SUFFIX_LINK = ".bak";
+    static final String SUFFIX_COMPRESSED = ".bak.gz";
+    static final String SUFFIX_JOURNAL = ".journal.gz";
+
+    // number of backups that are kept per world file
+    static int backupCount = DEFAULT_BACKUP_COUNT;
+
+    // creates the backups, one after another
+    static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "BackupManager");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    /**
+     * Sets the number of backups that are kept per world file
+     * @param count number of backups, at least 1
+     */
+    public static void setBackupCount(int count){
+        backupCount = Math.max(1, count);
+    }
+
+    /**
+     * Gets the number of backups that are kept per world file
+     * @return number of backups
+     */
+    public static int getBackupCount(){
+        return backupCount;
+    }
+
+    /**
+     * Gets the directory of the backups of a world file
+     * @param filename world file name
+     * @return backup directory
+     */
+    public static File getBackupDirectory(String filename){
+        return new File(filename + ".backups");
+    }
+
+    /**
+     * Gets the backups of a world file
+     * @param filename world file name
+     * @return backup files, oldest first
+     */
+    public static List<File> getBackups(String filename){
+        ArrayList<File> backups = new ArrayList<>();
+        File[] files = getBackupDirectory(filename).listFiles();
+        if(files != null){
+            for(File file: files){
+                String name = file.getName();
+                if(name.endsWith(SUFFIX_LINK) || name.endsWith(SUFFIX_COMPRESSED)){
+                    backups.add(file);
+                }
+            }
+        }
+        // names start with the time stamp
+        Collections.sort(backups);
+        return backups;
+    }
+
+    /**
+     * Gets the journal backup that belongs to a backup
+     * @param backup backup file
+     * @return journal backup, it doesn't exist if the journal was empty
+     */
+    public static File getJournalBackup(File backup){
+        String name = backup.getName();
+        return new File(backup.getParentFile(), name.substring(0, name.indexOf('.')) + SUFFIX_JOURNAL);
+    }
+
+    /**
+     * Creates a backup on the background thread. Errors are logged
+     * @param worldFile world file
+     * @return backup file, see createBackup()
+     */
+    public static Future<File> backup(final WorldFile worldFile){
+        return executor.submit(new Callable<File>() {
+            @Override
+            public File call() throws Exception {
+                try {
+                    return createBackup(worldFile);
+                } catch(IOException ex){
+                    Logger.getLogger(BackupManager.class.getName()).log(Level.WARNING,
+                            "Could not create backup of " + worldFile.getFilename(), ex);
+                    throw ex;
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates a backup of the current world file version, if there's no
+     * backup of it yet, together with its journal and removes the oldest
+     * backups
+     * @param worldFile world file
+     * @return backup of the current version or null if there's no world file
+     * @throws IOException
+     */
+    public static File createBackup(WorldFile worldFile) throws IOException {
+        if(worldFile.getWorldFileType() == WorldFileType.SHARDED){
+            // the layer files are linked by the world file
+            worldFile.backup();
+            return new File(worldFile.getFilename() + ".bak");
+        }
+
+        String filename = worldFile.getFilename();
+        File file = new File(filename);
+        if(!file.isFile()) return null;
+
+        String version = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date(file.lastModified()));
+        File journal = WorldJournal.getJournalFile(filename);
+        List<File> backups = getBackups(filename);
+        if(!backups.isEmpty() && backups.get(backups.size() - 1).getName().startsWith(version + ".")){
+            // the file didn't change since the last backup, the journal
+            // might have grown
+            File backup = backups.get(backups.size() - 1);
+            backupJournal(journal, getJournalBackup(backup));
+            return backup;
+        }
+
+        File directory = getBackupDirectory(filename);
+        Files.createDirectories(directory.toPath());
+
+        File backup;
+        if(WorldFile.isGzipFile(file) || worldFile.getWorldFileType() == WorldFileType.BINARY){
+            backup = new File(directory, version + SUFFIX_LINK);
+            Files.deleteIfExists(backup.toPath());
+            try {
+                Files.createLink(backup.toPath(), file.toPath());
+            } catch(IOException | UnsupportedOperationException ex){
+                copy(file, backup, false);
+            }
+        } else {
+            backup = new File(directory, version + SUFFIX_COMPRESSED);
+            copy(file, backup, true);
+        }
+        backupJournal(journal, getJournalBackup(backup));
+
+        // remove the oldest backups
+        backups = getBackups(filename);
+        for(int i = 0; i < backups.size() - backupCount; ++i){
+            Files.deleteIfExists(getJournalBackup(backups.get(i)).toPath());
+            Files.deleteIfExists(backups.get(i).toPath());
+        }
+        return backup;
+    }
+
+    /**
+     * Copies the journal of a world file, if it isn't empty and changed since
+     * the last copy. The copy gets the modification time of the journal
+     * @param journal journal file
+     * @param backup journal backup file
+     * @throws IOException
+     */
+    private static void backupJournal(File journal, File backup) throws IOException {
+        if(!journal.isFile() || journal.length() == 0){
+            Files.deleteIfExists(backup.toPath());
+        } else if(!backup.isFile() || backup.lastModified() != journal.lastModified()){
+            long modified = journal.lastModified();
+            copy(journal, backup, true);
+            backup.setLastModified(modified);
+        }
+    }
+
+    /**
+     * Copies a file through a temporary file, so that an interrupted copy
+     * doesn't look like a backup
+     * @param source source file
+     * @param target target file
+     * @param compress true to compress the copy
+     * @throws IOException
+     */
+    private static void copy(File source, File target, boolean compress) throws IOException {
+        File temp = File.createTempFile(target.getName(), ".tmp", target.getParentFile());
+        try {
+            try(OutputStream stream = compress
+                    ? new GZIPOutputStream(Files.newOutputStream(temp.toPath()), 65536)
+                    : Files.newOutputStream(temp.toPath())){
+                Files.copy(source.toPath(), stream);
+            }
+            try {
+                Files.move(temp.toPath(), target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch(AtomicMoveNotSupportedException ex){
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+}
@@ -21,9 +21,25 @@
  */
 package mudmap2.backend.WorldFileReader;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import mudmap2.backend.World;
+import mudmap2.backend.WorldFileReader.current.WorldJournal;
+import mudmap2.backend.WorldFileReader.current.WorldMetaJSON;
+import org.json.JSONObject;
 
 /**
  * Abstract class to read and write world files
@@ -31,12 +47,104 @@ import mudmap2.backend.World;
  */
 public abstract class WorldFile {
 
+    // threads to read the parts of a world file in parallel
+    protected static final ForkJoinPool pool = new ForkJoinPool();
+
     protected String filename;
 
+    // meta data of the last read file and getter of the meta data to write
+    protected JSONObject metaData = null;
+    protected WorldMetaJSON metaWriter = null;
+
+    // gzip compression of written files
+    protected boolean compressed = false;
+    protected int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    // journal of the changes since the world file was written, null if unused
+    protected WorldJournal journal = null;
+
+    static final int BUFFER_SIZE = 1 << 16;
+
     public WorldFile(String filename){
         this.filename = filename;
     }
 
+    /**
+     * Enables or disables gzip compression of written files. Compressed
+     * files are detected when they are read
+     * @param compressed true to compress
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Sets the compression level of written files
+     * @param level 0 (fastest) to 9 (smallest) or Deflater.DEFAULT_COMPRESSION
+     */
+    public void setCompressionLevel(int level) {
+        if(level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)){
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        }
+        compressionLevel = level;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setMetaGetter(WorldMetaJSON meta) {
+        this.metaWriter = meta;
+    }
+
+    public WorldMetaJSON getMetaGetter() {
+        return metaWriter;
+    }
+
+    /**
+     * Gets the change journal of the world file
+     * @return journal or null if the changes aren't journaled
+     */
+    public WorldJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the change journal of the world file
+     * @param journal journal or null
+     */
+    public void setJournal(WorldJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Forgets what is known about the written world file, eg. after it was
+     * changed by another program and the world was reloaded from it. The
+     * next write rewrites the whole file and the journal is detached
+     */
+    public void invalidate() {
+        if(journal != null){
+            journal.detach();
+            journal = null;
+        }
+    }
+
+    /**
+     * Checks whether saves should append the changes to a journal
+     * @return false if the world file writes changes efficiently by itself
+     */
+    public boolean isJournaled() {
+        return true;
+    }
+
+    public JSONObject getMetaData() {
+        return metaData;
+    }
+
     public String getFilename() {
         return filename == null ? "" : filename;
     }
@@ -45,6 +153,21 @@ public abstract class WorldFile {
     public abstract World readFile() throws Exception;
     // Writes the world to file
     public abstract void writeFile(World world) throws IOException;
+    // Writes a snapshot to file, can be called on any thread
+    public abstract void writeSnapshot(WorldSnapshot snapshot, WorldFileProgressListener listener) throws IOException;
+
+    /**
+     * Creates a snapshot of a world for writeSnapshot. Has to be called on
+     * the thread that modifies the world
+     * @param world world
+     * @return snapshot
+     */
+    public WorldSnapshot createSnapshot(World world){
+        WorldSnapshot snapshot = new WorldSnapshot(world);
+        // layers get the index of the snapshot as new id
+        if(metaWriter != null) snapshot.setMeta(metaWriter.getMeta(new HashMap<>(snapshot.layerIndices)));
+        return snapshot;
+    }
     // saves a backup copy of the world
     public abstract void backup() throws FileNotFoundException;
 
@@ -54,4 +177,85 @@ public abstract class WorldFile {
     // can file be read and interpreted by this reader?
     public abstract Boolean canRead();
     public abstract WorldFileType getWorldFileType();
+
+    /**
+     * Checks whether a file starts with the gzip magic number
+     * @param file file
+     * @return true if the file is gzip compressed
+     */
+    public static boolean isGzipFile(File file){
+        try(InputStream stream = Files.newInputStream(file.toPath())){
+            return isGzip(stream.read(), stream.read());
+        } catch(IOException ex){
+            return false;
+        }
+    }
+
+    private static boolean isGzip(int byte0, int byte1){
+        return byte0 == (GZIPInputStream.GZIP_MAGIC & 0xff) && byte1 == (GZIPInputStream.GZIP_MAGIC >>> 8);
+    }
+
+    /**
+     * Opens the world file for reading. Compressed files are decompressed
+     * while they are read
+     * @return buffered input stream
+     * @throws IOException
+     */
+    protected InputStream openInputStream() throws IOException {
+        InputStream stream = new BufferedInputStream(Files.newInputStream(new File(filename).toPath()), BUFFER_SIZE);
+        try {
+            stream.mark(2);
+            boolean gzip = isGzip(stream.read(), stream.read());
+            stream.reset();
+            return gzip ? new GZIPInputStream(stream, BUFFER_SIZE) : stream;
+        } catch(IOException ex){
+            stream.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Opens a file for writing, compressed if compression is enabled
+     * @param file file, eg. from createTempFile()
+     * @return buffered output stream
+     * @throws IOException
+     */
+    protected OutputStream openOutputStream(File file) throws IOException {
+        OutputStream stream = Files.newOutputStream(file.toPath());
+        if(!compressed) return new BufferedOutputStream(stream, BUFFER_SIZE);
+
+        final int level = compressionLevel;
+        return new GZIPOutputStream(stream, BUFFER_SIZE){
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    /**
+     * Creates a temporary file next to the world file. Write to it and
+     * replace the world file with replaceFile(), so that a failed write
+     * never leaves a half-written world file
+     * @return temporary file
+     * @throws IOException
+     */
+    protected File createTempFile() throws IOException {
+        File file = new File(filename).getAbsoluteFile();
+        return File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+    }
+
+    /**
+     * Replaces the world file with a completely written temporary file
+     * @param temp temporary file
+     * @throws IOException
+     */
+    protected void replaceFile(File temp) throws IOException {
+        try {
+            Files.move(temp.toPath(), new File(filename).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(AtomicMoveNotSupportedException ex){
+            Files.move(temp.toPath(), new File(filename).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 }
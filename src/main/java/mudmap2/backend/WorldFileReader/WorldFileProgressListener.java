@@ -0,0 +1,36 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+/*  File description
+ *
+ *  Listener for the progress of writing world files
+ */
+package mudmap2.backend.WorldFileReader;
+
+/**
+ * Gets notified while a world file is written, possibly on another thread
+ * than the user interface
+ * @author neop
+ */
+public interface WorldFileProgressListener {
+
+    /**
+     * Called when the progress has changed
+     * @param percent progress from 0 to 100
+     */
+    public void progressChanged(int percent);
+
+}
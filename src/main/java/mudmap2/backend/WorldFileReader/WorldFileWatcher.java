@@ -0,0 +1,271 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Watches the directories of open world files on a background thread and
+ *  tells the listeners when a world file or its journal was changed by
+ *  another program. Events are collected until the directory stays quiet
+ *  for a moment, so a file that is written in several steps is reported
+ *  once. Changes written by this program are recorded with update()
+ */
+package mudmap2.backend.WorldFileReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import mudmap2.backend.WorldFileReader.current.WorldJournal;
+
+/**
+ * Reports changes of world files by other programs
+ * @author neop
+ */
+public class WorldFileWatcher {
+
+    /**
+     * Gets called on the watcher thread when a watched world file changed
+     */
+    public interface Listener {
+        void worldFileChanged(String filename);
+    }
+
+    // time without events until the changes of a directory are reported
+    static final long QUIET_TIME = 300;
+
+    /**
+     * Modification time and size of a world file and its journal
+     */
+    static class FileState {
+        final long modified, length, journalModified, journalLength;
+
+        FileState(File file, File journal){
+            modified = file.lastModified();
+            length = file.length();
+            journalModified = journal.lastModified();
+            journalLength = journal.length();
+        }
+
+        @Override
+        public boolean equals(Object obj){
+            if(!(obj instanceof FileState)) return false;
+            FileState other = (FileState) obj;
+            return modified == other.modified && length == other.length
+                    && journalModified == other.journalModified && journalLength == other.journalLength;
+        }
+
+        @Override
+        public int hashCode(){
+            return (int) (modified ^ length ^ journalModified ^ journalLength);
+        }
+    }
+
+    /**
+     * A watched world file
+     */
+    static class Entry {
+        final File file;
+        final File journal;
+        final Listener listener;
+        FileState state;
+
+        Entry(File file, Listener listener){
+            this.file = file;
+            journal = WorldJournal.getJournalFile(file.getPath());
+            this.listener = listener;
+            state = new FileState(file, journal);
+        }
+    }
+
+    // watched world files by absolute path
+    static final HashMap<String, Entry> entries = new HashMap<>();
+    // absolute paths of the world files that are being written
+    static final HashSet<String> writing = new HashSet<>();
+    // registered directories
+    static final HashMap<Path, WatchKey> directories = new HashMap<>();
+    static WatchService service = null;
+
+    private WorldFileWatcher(){}
+
+    /**
+     * Starts watching a world file, a file is watched for one listener
+     * @param filename world file name
+     * @param listener listener
+     * @throws IOException if the directory can't be watched
+     */
+    public static synchronized void watch(String filename, Listener listener) throws IOException {
+        File file = new File(filename).getAbsoluteFile();
+        Path directory = file.getParentFile().toPath();
+        if(service == null) start();
+        if(!directories.containsKey(directory)){
+            directories.put(directory, directory.register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE));
+        }
+        entries.put(file.getPath(), new Entry(file, listener));
+    }
+
+    /**
+     * Stops watching a world file
+     * @param filename world file name
+     */
+    public static synchronized void unwatch(String filename){
+        File file = new File(filename).getAbsoluteFile();
+        if(entries.remove(file.getPath()) == null) return;
+
+        Path directory = file.getParentFile().toPath();
+        for(Entry entry: entries.values()){
+            if(entry.file.getParentFile().toPath().equals(directory)) return;
+        }
+        WatchKey key = directories.remove(directory);
+        if(key != null) key.cancel();
+    }
+
+    /**
+     * Checks whether a world file is watched
+     * @param filename world file name
+     * @return true if the file is watched
+     */
+    public static synchronized boolean isWatched(String filename){
+        return entries.containsKey(new File(filename).getAbsoluteFile().getPath());
+    }
+
+    /**
+     * Records the current state of a world file, eg. after it was written by
+     * this program, so that the change isn't reported
+     * @param filename world file name
+     */
+    public static synchronized void update(String filename){
+        Entry entry = entries.get(new File(filename).getAbsoluteFile().getPath());
+        if(entry != null) entry.state = new FileState(entry.file, entry.journal);
+    }
+
+    /**
+     * Marks a world file as being written by this program, its changes
+     * aren't reported until endWrite is called
+     * @param filename world file name
+     */
+    public static synchronized void beginWrite(String filename){
+        writing.add(new File(filename).getAbsoluteFile().getPath());
+    }
+
+    /**
+     * Records the state of a world file after it was written by this
+     * program, has to be called on the writing thread right after the file
+     * and journal were written, even if writing failed
+     * @param filename world file name
+     */
+    public static synchronized void endWrite(String filename){
+        writing.remove(new File(filename).getAbsoluteFile().getPath());
+        update(filename);
+    }
+
+    /**
+     * Creates the watch service and its thread
+     * @throws IOException
+     */
+    private static void start() throws IOException {
+        service = FileSystems.getDefault().newWatchService();
+        final WatchService watchService = service;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    watch(watchService);
+                } catch(InterruptedException | ClosedWatchServiceException ex){
+                    // stopped
+                }
+            }
+        }, "WorldFileWatcher");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Waits for events and reports the changed world files
+     * @param watchService watch service
+     * @throws InterruptedException
+     */
+    private static void watch(WatchService watchService) throws InterruptedException {
+        HashSet<Path> changed = new HashSet<>();
+        while(true){
+            WatchKey key = watchService.take();
+            // collect the events until the directories stay quiet
+            while(key != null){
+                for(WatchEvent<?> event: key.pollEvents()){
+                    Path directory = (Path) key.watchable();
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+                        changed.add(directory);
+                    } else {
+                        changed.add(directory.resolve((Path) event.context()));
+                    }
+                }
+                key.reset();
+                key = watchService.poll(QUIET_TIME, TimeUnit.MILLISECONDS);
+            }
+            for(Map.Entry<Listener, String> entry: check(changed).entrySet()){
+                try {
+                    entry.getKey().worldFileChanged(entry.getValue());
+                } catch(RuntimeException ex){
+                    Logger.getLogger(WorldFileWatcher.class.getName()).log(Level.WARNING, null, ex);
+                }
+            }
+            changed.clear();
+        }
+    }
+
+    /**
+     * Compares the changed world files with their recorded state
+     * @param changed changed files or directories
+     * @return listeners and file names of the world files that changed
+     */
+    static synchronized HashMap<Listener, String> check(HashSet<Path> changed){
+        HashMap<Listener, String> ret = new HashMap<>();
+        ArrayList<Entry> candidates = new ArrayList<>();
+        for(Entry entry: entries.values()){
+            if(writing.contains(entry.file.getPath())) continue;
+            if(changed.contains(entry.file.toPath()) || changed.contains(entry.journal.toPath())
+                    || changed.contains(entry.file.getParentFile().toPath())){
+                candidates.add(entry);
+            }
+        }
+        for(Entry entry: candidates){
+            FileState state = new FileState(entry.file, entry.journal);
+            // a deleted world file isn't reloaded, the next save writes it
+            if(!state.equals(entry.state) && entry.file.isFile()){
+                entry.state = state;
+                ret.put(entry.listener, entry.file.getPath());
+            }
+        }
+        return ret;
+    }
+
+}
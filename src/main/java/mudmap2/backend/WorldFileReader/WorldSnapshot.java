@@ -0,0 +1,440 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+/*  File description
+ *
+ *  Immutable copy of the parts of a world that are written to world files.
+ *  Creating a snapshot copies the fields of every place into arrays once,
+ *  which takes O(number of places) time on the thread that modifies the
+ *  world. The slower serialization of the snapshot happens on another thread.
+ *  Layers that aren't loaded are read by their loader without loading them
+ */
+
+package mudmap2.backend.WorldFileReader;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import mudmap2.backend.Layer;
+import mudmap2.backend.LayerElement;
+import mudmap2.backend.LayerLoader;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.PlaceGroup;
+import mudmap2.backend.RiskLevel;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldCoordinate;
+import org.json.JSONObject;
+
+/**
+ * Snapshot of a world for writing. Places are stored in parallel arrays that
+ * are filled by the constructor in one pass over all places, on the thread
+ * that modifies the world. Strings and colors are shared with the world, the
+ * arrays must not be modified. Layers without places are left out, their
+ * places are referenced by the index in the layer arrays
+ * @author neop
+ */
+public class WorldSnapshot {
+
+    /** risk level value of places without risk level */
+    public static final int NO_RISK_LEVEL = Integer.MIN_VALUE;
+
+    public final String name;
+    public final World.ShowPlaceID showPlaceID;
+    public final Color tileCenterColor, pathColorStd, pathColorNstd;
+    public final Map<String, Color> pathColors;
+    public final WorldCoordinate home;
+    public final JSONObject preferences;
+
+    // risk levels
+    public final int[] riskLevelIds;
+    public final String[] riskLevelDescriptions;
+    public final Color[] riskLevelColors;
+
+    // layers that contain places
+    public final int[] layerIds;
+    public final int[] layerCenterX, layerCenterY;
+    public final String[] layerNames; // null if the layer has no name
+    public final Map<Integer, Integer> layerIndices;
+
+    // place groups that are used by places
+    public final String[] areaNames;
+    public final Color[] areaColors;
+
+    // places
+    public final int placeCount;
+    public final int[] placeIds;
+    public final String[] placeNames;
+    public final int[] placeLayers; // index in layer arrays
+    public final int[] placeX, placeY;
+    public final int[] placeAreas; // index in area arrays or -1
+    public final int[] placeRiskLevels; // risk level id or NO_RISK_LEVEL
+    public final int[] placeLevelMin, placeLevelMax;
+    public final int[][] placeChildren, placeParents; // place ids, null if empty
+    public final String[][] placeFlags; // set flags, null if empty
+    public final String[] placeComments; // null if empty
+
+    // paths, two entries per path
+    public final int pathCount;
+    public final int[] pathPlaces;
+    public final int[] pathLayers; // layer index of the place, -1 if unknown
+    public final String[] pathExits;
+
+    // additional data of the writer, eg. the meta data of a WorldTab
+    JSONObject meta = null;
+
+    /**
+     * Creates a snapshot, must be called on the thread that modifies the world
+     * @param world world to copy
+     */
+    public WorldSnapshot(World world){
+        this(world, world.getLayers());
+    }
+
+    /**
+     * Creates a snapshot that only contains the places of some layers, eg.
+     * of the layers that changed. Must be called on the thread that modifies
+     * the world
+     * @param world world to copy
+     * @param copyLayers layers of the world whose places are copied
+     */
+    public WorldSnapshot(World world, Collection<Layer> copyLayers){
+        name = world.getName();
+        showPlaceID = world.getShowPlaceId();
+        tileCenterColor = world.getTileCenterColor();
+        pathColorStd = world.getPathColorStd();
+        pathColorNstd = world.getPathColorNstd();
+        pathColors = Collections.unmodifiableMap(new LinkedHashMap<>(world.getPathColors()));
+        home = new WorldCoordinate(world.getHome());
+        // preferences are small, copy them completely
+        preferences = world.getPreferences() == null ? null : new JSONObject(world.getPreferences().toString());
+
+        int riskLevelCount = world.getRiskLevels().size();
+        riskLevelIds = new int[riskLevelCount];
+        riskLevelDescriptions = new String[riskLevelCount];
+        riskLevelColors = new Color[riskLevelCount];
+        int index = 0;
+        for(RiskLevel riskLevel: world.getRiskLevels()){
+            riskLevelIds[index] = riskLevel.getId();
+            riskLevelDescriptions[index] = riskLevel.getDescription();
+            riskLevelColors[index] = riskLevel.getColor();
+            ++index;
+        }
+
+        // collect places of non-empty layers. Layers that aren't loaded stay
+        // unloaded, the places that aren't in them yet are read by their
+        // loader without adding them
+        ArrayList<Layer> layers = new ArrayList<>();
+        ArrayList<ArrayList<Place>> layerPlaces = new ArrayList<>();
+        ArrayList<LayerLoader.LayerData> layerData = new ArrayList<>();
+        int count = 0;
+        boolean unloaded = false;
+        for(Layer layer: copyLayers){
+            ArrayList<Place> places = new ArrayList<>();
+            LayerLoader.LayerData data = null;
+            if(layer.isLoaded()){
+                for(LayerElement element: layer.getLayerElements()){
+                    if(element instanceof Place) places.add((Place) element);
+                }
+            } else {
+                places.addAll(layer.getLoadedPlaces());
+                data = layer.getLoader().read(layer);
+            }
+            int size = places.size() + (data != null ? data.places.size() : 0);
+            if(size > 0){
+                layers.add(layer);
+                layerPlaces.add(places);
+                layerData.add(data);
+                count += size;
+                unloaded |= data != null;
+            }
+        }
+
+        layerIds = new int[layers.size()];
+        layerCenterX = new int[layers.size()];
+        layerCenterY = new int[layers.size()];
+        layerNames = new String[layers.size()];
+        HashMap<Integer, Integer> indices = new HashMap<>();
+        for(int i = 0; i < layers.size(); ++i){
+            Layer layer = layers.get(i);
+            LayerLoader.LayerData data = layerData.get(i);
+            layerIds[i] = layer.getId();
+            // the center of a layer that isn't loaded is the one of the file
+            layerCenterX[i] = data != null ? data.centerX : layer.getCenterX();
+            layerCenterY[i] = data != null ? data.centerY : layer.getCenterY();
+            layerNames[i] = layer.hasName() ? layer.getName() : null;
+            indices.put(layer.getId(), i);
+        }
+        layerIndices = Collections.unmodifiableMap(indices);
+
+        placeCount = count;
+        placeIds = new int[placeCount];
+        placeNames = new String[placeCount];
+        placeLayers = new int[placeCount];
+        placeX = new int[placeCount];
+        placeY = new int[placeCount];
+        placeAreas = new int[placeCount];
+        placeRiskLevels = new int[placeCount];
+        placeLevelMin = new int[placeCount];
+        placeLevelMax = new int[placeCount];
+        placeChildren = new int[placeCount][];
+        placeParents = new int[placeCount][];
+        placeFlags = new String[placeCount][];
+        placeComments = new String[placeCount];
+
+        // connections to places that aren't in their layers yet, by id
+        HashMap<Integer, Integer> placeLayerIndices = new HashMap<>();
+        HashMap<Integer, ArrayList<Integer>> extraChildren = new HashMap<>();
+        HashMap<Integer, ArrayList<Integer>> extraParents = new HashMap<>();
+        // their paths by the layer index of the first place
+        HashMap<Integer, ArrayList<Integer>> extraPaths = new HashMap<>();
+        if(unloaded){
+            for(int l = 0; l < layers.size(); ++l){
+                for(Place place: layerPlaces.get(l)) placeLayerIndices.put(place.getId(), l);
+                if(layerData.get(l) != null){
+                    for(LayerLoader.PlaceData place: layerData.get(l).places) placeLayerIndices.put(place.id, l);
+                }
+            }
+            for(int l = 0; l < layers.size(); ++l){
+                LayerLoader.LayerData data = layerData.get(l);
+                if(data == null) continue;
+                for(int i = 0; i < data.children.size(); i += 2){
+                    addConnection(extraChildren, data.children.get(i), data.children.get(i + 1), placeLayerIndices);
+                    addConnection(extraParents, data.children.get(i + 1), data.children.get(i), placeLayerIndices);
+                }
+                for(LayerLoader.PlaceData place: data.places){
+                    if(place.children == null) continue;
+                    for(int child: place.children){
+                        addConnection(extraParents, child, place.id, placeLayerIndices);
+                    }
+                }
+                for(int i = 0; i < data.pathPlaces.size(); i += 2){
+                    Integer layer0 = placeLayerIndices.get(data.pathPlaces.get(i));
+                    // paths of removed places are left out
+                    if(layer0 != null && placeLayerIndices.containsKey(data.pathPlaces.get(i + 1))){
+                        ArrayList<Integer> paths = extraPaths.get(layer0);
+                        if(paths == null) extraPaths.put(layer0, paths = new ArrayList<>());
+                        paths.add(l);
+                        paths.add(i);
+                    }
+                }
+            }
+        }
+
+        LinkedHashMap<PlaceGroup, Integer> areas = new LinkedHashMap<>();
+        int[] paths = new int[placeCount];
+        int[] pathLayer = new int[placeCount];
+        String[] exits = new String[placeCount];
+        int pathIndex = 0;
+        int i = 0;
+        // places and paths of a layer are stored together
+        for(int l = 0; l < layers.size(); ++l){
+            for(Place place: layerPlaces.get(l)){
+                placeLayers[i] = l;
+                placeIds[i] = place.getId();
+                placeNames[i] = place.getName();
+                placeX[i] = place.getX();
+                placeY[i] = place.getY();
+                placeAreas[i] = getAreaIndex(areas, place.getPlaceGroup());
+                placeRiskLevels[i] = place.getRiskLevel() != null ? place.getRiskLevel().getId() : NO_RISK_LEVEL;
+                placeLevelMin[i] = place.getRecLevelMin();
+                placeLevelMax[i] = place.getRecLevelMax();
+                placeChildren[i] = getIds(place.getChildren(), extraChildren.get(place.getId()));
+                placeParents[i] = getIds(place.getParents(), extraParents.get(place.getId()));
+
+                int flagCount = 0;
+                for(Boolean flag: place.getFlags().values()){
+                    if(flag) ++flagCount;
+                }
+                if(flagCount > 0){
+                    String[] flags = placeFlags[i] = new String[flagCount];
+                    flagCount = 0;
+                    for(Map.Entry<String, Boolean> flag: place.getFlags().entrySet()){
+                        if(flag.getValue()) flags[flagCount++] = flag.getKey();
+                    }
+                }
+
+                String comments = place.getComments();
+                placeComments[i] = comments == null || comments.isEmpty() ? null : comments;
+
+                // each path is stored by its first place
+                for(Path path: place.getPaths()){
+                    Place[] pathPlace = path.getPlaces();
+                    if(pathPlace[0] == place){
+                        if(pathIndex + 2 > paths.length){
+                            paths = Arrays.copyOf(paths, paths.length * 2 + 2);
+                            pathLayer = Arrays.copyOf(pathLayer, paths.length);
+                            exits = Arrays.copyOf(exits, paths.length);
+                        }
+                        paths[pathIndex] = pathPlace[0].getId();
+                        pathLayer[pathIndex] = l;
+                        exits[pathIndex] = path.getExit(pathPlace[0]);
+                        paths[pathIndex + 1] = pathPlace[1].getId();
+                        if(pathPlace[1].getLayer() == place.getLayer()){
+                            pathLayer[pathIndex + 1] = l;
+                        } else {
+                            Integer otherLayer = pathPlace[1].getLayer() != null ? indices.get(pathPlace[1].getLayer().getId()) : null;
+                            pathLayer[pathIndex + 1] = otherLayer != null ? otherLayer : -1;
+                        }
+                        exits[pathIndex + 1] = path.getExit(pathPlace[1]);
+                        pathIndex += 2;
+                    }
+                }
+                ++i;
+            }
+
+            LayerLoader.LayerData data = layerData.get(l);
+            if(data != null){
+                for(LayerLoader.PlaceData place: data.places){
+                    placeLayers[i] = l;
+                    placeIds[i] = place.id;
+                    placeNames[i] = place.name;
+                    placeX[i] = place.x;
+                    placeY[i] = place.y;
+                    placeAreas[i] = getAreaIndex(areas, place.area);
+                    placeRiskLevels[i] = place.riskLevel != null ? place.riskLevel.getId() : NO_RISK_LEVEL;
+                    placeLevelMin[i] = place.levelMin;
+                    placeLevelMax[i] = place.levelMax;
+                    placeChildren[i] = getIds(place.children, placeLayerIndices);
+                    placeParents[i] = getIds(Collections.<Place>emptyList(), extraParents.get(place.id));
+                    placeFlags[i] = place.flags;
+                    placeComments[i] = place.comments;
+                    ++i;
+                }
+            }
+
+            ArrayList<Integer> layerPaths = extraPaths.get(l);
+            if(layerPaths != null){
+                for(int p = 0; p < layerPaths.size(); p += 2){
+                    LayerLoader.LayerData pathData = layerData.get(layerPaths.get(p));
+                    int pathStart = layerPaths.get(p + 1);
+                    if(pathIndex + 2 > paths.length){
+                        paths = Arrays.copyOf(paths, paths.length * 2 + 2);
+                        pathLayer = Arrays.copyOf(pathLayer, paths.length);
+                        exits = Arrays.copyOf(exits, paths.length);
+                    }
+                    for(int e = 0; e < 2; ++e){
+                        paths[pathIndex + e] = pathData.pathPlaces.get(pathStart + e);
+                        pathLayer[pathIndex + e] = placeLayerIndices.get(paths[pathIndex + e]);
+                        exits[pathIndex + e] = pathData.pathExits.get(pathStart + e);
+                    }
+                    pathIndex += 2;
+                }
+            }
+        }
+
+        areaNames = new String[areas.size()];
+        areaColors = new Color[areas.size()];
+        for(Map.Entry<PlaceGroup, Integer> area: areas.entrySet()){
+            areaNames[area.getValue()] = area.getKey().getName();
+            areaColors[area.getValue()] = area.getKey().getColor();
+        }
+
+        pathCount = pathIndex / 2;
+        pathPlaces = Arrays.copyOf(paths, pathIndex);
+        pathLayers = Arrays.copyOf(pathLayer, pathIndex);
+        pathExits = Arrays.copyOf(exits, pathIndex);
+    }
+
+    /**
+     * Gets the additional data of the world file writer
+     * @return data or null
+     */
+    public JSONObject getMeta() {
+        return meta;
+    }
+
+    /**
+     * Sets additional data of the world file writer, eg. the state of the
+     * user interface. Must not be modified afterwards
+     * @param meta data or null
+     */
+    public void setMeta(JSONObject meta) {
+        this.meta = meta;
+    }
+
+    /**
+     * Gets the index of an area, areas get an index when they are used first
+     * @param areas areas and their index
+     * @param area area or null
+     * @return index or -1 if the area is null
+     */
+    private static int getAreaIndex(LinkedHashMap<PlaceGroup, Integer> areas, PlaceGroup area){
+        if(area == null) return -1;
+        Integer index = areas.get(area);
+        if(index == null){
+            index = areas.size();
+            areas.put(area, index);
+        }
+        return index;
+    }
+
+    /**
+     * Gets the ids of places
+     * @param places places
+     * @param extra ids of places that aren't in their layers yet or null
+     * @return ids or null if there are no places
+     */
+    private static int[] getIds(Collection<Place> places, ArrayList<Integer> extra){
+        int size = places.size() + (extra != null ? extra.size() : 0);
+        if(size == 0) return null;
+        int[] ids = new int[size];
+        int i = 0;
+        for(Place place: places) ids[i++] = place.getId();
+        if(extra != null){
+            for(int id: extra) ids[i++] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Gets the ids of places that are in the snapshot
+     * @param ids place ids or null
+     * @param placeLayerIndices layer indices by place id
+     * @return ids or null if there are no places
+     */
+    private static int[] getIds(int[] ids, HashMap<Integer, Integer> placeLayerIndices){
+        if(ids == null) return null;
+        int[] ret = new int[ids.length];
+        int count = 0;
+        for(int id: ids){
+            if(placeLayerIndices.containsKey(id)) ret[count++] = id;
+        }
+        return count > 0 ? Arrays.copyOf(ret, count) : null;
+    }
+
+    /**
+     * Adds a connection of a place that isn't in its layer yet, connections
+     * of removed places are left out
+     * @param connections connected place ids by place id
+     * @param id place id
+     * @param other id of the connected place
+     * @param placeLayerIndices layer indices by place id
+     */
+    private static void addConnection(HashMap<Integer, ArrayList<Integer>> connections,
+            int id, int other, HashMap<Integer, Integer> placeLayerIndices){
+        if(!placeLayerIndices.containsKey(id) || !placeLayerIndices.containsKey(other)) return;
+        ArrayList<Integer> list = connections.get(id);
+        if(list == null) connections.put(id, list = new ArrayList<>());
+        list.add(other);
+    }
+
+}
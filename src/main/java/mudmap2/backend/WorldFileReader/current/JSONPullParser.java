@@ -0,0 +1,470 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+/*  File description
+ *
+ *  Pull parser for JSON documents. Reads tokens from a character stream one
+ *  at a time, so that a file can be turned into model objects without
+ *  building a JSONObject tree of the whole document first
+ */
+
+package mudmap2.backend.WorldFileReader.current;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Streaming JSON tokenizer. Syntax errors are reported as JSONException,
+ * like the org.json parser does
+ * @author neop
+ */
+public class JSONPullParser implements Closeable {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY,
+        NAME, STRING, NUMBER, TRUE, FALSE, NULL, END_DOCUMENT
+    }
+
+    // parser states, one per open container
+    private static final int DOCUMENT_START = 0;
+    private static final int DOCUMENT_END = 1;
+    private static final int OBJECT_FIRST = 2; // name or '}' expected
+    private static final int OBJECT_NAME = 3; // ',' or '}' expected
+    private static final int OBJECT_VALUE = 4; // value after name expected
+    private static final int ARRAY_FIRST = 5; // value or ']' expected
+    private static final int ARRAY_NEXT = 6; // ',' or ']' expected
+
+    private static final int BUFFER_SIZE = 16384;
+    private static final int NAME_CACHE_SIZE = 64;
+
+    final Reader reader;
+    final char[] buffer = new char[BUFFER_SIZE];
+    int position = 0, limit = 0;
+    // number of characters read before the current buffer
+    long offset = 0;
+
+    int[] stack = new int[32];
+    int depth = 1;
+
+    Token token = null;
+    // text of the current name, string or number token
+    final StringBuilder text = new StringBuilder();
+    // object keys repeat often, reuse their string objects
+    final String[] nameCache = new String[NAME_CACHE_SIZE];
+
+    /**
+     * Creates a parser, the reader doesn't have to be buffered
+     * @param reader source
+     */
+    public JSONPullParser(Reader reader){
+        this.reader = reader;
+        stack[0] = DOCUMENT_START;
+    }
+
+    /**
+     * Gets the current token
+     * @return current token or null before the first call of next()
+     */
+    public Token getToken(){
+        return token;
+    }
+
+    /**
+     * Reads the next token
+     * @return next token
+     * @throws IOException
+     */
+    public Token next() throws IOException {
+        int state = stack[depth - 1];
+        int c = nextNonWhitespace();
+
+        switch(state){
+            case DOCUMENT_START:
+                stack[depth - 1] = DOCUMENT_END;
+                return token = readValue(c);
+            case DOCUMENT_END:
+                if(c != -1) throw syntaxError("Unexpected data after document end");
+                return token = Token.END_DOCUMENT;
+            case OBJECT_FIRST:
+            case OBJECT_NAME:
+                if(c == '}'){
+                    --depth;
+                    return token = Token.END_OBJECT;
+                }
+                if(state == OBJECT_NAME){
+                    if(c != ',') throw syntaxError("Expected ',' or '}'");
+                    c = nextNonWhitespace();
+                }
+                if(c != '"') throw syntaxError("Expected a name");
+                readString();
+                if(nextNonWhitespace() != ':') throw syntaxError("Expected ':'");
+                stack[depth - 1] = OBJECT_VALUE;
+                return token = Token.NAME;
+            case OBJECT_VALUE:
+                stack[depth - 1] = OBJECT_NAME;
+                return token = readValue(c);
+            case ARRAY_FIRST:
+            case ARRAY_NEXT:
+                if(c == ']'){
+                    --depth;
+                    return token = Token.END_ARRAY;
+                }
+                if(state == ARRAY_NEXT){
+                    if(c != ',') throw syntaxError("Expected ',' or ']'");
+                    c = nextNonWhitespace();
+                }
+                stack[depth - 1] = ARRAY_NEXT;
+                return token = readValue(c);
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Reads the next token and checks its type
+     * @param expected expected token
+     * @throws IOException
+     * @throws JSONException if the token is of another type
+     */
+    public void next(Token expected) throws IOException {
+        if(next() != expected){
+            throw syntaxError("Expected " + expected + " but found " + token);
+        }
+    }
+
+    /**
+     * Skips the current value. If the current token begins an object or
+     * array, everything up to the matching end token will be skipped
+     * @throws IOException
+     */
+    public void skipValue() throws IOException {
+        if(token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY){
+            int level = 1;
+            while(level > 0){
+                switch(next()){
+                    case BEGIN_OBJECT:
+                    case BEGIN_ARRAY:
+                        ++level;
+                        break;
+                    case END_OBJECT:
+                    case END_ARRAY:
+                        --level;
+                        break;
+                    case END_DOCUMENT:
+                        throw syntaxError("Unexpected end of document");
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the text of the current name or string token. Names are taken
+     * from a small cache to avoid creating the same key strings repeatedly
+     * @return string
+     */
+    public String getString(){
+        if(token == Token.NAME){
+            int hash = 0;
+            for(int i = 0; i < text.length(); ++i) hash = 31 * hash + text.charAt(i);
+            int slot = hash & (NAME_CACHE_SIZE - 1);
+            String cached = nameCache[slot];
+            if(cached == null || !contentEquals(cached)){
+                cached = nameCache[slot] = text.toString();
+            }
+            return cached;
+        } else if(token == Token.STRING || token == Token.NUMBER){
+            return text.toString();
+        }
+        throw syntaxError("Expected a string but found " + token);
+    }
+
+    /**
+     * Gets the current number token as int, fractional digits are cut off
+     * @return number
+     */
+    public int getInt(){
+        long value = getLong();
+        if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE){
+            throw syntaxError("Number out of range: " + text);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Gets the current number token as long, fractional digits are cut off
+     * @return number
+     */
+    public long getLong(){
+        if(token != Token.NUMBER && token != Token.STRING){
+            throw syntaxError("Expected a number but found " + token);
+        }
+
+        int length = text.length();
+        boolean negative = length > 0 && text.charAt(0) == '-';
+        int i = negative ? 1 : 0;
+        if(i == length || length - i > 18) return (long) getDouble();
+
+        long value = 0;
+        for(; i < length; ++i){
+            char c = text.charAt(i);
+            if(c < '0' || c > '9') return (long) getDouble();
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Gets the current number token as double
+     * @return number
+     */
+    public double getDouble(){
+        if(token != Token.NUMBER && token != Token.STRING){
+            throw syntaxError("Expected a number but found " + token);
+        }
+        try {
+            return Double.parseDouble(text.toString());
+        } catch(NumberFormatException ex){
+            throw syntaxError("Invalid number: " + text);
+        }
+    }
+
+    /**
+     * Reads the current value into org.json objects. Meant for small parts
+     * of a document, like preferences
+     * @return JSONObject, JSONArray, String, Number, Boolean or JSONObject.NULL
+     * @throws IOException
+     */
+    public Object readValue() throws IOException {
+        switch(token){
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                while(next() == Token.NAME){
+                    String name = getString();
+                    next();
+                    object.put(name, readValue());
+                }
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                while(next() != Token.END_ARRAY){
+                    array.put(readValue());
+                }
+                return array;
+            case STRING:
+                return getString();
+            case NUMBER:
+                return JSONObject.stringToValue(text.toString());
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case NULL:
+                return JSONObject.NULL;
+            default:
+                throw syntaxError("Expected a value but found " + token);
+        }
+    }
+
+    /**
+     * Reads the current value, which has to be an object
+     * @return JSONObject
+     * @throws IOException
+     */
+    public JSONObject readObject() throws IOException {
+        if(token != Token.BEGIN_OBJECT){
+            throw syntaxError("Expected an object but found " + token);
+        }
+        return (JSONObject) readValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads the token of a value that starts with character c
+     * @param c first character
+     * @return token
+     * @throws IOException
+     */
+    private Token readValue(int c) throws IOException {
+        switch(c){
+            case '{':
+                push(OBJECT_FIRST);
+                return Token.BEGIN_OBJECT;
+            case '[':
+                push(ARRAY_FIRST);
+                return Token.BEGIN_ARRAY;
+            case '"':
+                readString();
+                return Token.STRING;
+            case 't':
+                readLiteral("rue");
+                return Token.TRUE;
+            case 'f':
+                readLiteral("alse");
+                return Token.FALSE;
+            case 'n':
+                readLiteral("ull");
+                return Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of document");
+            default:
+                if(c == '-' || (c >= '0' && c <= '9')){
+                    readNumber((char) c);
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void push(int state){
+        if(depth == stack.length){
+            int[] newStack = new int[depth * 2];
+            System.arraycopy(stack, 0, newStack, 0, depth);
+            stack = newStack;
+        }
+        stack[depth++] = state;
+    }
+
+    /**
+     * Reads a string after the opening quote into text
+     * @throws IOException
+     */
+    private void readString() throws IOException {
+        text.setLength(0);
+        while(true){
+            // copy unescaped runs directly from the buffer
+            int start = position;
+            while(position < limit){
+                char c = buffer[position];
+                if(c == '"' || c == '\\') break;
+                ++position;
+            }
+            text.append(buffer, start, position - start);
+
+            int c = read();
+            if(c == '"'){
+                return;
+            } else if(c == '\\'){
+                c = read();
+                switch(c){
+                    case 'b': text.append('\b'); break;
+                    case 't': text.append('\t'); break;
+                    case 'n': text.append('\n'); break;
+                    case 'f': text.append('\f'); break;
+                    case 'r': text.append('\r'); break;
+                    case 'u':
+                        int value = 0;
+                        for(int i = 0; i < 4; ++i){
+                            int digit = Character.digit(read(), 16);
+                            if(digit < 0) throw syntaxError("Invalid unicode escape");
+                            value = (value << 4) | digit;
+                        }
+                        text.append((char) value);
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        text.append((char) c);
+                        break;
+                    default:
+                        throw syntaxError("Invalid escape sequence");
+                }
+            } else if(c == -1){
+                throw syntaxError("Unterminated string");
+            } else {
+                // first character after a buffer refill
+                text.append((char) c);
+            }
+        }
+    }
+
+    /**
+     * Reads a number into text
+     * @param first first character
+     * @throws IOException
+     */
+    private void readNumber(char first) throws IOException {
+        text.setLength(0);
+        text.append(first);
+        while(true){
+            if(position == limit && !fill()) return;
+            char c = buffer[position];
+            if((c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-'){
+                text.append(c);
+                ++position;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void readLiteral(String rest) throws IOException {
+        for(int i = 0; i < rest.length(); ++i){
+            if(read() != rest.charAt(i)) throw syntaxError("Invalid literal");
+        }
+    }
+
+    private boolean contentEquals(String string){
+        int length = text.length();
+        if(string.length() != length) return false;
+        for(int i = 0; i < length; ++i){
+            if(string.charAt(i) != text.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        while(true){
+            if(position == limit && !fill()) return -1;
+            char c = buffer[position++];
+            if(c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+        }
+    }
+
+    private int read() throws IOException {
+        if(position == limit && !fill()) return -1;
+        return buffer[position++];
+    }
+
+    /**
+     * Refills the buffer
+     * @return false at the end of the stream
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        offset += limit;
+        position = limit = 0;
+        int count;
+        do {
+            count = reader.read(buffer, 0, buffer.length);
+        } while(count == 0);
+        if(count < 0) return false;
+        limit = count;
+        return true;
+    }
+
+    private JSONException syntaxError(String message){
+        return new JSONException(message + " at character " + (offset + position));
+    }
+
+}
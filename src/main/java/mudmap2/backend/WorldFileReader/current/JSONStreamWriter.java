@@ -0,0 +1,225 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+/*  File description
+ *
+ *  Writes JSON documents token by token, the counterpart of JSONPullParser.
+ *  Large documents don't have to be built as JSONObject tree before they can
+ *  be written
+ */
+
+package mudmap2.backend.WorldFileReader.current;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Streaming JSON writer, separators are inserted automatically. The output
+ * is compact, like JSONObject.write(Writer)
+ * @author neop
+ */
+public class JSONStreamWriter implements Closeable, Flushable {
+
+    final Writer writer;
+
+    // state of each open container
+    private static final int OBJECT = 0, ARRAY = 1, NOT_EMPTY = 2;
+    int[] stack = new int[32];
+    int depth = 0;
+    // a name was written, its value is expected next
+    boolean nameWritten = false;
+
+    /**
+     * Creates a writer, the target writer should be buffered
+     * @param writer target
+     */
+    public JSONStreamWriter(Writer writer){
+        this.writer = writer;
+    }
+
+    public JSONStreamWriter beginObject() throws IOException {
+        beforeValue();
+        writer.write('{');
+        push(OBJECT);
+        return this;
+    }
+
+    public JSONStreamWriter endObject() throws IOException {
+        pop(OBJECT);
+        writer.write('}');
+        return this;
+    }
+
+    public JSONStreamWriter beginArray() throws IOException {
+        beforeValue();
+        writer.write('[');
+        push(ARRAY);
+        return this;
+    }
+
+    public JSONStreamWriter endArray() throws IOException {
+        pop(ARRAY);
+        writer.write(']');
+        return this;
+    }
+
+    /**
+     * Writes the name of the next object entry
+     * @param name entry name
+     * @return this
+     * @throws IOException
+     */
+    public JSONStreamWriter name(String name) throws IOException {
+        if(depth == 0 || nameWritten || (stack[depth - 1] & ARRAY) != 0){
+            throw new JSONException("Unexpected name " + name);
+        }
+        separate();
+        string(name);
+        writer.write(':');
+        nameWritten = true;
+        return this;
+    }
+
+    public JSONStreamWriter value(String value) throws IOException {
+        beforeValue();
+        if(value == null) writer.write("null");
+        else string(value);
+        return this;
+    }
+
+    public JSONStreamWriter value(long value) throws IOException {
+        beforeValue();
+        writer.write(Long.toString(value));
+        return this;
+    }
+
+    public JSONStreamWriter value(double value) throws IOException {
+        beforeValue();
+        writer.write(JSONObject.numberToString(value));
+        return this;
+    }
+
+    public JSONStreamWriter value(boolean value) throws IOException {
+        beforeValue();
+        writer.write(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Writes a JSONObject, JSONArray or any other value org.json can write
+     * @param value value
+     * @return this
+     * @throws IOException
+     */
+    public JSONStreamWriter value(Object value) throws IOException {
+        beforeValue();
+        if(value instanceof JSONObject){
+            ((JSONObject) value).write(writer);
+        } else if(value instanceof JSONArray){
+            ((JSONArray) value).write(writer);
+        } else {
+            writer.write(JSONObject.valueToString(value));
+        }
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Writes a quoted string, runs of characters that don't have to be
+     * escaped are written at once
+     * @param string string to write
+     * @throws IOException
+     */
+    private void string(String string) throws IOException {
+        writer.write('"');
+        int start = 0;
+        int length = string.length();
+        for(int i = 0; i < length; ++i){
+            char c = string.charAt(i);
+            if(c == '"' || c == '\\' || c < 0x20){
+                writer.write(string, start, i - start);
+                start = i + 1;
+                switch(c){
+                    case '"': writer.write("\\\""); break;
+                    case '\\': writer.write("\\\\"); break;
+                    case '\b': writer.write("\\b"); break;
+                    case '\t': writer.write("\\t"); break;
+                    case '\n': writer.write("\\n"); break;
+                    case '\f': writer.write("\\f"); break;
+                    case '\r': writer.write("\\r"); break;
+                    default:
+                        writer.write("\\u00");
+                        writer.write(Character.forDigit(c >> 4, 16));
+                        writer.write(Character.forDigit(c & 0xf, 16));
+                }
+            }
+        }
+        writer.write(string, start, length - start);
+        writer.write('"');
+    }
+
+    private void beforeValue() throws IOException {
+        if(depth > 0){
+            if(nameWritten){
+                nameWritten = false;
+            } else if((stack[depth - 1] & ARRAY) != 0){
+                separate();
+            } else {
+                throw new JSONException("Object value without name");
+            }
+        }
+    }
+
+    /**
+     * Writes a comma if the current container isn't empty
+     * @throws IOException
+     */
+    private void separate() throws IOException {
+        if((stack[depth - 1] & NOT_EMPTY) != 0) writer.write(',');
+        stack[depth - 1] |= NOT_EMPTY;
+    }
+
+    private void push(int type){
+        if(depth == stack.length){
+            int[] newStack = new int[depth * 2];
+            System.arraycopy(stack, 0, newStack, 0, depth);
+            stack = newStack;
+        }
+        stack[depth++] = type;
+    }
+
+    private void pop(int type){
+        if(depth == 0 || (stack[depth - 1] & ARRAY) != type || nameWritten){
+            throw new JSONException("Unexpected end of " + (type == ARRAY ? "array" : "object"));
+        }
+        --depth;
+    }
+
+}
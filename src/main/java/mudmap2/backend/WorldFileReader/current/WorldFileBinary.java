@@ -0,0 +1,1256 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+/*  File description
+ *
+ *  Compact binary world file format. The file starts with a magic number and
+ *  the format version, followed by length prefixed sections. Names, flags
+ *  and exits are stored once in a string table, numbers as varints
+ */
+
+package mudmap2.backend.WorldFileReader.current;
+
+import java.awt.Color;
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.JOptionPane;
+import mudmap2.backend.Layer;
+import mudmap2.backend.LayerLoader;
+import mudmap2.backend.LayerLoader.LayerData;
+import mudmap2.backend.LayerLoader.PlaceData;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.PlaceGroup;
+import mudmap2.backend.RiskLevel;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldCoordinate;
+import mudmap2.backend.WorldFileReader.Exception.WorldFileInvalidTypeException;
+import mudmap2.backend.WorldFileReader.Exception.WorldFileReadError;
+import mudmap2.backend.WorldFileReader.WorldFile;
+import mudmap2.backend.WorldFileReader.WorldFileProgressListener;
+import mudmap2.backend.WorldFileReader.WorldFileType;
+import mudmap2.backend.WorldFileReader.WorldSnapshot;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Binary world file reader and writer.
+ *
+ * Layout: magic, version major and minor (one byte each), then sections of
+ * a type byte, an int payload length and the payload. The header section
+ * comes first, the end section last. Unknown sections are skipped.
+ *
+ * Since version 1.1 places and paths are stored in sections per layer and the
+ * string table has an index, so single layers can be read when they are
+ * accessed. The file is kept in memory until all layers are read, it isn't
+ * mapped, so that it can be replaced meanwhile
+ * @author neop
+ */
+public class WorldFileBinary extends WorldFile {
+
+    static final byte[] MAGIC = {'M', 'M', '2', 'B'};
+    static final int VERSION_MAJOR = 1;
+    static final int VERSION_MINOR = 1;
+
+    // section types
+    static final int SECTION_END = 0;
+    static final int SECTION_HEADER = 1;
+    static final int SECTION_STRINGS = 2;
+    static final int SECTION_AREAS = 3;
+    static final int SECTION_LAYERS = 4;
+    static final int SECTION_PLACES = 5; // one per layer
+    static final int SECTION_PATHS = 6; // version 1.0, replaced by layer paths
+    static final int SECTION_PREFERENCES = 7;
+    static final int SECTION_META = 8;
+    static final int SECTION_STRING_INDEX = 9;
+    static final int SECTION_LAYER_INDEX = 10;
+    static final int SECTION_LAYER_PATHS = 11; // one per layer
+
+    // number of strings per string index entry
+    static final int STRING_BLOCK = 64;
+
+    // optional place fields
+    static final int PLACE_AREA = 1;
+    static final int PLACE_RISK_LEVEL = 2;
+    static final int PLACE_LEVEL_MIN = 4;
+    static final int PLACE_LEVEL_MAX = 8;
+    static final int PLACE_CHILDREN = 16;
+    static final int PLACE_FLAGS = 32;
+    static final int PLACE_COMMENTS = 64;
+
+    // optional header colors
+    static final int HEADER_TILE_CENTER_COLOR = 1;
+    static final int HEADER_PATH_COLOR = 2;
+    static final int HEADER_PATH_COLOR_NSTD = 4;
+    static final int HEADER_HOME_LAYER = 8;
+
+    final Color defaultColor = new Color(0x808080);
+
+    boolean lazyLoading = true;
+
+    /**
+     * Constructor
+     * @param filename world filename with path
+     */
+    public WorldFileBinary(String filename) {
+        super(filename);
+    }
+
+    // --------- reading -------------------------------------------------------
+
+    /**
+     * Layers of binary files are read on access, so they can't be compressed
+     * @param compressed has to be false
+     */
+    @Override
+    public void setCompressed(boolean compressed) {
+        if(compressed) throw new UnsupportedOperationException("Binary world files can't be compressed");
+    }
+
+    /**
+     * Enables or disables lazy loading. If enabled, the file is kept in
+     * memory and the layers are filled when they are accessed the first time.
+     * Files written before version 1.1 are always read completely
+     * @param lazyLoading true to fill layers on first access
+     */
+    public void setLazyLoading(boolean lazyLoading) {
+        this.lazyLoading = lazyLoading;
+    }
+
+    /**
+     * Checks whether lazy loading is enabled
+     * @return true if layers are filled on first access
+     */
+    public boolean isLazyLoading() {
+        return lazyLoading;
+    }
+
+    /**
+     * Read world file
+     * @return new world object
+     * @throws Exception
+     * @throws WorldFileInvalidTypeException
+     * @throws WorldFileReadError
+     */
+    @Override
+    public World readFile() throws Exception {
+        // a mapped file couldn't be replaced on some systems while the
+        // mapping is alive, so the file is read into memory
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(Paths.get(filename)));
+        try {
+            return new SectionReader(data).read();
+        } catch(BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | JSONException ex){
+            throw new WorldFileReadError(filename, "corrupt world file", ex);
+        }
+    }
+
+    /**
+     * Checks magic and version of the file
+     * @param data file data, the position will be after the version
+     * @param confirm ask the user whether a newer file should be read
+     * @throws WorldFileInvalidTypeException
+     */
+    private void checkHeader(ByteBuffer data, boolean confirm) throws WorldFileInvalidTypeException {
+        byte[] magic = new byte[MAGIC.length];
+        if(data.remaining() < MAGIC.length + 2) throw new WorldFileInvalidTypeException(filename, "file too short", null);
+        data.get(magic);
+        if(!Arrays.equals(magic, MAGIC)){
+            throw new WorldFileInvalidTypeException(filename, "not a binary world file", null);
+        }
+        int major = data.get() & 0xff;
+        int minor = data.get() & 0xff;
+        if(major != VERSION_MAJOR){
+            // version major not equal: different file format
+            throw new WorldFileInvalidTypeException(filename, "invalid world file version", null);
+        }
+        if(minor > VERSION_MINOR && confirm){
+            // file was created by a newer MUD Map: might have unsupported features
+            if(GraphicsEnvironment.isHeadless()){
+                // nobody can confirm, eg. in batch mode
+                throw new WorldFileInvalidTypeException(filename, "world file version is greater than the reader version", null);
+            }
+            int ret = JOptionPane.showConfirmDialog(null,
+                    "World file version is greater than the reader version. "
+                    + "Please update MUD Map. Continuing might cause data loss.",
+                    "Loading world", JOptionPane.OK_CANCEL_OPTION);
+            if(ret == JOptionPane.CANCEL_OPTION)
+                throw new WorldFileInvalidTypeException(filename, "Could not read world file", null);
+        }
+    }
+
+    /**
+     * Reads an unsigned varint
+     * @param data source
+     * @return value
+     */
+    static int readVarint(ByteBuffer data){
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7){
+            byte b = data.get();
+            value |= (b & 0x7f) << shift;
+            if(b >= 0) return value;
+        }
+        throw new IllegalArgumentException("varint too long");
+    }
+
+    /**
+     * Reads a zig-zag encoded signed varint
+     * @param data source
+     * @return value
+     */
+    static int readSignedVarint(ByteBuffer data){
+        int value = readVarint(data);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads an UTF-8 string with varint length
+     * @param data source
+     * @return string
+     */
+    static String readString(ByteBuffer data){
+        int length = readVarint(data);
+        if(length > data.remaining()) throw new BufferUnderflowException();
+        String string;
+        if(data.hasArray()){
+            string = new String(data.array(), data.arrayOffset() + data.position(), length, StandardCharsets.UTF_8);
+            data.position(data.position() + length);
+        } else { // mapped file
+            byte[] bytes = new byte[length];
+            data.get(bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return string;
+    }
+
+    /**
+     * Reads the sections of a file and builds the world. The sections are
+     * indexed first and then read in the order of their dependencies. In lazy
+     * mode the places of a layer are read when the layer is accessed
+     */
+    private class SectionReader implements LayerLoader {
+        ByteBuffer data;
+        final HashMap<Integer, ArrayList<ByteBuffer>> sections = new HashMap<>();
+
+        World world;
+        PlaceGroup[] areas = new PlaceGroup[0];
+        final HashMap<Integer, Place> places = new HashMap<>();
+
+        // string table, decoded in blocks on first use
+        ByteBuffer stringData;
+        int[] stringBlockOffsets = new int[0];
+        String[][] stringBlocks = new String[0][];
+        int stringCount = 0;
+
+        // children and paths of places that are not read yet
+        final ArrayList<Place> childParents = new ArrayList<>();
+        int[] childIds = new int[16];
+        final ArrayList<String> pathExits = new ArrayList<>();
+        int[] pathPlaces = new int[16];
+
+        // lazy loading, by layer index
+        Layer[] layers = new Layer[0];
+        int[] layerCenterX = new int[0], layerCenterY = new int[0];
+        ByteBuffer[] layerPlaces, layerPaths;
+        int[][] layerNeighbors;
+        boolean[] layerRead;
+        int layersUnread = 0;
+        // sorted place ids of the layers that aren't read, on first use
+        int[][] layerPlaceIds;
+
+        SectionReader(ByteBuffer data){
+            this.data = data;
+        }
+
+        World read() throws WorldFileInvalidTypeException {
+            checkHeader(data, true);
+
+            // index sections
+            while(data.hasRemaining()){
+                int type = data.get() & 0xff;
+                int length = data.getInt();
+                if(type == SECTION_END) break;
+                if(length < 0 || length > data.remaining()) throw new IndexOutOfBoundsException("invalid section length");
+
+                ByteBuffer section = data.slice();
+                section.limit(length);
+                data.position(data.position() + length);
+
+                ArrayList<ByteBuffer> list = sections.get(type);
+                if(list == null) sections.put(type, list = new ArrayList<>());
+                list.add(section);
+            }
+
+            ByteBuffer header = getSection(SECTION_HEADER);
+            if(header == null) throw new WorldFileInvalidTypeException(filename, "world file header missing", null);
+
+            world = new World(readString(header));
+            world.setWorldFile(WorldFileBinary.this);
+            readHeader(header);
+
+            ByteBuffer section;
+            if((section = getSection(SECTION_STRINGS)) != null) readStrings(section, getSection(SECTION_STRING_INDEX));
+            if((section = getSection(SECTION_AREAS)) != null) readAreas(section);
+            if((section = getSection(SECTION_LAYERS)) != null) readLayers(section);
+
+            // files without layer index have to be read completely
+            ByteBuffer layerIndex = getSection(SECTION_LAYER_INDEX);
+            if(lazyLoading && layerIndex != null && !sections.containsKey(SECTION_PATHS)){
+                readLayerIndex(layerIndex);
+            } else {
+                for(ByteBuffer places: getSections(SECTION_PLACES)) readPlaces(places);
+                for(ByteBuffer paths: getSections(SECTION_LAYER_PATHS)){
+                    readVarint(paths); // layer index
+                    readPaths(paths);
+                }
+                if((section = getSection(SECTION_PATHS)) != null) readPaths(section);
+                connectPending();
+                // strings aren't needed anymore
+                stringData = null;
+                stringBlocks = new String[0][];
+            }
+
+            // world preferences (dialog settings etc.)
+            if((section = getSection(SECTION_PREFERENCES)) != null) world.setPreferences(new JSONObject(readString(section)));
+            // save meta data for WorldTab
+            if((section = getSection(SECTION_META)) != null) metaData = new JSONObject(readString(section));
+
+            return world;
+        }
+
+        private ByteBuffer getSection(int type){
+            ArrayList<ByteBuffer> list = sections.get(type);
+            return list == null ? null : list.get(0);
+        }
+
+        private ArrayList<ByteBuffer> getSections(int type){
+            ArrayList<ByteBuffer> list = sections.get(type);
+            return list == null ? new ArrayList<ByteBuffer>() : list;
+        }
+
+        private String getString(int index){
+            if(index < 0 || index >= stringCount) throw new IndexOutOfBoundsException("invalid string index");
+            int block = index / STRING_BLOCK;
+            if(stringBlocks[block] == null){
+                // decode the whole block on first use
+                String[] strings = new String[Math.min(STRING_BLOCK, stringCount - block * STRING_BLOCK)];
+                ByteBuffer blockData = stringData.duplicate();
+                blockData.position(stringBlockOffsets[block]);
+                for(int i = 0; i < strings.length; ++i){
+                    strings[i] = readString(blockData);
+                }
+                stringBlocks[block] = strings;
+            }
+            return stringBlocks[block][index % STRING_BLOCK];
+        }
+
+        private Color readColor(ByteBuffer data){
+            return new Color(readVarint(data));
+        }
+
+        private void readHeader(ByteBuffer data){
+            world.setShowPlaceID(World.ShowPlaceID.valueOf(readString(data)));
+
+            int fields = readVarint(data);
+            if((fields & HEADER_TILE_CENTER_COLOR) != 0) world.setTileCenterColor(readColor(data));
+            if((fields & HEADER_PATH_COLOR) != 0) world.setPathColorStd(readColor(data));
+            if((fields & HEADER_PATH_COLOR_NSTD) != 0) world.setPathColorNstd(readColor(data));
+
+            // pathColDefs
+            int count = readVarint(data);
+            for(int i = 0; i < count; ++i){
+                String path = readString(data);
+                world.setPathColor(path, readColor(data));
+            }
+
+            // home
+            int homeLayer = (fields & HEADER_HOME_LAYER) != 0 ? readVarint(data) : -1;
+            double homeX = data.getDouble();
+            double homeY = data.getDouble();
+            if(homeLayer >= 0) world.setHome(new WorldCoordinate(homeLayer, homeX, homeY));
+
+            // risk levels, replace existing risk levels
+            world.getRiskLevels().clear();
+            count = readVarint(data);
+            for(int i = 0; i < count; ++i){
+                int id = readSignedVarint(data);
+                String desc = readString(data);
+                world.setRiskLevel(new RiskLevel(id, desc, readColor(data)));
+            }
+        }
+
+        /**
+         * Reads the string table. Without index all strings are decoded
+         * @param data string table
+         * @param index offset of every STRING_BLOCK'th string or null
+         */
+        private void readStrings(ByteBuffer data, ByteBuffer index){
+            stringCount = readVarint(data);
+            int blocks = (stringCount + STRING_BLOCK - 1) / STRING_BLOCK;
+            stringBlocks = new String[blocks][];
+            stringData = data;
+
+            if(index != null && readVarint(index) == blocks){
+                stringBlockOffsets = new int[blocks];
+                for(int i = 0; i < blocks; ++i){
+                    stringBlockOffsets[i] = index.getInt();
+                }
+            } else {
+                for(int block = 0; block < blocks; ++block){
+                    String[] strings = stringBlocks[block] = new String[Math.min(STRING_BLOCK, stringCount - block * STRING_BLOCK)];
+                    for(int i = 0; i < strings.length; ++i){
+                        strings[i] = readString(data);
+                    }
+                }
+            }
+        }
+
+        private void readAreas(ByteBuffer data){
+            areas = new PlaceGroup[readVarint(data)];
+            for(int i = 0; i < areas.length; ++i){
+                String name = getString(readVarint(data));
+                areas[i] = new PlaceGroup(name, readColor(data));
+                world.addPlaceGroup(areas[i]);
+            }
+        }
+
+        private void readLayers(ByteBuffer data){
+            layers = new Layer[readVarint(data)];
+            layerCenterX = new int[layers.length];
+            layerCenterY = new int[layers.length];
+            for(int i = 0; i < layers.length; ++i){
+                Layer layer = layers[i] = new Layer(i, world);
+                // set quadtree center
+                layerCenterX[i] = readSignedVarint(data);
+                layerCenterY[i] = readSignedVarint(data);
+                layer.setQuadtree(layerCenterX[i], layerCenterY[i]);
+                int name = readVarint(data);
+                if(name > 0) layer.setName(getString(name - 1));
+                world.addLayer(layer);
+            }
+        }
+
+        /**
+         * Reads the layer index and sets this reader as loader of the
+         * layers. Places and paths are read when a layer gets accessed
+         * @param data layer index
+         */
+        private void readLayerIndex(ByteBuffer data){
+            // places of unread layers must not get their ids
+            Place.reserveId(readVarint(data));
+
+            int count = readVarint(data);
+            if(count != layers.length) throw new IllegalArgumentException("layer index doesn't match the layers");
+            layerNeighbors = new int[count][];
+            for(int i = 0; i < count; ++i){
+                int[] neighbors = layerNeighbors[i] = new int[readVarint(data)];
+                for(int n = 0; n < neighbors.length; ++n){
+                    neighbors[n] = readVarint(data);
+                }
+            }
+
+            layerPlaces = new ByteBuffer[count];
+            layerPaths = new ByteBuffer[count];
+            layerRead = new boolean[count];
+            layerPlaceIds = new int[count][];
+            for(ByteBuffer places: getSections(SECTION_PLACES)){
+                layerPlaces[readVarint(places.duplicate())] = places;
+            }
+            for(ByteBuffer paths: getSections(SECTION_LAYER_PATHS)){
+                int layer = readVarint(paths);
+                layerPaths[layer] = paths;
+            }
+
+            layersUnread = count;
+            for(Layer layer: layers) layer.setLoader(this);
+        }
+
+        /**
+         * Reads the places of a layer and of the layers that are connected to
+         * it, so all paths and children of the layer are complete
+         * @param layer accessed layer
+         */
+        @Override
+        public void load(Layer layer){
+            try {
+                int index = layer.getId();
+                readLayer(index);
+                for(int neighbor: layerNeighbors[index]){
+                    readLayer(neighbor);
+                }
+            } catch(RuntimeException ex){
+                Logger.getLogger(WorldFileBinary.class.getName()).log(Level.SEVERE,
+                        "Could not load map " + layer.getName() + " from " + filename, ex);
+            }
+        }
+
+        /**
+         * Reads the places and paths of a layer. The layer is only marked as
+         * loaded if it was accessed, otherwise its neighbors get read on
+         * access
+         * @param index layer index
+         */
+        private void readLayer(int index){
+            if(layerRead[index]) return;
+            layerRead[index] = true;
+
+            Layer layer = layers[index];
+            boolean accessed = layer.isLoaded();
+            layer.setLoader(null);
+            if(layerPlaces[index] != null) readPlaces(layerPlaces[index]);
+            if(layerPaths[index] != null) readPaths(layerPaths[index]);
+            if(!accessed) layer.setLoader(this);
+            connectPending();
+
+            // release the file data when everything is read
+            layerPlaces[index] = layerPaths[index] = null;
+            layerPlaceIds[index] = null;
+            if(--layersUnread == 0){
+                data = stringData = null;
+                stringBlocks = new String[0][];
+                sections.clear();
+            }
+        }
+
+        private void readPlaces(ByteBuffer data){
+            int layerId = readVarint(data);
+            Layer layer = world.getLayer(layerId);
+            if(layer == null){
+                layer = new Layer(layerId, world);
+                world.addLayer(layer);
+            }
+
+            int count = readVarint(data);
+            PlaceRecord record = new PlaceRecord();
+            for(int i = 0; i < count; ++i){
+                readRecord(data, record);
+                Place place = new Place(record.id, getString(record.name), record.x, record.y, layer);
+                places.put(record.id, place);
+
+                PlaceGroup area = getArea(record);
+                if(area != null) place.setPlaceGroup(area);
+                if(record.riskLevel != WorldSnapshot.NO_RISK_LEVEL) place.setRiskLevel(world.getRiskLevel(record.riskLevel));
+                if(record.levelMin != -1) place.setRecLevelMin(record.levelMin);
+                if(record.levelMax != -1) place.setRecLevelMax(record.levelMax);
+                for(int c = 0; c < record.childCount; ++c){
+                    if(childParents.size() == childIds.length){
+                        childIds = Arrays.copyOf(childIds, childIds.length * 2);
+                    }
+                    childIds[childParents.size()] = record.children[c];
+                    childParents.add(place);
+                }
+                for(int f = 0; f < record.flagCount; ++f){
+                    place.setFlag(getString(record.flags[f]), true);
+                }
+                if(record.comments >= 0) place.setComments(getString(record.comments));
+
+                try {
+                    layer.put(place);
+                } catch(Layer.PlaceNotInsertedException ex){
+                    Logger.getLogger(WorldFileBinary.class.getName()).log(Level.WARNING,
+                            "Could not insert place " + record.id, ex);
+                }
+            }
+        }
+
+        /**
+         * Reads the next place of a places section, strings are read as their
+         * index in the string table
+         * @param data places section
+         * @param record record of the previous place, gets the next place
+         */
+        private void readRecord(ByteBuffer data, PlaceRecord record){
+            record.id = readVarint(data);
+            record.name = readVarint(data);
+            // coordinates are stored as difference to the previous place
+            record.x += readSignedVarint(data);
+            record.y += readSignedVarint(data);
+            int fields = readVarint(data);
+
+            record.area = (fields & PLACE_AREA) != 0 ? readVarint(data) : -1;
+            record.riskLevel = (fields & PLACE_RISK_LEVEL) != 0 ? readSignedVarint(data) : WorldSnapshot.NO_RISK_LEVEL;
+            record.levelMin = (fields & PLACE_LEVEL_MIN) != 0 ? readVarint(data) : -1;
+            record.levelMax = (fields & PLACE_LEVEL_MAX) != 0 ? readVarint(data) : -1;
+            record.childCount = (fields & PLACE_CHILDREN) != 0 ? readVarint(data) : 0;
+            if(record.children.length < record.childCount) record.children = new int[record.childCount];
+            for(int c = 0; c < record.childCount; ++c){
+                record.children[c] = readVarint(data);
+            }
+            record.flagCount = (fields & PLACE_FLAGS) != 0 ? readVarint(data) : 0;
+            if(record.flags.length < record.flagCount) record.flags = new int[record.flagCount];
+            for(int f = 0; f < record.flagCount; ++f){
+                record.flags[f] = readVarint(data);
+            }
+            record.comments = (fields & PLACE_COMMENTS) != 0 ? readVarint(data) : -1;
+        }
+
+        /**
+         * Gets the area of a place record, areas that were removed from the
+         * world aren't set
+         * @param record place record
+         * @return area or null
+         */
+        private PlaceGroup getArea(PlaceRecord record){
+            if(record.area < 0) return null;
+            PlaceGroup area = areas[record.area];
+            return world.getPlaceGroups().contains(area) ? area : null;
+        }
+
+        /**
+         * Gets the sorted place ids of a layer that isn't read
+         * @param index layer index
+         * @return place ids
+         */
+        private int[] getPlaceIds(int index){
+            if(layerPlaceIds[index] == null){
+                int[] ids = new int[0];
+                if(layerPlaces[index] != null){
+                    ByteBuffer data = layerPlaces[index].duplicate();
+                    readVarint(data); // layer id
+                    ids = new int[readVarint(data)];
+                    PlaceRecord record = new PlaceRecord();
+                    for(int i = 0; i < ids.length; ++i){
+                        readRecord(data, record);
+                        ids[i] = record.id;
+                    }
+                    Arrays.sort(ids);
+                }
+                layerPlaceIds[index] = ids;
+            }
+            return layerPlaceIds[index];
+        }
+
+        @Override
+        public boolean containsPlace(Layer layer, int id){
+            int index = layer.getId();
+            return !layerRead[index] && Arrays.binarySearch(getPlaceIds(index), id) >= 0;
+        }
+
+        /**
+         * Reads the places of a layer that isn't read and the connections
+         * to them that are waiting for the layer to be read
+         * @param layer layer
+         * @return places, paths and child connections
+         */
+        @Override
+        public LayerData read(Layer layer){
+            int index = layer.getId();
+            LayerData ret = new LayerData(layerCenterX[index], layerCenterY[index]);
+            // the places are in the layer
+            if(layerRead[index]) return ret;
+
+            if(layerPlaces[index] != null){
+                ByteBuffer data = layerPlaces[index].duplicate();
+                readVarint(data); // layer id
+                int count = readVarint(data);
+                PlaceRecord record = new PlaceRecord();
+                for(int i = 0; i < count; ++i){
+                    readRecord(data, record);
+                    PlaceData place = new PlaceData();
+                    place.id = record.id;
+                    place.name = getString(record.name);
+                    place.x = record.x;
+                    place.y = record.y;
+                    place.area = getArea(record);
+                    place.riskLevel = record.riskLevel != WorldSnapshot.NO_RISK_LEVEL ? world.getRiskLevel(record.riskLevel) : null;
+                    place.levelMin = record.levelMin;
+                    place.levelMax = record.levelMax;
+                    if(record.childCount > 0) place.children = Arrays.copyOf(record.children, record.childCount);
+                    if(record.flagCount > 0){
+                        place.flags = new String[record.flagCount];
+                        for(int f = 0; f < record.flagCount; ++f) place.flags[f] = getString(record.flags[f]);
+                    }
+                    if(record.comments >= 0){
+                        String comments = getString(record.comments);
+                        place.comments = comments.isEmpty() ? null : comments;
+                    }
+                    ret.places.add(place);
+                }
+            }
+            if(layerPaths[index] != null){
+                // the section starts after its layer index
+                ByteBuffer data = layerPaths[index].duplicate();
+                int count = readVarint(data);
+                for(int i = 0; i < 2 * count; ++i){
+                    ret.pathPlaces.add(readVarint(data));
+                    ret.pathExits.add(getString(readVarint(data)));
+                }
+            }
+
+            // connections of read places to this layer, place ids are unique
+            int[] ids = getPlaceIds(index);
+            for(int i = 0; i < childParents.size(); ++i){
+                if(Arrays.binarySearch(ids, childIds[i]) >= 0){
+                    ret.children.add(childParents.get(i).getId());
+                    ret.children.add(childIds[i]);
+                }
+            }
+            for(int i = 0; i < pathExits.size(); i += 2){
+                int missing = places.containsKey(pathPlaces[i]) ? pathPlaces[i + 1] : pathPlaces[i];
+                if(Arrays.binarySearch(ids, missing) >= 0){
+                    for(int p = 0; p < 2; ++p){
+                        ret.pathPlaces.add(pathPlaces[i + p]);
+                        ret.pathExits.add(pathExits.get(i + p));
+                    }
+                }
+            }
+            return ret;
+        }
+
+        private void readPaths(ByteBuffer data){
+            int count = readVarint(data);
+            for(int i = 0; i < count; ++i){
+                if(pathExits.size() + 2 > pathPlaces.length){
+                    pathPlaces = Arrays.copyOf(pathPlaces, pathPlaces.length * 2);
+                }
+                for(int p = 0; p < 2; ++p){
+                    pathPlaces[pathExits.size()] = readVarint(data);
+                    pathExits.add(getString(readVarint(data)));
+                }
+            }
+        }
+
+        /**
+         * Connects the children and paths of which both places are read,
+         * the others are kept for later
+         */
+        private void connectPending(){
+            int kept = 0;
+            for(int i = 0; i < childParents.size(); ++i){
+                Place child = places.get(childIds[i]);
+                if(child != null){
+                    childParents.get(i).connectChild(child);
+                } else {
+                    childIds[kept] = childIds[i];
+                    childParents.set(kept++, childParents.get(i));
+                }
+            }
+            childParents.subList(kept, childParents.size()).clear();
+
+            kept = 0;
+            for(int i = 0; i < pathExits.size(); i += 2){
+                Place pl0 = places.get(pathPlaces[i]);
+                Place pl1 = places.get(pathPlaces[i + 1]);
+                if(pl0 != null && pl1 != null){
+                    pl0.connectPath(new Path(pl0, pathExits.get(i), pl1, pathExits.get(i + 1)));
+                } else {
+                    for(int p = 0; p < 2; ++p, ++kept){
+                        pathPlaces[kept] = pathPlaces[i + p];
+                        pathExits.set(kept, pathExits.get(i + p));
+                    }
+                }
+            }
+            pathExits.subList(kept, pathExits.size()).clear();
+        }
+    }
+
+    /**
+     * Fields of a place in a places section, strings are stored as their
+     * index in the string table
+     */
+    private static class PlaceRecord {
+        int id, name, x, y;
+        int area, riskLevel, levelMin, levelMax, comments;
+        int childCount, flagCount;
+        int[] children = new int[4], flags = new int[4];
+    }
+
+    // --------- writing -------------------------------------------------------
+
+    /**
+     * Write world to file
+     * @param world
+     * @throws java.io.IOException
+     */
+    @Override
+    public void writeFile(World world) throws IOException {
+        writeSnapshot(createSnapshot(world), null);
+    }
+
+    /**
+     * Writes a snapshot to a temporary file that replaces the world file
+     * when it was written completely
+     * @param snapshot world snapshot
+     * @param listener progress listener or null
+     * @throws IOException
+     */
+    @Override
+    public void writeSnapshot(WorldSnapshot snapshot, WorldFileProgressListener listener) throws IOException {
+        File temp = createTempFile();
+        boolean written = false;
+        try {
+            try(OutputStream stream = new BufferedOutputStream(Files.newOutputStream(temp.toPath()))){
+                writeWorld(snapshot, stream, listener);
+            }
+            replaceFile(temp);
+            written = true;
+        } finally {
+            if(!written) temp.delete();
+        }
+    }
+
+    /**
+     * Growable byte array for section payloads
+     */
+    static class SectionWriter {
+        byte[] buffer = new byte[4096];
+        int size = 0;
+
+        void reset(){
+            size = 0;
+        }
+
+        private void ensureCapacity(int additional){
+            if(size + additional > buffer.length){
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+            }
+        }
+
+        void writeByte(int value){
+            ensureCapacity(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeInt(int value){
+            ensureCapacity(4);
+            buffer[size++] = (byte) (value >>> 24);
+            buffer[size++] = (byte) (value >>> 16);
+            buffer[size++] = (byte) (value >>> 8);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeDouble(double value){
+            long bits = Double.doubleToLongBits(value);
+            writeInt((int) (bits >>> 32));
+            writeInt((int) bits);
+        }
+
+        /**
+         * Writes an unsigned varint, 7 bits per byte
+         * @param value value, negative values take five bytes
+         */
+        void writeVarint(int value){
+            ensureCapacity(5);
+            while((value & ~0x7f) != 0){
+                buffer[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        /**
+         * Writes a zig-zag encoded signed varint, small negative values
+         * take few bytes
+         * @param value value
+         */
+        void writeSignedVarint(int value){
+            writeVarint((value << 1) ^ (value >> 31));
+        }
+
+        void write(byte[] bytes, int offset, int length){
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        void writeString(String string){
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void writeColor(Color color){
+            writeVarint(color.getRGB() & 0xffffff);
+        }
+
+        /**
+         * Writes the payload as section
+         * @param type section type
+         * @param stream target
+         * @throws IOException
+         */
+        void writeSection(int type, OutputStream stream) throws IOException {
+            stream.write(type);
+            stream.write(size >>> 24);
+            stream.write(size >>> 16);
+            stream.write(size >>> 8);
+            stream.write(size);
+            stream.write(buffer, 0, size);
+            reset();
+        }
+    }
+
+    /**
+     * String table of the writer
+     */
+    static class StringTable {
+        final HashMap<String, Integer> indices = new HashMap<>();
+        final ArrayList<String> strings = new ArrayList<>();
+
+        int add(String string){
+            Integer index = indices.get(string);
+            if(index == null){
+                index = strings.size();
+                indices.put(string, index);
+                strings.add(string);
+            }
+            return index;
+        }
+
+        int get(String string){
+            return indices.get(string);
+        }
+    }
+
+    /**
+     * Writes a world snapshot
+     * @param snapshot world snapshot
+     * @param stream target
+     * @param listener progress listener or null
+     * @throws IOException
+     */
+    void writeWorld(WorldSnapshot snapshot, OutputStream stream, WorldFileProgressListener listener) throws IOException {
+        SectionWriter section = new SectionWriter();
+
+        stream.write(MAGIC);
+        stream.write(VERSION_MAJOR);
+        stream.write(VERSION_MINOR);
+
+        // header
+        section.writeString(snapshot.name);
+        section.writeString(snapshot.showPlaceID.name());
+        Integer homeLayer = snapshot.layerIndices.get(snapshot.home.getLayer());
+        int fields = (snapshot.tileCenterColor != null ? HEADER_TILE_CENTER_COLOR : 0)
+                | (snapshot.pathColorStd != null ? HEADER_PATH_COLOR : 0)
+                | (snapshot.pathColorNstd != null ? HEADER_PATH_COLOR_NSTD : 0)
+                | (homeLayer != null ? HEADER_HOME_LAYER : 0);
+        section.writeVarint(fields);
+        if(snapshot.tileCenterColor != null) section.writeColor(snapshot.tileCenterColor);
+        if(snapshot.pathColorStd != null) section.writeColor(snapshot.pathColorStd);
+        if(snapshot.pathColorNstd != null) section.writeColor(snapshot.pathColorNstd);
+
+        int count = 0;
+        for(Color color: snapshot.pathColors.values()){
+            if(color != null) ++count;
+        }
+        section.writeVarint(count);
+        for(Map.Entry<String, Color> pathCol: snapshot.pathColors.entrySet()){
+            if(pathCol.getValue() != null){
+                section.writeString(pathCol.getKey());
+                section.writeColor(pathCol.getValue());
+            }
+        }
+
+        if(homeLayer != null) section.writeVarint(homeLayer);
+        section.writeDouble(snapshot.home.getX());
+        section.writeDouble(snapshot.home.getY());
+
+        section.writeVarint(snapshot.riskLevelIds.length);
+        for(int i = 0; i < snapshot.riskLevelIds.length; ++i){
+            section.writeSignedVarint(snapshot.riskLevelIds[i]);
+            section.writeString(snapshot.riskLevelDescriptions[i]);
+            section.writeColor(snapshot.riskLevelColors[i] != null ? snapshot.riskLevelColors[i] : defaultColor);
+        }
+        section.writeSection(SECTION_HEADER, stream);
+
+        // string table
+        StringTable strings = new StringTable();
+        for(String name: snapshot.areaNames) strings.add(name);
+        for(String name: snapshot.layerNames) if(name != null) strings.add(name);
+        for(int i = 0; i < snapshot.placeCount; ++i){
+            strings.add(snapshot.placeNames[i]);
+            if(snapshot.placeFlags[i] != null){
+                for(String flag: snapshot.placeFlags[i]) strings.add(flag);
+            }
+            if(snapshot.placeComments[i] != null) strings.add(snapshot.placeComments[i]);
+        }
+        for(String exit: snapshot.pathExits) strings.add(exit);
+
+        // remember the offset of every STRING_BLOCK'th string for the index
+        int[] stringBlockOffsets = new int[(strings.strings.size() + STRING_BLOCK - 1) / STRING_BLOCK];
+        section.writeVarint(strings.strings.size());
+        for(int i = 0; i < strings.strings.size(); ++i){
+            if(i % STRING_BLOCK == 0) stringBlockOffsets[i / STRING_BLOCK] = section.size;
+            section.writeString(strings.strings.get(i));
+        }
+        section.writeSection(SECTION_STRINGS, stream);
+
+        section.writeVarint(stringBlockOffsets.length);
+        for(int offset: stringBlockOffsets) section.writeInt(offset);
+        section.writeSection(SECTION_STRING_INDEX, stream);
+
+        // areas
+        section.writeVarint(snapshot.areaNames.length);
+        for(int i = 0; i < snapshot.areaNames.length; ++i){
+            section.writeVarint(strings.get(snapshot.areaNames[i]));
+            section.writeColor(snapshot.areaColors[i] != null ? snapshot.areaColors[i] : defaultColor);
+        }
+        section.writeSection(SECTION_AREAS, stream);
+
+        // layers, the index is the new layer id
+        section.writeVarint(snapshot.layerIds.length);
+        for(int i = 0; i < snapshot.layerIds.length; ++i){
+            section.writeSignedVarint(snapshot.layerCenterX[i]);
+            section.writeSignedVarint(snapshot.layerCenterY[i]);
+            section.writeVarint(snapshot.layerNames[i] != null ? strings.get(snapshot.layerNames[i]) + 1 : 0);
+        }
+        section.writeSection(SECTION_LAYERS, stream);
+
+        writeLayerIndex(snapshot, section);
+        section.writeSection(SECTION_LAYER_INDEX, stream);
+
+        // places, one section per layer
+        int total = snapshot.placeCount + snapshot.pathCount;
+        int first = 0;
+        while(first < snapshot.placeCount){
+            int layer = snapshot.placeLayers[first];
+            int end = first;
+            while(end < snapshot.placeCount && snapshot.placeLayers[end] == layer) ++end;
+
+            section.writeVarint(layer);
+            section.writeVarint(end - first);
+            int x = 0, y = 0;
+            for(int i = first; i < end; ++i){
+                writePlace(snapshot, i, x, y, strings, section);
+                x = snapshot.placeX[i];
+                y = snapshot.placeY[i];
+            }
+            section.writeSection(SECTION_PLACES, stream);
+
+            first = end;
+            if(listener != null) listener.progressChanged((int) (100L * end / total));
+        }
+
+        // paths, one section per layer of their first place
+        first = 0;
+        while(first < snapshot.pathCount){
+            int layer = snapshot.pathLayers[2 * first];
+            int end = first;
+            while(end < snapshot.pathCount && snapshot.pathLayers[2 * end] == layer) ++end;
+
+            section.writeVarint(layer);
+            section.writeVarint(end - first);
+            for(int i = 2 * first; i < 2 * end; ++i){
+                section.writeVarint(snapshot.pathPlaces[i]);
+                section.writeVarint(strings.get(snapshot.pathExits[i]));
+            }
+            section.writeSection(SECTION_LAYER_PATHS, stream);
+
+            first = end;
+            if(listener != null) listener.progressChanged((int) (100L * (snapshot.placeCount + end) / total));
+        }
+
+        // world preferences (dialog settings etc.)
+        if(snapshot.preferences != null){
+            section.writeString(snapshot.preferences.toString());
+            section.writeSection(SECTION_PREFERENCES, stream);
+        }
+
+        // meta data from WorldTab
+        if(snapshot.getMeta() != null){
+            section.writeString(snapshot.getMeta().toString());
+            section.writeSection(SECTION_META, stream);
+        }
+
+        section.writeSection(SECTION_END, stream);
+        if(listener != null) listener.progressChanged(100);
+    }
+
+    /**
+     * Writes the layer index: the greatest place id and the layers that are
+     * connected to each layer by paths or children
+     * @param snapshot world snapshot
+     * @param section target
+     */
+    private void writeLayerIndex(WorldSnapshot snapshot, SectionWriter section){
+        int maxId = 0;
+        for(int i = 0; i < snapshot.placeCount; ++i){
+            maxId = Math.max(maxId, snapshot.placeIds[i]);
+        }
+
+        ArrayList<TreeSet<Integer>> neighbors = new ArrayList<>();
+        for(int i = 0; i < snapshot.layerIds.length; ++i){
+            neighbors.add(new TreeSet<Integer>());
+        }
+        for(int i = 0; i < 2 * snapshot.pathCount; i += 2){
+            int layer0 = snapshot.pathLayers[i];
+            int layer1 = snapshot.pathLayers[i + 1];
+            if(layer0 != layer1 && layer0 >= 0 && layer1 >= 0){
+                neighbors.get(layer0).add(layer1);
+                neighbors.get(layer1).add(layer0);
+            }
+        }
+        HashMap<Integer, Integer> placeLayers = null;
+        for(int i = 0; i < snapshot.placeCount; ++i){
+            if(snapshot.placeChildren[i] == null) continue;
+            if(placeLayers == null){
+                placeLayers = new HashMap<>();
+                for(int p = 0; p < snapshot.placeCount; ++p){
+                    placeLayers.put(snapshot.placeIds[p], snapshot.placeLayers[p]);
+                }
+            }
+            for(int child: snapshot.placeChildren[i]){
+                Integer layer = placeLayers.get(child);
+                if(layer != null && layer != snapshot.placeLayers[i]){
+                    neighbors.get(snapshot.placeLayers[i]).add(layer);
+                    neighbors.get(layer).add(snapshot.placeLayers[i]);
+                }
+            }
+        }
+
+        section.writeVarint(maxId);
+        section.writeVarint(neighbors.size());
+        for(TreeSet<Integer> layers: neighbors){
+            section.writeVarint(layers.size());
+            for(int layer: layers) section.writeVarint(layer);
+        }
+    }
+
+    /**
+     * Writes a place
+     * @param snapshot world snapshot
+     * @param i place index
+     * @param x x coordinate of the previous place
+     * @param y y coordinate of the previous place
+     * @param strings string table
+     * @param section target
+     */
+    private void writePlace(WorldSnapshot snapshot, int i, int x, int y, StringTable strings, SectionWriter section){
+        int fields = (snapshot.placeAreas[i] >= 0 ? PLACE_AREA : 0)
+                | (snapshot.placeRiskLevels[i] != WorldSnapshot.NO_RISK_LEVEL ? PLACE_RISK_LEVEL : 0)
+                | (snapshot.placeLevelMin[i] > -1 ? PLACE_LEVEL_MIN : 0)
+                | (snapshot.placeLevelMax[i] > -1 ? PLACE_LEVEL_MAX : 0)
+                | (snapshot.placeChildren[i] != null ? PLACE_CHILDREN : 0)
+                | (snapshot.placeFlags[i] != null ? PLACE_FLAGS : 0)
+                | (snapshot.placeComments[i] != null ? PLACE_COMMENTS : 0);
+
+        section.writeVarint(snapshot.placeIds[i]);
+        section.writeVarint(strings.get(snapshot.placeNames[i]));
+        section.writeSignedVarint(snapshot.placeX[i] - x);
+        section.writeSignedVarint(snapshot.placeY[i] - y);
+        section.writeVarint(fields);
+
+        if((fields & PLACE_AREA) != 0) section.writeVarint(snapshot.placeAreas[i]);
+        if((fields & PLACE_RISK_LEVEL) != 0) section.writeSignedVarint(snapshot.placeRiskLevels[i]);
+        if((fields & PLACE_LEVEL_MIN) != 0) section.writeVarint(snapshot.placeLevelMin[i]);
+        if((fields & PLACE_LEVEL_MAX) != 0) section.writeVarint(snapshot.placeLevelMax[i]);
+        if((fields & PLACE_CHILDREN) != 0){
+            section.writeVarint(snapshot.placeChildren[i].length);
+            for(int child: snapshot.placeChildren[i]) section.writeVarint(child);
+        }
+        if((fields & PLACE_FLAGS) != 0){
+            section.writeVarint(snapshot.placeFlags[i].length);
+            for(String flag: snapshot.placeFlags[i]) section.writeVarint(strings.get(flag));
+        }
+        if((fields & PLACE_COMMENTS) != 0) section.writeVarint(strings.get(snapshot.placeComments[i]));
+    }
+
+    // --------- other ---------------------------------------------------------
+
+    /**
+     * Create a copy of the referenced file.
+     * The new filename will be originalfilename + .bak
+     * existing files will be overwritten
+     * @throws FileNotFoundException
+     */
+    @Override
+    public void backup() throws FileNotFoundException {
+        try {
+            File fileold = new File(filename);
+            File filenew = new File(filename + ".bak");
+
+            if(fileold.canRead()){
+                if(filenew.exists()) filenew.delete();
+                Files.copy(fileold.toPath(), filenew.toPath());
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(WorldFileBinary.class.getName()).log(Level.SEVERE, "Could not create world backup file", ex);
+        }
+    }
+
+    /**
+     * Read world name from the header section
+     * @return world name or null
+     * @throws Exception
+     */
+    @Override
+    public String readWorldName() throws Exception {
+        if(!canRead()) return null;
+
+        try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)){
+            ByteBuffer start = ByteBuffer.allocate(MAGIC.length + 2 + 5);
+            while(start.hasRemaining() && channel.read(start) >= 0){}
+            start.flip();
+            checkHeader(start, false);
+            if(start.remaining() < 5 || (start.get() & 0xff) != SECTION_HEADER) return null;
+
+            int length = start.getInt();
+            if(length < 0 || length > channel.size()) return null;
+            ByteBuffer header = ByteBuffer.allocate(length);
+            while(header.hasRemaining() && channel.read(header) >= 0){}
+            header.flip();
+            return readString(header);
+        } catch(BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex){
+            return "";
+        }
+    }
+
+    /**
+     * Check whether the file starts with the magic number
+     * @return
+     */
+    @Override
+    public Boolean canRead() {
+        File file = new File(filename);
+        if(!file.isFile()) return false;
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+            while(magic.hasRemaining() && channel.read(magic) >= 0){}
+            return Arrays.equals(magic.array(), MAGIC);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Return this WorldFileType of reader
+     * @return
+     */
+    @Override
+    public WorldFileType getWorldFileType() {
+        return WorldFileType.BINARY;
+    }
+
+}
@@ -21,7 +21,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import mudmap2.backend.World;
 import mudmap2.backend.WorldFileReader.WorldFile;
+import mudmap2.backend.WorldFileReader.WorldFileProgressListener;
 import mudmap2.backend.WorldFileReader.WorldFileType;
+import mudmap2.backend.WorldFileReader.WorldSnapshot;
+import org.json.JSONObject;
 import static mudmap2.backend.WorldFileReader.WorldFileType.INVALID;
 import static mudmap2.backend.WorldFileReader.WorldFileType.UNKNOWN;
 
@@ -43,7 +46,14 @@ public class WorldFileDefault extends WorldFile {
             File file = new File(filename);
             if(file.exists()){
                 WorldFileJSON wfj = new WorldFileJSON(filename);
-                if(wfj.canRead()){
+                if(new WorldFileBinary(filename).canRead()){
+                    // detected by the magic number
+                    worldFileType = WorldFileType.BINARY;
+                } else if(new WorldFileSharded(filename).canRead()){
+                    // JSON manifest that starts with the format name
+                    worldFileType = WorldFileType.SHARDED;
+                } else if(wfj.canRead()){
+                    // plain or gzip compressed, detected by the magic number
                     worldFileType = WorldFileType.JSON;
                 } else {
                     worldFileType = WorldFileType.INVALID;
@@ -56,6 +66,12 @@ public class WorldFileDefault extends WorldFile {
         }
 
         switch(worldFileType){
+            case BINARY:
+                worldFile = new WorldFileBinary(filename);
+                break;
+            case SHARDED:
+                worldFile = new WorldFileSharded(filename);
+                break;
             default:
             case INVALID:
             case UNKNOWN: // set default world file type here:
@@ -73,11 +89,57 @@ public class WorldFileDefault extends WorldFile {
         return worldFile;
     }
 
+    @Override
+    public void setMetaGetter(WorldMetaJSON meta) {
+        super.setMetaGetter(meta);
+        worldFile.setMetaGetter(meta);
+    }
+
+    @Override
+    public JSONObject getMetaData() {
+        // the journal has newer meta data than the world file
+        if(journal != null && journal.getMetaData() != null) return journal.getMetaData();
+        return worldFile.getMetaData();
+    }
+
+    @Override
+    public void setCompressed(boolean compressed) {
+        super.setCompressed(compressed);
+        worldFile.setCompressed(compressed);
+    }
+
+    @Override
+    public boolean isCompressed() {
+        return worldFile.isCompressed();
+    }
+
+    @Override
+    public void setCompressionLevel(int level) {
+        super.setCompressionLevel(level);
+        worldFile.setCompressionLevel(level);
+    }
+
+    @Override
+    public int getCompressionLevel() {
+        return worldFile.getCompressionLevel();
+    }
+
     @Override
     public WorldFileType getWorldFileType() {
         return worldFileType;
     }
 
+    @Override
+    public boolean isJournaled() {
+        return worldFile.isJournaled();
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        worldFile.invalidate();
+    }
+
     /**
      * read world
      * @return
@@ -90,13 +152,21 @@ public class WorldFileDefault extends WorldFile {
 
         if(worldFile != null){
             world = worldFile.readFile();
-            world.setWorldFile(this);
         }
 
         if(world == null){
             throw new Exception("Could not read world from file '" + filename);
         }
 
+        world.setWorldFile(this);
+        // apply the changes that were saved after the world file was written,
+        // old world files get converted on the first save instead
+        if(worldFile.isJournaled() && worldFile.getWorldFileType() != WorldFileType.MUDMAP1){
+            journal = new WorldJournal(this);
+            journal.replay(world);
+            journal.attach(world);
+        }
+
         return world;
     }
 
@@ -107,7 +177,8 @@ public class WorldFileDefault extends WorldFile {
      */
     @Override
     public String readWorldName() throws Exception {
-        if(worldFile != null && worldFile.canRead()){
+        // the type was detected by the constructor
+        if(worldFile != null && canRead()){
             return worldFile.readWorldName();
         }
         return "";
@@ -122,6 +193,9 @@ public class WorldFileDefault extends WorldFile {
     public void writeFile(World world) throws IOException {
         if(worldFile.getWorldFileType() == WorldFileType.MUDMAP1){
             worldFile = new WorldFileJSON(filename);
+            worldFile.setMetaGetter(metaWriter);
+            worldFile.setCompressed(compressed);
+            worldFile.setCompressionLevel(compressionLevel);
             world.setWorldFile(this);
         }
 
@@ -129,6 +203,35 @@ public class WorldFileDefault extends WorldFile {
         worldFileType = worldFile.getWorldFileType();
     }
 
+    /**
+     * Create snapshot with the selected world file
+     * @param world
+     * @return snapshot
+     */
+    @Override
+    public WorldSnapshot createSnapshot(World world) {
+        if(worldFile.getWorldFileType() == WorldFileType.MUDMAP1){
+            worldFile = new WorldFileJSON(filename);
+            worldFile.setMetaGetter(metaWriter);
+            worldFile.setCompressed(compressed);
+            worldFile.setCompressionLevel(compressionLevel);
+            world.setWorldFile(this);
+        }
+        return worldFile.createSnapshot(world);
+    }
+
+    /**
+     * write world snapshot
+     * @param snapshot
+     * @param listener
+     * @throws java.io.IOException
+     */
+    @Override
+    public void writeSnapshot(WorldSnapshot snapshot, WorldFileProgressListener listener) throws IOException {
+        worldFile.writeSnapshot(snapshot, listener);
+        worldFileType = worldFile.getWorldFileType();
+    }
+
     /**
      * Backup world file
      * @throws java.io.FileNotFoundException
@@ -17,20 +17,30 @@
 package mudmap2.backend.WorldFileReader.current;
 
 import java.awt.Color;
-import java.io.BufferedReader;
+import java.awt.GraphicsEnvironment;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.ZipException;
 import javax.swing.JOptionPane;
 import mudmap2.backend.PlaceGroup;
 import mudmap2.backend.Layer;
@@ -40,9 +50,12 @@ import mudmap2.backend.RiskLevel;
 import mudmap2.backend.World;
 import mudmap2.backend.WorldCoordinate;
 import mudmap2.backend.WorldFileReader.WorldFile;
+import mudmap2.backend.WorldFileReader.WorldFileProgressListener;
+import mudmap2.backend.WorldFileReader.WorldSnapshot;
 import mudmap2.backend.WorldFileReader.Exception.WorldFileInvalidTypeException;
 import mudmap2.backend.WorldFileReader.Exception.WorldFileReadError;
 import mudmap2.backend.WorldFileReader.WorldFileType;
+import mudmap2.backend.WorldFileReader.current.JSONPullParser.Token;
 import org.json.*;
 
 /**
@@ -54,12 +67,18 @@ public class WorldFileJSON extends WorldFile {
     static Integer versionMajor = 2;
     static Integer versionMinor = 0;
 
-    JSONObject fileRoot = null;
+    // bytes at the start of a file that are searched for the header, older
+    // files might have the world name anywhere
+    static final int HEADER_LIMIT = 64 * 1024;
 
-    HashMap<Integer, Integer> layerIDs;
+    // top level keys of world files
+    static final HashSet<String> WORLD_KEYS = new HashSet<>(Arrays.asList(
+            "mudmapVer", "fileVer", "worldName", "placeCount", "layerCount",
+            "pathCount", "showPlaceID", "tileCenterCol", "pathCol",
+            "pathColNonCardinal", "pathColDefs", "home", "riskLevels", "areas",
+            "layers", "places", "paths", "preferences", "meta"));
 
-    JSONObject metaData;
-    WorldMetaJSON metaWriter;
+    HashMap<Integer, Integer> layerIDs;
 
     final Color defaultColor = new Color(0x808080);
 
@@ -71,26 +90,14 @@ public class WorldFileJSON extends WorldFile {
         super(filename);
     }
 
-    public void setMetaGetter(WorldMetaJSON meta) {
-        this.metaWriter = meta;
-    }
-
-    public JSONObject getMetaData() {
-        return metaData;
-    }
-
     /**
-     * Read file to JSONObject
-     * @return JSONObject
+     * Opens a pull parser on the world file, compressed files are
+     * decompressed while they are parsed
+     * @return parser
      * @throws IOException
      */
-    private JSONObject getJSONRoot() throws IOException{
-        if(fileRoot == null && (new File(filename)).isFile()){
-            byte[] bytes = Files.readAllBytes(Paths.get(filename));
-            String lines = new String(bytes);
-            fileRoot = new JSONObject(lines);
-        }
-        return fileRoot;
+    private JSONPullParser openParser() throws IOException {
+        return new JSONPullParser(new InputStreamReader(openInputStream(), Charset.defaultCharset()));
     }
 
     public Integer translateLayerID(Integer layer){
@@ -99,7 +106,8 @@ public class WorldFileJSON extends WorldFile {
     }
 
     /**
-     * Read world file
+     * Read world file. The file is parsed as a stream, places and paths are
+     * created directly from the tokens
      * @return new world object or null if file is invalid
      * @throws Exception
      * @throws WorldFileInvalidTypeException
@@ -107,304 +115,585 @@ public class WorldFileJSON extends WorldFile {
      */
     @Override
     public World readFile() throws Exception {
-        World world = null;
-
-        try{
-            JSONObject root = getJSONRoot();
-
-            // check file version
-            if(root.has("fileVer")){
-                String[] fileVer = root.getString("fileVer").split("\\.");
-                if(versionMajor != Integer.parseInt(fileVer[0])){
-                    // version major not equal: different file format
-                    throw new WorldFileInvalidTypeException(filename,
-                            "invalid world file version", null);
-                }
-                if(versionMinor < Integer.parseInt(fileVer[1])){
-                    // file was created by a newer MUD Map: might have unsupported features
-                    int ret = JOptionPane.showConfirmDialog(null,
-                            "World file version is greater than the reader version. "
-                            + "Please update MUD Map. Continuing might cause data loss.",
-                            "Loading world", JOptionPane.OK_CANCEL_OPTION);
-                    if(ret == JOptionPane.CANCEL_OPTION)
-                        throw new WorldFileInvalidTypeException(filename, "Could not read world file", null);
-                }
-            } else {
-                throw new WorldFileInvalidTypeException(filename,
-                        "could not read world file version", null);
+        // keep the compression when the world is saved
+        compressed = isGzipFile(new File(filename));
+        try(JSONPullParser parser = openParser()){
+            return new StreamReader(parser).read();
+        } catch(JSONException | ZipException | EOFException ex) {
+            System.out.println(ex.getLocalizedMessage());
+            throw new WorldFileReadError(filename, ex.getLocalizedMessage(), ex);
+        }
+    }
+
+    /**
+     * Checks the file version
+     * @param version version string
+     * @throws WorldFileInvalidTypeException
+     */
+    private void checkFileVersion(String version) throws WorldFileInvalidTypeException {
+        String[] fileVer = version.split("\\.");
+        if(versionMajor != Integer.parseInt(fileVer[0])){
+            // version major not equal: different file format
+            throw new WorldFileInvalidTypeException(filename,
+                    "invalid world file version", null);
+        }
+        if(versionMinor < Integer.parseInt(fileVer[1])){
+            // file was created by a newer MUD Map: might have unsupported features
+            if(GraphicsEnvironment.isHeadless()){
+                // nobody can confirm, eg. in batch mode
+                throw new WorldFileInvalidTypeException(filename, "world file version is greater than the reader version", null);
             }
+            int ret = JOptionPane.showConfirmDialog(null,
+                    "World file version is greater than the reader version. "
+                    + "Please update MUD Map. Continuing might cause data loss.",
+                    "Loading world", JOptionPane.OK_CANCEL_OPTION);
+            if(ret == JOptionPane.CANCEL_OPTION)
+                throw new WorldFileInvalidTypeException(filename, "Could not read world file", null);
+        }
+    }
 
-            // getPlace world name
-            String worldName = "";
-            if(root.has("worldName")) worldName = root.getString("worldName");
-            if(worldName.isEmpty()) {
-                Integer begin = worldName.lastIndexOf('/');
-                if(begin == -1) begin = worldName.lastIndexOf('\\');
-                begin += 1;
-                worldName = worldName.substring(begin);
+    /**
+     * List of place and int pairs, used for references that can't be
+     * resolved yet
+     */
+    private static class PlaceIntList {
+        Place[] places = new Place[16];
+        int[] values = new int[16];
+        int size = 0;
+
+        void add(Place place, int value){
+            if(size == places.length){
+                places = Arrays.copyOf(places, size * 2);
+                values = Arrays.copyOf(values, size * 2);
             }
+            places[size] = place;
+            values[size++] = value;
+        }
+    }
 
-            // create world root
-            world = new World(worldName);
-            world.setWorldFile(this);
+    /**
+     * Places and connections of a layer, the layers are filled in parallel
+     */
+    private static class LayerBuilder implements Callable<List<Place>> {
+        final Layer layer;
+        final ArrayList<Place> places = new ArrayList<>();
+        // indices of the pending paths and children within this layer
+        int[] paths = new int[16];
+        int pathCount = 0;
+        int[] children = new int[16];
+        int childCount = 0;
+
+        final StreamReader reader;
+
+        LayerBuilder(StreamReader reader, Layer layer){
+            this.reader = reader;
+            this.layer = layer;
+        }
 
-            // showPlaceID
-            if(root.has("showPlaceID")){
-                world.setShowPlaceID(World.ShowPlaceID.valueOf(root.getString("showPlaceID")));
+        void addPath(int index){
+            if(pathCount == paths.length) paths = Arrays.copyOf(paths, pathCount * 2);
+            paths[pathCount++] = index;
+        }
+
+        void addChild(int index){
+            if(childCount == children.length) children = Arrays.copyOf(children, childCount * 2);
+            children[childCount++] = index;
+        }
+
+        /**
+         * Connects the places while they aren't in the layer, so no world
+         * listeners are called, and inserts them afterwards
+         * @return places that couldn't be inserted
+         */
+        @Override
+        public List<Place> call() {
+            for(int i = 0; i < childCount; ++i){
+                reader.connectChild(children[i]);
+            }
+            for(int i = 0; i < pathCount; ++i){
+                reader.connectPath(paths[i]);
             }
+            return layer.putAll(places);
+        }
+    }
+
+    /**
+     * Builds a world from the tokens of a pull parser. The keys of the
+     * world file can be in any order, so references to areas, risk levels
+     * and places are kept until the end. The places are created on the
+     * parsing thread and added to their layers in parallel
+     */
+    private class StreamReader {
+        final JSONPullParser parser;
+        final World world;
+
+        String fileVer = null;
+        String worldName = "";
+
+        // null until the areas have been read
+        HashMap<Integer, PlaceGroup> areas = null;
+        boolean riskLevelsRead = false;
+
+        HashMap<Integer, Place> places = new HashMap<>();
+        HashMap<Integer, Layer> placeLayers = new HashMap<>();
+        final HashMap<Layer, LayerBuilder> layerBuilders = new HashMap<>();
+
+        // deferred references
+        final PlaceIntList pendingAreas = new PlaceIntList();
+        final PlaceIntList pendingRiskLevels = new PlaceIntList();
+        final PlaceIntList pendingChildren = new PlaceIntList();
+        // paths: place ids and exits
+        int[] pendingPathPlaces = new int[32];
+        String[] pendingPathExits = new String[32];
+        int pendingPathCount = 0;
+
+        // reused while reading a place
+        final ArrayList<String> flags = new ArrayList<>();
+        final StringBuilder comments = new StringBuilder();
+        final String separator;
+
+        StreamReader(JSONPullParser parser){
+            this.parser = parser;
+            world = new World(worldName);
+            world.setWorldFile(WorldFileJSON.this);
 
-            // tileCenterCol
-            if(root.has("tileCenterCol")){
-                world.setTileCenterColor(hexToCol(root.getString("tileCenterCol")));
+            String sep = System.getProperty("separator");
+            if(sep == null || sep.isEmpty()){
+                sep = "\r\n";
             }
+            separator = sep;
+        }
 
-            // pathCol
-            if(root.has("pathCol")){
-                world.setPathColorStd(hexToCol(root.getString("pathCol")));
+        World read() throws IOException, WorldFileInvalidTypeException, WorldFileReadError {
+            parser.next(Token.BEGIN_OBJECT);
+            while(parser.next() == Token.NAME){
+                String name = parser.getString();
+                parser.next();
+                switch(name){
+                    case "fileVer":
+                        // check as early as possible
+                        fileVer = parser.getString();
+                        checkFileVersion(fileVer);
+                        break;
+                    case "worldName":
+                        worldName = parser.getString();
+                        break;
+                    case "placeCount":
+                        // written before the places
+                        if(places.isEmpty()){
+                            int capacity = Math.max(16, (int) (parser.getInt() / 0.75f) + 1);
+                            places = new HashMap<>(capacity);
+                            placeLayers = new HashMap<>(capacity);
+                        }
+                        break;
+                    case "showPlaceID":
+                        world.setShowPlaceID(World.ShowPlaceID.valueOf(parser.getString()));
+                        break;
+                    case "tileCenterCol":
+                        world.setTileCenterColor(hexToCol(parser.getString()));
+                        break;
+                    case "pathCol":
+                        world.setPathColorStd(hexToCol(parser.getString()));
+                        break;
+                    case "pathColNonCardinal":
+                        world.setPathColorNstd(hexToCol(parser.getString()));
+                        break;
+                    case "pathColDefs":
+                        readPathColDefs();
+                        break;
+                    case "home":
+                        readHome();
+                        break;
+                    case "riskLevels":
+                        readRiskLevels();
+                        break;
+                    case "areas":
+                        readAreas();
+                        break;
+                    case "layers":
+                        readLayers();
+                        break;
+                    case "places":
+                        readPlaces();
+                        break;
+                    case "paths":
+                        readPaths();
+                        break;
+                    case "preferences":
+                        // world preferences (dialog settings etc.)
+                        world.setPreferences(parser.readObject());
+                        break;
+                    case "meta":
+                        // save meta data for WorldTab
+                        metaData = parser.readObject();
+                        break;
+                    default:
+                        parser.skipValue();
+                }
             }
+            parser.next(Token.END_DOCUMENT);
 
-            // pathColNonCardinal
-            if(root.has("pathColNonCardinal")){
-                world.setPathColorNstd(hexToCol(root.getString("pathColNonCardinal")));
+            if(fileVer == null){
+                throw new WorldFileInvalidTypeException(filename,
+                        "could not read world file version", null);
             }
 
-            // pathColDefs
-            if(root.has("pathColDefs")){
-                JSONArray pathColDefs = root.getJSONArray("pathColDefs");
-                Integer length = pathColDefs.length();
-                for(Integer i = 0; i < length; ++i){
-                    JSONObject pathColDef = pathColDefs.getJSONObject(i);
-                    if(pathColDef.has("path")
-                            && pathColDef.has("col")){
-                        world.setPathColor(pathColDef.getString("path"),
-                                hexToCol(pathColDef.getString("col")));
-                    }
+            buildLayers();
+            resolveReferences();
+            if(!worldName.isEmpty()) world.setName(worldName);
+            return world;
+        }
+
+        private void readPathColDefs() throws IOException {
+            expect(Token.BEGIN_ARRAY);
+            while(parser.next() != Token.END_ARRAY){
+                JSONObject pathColDef = parser.readObject();
+                if(pathColDef.has("path")
+                        && pathColDef.has("col")){
+                    world.setPathColor(pathColDef.getString("path"),
+                            hexToCol(pathColDef.getString("col")));
                 }
             }
+        }
+
+        private void readHome() throws IOException {
+            JSONObject home = parser.readObject();
+            if(home.has("l") && home.has("x") && home.has("y")){
+                Integer l = home.getInt("l");
+                Double x = home.getDouble("x");
+                Double y = home.getDouble("y");
+                world.setHome(new WorldCoordinate(l, x, y));
+            }
+        }
 
-            // home
-            if(root.has("home")){
-                JSONObject home = root.getJSONObject("home");
-                if(home.has("l") && home.has("x") && home.has("y")){
-                    Integer l = home.getInt("l");
-                    Double x = home.getDouble("x");
-                    Double y = home.getDouble("y");
-                    world.setHome(new WorldCoordinate(l, x, y));
+        private void readRiskLevels() throws IOException {
+            expect(Token.BEGIN_ARRAY);
+            // remove existing risk levels
+            world.getRiskLevels().clear();
+
+            while(parser.next() != Token.END_ARRAY){
+                JSONObject riskLevel = parser.readObject();
+                if(riskLevel.has("id")
+                        && riskLevel.has("desc")
+                        && riskLevel.has("col")){
+                    Integer id = riskLevel.getInt("id");
+                    String desc = riskLevel.getString("desc");
+                    Color col = hexToCol(riskLevel.getString("col"));
+                    world.setRiskLevel(new RiskLevel(id, desc, col));
                 }
             }
+            riskLevelsRead = true;
+        }
 
-            // riskLevels
-            if(root.has("riskLevels")){
-                // remove existing risk levels
-                world.getRiskLevels().clear();
-
-                JSONArray riskLevels = root.getJSONArray("riskLevels");
-                Integer length = riskLevels.length();
-                for(Integer i = 0; i < length; ++i){
-                    JSONObject riskLevel = riskLevels.getJSONObject(i);
-                    if(riskLevel.has("id")
-                            && riskLevel.has("desc")
-                            && riskLevel.has("col")){
-                        Integer id = riskLevel.getInt("id");
-                        String desc = riskLevel.getString("desc");
-                        Color col = hexToCol(riskLevel.getString("col"));
-                        world.setRiskLevel(new RiskLevel(id, desc, col));
-                    }
+        private void readAreas() throws IOException {
+            expect(Token.BEGIN_ARRAY);
+            areas = new HashMap<>();
+            while(parser.next() != Token.END_ARRAY){
+                JSONObject area = parser.readObject();
+                if(area.has("id")
+                        && area.has("name")
+                        && area.has("col")){
+                    Integer id = area.getInt("id");
+                    String name = area.getString("name");
+                    Color col = hexToCol(area.getString("col"));
+
+                    PlaceGroup a = new PlaceGroup(name, col);
+                    areas.put(id, a);
+                    world.addPlaceGroup(a);
                 }
             }
+        }
 
-            // areaArray
-            HashMap<Integer, PlaceGroup> areas = new HashMap<>();
-
-            if(root.has("areas")){
-                JSONArray areaArray = root.getJSONArray("areas");
-                Integer length = areaArray.length();
-                for(Integer i = 0; i < length; ++i){
-                    JSONObject area = areaArray.getJSONObject(i);
-                    if(area.has("id")
-                            && area.has("name")
-                            && area.has("col")){
-                        Integer id = area.getInt("id");
-                        String name = area.getString("name");
-                        Color col = hexToCol(area.getString("col"));
-
-                        PlaceGroup a = new PlaceGroup(name, col);
-                        areas.put(id, a);
-                        world.addPlaceGroup(a);
+        private void readLayers() throws IOException {
+            expect(Token.BEGIN_ARRAY);
+            while(parser.next() != Token.END_ARRAY){
+                JSONObject layer = parser.readObject();
+                if(layer.has("id")){
+                    Integer id = layer.getInt("id");
+                    // the layer might have been created by places before
+                    Layer l = world.getLayer(id);
+                    if(l == null) l = new Layer(id, world);
+
+                    if(layer.has("centerX") && layer.has("centerY")){
+                        // set quadtree center
+                        Integer centerX = layer.getInt("centerX");
+                        Integer centerY = layer.getInt("centerY");
+                        l.setQuadtree(centerX, centerY);
                     }
+                    if(layer.has("name")){
+                        // set layer name
+                        l.setName(layer.getString("name"));
+                    }
+                    world.addLayer(l);
                 }
             }
+        }
+
+        private void readPlaces() throws IOException {
+            expect(Token.BEGIN_ARRAY);
+            while(parser.next() != Token.END_ARRAY){
+                expect(Token.BEGIN_OBJECT);
+                readPlace();
+            }
+        }
 
-            // layers
-            if(root.has("layers")){
-                JSONArray layers = root.getJSONArray("layers");
-                Integer length = layers.length();
-                for(Integer i = 0; i < length; ++i){
-                    JSONObject layer = layers.getJSONObject(i);
-                    if(layer.has("id")){
-                        Integer id = layer.getInt("id");
-                        // create layer
-                        Layer l = new Layer(id, world);
-
-                        if(layer.has("centerX") && layer.has("centerY")){
-                            // set quadtree center
-                            Integer centerX = layer.getInt("centerX");
-                            Integer centerY = layer.getInt("centerY");
-                            l.setQuadtree(centerX, centerY);
+        /**
+         * Reads a place object, it's added to its layer after the file was read
+         * @throws IOException
+         */
+        private void readPlace() throws IOException {
+            Integer id = null, layerId = null, x = null, y = null;
+            String name = null;
+            int area = -1, risk = -1, lvlMin = -1, lvlMax = -1;
+            boolean hasArea = false, hasRisk = false, hasComments = false;
+            int childrenStart = pendingChildren.size;
+
+            flags.clear();
+            comments.setLength(0);
+
+            while(parser.next() == Token.NAME){
+                String key = parser.getString();
+                parser.next();
+                switch(key){
+                    case "id": id = parser.getInt(); break;
+                    case "n": name = parser.getString(); break;
+                    case "l": layerId = parser.getInt(); break;
+                    case "x": x = parser.getInt(); break;
+                    case "y": y = parser.getInt(); break;
+                    case "a":
+                        area = parser.getInt();
+                        hasArea = true;
+                        break;
+                    case "r":
+                        risk = parser.getInt();
+                        hasRisk = true;
+                        break;
+                    case "lvlMin": lvlMin = parser.getInt(); break;
+                    case "lvlMax": lvlMax = parser.getInt(); break;
+                    case "c":
+                        // children, connected after all places were read
+                        expect(Token.BEGIN_ARRAY);
+                        while(parser.next() != Token.END_ARRAY){
+                            pendingChildren.add(null, parser.getInt());
                         }
-                        if(layer.has("name")){
-                            // set layer name
-                            l.setName(layer.getString("name"));
+                        break;
+                    case "f":
+                        expect(Token.BEGIN_ARRAY);
+                        while(parser.next() != Token.END_ARRAY){
+                            flags.add(parser.getString());
                         }
-                        world.addLayer(l);
-                    }
+                        break;
+                    case "co":
+                        expect(Token.BEGIN_ARRAY);
+                        while(parser.next() != Token.END_ARRAY){
+                            if(hasComments) comments.append(separator);
+                            comments.append(parser.getString());
+                            hasComments = true;
+                        }
+                        break;
+                    default:
+                        parser.skipValue();
                 }
             }
 
-            // places
-            HashMap<Integer, Place> places = new HashMap<>();
-            HashMap<Place, HashSet<Integer>> childrenMapping = new HashMap<>();
-
-            if(root.has("places")){
-                JSONArray jPlaces = root.getJSONArray("places");
-                Integer length = jPlaces.length();
-                for(Integer i = 0; i < length; ++i){
-                    JSONObject jPlace = jPlaces.getJSONObject(i);
-                    if(jPlace.has("id")
-                            && jPlace.has("n")
-                            && jPlace.has("l")
-                            && jPlace.has("x")
-                            && jPlace.has("y")){
-                        Integer id = jPlace.getInt("id");
-                        String name = jPlace.getString("n");
-                        Integer layerId = jPlace.getInt("l");
-                        Integer x = jPlace.getInt("x");
-                        Integer y = jPlace.getInt("y");
-
-                        // get layer
-                        Layer layer = world.getLayer(layerId);
-                        if(layer == null){
-                            layer = new Layer(layerId, world);
-                            world.addLayer(layer);
-                        }
+            if(id == null || name == null || layerId == null || x == null || y == null){
+                // incomplete place, drop its children
+                pendingChildren.size = childrenStart;
+                return;
+            }
 
-                        // create place
-                        Place place = new Place(id, name, x, y, layer);
+            // get layer
+            Layer layer = world.getLayer(layerId);
+            if(layer == null){
+                layer = new Layer(layerId, world);
+                world.addLayer(layer);
+            }
 
-                        places.put(id, place);
+            // create place, without a layer until the layers are built
+            Place place = new Place(id, name, x, y, null);
+            places.put(id, place);
+            placeLayers.put(id, layer);
+            getLayerBuilder(layer).places.add(place);
 
-                        // area
-                        if(jPlace.has("a")){
-                            Integer area = jPlace.getInt("a");
-                            place.setPlaceGroup(areas.get(area));
-                        }
-                        // risk level
-                        if(jPlace.has("r")){
-                            Integer risk = jPlace.getInt("r");
-                            place.setRiskLevel(world.getRiskLevel(risk));
-                        }
-                        // rec level
-                        if(jPlace.has("lvlMin")){
-                            Integer lvlMin = jPlace.getInt("lvlMin");
-                            place.setRecLevelMin(lvlMin);
-                        }
-                        if(jPlace.has("lvlMax")){
-                            Integer lvlMax = jPlace.getInt("lvlMax");
-                            place.setRecLevelMin(lvlMax);
-                        }
+            for(int i = childrenStart; i < pendingChildren.size; ++i){
+                pendingChildren.places[i] = place;
+            }
 
-                        // children
-                        if(jPlace.has("c")){
-                            JSONArray children = jPlace.getJSONArray("c");
-                            HashSet<Integer> set = new HashSet<>();
-                            childrenMapping.put(place, set);
+            // area
+            if(hasArea){
+                if(areas != null) place.setPlaceGroup(areas.get(area));
+                else pendingAreas.add(place, area);
+            }
+            // risk level
+            if(hasRisk){
+                if(riskLevelsRead) place.setRiskLevel(world.getRiskLevel(risk));
+                else pendingRiskLevels.add(place, risk);
+            }
+            // rec level
+            if(lvlMin > -1) place.setRecLevelMin(lvlMin);
+            if(lvlMax > -1) place.setRecLevelMax(lvlMax);
 
-                            Integer lc = children.length();
-                            for(Integer c = 0; c < lc; ++c){
-                                set.add(children.getInt(c));
-                            }
-                        }
+            // flags
+            for(String flag: flags){
+                place.setFlag(flag, true);
+            }
+
+            // comments
+            if(hasComments) place.setComments(comments.toString());
+        }
 
-                        // flags
-                        if(jPlace.has("f")){
-                            JSONArray flags = jPlace.getJSONArray("f");
-                            Integer lf = flags.length();
-                            for(Integer f = 0; f < lf; ++f){
-                                String flagname = flags.getString(f);
-                                place.setFlag(flagname, true);
-                            }
+        private LayerBuilder getLayerBuilder(Layer layer){
+            LayerBuilder builder = layerBuilders.get(layer);
+            if(builder == null){
+                layerBuilders.put(layer, builder = new LayerBuilder(this, layer));
+            }
+            return builder;
+        }
+
+        private void readPaths() throws IOException {
+            expect(Token.BEGIN_ARRAY);
+            int[] ids = new int[2];
+            String[] exits = new String[2];
+            while(parser.next() != Token.END_ARRAY){
+                expect(Token.BEGIN_ARRAY);
+
+                int count = 0;
+                while(parser.next() != Token.END_ARRAY){
+                    expect(Token.BEGIN_OBJECT);
+                    boolean hasId = false;
+                    int id = 0;
+                    String exit = null;
+                    while(parser.next() == Token.NAME){
+                        String key = parser.getString();
+                        parser.next();
+                        if(key.equals("p")){
+                            id = parser.getInt();
+                            hasId = true;
+                        } else if(key.equals("e")){
+                            exit = parser.getString();
+                        } else {
+                            parser.skipValue();
                         }
+                    }
+                    if(count < 2 && hasId && exit != null){
+                        ids[count] = id;
+                        exits[count] = exit;
+                    } else {
+                        // mark path as invalid
+                        count = 2;
+                    }
+                    ++count;
+                }
 
-                        // comments
-                        if(jPlace.has("co")){
-                            JSONArray comments = jPlace.getJSONArray("co");
-                            StringBuilder builder = new StringBuilder();
+                if(count == 2){
+                    addPendingPath(ids[0], exits[0], ids[1], exits[1]);
+                }
+            }
+        }
 
-                            String separator = System.getProperty("separator");
-                            if(separator == null || separator.isEmpty()){
-                                separator = "\r\n";
-                            }
+        private void addPendingPath(int p0, String e0, int p1, String e1){
+            if(pendingPathCount * 2 + 2 > pendingPathPlaces.length){
+                pendingPathPlaces = Arrays.copyOf(pendingPathPlaces, pendingPathPlaces.length * 2);
+                pendingPathExits = Arrays.copyOf(pendingPathExits, pendingPathExits.length * 2);
+            }
+            int i = pendingPathCount++ * 2;
+            pendingPathPlaces[i] = p0;
+            pendingPathExits[i] = e0;
+            pendingPathPlaces[i + 1] = p1;
+            pendingPathExits[i + 1] = e1;
+        }
 
-                            for(int c = 0; c < comments.length(); ++c){
-                                if(c > 0) {
-                                    builder.append(separator);
-                                }
-                                builder.append(comments.getString(c));
-                            }
+        /**
+         * Connects a pending path
+         * @param index path index
+         */
+        void connectPath(int index){
+            int i = index * 2;
+            Place pl0 = places.get(pendingPathPlaces[i]);
+            Place pl1 = places.get(pendingPathPlaces[i + 1]);
+            if(pl0 != null && pl1 != null){
+                pl0.connectPath(new Path(pl0, pendingPathExits[i], pl1, pendingPathExits[i + 1]));
+            }
+        }
 
-                            place.setComments(builder.toString());
-                        }
+        /**
+         * Connects a pending child
+         * @param index child index
+         */
+        void connectChild(int index){
+            Place parent = pendingChildren.places[index];
+            Place child = places.get(pendingChildren.values[index]);
+            // the parent might not have been inserted
+            if(child != null && places.get(parent.getId()) == parent) parent.connectChild(child);
+        }
 
-                        layer.put(place);
-                    }
+        /**
+         * Adds the places to their layers. Each layer connects the paths and
+         * children between its own places in parallel to the other layers,
+         * the connections between layers are added afterwards
+         * @throws IOException
+         */
+        private void buildLayers() throws IOException, WorldFileReadError {
+            PlaceIntList crossChildren = new PlaceIntList();
+            for(int i = 0; i < pendingChildren.size; ++i){
+                Place parent = pendingChildren.places[i];
+                Layer layer = placeLayers.get(parent.getId());
+                if(layer == placeLayers.get(pendingChildren.values[i])){
+                    layerBuilders.get(layer).addChild(i);
+                } else {
+                    crossChildren.add(null, i);
                 }
             }
-
-            // connect children
-            for(Entry<Place, HashSet<Integer>> entry: childrenMapping.entrySet()){
-                Place place = entry.getKey();
-                for(Integer id: entry.getValue()){
-                    place.connectChild(places.get(id));
+            PlaceIntList crossPaths = new PlaceIntList();
+            for(int i = 0; i < pendingPathCount; ++i){
+                Layer layer = placeLayers.get(pendingPathPlaces[i * 2]);
+                if(layer != null && layer == placeLayers.get(pendingPathPlaces[i * 2 + 1])){
+                    layerBuilders.get(layer).addPath(i);
+                } else {
+                    crossPaths.add(null, i);
                 }
             }
 
-            // paths
-            if(root.has("paths")){
-                JSONArray paths = root.getJSONArray("paths");
-                Integer length = paths.length();
-                for(Integer i = 0; i < length; ++i){
-                    JSONArray path = paths.getJSONArray(i);
-                    if(path.length() == 2){
-                        JSONObject p0 = path.getJSONObject(0);
-                        JSONObject p1 = path.getJSONObject(1);
-                        if(p0.has("p") && p0.has("e")
-                                && p1.has("p") && p1.has("e")){
-                            Place pl0 = places.get(p0.getInt("p"));
-                            Place pl1 = places.get(p1.getInt("p"));
-                            if(pl0 != null && pl1 != null){
-                                Path p = new Path(pl0, p0.getString("e"),
-                                        pl1, p1.getString("e"));
-                                pl0.connectPath(p);
-                            }
-                        }
+            try {
+                for(Future<List<Place>> future: pool.invokeAll(layerBuilders.values())){
+                    for(Place place: future.get()){
+                        Logger.getLogger(WorldFileJSON.class.getName()).log(Level.WARNING,
+                                "Could not insert place " + place.getId());
+                        place.removeConnections();
+                        places.remove(place.getId());
                     }
                 }
+            } catch(InterruptedException ex){
+                throw new InterruptedIOException(ex.getMessage());
+            } catch(ExecutionException ex){
+                throw new WorldFileReadError(filename, ex.getCause().getMessage(), ex.getCause());
             }
 
-            // world preferences (dialog settings etc.)
-            if(root.has("preferences")){
-                world.setPreferences(root.getJSONObject("preferences"));
+            for(int i = 0; i < crossChildren.size; ++i){
+                connectChild(crossChildren.values[i]);
             }
+            for(int i = 0; i < crossPaths.size; ++i){
+                connectPath(crossPaths.values[i]);
+            }
+        }
 
-            // save meta data for WorldTab
-            if(root.has("meta")) metaData = root.getJSONObject("meta");
-
-        } catch(JSONException ex) {
-            System.out.println(ex.getLocalizedMessage());
-            throw new WorldFileReadError(filename, ex.getLocalizedMessage(), ex);
+        /**
+         * Resolves the references that were read before their targets
+         */
+        private void resolveReferences(){
+            for(int i = 0; i < pendingAreas.size; ++i){
+                pendingAreas.places[i].setPlaceGroup(areas != null ? areas.get(pendingAreas.values[i]) : null);
+            }
+            for(int i = 0; i < pendingRiskLevels.size; ++i){
+                pendingRiskLevels.places[i].setRiskLevel(world.getRiskLevel(pendingRiskLevels.values[i]));
+            }
         }
 
-        return world;
+        private void expect(Token expected){
+            if(parser.getToken() != expected){
+                throw new JSONException("Expected " + expected + " but found " + parser.getToken());
+            }
+        }
     }
 
     /**
@@ -444,216 +733,254 @@ public class WorldFileJSON extends WorldFile {
      */
     @Override
     public void writeFile(World world) throws IOException {
-        JSONObject root = new JSONObject();
+        writeSnapshot(createSnapshot(world), null);
+    }
+
+    /**
+     * Creates a snapshot of the world, including the meta data of the
+     * meta data getter
+     * @param world world
+     * @return snapshot
+     */
+    @Override
+    public WorldSnapshot createSnapshot(World world) {
+        WorldSnapshot snapshot = super.createSnapshot(world);
+        layerIDs = new HashMap<>(snapshot.layerIndices);
+        return snapshot;
+    }
+
+    /**
+     * Writes a snapshot to a temporary file that replaces the world file
+     * when it was written completely
+     * @param snapshot world snapshot
+     * @param listener progress listener or null
+     * @throws IOException
+     */
+    @Override
+    public void writeSnapshot(WorldSnapshot snapshot, WorldFileProgressListener listener) throws IOException {
+        File temp = createTempFile();
+        boolean written = false;
+        try {
+            try(JSONStreamWriter writer = new JSONStreamWriter(
+                    new OutputStreamWriter(openOutputStream(temp), Charset.defaultCharset()))){
+                writeWorld(snapshot, writer, listener);
+            }
+            replaceFile(temp);
+            written = true;
+        } finally {
+            if(!written) temp.delete();
+        }
+    }
+
+    /**
+     * Writes a world snapshot. The file is written as a stream in the order
+     * header, layers, places, areas, paths, so no JSON tree of the world
+     * has to be built
+     * @param snapshot world snapshot
+     * @param writer target
+     * @param listener progress listener or null
+     * @throws IOException
+     */
+    void writeWorld(WorldSnapshot snapshot, JSONStreamWriter writer, WorldFileProgressListener listener) throws IOException {
+        writer.beginObject();
 
         // metaWriter data
         // mudmap version
         String mudmapVer = getClass().getPackage().getImplementationVersion();
-        if(mudmapVer != null)
-            root.put("mudmapVer", getClass().getPackage().getImplementationVersion());
-        else
-            root.put("mudmapVer", "dev");
+        writer.name("mudmapVer").value(mudmapVer != null ? mudmapVer : "dev");
 
         // file version
-        root.put("fileVer", versionMajor + "." + versionMinor);
+        writer.name("fileVer").value(versionMajor + "." + versionMinor);
 
         // world name
-        root.put("worldName", world.getName());
+        writer.name("worldName").value(snapshot.name);
 
-        root.put("showPlaceID", world.getShowPlaceId());
+        // sizes, the header ends before the first non-scalar value
+        writer.name("placeCount").value(snapshot.placeCount);
+        writer.name("layerCount").value(snapshot.layerIds.length);
+        writer.name("pathCount").value(snapshot.pathCount);
+
+        writer.name("showPlaceID").value(snapshot.showPlaceID.name());
 
         // tile center color
-        if(world.getTileCenterColor() != null){
-            root.put("tileCenterCol", colToHex(world.getTileCenterColor()));
+        if(snapshot.tileCenterColor != null){
+            writer.name("tileCenterCol").value(colToHex(snapshot.tileCenterColor));
         }
         // cardinal and non cardinal path color
-        if(world.getPathColorStd() != null){
-            root.put("pathCol", colToHex(world.getPathColorStd()));
+        if(snapshot.pathColorStd != null){
+            writer.name("pathCol").value(colToHex(snapshot.pathColorStd));
         }
-        if(world.getPathColorNstd() != null){
-            root.put("pathColNonCardinal", colToHex(world.getPathColorNstd()));
+        if(snapshot.pathColorNstd != null){
+            writer.name("pathColNonCardinal").value(colToHex(snapshot.pathColorNstd));
         }
         // other path colors
-        JSONArray pathColorsArray = new JSONArray();
-        root.put("pathColDefs", pathColorsArray);
-        for(Map.Entry<String, Color> pathCol: world.getPathColors().entrySet()){
+        writer.name("pathColDefs").beginArray();
+        for(Map.Entry<String, Color> pathCol: snapshot.pathColors.entrySet()){
             if(pathCol.getValue() != null){
-                JSONObject pathColObj = new JSONObject();
-                pathColObj.put("path", pathCol.getKey());
-                pathColObj.put("col", colToHex(pathCol.getValue()));
-                pathColorsArray.put(pathColObj);
+                writer.beginObject();
+                writer.name("path").value(pathCol.getKey());
+                writer.name("col").value(colToHex(pathCol.getValue()));
+                writer.endObject();
             }
         }
+        writer.endArray();
 
         // risk level colors
-        JSONArray riskLevelColors = new JSONArray();
-        root.put("riskLevels", riskLevelColors);
-        for(RiskLevel rlc: world.getRiskLevels()){
-            JSONObject rlo = new JSONObject();
-            rlo.put("id", rlc.getId());
-            rlo.put("desc", rlc.getDescription());
-            rlo.put("col", colToHex(rlc.getColor()));
-            riskLevelColors.put(rlo);
-        }
-
-        // areaArray
-        // create IDs for areaArray
-        HashMap<PlaceGroup, Integer> areaIDs = new HashMap<>();
-        Integer cnt = 0; // incremental id
-        for(PlaceGroup a: world.getPlaceGroups()){
-            Boolean inUse = false;
-            // removePlace unused
-            for(Layer layer: world.getLayers()){
-                for(Place place: layer.getPlaces()){
-                    if(place.getPlaceGroup() == a){
-                        inUse = true;
-                        break;
-                    }
-                }
-            }
-            if(inUse) areaIDs.put(a, ++cnt);
+        writer.name("riskLevels").beginArray();
+        for(int i = 0; i < snapshot.riskLevelIds.length; ++i){
+            writer.beginObject();
+            writer.name("id").value(snapshot.riskLevelIds[i]);
+            writer.name("desc").value(snapshot.riskLevelDescriptions[i]);
+            writer.name("col").value(colToHex(snapshot.riskLevelColors[i]));
+            writer.endObject();
         }
-
-        // add areaArray
-        JSONArray areas = new JSONArray();
-        root.put("areas", areas);
-        for(PlaceGroup area: world.getPlaceGroups()){
-            JSONObject areaObj = new JSONObject();
-            areaObj.put("id", areaIDs.get(area));
-            areaObj.put("name", area.getName());
-            areaObj.put("col", colToHex(area.getColor()));
-            areas.put(areaObj);
+        writer.endArray();
+
+        // areas that are in use, the id is the index + 1
+        writer.name("areas").beginArray();
+        for(int i = 0; i < snapshot.areaNames.length; ++i){
+            writer.beginObject();
+            writer.name("id").value(i + 1);
+            writer.name("name").value(snapshot.areaNames[i]);
+            writer.name("col").value(colToHex(snapshot.areaColors[i]));
+            writer.endObject();
+        }
+        writer.endArray();
+
+        // layers (for quadtree optimization), the index is the new layer id
+        writer.name("layers").beginArray();
+        for(int i = 0; i < snapshot.layerIds.length; ++i){
+            writer.beginObject();
+            writer.name("id").value(i);
+            writer.name("centerX").value(snapshot.layerCenterX[i]);
+            writer.name("centerY").value(snapshot.layerCenterY[i]);
+            if(snapshot.layerNames[i] != null) writer.name("name").value(snapshot.layerNames[i]);
+            writer.endObject();
         }
+        writer.endArray();
 
-        // helper to assign new layer ids
-        Integer nextLayerID = 0;
-        layerIDs = new HashMap<>();
+        int total = snapshot.placeCount + snapshot.pathCount;
+        int progress = -1;
 
-        // layers (for quadtree optimization
-        JSONArray layers = new JSONArray();
-        root.put("layers", layers);
-        for(Layer layer: world.getLayers()){
-            if(!layer.getPlaces().isEmpty()){
-                JSONObject layerObj = new JSONObject();
+        // places
+        writer.name("places").beginArray();
+        for(int i = 0; i < snapshot.placeCount; ++i){
+            writePlace(snapshot, i, writer);
+            progress = updateProgress(listener, i, total, progress);
+        }
+        writer.endArray();
 
-                // add layer to id map
-                Integer layerID = nextLayerID++;
-                layerIDs.put(layer.getId(), layerID);
+        // paths
+        writer.name("paths").beginArray();
+        for(int i = 0; i < snapshot.pathCount; ++i){
+            writer.beginArray();
+            writer.beginObject();
+            writer.name("p").value(snapshot.pathPlaces[2 * i]);
+            writer.name("e").value(snapshot.pathExits[2 * i]);
+            writer.endObject();
+            writer.beginObject();
+            writer.name("p").value(snapshot.pathPlaces[2 * i + 1]);
+            writer.name("e").value(snapshot.pathExits[2 * i + 1]);
+            writer.endObject();
+            writer.endArray();
+            progress = updateProgress(listener, snapshot.placeCount + i, total, progress);
+        }
+        writer.endArray();
 
-                layerObj.put("id", layerID);
-                layerObj.put("centerX", layer.getCenterX());
-                layerObj.put("centerY", layer.getCenterY());
-                if(layer.hasName()) layerObj.put("name", layer.getName());
+        // home position
+        WorldCoordinate home = snapshot.home;
+        writer.name("home").beginObject();
+        Integer homeLayer = snapshot.layerIndices.get(home.getLayer());
+        if(homeLayer != null) writer.name("l").value(homeLayer);
+        writer.name("x").value(home.getX());
+        writer.name("y").value(home.getY());
+        writer.endObject();
 
-                layers.put(layerObj);
-            }
+        // world preferences (dialog settings etc.)
+        if(snapshot.preferences != null){
+            writer.name("preferences").value(snapshot.preferences);
         }
 
-        // places
-        JSONArray places = new JSONArray();
-        root.put("places", places);
-        for(Layer layer: world.getLayers()){
-            for(Place place: layer.getPlaces()){
-                JSONObject placeObj = new JSONObject();
-
-                placeObj.put("id", place.getId());
-                placeObj.put("n", place.getName());
-                placeObj.put("l", translateLayerID(layer.getId()));
-                placeObj.put("x", place.getX());
-                placeObj.put("y", place.getY());
-
-                if(place.getPlaceGroup() != null) placeObj.put("a", areaIDs.get(place.getPlaceGroup()));
-                if(place.getRiskLevel() != null) placeObj.put("r", place.getRiskLevel().getId());
-                if(place.getRecLevelMin() > -1) placeObj.put("lvlMin", place.getRecLevelMin());
-                if(place.getRecLevelMax() > -1) placeObj.put("lvlMax", place.getRecLevelMax());
-
-                // child places
-                if(!place.getChildren().isEmpty()){
-                    JSONArray children = new JSONArray();
-                    placeObj.put("c", children);
-                    for(Place child: place.getChildren()){
-                        children.put(child.getId());
-                    }
-                }
-
-                // parent places
-                if(!place.getParents().isEmpty()){
-                    JSONArray parents = new JSONArray();
-                    placeObj.put("p", parents);
-                    for(Place parent: place.getParents()){
-                        parents.put(parent.getId());
-                    }
-                }
+        // add metaWriter data from WorldTab
+        if(snapshot.getMeta() != null){
+            writer.name("meta").value(snapshot.getMeta());
+        }
 
-                // flags
-                if(!place.getFlags().isEmpty()){
-                    JSONArray flags = new JSONArray();
-                    placeObj.put("f", flags);
-                    for(Map.Entry<String, Boolean> flag: place.getFlags().entrySet()){
-                        if(flag.getValue()) flags.put(flag.getKey());
-                    }
-                }
+        writer.endObject();
+        if(listener != null && progress != 100) listener.progressChanged(100);
+    }
 
-                // comments
-                if(place.getComments() != null && !place.getComments().isEmpty()){
-                    JSONArray comments = new JSONArray();
-                    comments.put(place.getComments());
-                    placeObj.put("co", comments);
-                }
+    /**
+     * Calls the progress listener if the percentage has changed
+     * @param listener listener or null
+     * @param done number of written elements - 1
+     * @param total number of elements
+     * @param progress last reported progress
+     * @return current progress
+     */
+    private int updateProgress(WorldFileProgressListener listener, int done, int total, int progress){
+        if(listener != null){
+            int percent = (int) (100L * (done + 1) / total);
+            if(percent != progress) listener.progressChanged(percent);
+            return percent;
+        }
+        return progress;
+    }
 
-                places.put(placeObj);
+    /**
+     * Writes a place object
+     * @param snapshot world snapshot
+     * @param i place index
+     * @param writer target
+     * @throws IOException
+     */
+    private void writePlace(WorldSnapshot snapshot, int i, JSONStreamWriter writer) throws IOException {
+        writer.beginObject();
+
+        writer.name("id").value(snapshot.placeIds[i]);
+        writer.name("n").value(snapshot.placeNames[i]);
+        writer.name("l").value(snapshot.placeLayers[i]);
+        writer.name("x").value(snapshot.placeX[i]);
+        writer.name("y").value(snapshot.placeY[i]);
+
+        if(snapshot.placeAreas[i] >= 0) writer.name("a").value(snapshot.placeAreas[i] + 1);
+        if(snapshot.placeRiskLevels[i] != WorldSnapshot.NO_RISK_LEVEL) writer.name("r").value(snapshot.placeRiskLevels[i]);
+        if(snapshot.placeLevelMin[i] > -1) writer.name("lvlMin").value(snapshot.placeLevelMin[i]);
+        if(snapshot.placeLevelMax[i] > -1) writer.name("lvlMax").value(snapshot.placeLevelMax[i]);
+
+        // child places
+        if(snapshot.placeChildren[i] != null){
+            writer.name("c").beginArray();
+            for(int child: snapshot.placeChildren[i]){
+                writer.value(child);
             }
+            writer.endArray();
         }
 
-        // paths
-        JSONArray pathsArray = new JSONArray();
-        root.put("paths", pathsArray);
-        HashSet<Path> paths = new HashSet<>(); // paths that have already been added
-        for(Layer layer: world.getLayers()){
-            for(Place place: layer.getPlaces()){
-                for(Path path: place.getPaths()){
-                    if(!paths.contains(path)){
-                        JSONArray pathObj = new JSONArray();
-
-                        JSONObject p1 = new JSONObject();
-                        p1.put("p", path.getPlaces()[0].getId());
-                        p1.put("e", path.getExit(path.getPlaces()[0]));
-                        pathObj.put(p1);
-
-                        JSONObject p2 = new JSONObject();
-                        p2.put("p", path.getPlaces()[1].getId());
-                        p2.put("e", path.getExit(path.getPlaces()[1]));
-                        pathObj.put(p2);
-
-                        pathsArray.put(pathObj);
-                        paths.add(path);
-                    }
-                }
+        // parent places
+        if(snapshot.placeParents[i] != null){
+            writer.name("p").beginArray();
+            for(int parent: snapshot.placeParents[i]){
+                writer.value(parent);
             }
+            writer.endArray();
         }
 
-        // home position
-        WorldCoordinate home = world.getHome();
-        JSONObject obj = new JSONObject();
-        obj.put("l", translateLayerID(home.getLayer()));
-        obj.put("x", home.getX());
-        obj.put("y", home.getY());
-        root.put("home", obj);
-
-        // world preferences (dialog settings etc.)
-        root.put("preferences", world.getPreferences());
+        // flags
+        if(snapshot.placeFlags[i] != null){
+            writer.name("f").beginArray();
+            for(String flag: snapshot.placeFlags[i]){
+                writer.value(flag);
+            }
+            writer.endArray();
+        }
 
-        // add metaWriter data from WorldTab
-        if(metaWriter != null) root.put("meta", metaWriter.getMeta(layerIDs));
-
-        try ( FileWriter writer = new FileWriter(filename)) {
-            // indentation for better readability (for debugging), increases file size
-            //root.write(writer, 4, 0);
-            root.write(writer);
-            fileRoot = root;
-        } catch (Exception ex){
-            System.out.println(ex.getLocalizedMessage());
+        // comments
+        if(snapshot.placeComments[i] != null){
+            writer.name("co").beginArray().value(snapshot.placeComments[i]).endArray();
         }
+
+        writer.endObject();
     }
 
     /**
@@ -673,62 +1000,93 @@ public class WorldFileJSON extends WorldFile {
                 Files.copy(fileold.toPath(), filenew.toPath());
             }
         } catch (IOException ex) {
-            Logger.getLogger(WorldFileJSON.class.getName()).log(Level.SEVERE, null, ex);
-            JOptionPane.showMessageDialog(null, "Could not create world backup file", "World backup", JOptionPane.INFORMATION_MESSAGE);
+            Logger.getLogger(WorldFileJSON.class.getName()).log(Level.SEVERE, "Could not create world backup file", ex);
         }
     }
 
     /**
-     * Read world name from file
-     * @return
+     * Reads the top level keys at the start of the file, at most
+     * HEADER_LIMIT bytes. New files start with the scalar header values
+     * @return scalar values of the keys, JSONObject.NULL for other values,
+     * or null if the file doesn't contain a JSON object
+     */
+    JSONObject readHeader(){
+        if(!(new File(filename)).isFile()) return null;
+
+        byte[] prefix = new byte[HEADER_LIMIT];
+        int length = 0;
+        try(InputStream stream = openInputStream()){
+            int count;
+            while(length < prefix.length && (count = stream.read(prefix, length, prefix.length - length)) > 0){
+                length += count;
+            }
+        } catch(IOException ex){
+            return null;
+        }
+
+        JSONObject header = new JSONObject();
+        try(JSONPullParser parser = new JSONPullParser(new InputStreamReader(
+                new ByteArrayInputStream(prefix, 0, length), Charset.defaultCharset()))){
+            parser.next(Token.BEGIN_OBJECT);
+            while(parser.next() == Token.NAME){
+                String name = parser.getString();
+                switch(parser.next()){
+                    case BEGIN_OBJECT:
+                    case BEGIN_ARRAY:
+                        header.put(name, JSONObject.NULL);
+                        parser.skipValue();
+                        break;
+                    default:
+                        header.put(name, parser.readValue());
+                }
+            }
+        } catch(IOException | JSONException ex){
+            // end of the prefix or not a JSON file
+            if(header.length() == 0) return null;
+        }
+        return header;
+    }
+
+    /**
+     * Read world name from file. The header of new files contains the name,
+     * older files are read until the name is found
+     * @return world name, null if not found or "" if the file is invalid
      * @throws Exception
      */
     @Override
     public String readWorldName() throws Exception {
-        try{
-            JSONObject object = getJSONRoot();
-            if(object != null && object.has("worldName")){
-                return object.getString("worldName");
-            } else return null;
+        JSONObject header = readHeader();
+        if(header == null) return null;
+        if(header.has("worldName")) return header.optString("worldName", "");
+
+        // stop reading at the world name
+        try(JSONPullParser parser = openParser()){
+            parser.next(Token.BEGIN_OBJECT);
+            while(parser.next() == Token.NAME){
+                String name = parser.getString();
+                parser.next();
+                if(name.equals("worldName")) return parser.getString();
+                parser.skipValue();
+            }
+            return null;
         } catch(JSONException ex) {
             return "";
         }
     }
 
     /**
-     * Check whether the file can be read by this reader class
-     * @return
+     * Check whether the file can be read by this reader class, only the
+     * start of the file is read
+     * @return true if the file starts with a world file key
      */
     @Override
     public Boolean canRead() {
-        // exact check
-        try {
-            FileReader fileReader = new FileReader(filename);
-            BufferedReader bufferedReader = new BufferedReader(fileReader);
-            Boolean first = true;
-            String line;
-            while((line = bufferedReader.readLine()) != null){
-                if(first){
-                    line = line.trim();
-                    if(!line.isEmpty()){
-                        if(!line.startsWith("{")) return false;
-                        first = false;
-                    }
-                }
-                if(line.contains("\"worldName\"")) return true;
+        JSONObject header = readHeader();
+        if(header != null && header.length() > 0){
+            for(String key: JSONObject.getNames(header)){
+                if(WORLD_KEYS.contains(key)) return true;
             }
-        } catch (IOException ex) {
-            return false;
         }
-
-        // quick check
-        /*try{
-        JSONObject object = getJSONRoot();
-        if(object == null) return false;
-        return object.has("worldName");
-        } catch(JSONException | IOException ex) {
-        System.out.println(filename + " " + ex.getLocalizedMessage());
-        }*/
         return false;
     }
 
@@ -0,0 +1,902 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2014  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Sharded world storage: a small JSON manifest with the world settings and
+ *  a directory with one binary file per layer and one for the paths between
+ *  layers. Only the layers that changed since the last save are written,
+ *  the layer files are read in parallel
+ */
+
+package mudmap2.backend.WorldFileReader.current;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.PathChangeListener;
+import mudmap2.backend.Place;
+import mudmap2.backend.PlaceGroup;
+import mudmap2.backend.RiskLevel;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldChangeListener;
+import mudmap2.backend.WorldCoordinate;
+import mudmap2.backend.WorldFileReader.Exception.WorldFileReadError;
+import mudmap2.backend.WorldFileReader.WorldFile;
+import mudmap2.backend.WorldFileReader.WorldFileProgressListener;
+import mudmap2.backend.WorldFileReader.WorldFileType;
+import mudmap2.backend.WorldFileReader.WorldSnapshot;
+import mudmap2.backend.WorldFileReader.current.JSONPullParser.Token;
+import mudmap2.backend.WorldFileReader.current.WorldFileBinary.SectionWriter;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import static mudmap2.backend.WorldFileReader.current.WorldFileBinary.readSignedVarint;
+import static mudmap2.backend.WorldFileReader.current.WorldFileBinary.readString;
+import static mudmap2.backend.WorldFileReader.current.WorldFileBinary.readVarint;
+
+/**
+ * Sharded world file reader and writer.
+ *
+ * The world file is a JSON manifest that starts with the format name. The
+ * layers and paths are stored in the directory &lt;world file&gt;.d. Each
+ * layer file holds the places of a layer and the paths between them, the
+ * paths file the paths between places on different layers. Areas have an id
+ * that doesn't change, so unchanged layer files stay valid.
+ *
+ * Files in the directory are never overwritten, changed layers are written
+ * to new files that replace the old ones when the manifest was written.
+ *
+ * The world file records the changes of the world that it read or wrote to
+ * know which layers have to be written
+ * @author neop
+ */
+public class WorldFileSharded extends WorldFile implements WorldChangeListener, PathChangeListener {
+
+    static final String FORMAT = "mudmap2-sharded";
+    static final int VERSION_MAJOR = 1;
+    static final int VERSION_MINOR = 0;
+
+    static final byte[] LAYER_MAGIC = {'M', 'M', '2', 'L'};
+    static final byte[] PATHS_MAGIC = {'M', 'M', '2', 'P'};
+
+    // recorded world
+    World world = null;
+    final HashSet<Layer> dirtyLayers = new HashSet<>();
+    boolean pathsDirty = false;
+    // everything has to be written, eg. after the files were replaced
+    volatile boolean allDirty = true;
+
+    // files that the manifest on disk references, layer id -> file name,
+    // they change when a snapshot was written
+    final HashMap<Integer, String> layerFiles = new HashMap<>();
+    String pathsFile = null;
+    // files of the last snapshot, they might not be written yet
+    final HashMap<Integer, String> pendingLayerFiles = new HashMap<>();
+    String pendingPathsFile = null;
+    int generation = 0;
+
+    // paths between places on different layers
+    final HashSet<Path> crossPaths = new HashSet<>();
+
+    // area ids, they don't change
+    final HashMap<PlaceGroup, Integer> areaIds = new HashMap<>();
+    int nextAreaId = 0;
+
+    public WorldFileSharded(String filename) {
+        super(filename);
+    }
+
+    /**
+     * Gets the directory of the layer files
+     * @return directory
+     */
+    public File getShardDirectory(){
+        return new File(filename + ".d");
+    }
+
+    @Override
+    public WorldFileType getWorldFileType() {
+        return WorldFileType.SHARDED;
+    }
+
+    /**
+     * Saves only write the changed layers, a journal isn't needed
+     * @return false
+     */
+    @Override
+    public boolean isJournaled() {
+        return false;
+    }
+
+    /**
+     * The layer files of the last written version may have been replaced,
+     * so the next write writes all layers
+     */
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        allDirty = true;
+    }
+
+    @Override
+    public void setCompressed(boolean compressed) {
+        if(compressed) throw new UnsupportedOperationException("Sharded world files can't be compressed");
+    }
+
+    // --------- change tracking -----------------------------------------------
+
+    /**
+     * Starts recording the changes of a world
+     * @param world world
+     */
+    private void attach(World world){
+        if(this.world != null){
+            this.world.removeChangeListener(this);
+            this.world.removePathChangeListener(this);
+        }
+        this.world = world;
+        world.addChangeListener(this);
+        world.addPathChangeListener(this);
+        dirtyLayers.clear();
+        pathsDirty = false;
+    }
+
+    @Override
+    public void worldChanged(Object source) {
+        if(world == null || world.isLoadingLayers()) return;
+        if(source instanceof Place){
+            Place place = (Place) source;
+            setDirty(place.getLayer());
+            // child connections are stored by both places and connected
+            // children are reported through their parent, a removed
+            // connection is dropped if one of the places doesn't list it
+            for(Place child: place.getChildren()) setDirty(child.getLayer());
+            // the place might have been moved to another layer
+            for(Path path: place.getPaths()) updateCrossPath(path, true);
+        } else if(source instanceof Layer){
+            setDirty((Layer) source);
+        }
+    }
+
+    @Override
+    public void pathConnected(Path path) {
+        if(world != null && !world.isLoadingLayers()) updateCrossPath(path, true);
+    }
+
+    @Override
+    public void pathRemoved(Path path) {
+        if(world != null && !world.isLoadingLayers()) updateCrossPath(path, false);
+    }
+
+    private void setDirty(Layer layer){
+        if(layer != null) dirtyLayers.add(layer);
+    }
+
+    /**
+     * Marks the files of a path as changed
+     * @param path path
+     * @param connected false if the path was removed
+     */
+    private void updateCrossPath(Path path, boolean connected){
+        Place[] places = path.getPlaces();
+        if(connected && places[0].getLayer() != places[1].getLayer()){
+            if(crossPaths.add(path)) pathsDirty = true;
+        } else {
+            if(crossPaths.remove(path)) pathsDirty = true;
+            if(places[0].getLayer() == places[1].getLayer()) setDirty(places[0].getLayer());
+        }
+    }
+
+    // --------- writing -------------------------------------------------------
+
+    /**
+     * Snapshot of the changed layers, the files are encoded when the
+     * snapshot is created
+     */
+    static class ShardSnapshot extends WorldSnapshot {
+        // file name -> content
+        final LinkedHashMap<String, byte[]> files = new LinkedHashMap<>();
+        // files that the manifest references, layer id -> file name
+        final HashMap<Integer, String> layerFiles = new HashMap<>();
+        String pathsFile = null;
+        // all files that the manifest references
+        final HashSet<String> referencedFiles = new HashSet<>();
+        String manifest = null;
+
+        ShardSnapshot(World world){
+            // the places are in the encoded files
+            super(world, Collections.<Layer>emptyList());
+        }
+    }
+
+    /**
+     * Creates a snapshot of the layers that changed since the world was read
+     * or written. Layer files of earlier snapshots that weren't written yet
+     * are encoded again, so the snapshot doesn't depend on them. Has to be
+     * called on the thread that modifies the world
+     * @param world world
+     * @return snapshot
+     */
+    @Override
+    public WorldSnapshot createSnapshot(World world){
+        boolean all = allDirty || this.world != world;
+        if(this.world != world) attach(world);
+        allDirty = false;
+
+        ShardSnapshot snapshot = new ShardSnapshot(world);
+        ++generation;
+
+        // areas of the world and of the places get ids before places are encoded
+        for(PlaceGroup area: world.getPlaceGroups()) getAreaId(area);
+
+        Collection<Layer> layers;
+        boolean paths = all || pathsDirty;
+        if(all){
+            crossPaths.clear();
+            layers = world.getLayers();
+        } else {
+            HashSet<Layer> changed = new HashSet<>(dirtyLayers);
+            synchronized(this){
+                for(Map.Entry<Integer, String> file: pendingLayerFiles.entrySet()){
+                    Layer layer = world.getLayer(file.getKey());
+                    if(layer == null) continue; // removed layer
+                    snapshot.layerFiles.put(file.getKey(), file.getValue());
+                    if(!file.getValue().equals(layerFiles.get(file.getKey()))) changed.add(layer);
+                }
+                if(pendingPathsFile == null || !pendingPathsFile.equals(pathsFile)) paths = true;
+            }
+            layers = changed;
+        }
+        for(Layer layer: layers){
+            if(world.getLayer(layer.getId()) != layer) continue; // replaced layer
+            HashSet<Place> places = layer.getPlaces();
+            if(all){
+                for(Place place: places){
+                    for(Path path: place.getPaths()){
+                        if(path.getPlaces()[0].getLayer() != path.getPlaces()[1].getLayer()) crossPaths.add(path);
+                    }
+                }
+            }
+            if(places.isEmpty()){
+                snapshot.layerFiles.remove(layer.getId());
+            } else {
+                String name = "layer" + layer.getId() + "." + generation + ".m2l";
+                snapshot.files.put(name, encodeLayer(layer, places));
+                snapshot.layerFiles.put(layer.getId(), name);
+            }
+        }
+        dirtyLayers.clear();
+
+        if(paths){
+            snapshot.pathsFile = "paths." + generation + ".m2p";
+            snapshot.files.put(snapshot.pathsFile, encodePaths());
+        } else {
+            snapshot.pathsFile = pendingPathsFile;
+        }
+        pathsDirty = false;
+
+        synchronized(this){
+            pendingLayerFiles.clear();
+            pendingLayerFiles.putAll(snapshot.layerFiles);
+            pendingPathsFile = snapshot.pathsFile;
+        }
+
+        snapshot.referencedFiles.addAll(snapshot.layerFiles.values());
+        snapshot.referencedFiles.add(snapshot.pathsFile);
+
+        // layers keep their ids
+        if(metaWriter != null){
+            HashMap<Integer, Integer> translation = new HashMap<>();
+            for(Layer layer: world.getLayers()) translation.put(layer.getId(), layer.getId());
+            snapshot.setMeta(metaWriter.getMeta(translation));
+        }
+
+        try {
+            StringWriter manifest = new StringWriter();
+            writeManifest(new JSONStreamWriter(manifest), world, snapshot);
+            snapshot.manifest = manifest.toString();
+        } catch(IOException ex){ // StringWriter doesn't throw
+            throw new IllegalStateException(ex);
+        }
+        return snapshot;
+    }
+
+    private int getAreaId(PlaceGroup area){
+        Integer id = areaIds.get(area);
+        if(id == null){
+            areaIds.put(area, id = nextAreaId++);
+        }
+        return id;
+    }
+
+    private static String colToHex(Color color){
+        return String.format("#%06x", color.getRGB() & 0xffffff);
+    }
+
+    private void writeManifest(JSONStreamWriter writer, World world, ShardSnapshot snapshot) throws IOException {
+        writer.beginObject();
+        writer.name("format").value(FORMAT);
+        writer.name("ver").value(VERSION_MAJOR + "." + VERSION_MINOR);
+        writer.name("worldName").value(world.getName());
+        writer.name("showPlaceId").value(world.getShowPlaceId().name());
+        if(world.getTileCenterColor() != null) writer.name("tileCenterCol").value(colToHex(world.getTileCenterColor()));
+        if(world.getPathColorStd() != null) writer.name("pathCol").value(colToHex(world.getPathColorStd()));
+        if(world.getPathColorNstd() != null) writer.name("pathColNonCardinal").value(colToHex(world.getPathColorNstd()));
+
+        writer.name("pathColDefs").beginObject();
+        for(Map.Entry<String, Color> pathColor: world.getPathColors().entrySet()){
+            writer.name(pathColor.getKey()).value(colToHex(pathColor.getValue()));
+        }
+        writer.endObject();
+
+        WorldCoordinate home = world.getHome();
+        writer.name("home").beginObject();
+        writer.name("l").value(home.getLayer());
+        writer.name("x").value(home.getX());
+        writer.name("y").value(home.getY());
+        writer.endObject();
+
+        writer.name("riskLevels").beginArray();
+        for(RiskLevel riskLevel: world.getRiskLevels()){
+            writer.beginObject();
+            writer.name("id").value(riskLevel.getId());
+            writer.name("desc").value(riskLevel.getDescription());
+            writer.name("col").value(colToHex(riskLevel.getColor()));
+            writer.endObject();
+        }
+        writer.endArray();
+
+        // areas keep their id after they were removed from the world
+        HashSet<PlaceGroup> worldAreas = new HashSet<>(world.getPlaceGroups());
+        writer.name("areas").beginArray();
+        for(Map.Entry<PlaceGroup, Integer> area: areaIds.entrySet()){
+            writer.beginObject();
+            writer.name("id").value(area.getValue());
+            writer.name("name").value(area.getKey().getName());
+            writer.name("col").value(colToHex(area.getKey().getColor()));
+            writer.name("used").value(worldAreas.contains(area.getKey()));
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.name("nextAreaId").value(nextAreaId);
+
+        writer.name("layers").beginArray();
+        for(Layer layer: world.getLayers()){
+            writer.beginObject();
+            writer.name("id").value(layer.getId());
+            if(layer.hasName()) writer.name("name").value(layer.getName());
+            writer.name("centerX").value(layer.getCenterX());
+            writer.name("centerY").value(layer.getCenterY());
+            String file = snapshot.layerFiles.get(layer.getId());
+            if(file != null) writer.name("file").value(file);
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.name("paths").value(snapshot.pathsFile);
+        writer.name("generation").value(generation);
+
+        if(world.getPreferences() != null) writer.name("preferences").value(world.getPreferences());
+        if(snapshot.getMeta() != null) writer.name("meta").value(snapshot.getMeta());
+        writer.endObject();
+    }
+
+    private byte[] encodeLayer(Layer layer, HashSet<Place> places){
+        SectionWriter writer = new SectionWriter();
+        writer.write(LAYER_MAGIC, 0, LAYER_MAGIC.length);
+        writer.writeByte(VERSION_MAJOR);
+        writer.writeVarint(layer.getId());
+
+        ArrayList<Path> paths = new ArrayList<>();
+        writer.writeVarint(places.size());
+        for(Place place: places){
+            writer.writeVarint(place.getId());
+            writer.writeSignedVarint(place.getX());
+            writer.writeSignedVarint(place.getY());
+            writer.writeString(place.getName());
+            writer.writeVarint(place.getPlaceGroup() != null ? getAreaId(place.getPlaceGroup()) + 1 : 0);
+            writer.writeSignedVarint(place.getRiskLevel() != null ? place.getRiskLevel().getId() : WorldSnapshot.NO_RISK_LEVEL);
+            writer.writeSignedVarint(place.getRecLevelMin());
+            writer.writeSignedVarint(place.getRecLevelMax());
+            writer.writeString(place.getComments() != null ? place.getComments() : "");
+
+            int flagCount = 0;
+            for(Boolean flag: place.getFlags().values()){
+                if(flag) ++flagCount;
+            }
+            writer.writeVarint(flagCount);
+            for(Map.Entry<String, Boolean> flag: place.getFlags().entrySet()){
+                if(flag.getValue()) writer.writeString(flag.getKey());
+            }
+
+            writer.writeVarint(place.getChildren().size());
+            for(Place child: place.getChildren()) writer.writeVarint(child.getId());
+            writer.writeVarint(place.getParents().size());
+            for(Place parent: place.getParents()) writer.writeVarint(parent.getId());
+
+            // paths on this layer are stored by their first place
+            for(Path path: place.getPaths()){
+                Place[] pathPlaces = path.getPlaces();
+                if(pathPlaces[0] == place && pathPlaces[1].getLayer() == layer) paths.add(path);
+            }
+        }
+        writePaths(writer, paths);
+        return Arrays.copyOf(writer.buffer, writer.size);
+    }
+
+    private byte[] encodePaths(){
+        SectionWriter writer = new SectionWriter();
+        writer.write(PATHS_MAGIC, 0, PATHS_MAGIC.length);
+        writer.writeByte(VERSION_MAJOR);
+        writePaths(writer, crossPaths);
+        return Arrays.copyOf(writer.buffer, writer.size);
+    }
+
+    private static void writePaths(SectionWriter writer, Collection<Path> paths){
+        writer.writeVarint(paths.size());
+        for(Path path: paths){
+            Place[] places = path.getPlaces();
+            String[] exits = path.getExitDirections();
+            writer.writeVarint(places[0].getId());
+            writer.writeString(exits[0]);
+            writer.writeVarint(places[1].getId());
+            writer.writeString(exits[1]);
+        }
+    }
+
+    /**
+     * Writes the world
+     * @param world
+     * @throws IOException
+     */
+    @Override
+    public void writeFile(World world) throws IOException {
+        writeSnapshot(createSnapshot(world), null);
+    }
+
+    /**
+     * Writes the changed layer files and replaces the manifest. Files that
+     * the manifest doesn't reference anymore are deleted afterwards. If
+     * writing fails the files of the last written manifest stay in place
+     * and the next snapshot writes the layers of this one again
+     * @param worldSnapshot snapshot of this world file
+     * @param listener progress listener or null
+     * @throws IOException
+     */
+    @Override
+    public void writeSnapshot(WorldSnapshot worldSnapshot, WorldFileProgressListener listener) throws IOException {
+        if(!(worldSnapshot instanceof ShardSnapshot)){
+            throw new IllegalArgumentException("Snapshot wasn't created by a sharded world file");
+        }
+        ShardSnapshot snapshot = (ShardSnapshot) worldSnapshot;
+
+        File directory = getShardDirectory();
+        Files.createDirectories(directory.toPath());
+
+        int count = 0;
+        for(Map.Entry<String, byte[]> file: snapshot.files.entrySet()){
+            Files.write(new File(directory, file.getKey()).toPath(), file.getValue());
+            if(listener != null) listener.progressChanged(++count * 100 / (snapshot.files.size() + 1));
+        }
+
+        File temp = createTempFile();
+        try {
+            try(Writer writer = new OutputStreamWriter(Files.newOutputStream(temp.toPath()), StandardCharsets.UTF_8)){
+                writer.write(snapshot.manifest);
+            }
+            replaceFile(temp);
+        } finally {
+            temp.delete();
+        }
+
+        // the files of the snapshot are on disk now
+        synchronized(this){
+            layerFiles.clear();
+            layerFiles.putAll(snapshot.layerFiles);
+            pathsFile = snapshot.pathsFile;
+        }
+
+        // replaced files
+        File[] files = directory.listFiles();
+        if(files != null){
+            for(File file: files){
+                String name = file.getName();
+                if((name.endsWith(".m2l") || name.endsWith(".m2p")) && !snapshot.referencedFiles.contains(name)){
+                    file.delete();
+                }
+            }
+        }
+        if(listener != null) listener.progressChanged(100);
+    }
+
+    // --------- reading -------------------------------------------------------
+
+    /**
+     * Places of a layer file, the places are added to the layer on the
+     * thread that reads the world
+     */
+    private static class Shard {
+        final Layer layer;
+        Place[] places;
+        int[][] children, parents;
+        int[] paths;
+        String[] exits;
+
+        Shard(Layer layer){
+            this.layer = layer;
+        }
+    }
+
+    /**
+     * Reads the world
+     * @return world
+     * @throws Exception
+     */
+    @Override
+    public World readFile() throws Exception {
+        final World world;
+        final JSONObject manifest;
+        try {
+            manifest = new JSONObject(new String(Files.readAllBytes(new File(filename).toPath()), StandardCharsets.UTF_8));
+            if(!FORMAT.equals(manifest.optString("format"))){
+                throw new WorldFileReadError(filename, "Not a sharded world file", null);
+            }
+            String version = manifest.getString("ver");
+            if(Integer.parseInt(version.split("\\.")[0]) > VERSION_MAJOR){
+                throw new WorldFileReadError(filename, "World file version " + version + " is not supported", null);
+            }
+
+            world = new World(manifest.getString("worldName"));
+            readSettings(world, manifest);
+        } catch(JSONException | IllegalArgumentException ex){
+            throw new WorldFileReadError(filename, ex.getMessage(), ex);
+        }
+
+        ArrayList<Shard> shards;
+        try {
+            shards = readLayers(world, manifest);
+        } catch(JSONException | IllegalArgumentException ex){
+            throw new WorldFileReadError(filename, ex.getMessage(), ex);
+        }
+
+        // add the places to their layers and connect them
+        HashMap<Integer, Place> places = new HashMap<>();
+        HashMap<Integer, int[]> parents = new HashMap<>();
+        int maxId = -1;
+        for(Shard shard: shards){
+            for(int i = 0; i < shard.places.length; ++i){
+                Place place = shard.places[i];
+                shard.layer.put(place, place.getX(), place.getY());
+                places.put(place.getId(), place);
+                parents.put(place.getId(), shard.parents[i]);
+                maxId = Math.max(maxId, place.getId());
+            }
+        }
+        // places were created on several threads
+        Place.reserveId(maxId);
+
+        for(Shard shard: shards){
+            for(int i = 0; i < shard.places.length; ++i){
+                Place place = shard.places[i];
+                for(int id: shard.children[i]){
+                    // both places store the connection
+                    Place child = places.get(id);
+                    if(child != null && contains(parents.get(id), place.getId())) place.connectChild(child);
+                }
+            }
+            connectPaths(places, shard.paths, shard.exits);
+        }
+
+        pathsFile = manifest.optString("paths", null);
+        crossPaths.clear();
+        if(pathsFile != null){
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(new File(getShardDirectory(), pathsFile).toPath()));
+            try {
+                checkMagic(data, PATHS_MAGIC);
+                Shard shard = new Shard(null);
+                readPaths(data, shard);
+                crossPaths.addAll(connectPaths(places, shard.paths, shard.exits));
+            } catch(IllegalArgumentException | BufferUnderflowException ex){
+                throw new WorldFileReadError(filename, "Could not read paths file", ex);
+            }
+        }
+
+        metaData = manifest.optJSONObject("meta");
+        generation = manifest.optInt("generation", 0);
+        synchronized(this){
+            pendingLayerFiles.clear();
+            pendingLayerFiles.putAll(layerFiles);
+            pendingPathsFile = pathsFile;
+        }
+
+        attach(world);
+        allDirty = false;
+        return world;
+    }
+
+    /**
+     * Creates the areas and layers of the manifest and reads the layer files
+     * in parallel
+     * @return layer files
+     */
+    private ArrayList<Shard> readLayers(final World world, JSONObject manifest) throws Exception {
+        // areas
+        areaIds.clear();
+        final HashMap<Integer, PlaceGroup> areas = new HashMap<>();
+        JSONArray areaArray = manifest.getJSONArray("areas");
+        for(int i = 0; i < areaArray.length(); ++i){
+            JSONObject area = areaArray.getJSONObject(i);
+            PlaceGroup placeGroup = new PlaceGroup(area.getString("name"), Color.decode(area.getString("col")));
+            areas.put(area.getInt("id"), placeGroup);
+            areaIds.put(placeGroup, area.getInt("id"));
+            if(area.optBoolean("used", true)) world.addPlaceGroup(placeGroup);
+        }
+        nextAreaId = manifest.optInt("nextAreaId", areas.size());
+
+        // layers, the files are read in parallel
+        layerFiles.clear();
+        ArrayList<Callable<Shard>> tasks = new ArrayList<>();
+        final File directory = getShardDirectory();
+        JSONArray layerArray = manifest.getJSONArray("layers");
+        for(int i = 0; i < layerArray.length(); ++i){
+            JSONObject layerObject = layerArray.getJSONObject(i);
+            final Layer layer = new Layer(layerObject.getInt("id"), world);
+            layer.setQuadtree(layerObject.optInt("centerX", 0), layerObject.optInt("centerY", 0));
+            if(layerObject.has("name")) layer.setName(layerObject.getString("name"));
+            world.addLayer(layer);
+
+            if(layerObject.has("file")){
+                final String file = layerObject.getString("file");
+                layerFiles.put(layer.getId(), file);
+                tasks.add(new Callable<Shard>() {
+                    @Override
+                    public Shard call() throws Exception {
+                        return readLayer(new File(directory, file), layer, areas, world);
+                    }
+                });
+            }
+        }
+
+        ArrayList<Shard> shards = new ArrayList<>();
+        for(Future<Shard> future: pool.invokeAll(tasks)){
+            try {
+                shards.add(future.get());
+            } catch(ExecutionException ex){
+                throw new WorldFileReadError(filename, "Could not read layer file: " + ex.getCause().getMessage(), ex.getCause());
+            }
+        }
+        return shards;
+    }
+
+    private static boolean contains(int[] values, int value){
+        if(values != null){
+            for(int v: values) if(v == value) return true;
+        }
+        return false;
+    }
+
+    private void readSettings(World world, JSONObject manifest){
+        world.setShowPlaceID(World.ShowPlaceID.valueOf(manifest.optString("showPlaceId", World.ShowPlaceID.UNIQUE.name())));
+        if(manifest.has("tileCenterCol")) world.setTileCenterColor(Color.decode(manifest.getString("tileCenterCol")));
+        if(manifest.has("pathCol")) world.setPathColorStd(Color.decode(manifest.getString("pathCol")));
+        if(manifest.has("pathColNonCardinal")) world.setPathColorNstd(Color.decode(manifest.getString("pathColNonCardinal")));
+
+        JSONObject pathColors = manifest.optJSONObject("pathColDefs");
+        if(pathColors != null){
+            for(String dir: pathColors.keySet()){
+                world.setPathColor(dir, Color.decode(pathColors.getString(dir)));
+            }
+        }
+
+        JSONObject home = manifest.optJSONObject("home");
+        if(home != null){
+            world.setHome(new WorldCoordinate(home.getInt("l"), home.getDouble("x"), home.getDouble("y")));
+        }
+
+        // risk levels, replace existing risk levels
+        world.getRiskLevels().clear();
+        JSONArray riskLevels = manifest.getJSONArray("riskLevels");
+        for(int i = 0; i < riskLevels.length(); ++i){
+            JSONObject riskLevel = riskLevels.getJSONObject(i);
+            world.setRiskLevel(new RiskLevel(riskLevel.getInt("id"), riskLevel.getString("desc"),
+                    Color.decode(riskLevel.getString("col"))));
+        }
+
+        if(manifest.has("preferences")) world.setPreferences(manifest.getJSONObject("preferences"));
+    }
+
+    private static void checkMagic(ByteBuffer data, byte[] magic){
+        byte[] fileMagic = new byte[magic.length];
+        data.get(fileMagic);
+        if(!Arrays.equals(fileMagic, magic)) throw new IllegalArgumentException("Invalid file type");
+        if(data.get() > VERSION_MAJOR) throw new IllegalArgumentException("Unsupported file version");
+    }
+
+    /**
+     * Reads a layer file, can be called on any thread. The places don't
+     * belong to the layer yet
+     */
+    private static Shard readLayer(File file, Layer layer, HashMap<Integer, PlaceGroup> areas, World world) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        checkMagic(data, LAYER_MAGIC);
+        if(readVarint(data) != layer.getId()) throw new IllegalArgumentException("Layer file of another layer");
+
+        Shard shard = new Shard(layer);
+        int count = readVarint(data);
+        shard.places = new Place[count];
+        shard.children = new int[count][];
+        shard.parents = new int[count][];
+        for(int i = 0; i < count; ++i){
+            int id = readVarint(data);
+            int x = readSignedVarint(data);
+            int y = readSignedVarint(data);
+            Place place = shard.places[i] = new Place(id, readString(data), x, y, null);
+
+            int area = readVarint(data);
+            if(area > 0) place.setPlaceGroup(areas.get(area - 1));
+            int riskLevel = readSignedVarint(data);
+            if(riskLevel != WorldSnapshot.NO_RISK_LEVEL) place.setRiskLevel(world.getRiskLevel(riskLevel));
+            place.setRecLevelMin(readSignedVarint(data));
+            place.setRecLevelMax(readSignedVarint(data));
+            place.setComments(readString(data));
+
+            int flagCount = readVarint(data);
+            for(int f = 0; f < flagCount; ++f) place.setFlag(readString(data), true);
+
+            int[] children = shard.children[i] = new int[readVarint(data)];
+            for(int c = 0; c < children.length; ++c) children[c] = readVarint(data);
+            int[] parents = shard.parents[i] = new int[readVarint(data)];
+            for(int p = 0; p < parents.length; ++p) parents[p] = readVarint(data);
+        }
+        readPaths(data, shard);
+        return shard;
+    }
+
+    private static void readPaths(ByteBuffer data, Shard shard){
+        int count = readVarint(data);
+        shard.paths = new int[count * 2];
+        shard.exits = new String[count * 2];
+        for(int i = 0; i < count * 2; ++i){
+            shard.paths[i] = readVarint(data);
+            shard.exits[i] = readString(data);
+        }
+    }
+
+    /**
+     * Connects paths
+     * @return connected paths
+     */
+    private List<Path> connectPaths(HashMap<Integer, Place> places, int[] ids, String[] exits){
+        ArrayList<Path> paths = new ArrayList<>();
+        for(int i = 0; i < ids.length; i += 2){
+            Place place0 = places.get(ids[i]);
+            Place place1 = places.get(ids[i + 1]);
+            if(place0 == null || place1 == null){
+                Logger.getLogger(WorldFileSharded.class.getName()).log(Level.WARNING,
+                        "Path of unknown place in world file {0}", filename);
+                continue;
+            }
+            Path path = new Path(place0, exits[i], place1, exits[i + 1]);
+            if(place0.connectPath(path)) paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * Reads the world name from the manifest
+     * @return world name or null
+     * @throws Exception
+     */
+    @Override
+    public String readWorldName() throws Exception {
+        if(!(new File(filename)).isFile()) return null;
+        try(JSONPullParser parser = openParser()){
+            parser.next(Token.BEGIN_OBJECT);
+            while(parser.next() == Token.NAME){
+                String name = parser.getString();
+                parser.next();
+                if(name.equals("worldName")) return parser.getString();
+                parser.skipValue();
+            }
+            return null;
+        } catch(JSONException ex) {
+            return "";
+        }
+    }
+
+    private JSONPullParser openParser() throws IOException {
+        return new JSONPullParser(new InputStreamReader(Files.newInputStream(new File(filename).toPath()), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Checks whether the file is a manifest, its first entry is the format
+     * @return true if the file can be read
+     */
+    @Override
+    public Boolean canRead() {
+        if(!(new File(filename)).isFile() || isGzipFile(new File(filename))) return false;
+        try(JSONPullParser parser = openParser()){
+            parser.next(Token.BEGIN_OBJECT);
+            if(parser.next() != Token.NAME || !parser.getString().equals("format")) return false;
+            return parser.next() == Token.STRING && parser.getString().equals(FORMAT);
+        } catch(IOException | JSONException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Copies the manifest to &lt;world file&gt;.bak and links or copies the
+     * layer files to the directory of the backup. Layer files aren't
+     * changed, so a link is enough
+     * @throws FileNotFoundException
+     */
+    @Override
+    public void backup() throws FileNotFoundException {
+        try {
+            File manifest = new File(filename);
+            if(!manifest.canRead()) return;
+
+            WorldFileSharded backup = new WorldFileSharded(filename + ".bak");
+            File backupDirectory = backup.getShardDirectory();
+            Files.createDirectories(backupDirectory.toPath());
+            File[] oldFiles = backupDirectory.listFiles();
+            if(oldFiles != null) for(File file: oldFiles) file.delete();
+
+            File[] files = getShardDirectory().listFiles();
+            if(files != null){
+                for(File file: files){
+                    File target = new File(backupDirectory, file.getName());
+                    try {
+                        Files.createLink(target.toPath(), file.toPath());
+                    } catch(IOException | UnsupportedOperationException ex){
+                        Files.copy(file.toPath(), target.toPath());
+                    }
+                }
+            }
+            Files.copy(manifest.toPath(), new File(backup.filename).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            Logger.getLogger(WorldFileSharded.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+}
@@ -0,0 +1,898 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2014  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Append-only journal of the changes since a world file was written. Saving
+ *  only appends the changes to the journal, the journal is folded into the
+ *  world file by rewriting it when the journal gets large
+ */
+
+package mudmap2.backend.WorldFileReader.current;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import mudmap2.backend.Layer;
+import mudmap2.backend.LayerLoader;
+import mudmap2.backend.Path;
+import mudmap2.backend.PathChangeListener;
+import mudmap2.backend.Place;
+import mudmap2.backend.PlaceGroup;
+import mudmap2.backend.RiskLevel;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldChangeListener;
+import mudmap2.backend.WorldCoordinate;
+import mudmap2.backend.WorldFileReader.WorldFile;
+import mudmap2.backend.WorldFileReader.WorldFileProgressListener;
+import mudmap2.backend.WorldFileReader.WorldSnapshot;
+import mudmap2.backend.WorldFileReader.current.WorldFileBinary.SectionWriter;
+import org.json.JSONObject;
+import static mudmap2.backend.WorldFileReader.current.WorldFileBinary.readSignedVarint;
+import static mudmap2.backend.WorldFileReader.current.WorldFileBinary.readString;
+import static mudmap2.backend.WorldFileReader.current.WorldFileBinary.readVarint;
+
+/**
+ * Journal of world changes, stored next to the world file as
+ * &lt;world file&gt;.journal
+ *
+ * Layout: magic, version byte, size and modification time of the world file
+ * that the journal belongs to, then entries of an int payload length, the
+ * CRC32 of the payload and the payload. Each entry holds the records of one
+ * save. Entries that were written incompletely are ignored.
+ *
+ * Changes are collected by listening to the world, entries are created on
+ * the thread that modifies the world and appended on any thread. Places and
+ * layers are written completely, world settings and the meta data only if
+ * they changed. Layers are identified by their id in the world file, areas
+ * by their position in the area table of the current epoch, which starts
+ * with the first entry after the world file was written
+ * @author neop
+ */
+public class WorldJournal implements WorldChangeListener, PathChangeListener {
+
+    static final byte[] MAGIC = {'M', 'M', '2', 'J'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = MAGIC.length + 1 + 8 + 8;
+
+    // record types
+    static final int RECORD_EPOCH = 1;
+    static final int RECORD_SETTINGS = 2;
+    static final int RECORD_LAYERS = 3;
+    static final int RECORD_META = 4;
+    static final int RECORD_PLACE = 5;
+    static final int RECORD_REMOVE_PLACE = 6;
+    static final int RECORD_PATH = 7;
+    static final int RECORD_REMOVE_PATH = 8;
+
+    // the journal is folded into the world file when it gets larger than
+    // a part of the world file, small journals are always kept
+    static final int COMPACTION_RATIO = 4;
+    static final long COMPACTION_MIN_SIZE = 256 << 10;
+
+    final WorldFile worldFile;
+    final File file;
+    World world = null;
+
+    // world file that the journal belongs to, written by append and compact
+    long baseSize = -1, baseModified = -1;
+    // length of the valid part of the journal file, 0 if it has to be created
+    long fileSize = 0;
+    // set when writing failed, the next save has to rewrite the world file
+    volatile boolean failed = false;
+    // size of the world file for the compaction threshold
+    volatile long baseLength = 0;
+
+    // state of the thread that modifies the world
+    boolean hasBase = false;
+    long entrySize = 0;
+
+    // world file layer ids, layers keep their id if the world was read from
+    // the world file and get the snapshot index after it was written
+    boolean identityLayerIds = true;
+    final HashMap<Integer, Integer> layerIds = new HashMap<>();
+    int nextLayerId = 0;
+
+    // area table of the current epoch, it starts with the areas of the world
+    // file, the epoch record matches them to the areas of the read world
+    final ArrayList<PlaceGroup> areas = new ArrayList<>();
+    final HashMap<PlaceGroup, Integer> areaIndices = new HashMap<>();
+    SectionWriter epochRecord = null;
+
+    // last written records, only changed records are written again
+    byte[] lastSettings = null, lastLayers = null, lastMeta = null;
+
+    // changes since the last entry
+    final LinkedHashSet<Place> changedPlaces = new LinkedHashSet<>();
+    final SectionWriter pathRecords = new SectionWriter();
+
+    // meta data of the last replayed meta record
+    JSONObject metaData = null;
+
+    /**
+     * Creates a journal for a world file
+     * @param worldFile world file that is written on compaction
+     */
+    public WorldJournal(WorldFile worldFile){
+        this.worldFile = worldFile;
+        file = getJournalFile(worldFile.getFilename());
+    }
+
+    /**
+     * Gets the journal file of a world file
+     * @param filename world file name
+     * @return journal file
+     */
+    public static File getJournalFile(String filename){
+        return new File(filename + ".journal");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the meta data of the replayed journal
+     * @return meta data or null if the journal has no meta data
+     */
+    public JSONObject getMetaData() {
+        return metaData;
+    }
+
+    // --------- recording -----------------------------------------------------
+
+    /**
+     * Starts recording the changes of a world. Has to be called after the
+     * world was read from the world file and the journal was replayed,
+     * otherwise the first save rewrites the world file
+     * @param world world
+     */
+    public void attach(World world){
+        detach();
+        this.world = world;
+        world.addChangeListener(this);
+        world.addPathChangeListener(this);
+        startEpoch();
+    }
+
+    /**
+     * Starts a new area table with the areas of the world
+     */
+    private void startEpoch(){
+        areas.clear();
+        areaIndices.clear();
+        epochRecord = new SectionWriter();
+        epochRecord.writeByte(RECORD_EPOCH);
+        ArrayList<PlaceGroup> worldAreas = world.getPlaceGroups();
+        epochRecord.writeVarint(worldAreas.size());
+        for(PlaceGroup area: worldAreas){
+            addArea(area);
+            epochRecord.writeString(area.getName());
+            writeColor(epochRecord, area.getColor());
+        }
+        lastSettings = lastLayers = lastMeta = null;
+    }
+
+    /**
+     * Stops recording changes
+     */
+    public void detach(){
+        if(world != null){
+            world.removeChangeListener(this);
+            world.removePathChangeListener(this);
+            world = null;
+        }
+    }
+
+    /**
+     * Checks whether changes should be recorded
+     * @return false while layers are loaded or if the world got another file
+     */
+    private boolean isRecording(){
+        // after saving to another file, that file has its own journal
+        return world != null && !world.isLoadingLayers() && world.getWorldFile() == worldFile;
+    }
+
+    @Override
+    public void worldChanged(Object source) {
+        if(source instanceof Place && isRecording()) changedPlaces.add((Place) source);
+    }
+
+    @Override
+    public void pathConnected(Path path) {
+        if(isRecording()) writePath(RECORD_PATH, path);
+    }
+
+    @Override
+    public void pathRemoved(Path path) {
+        if(isRecording()) writePath(RECORD_REMOVE_PATH, path);
+    }
+
+    /**
+     * Path records are written when the path changes, since a removed path
+     * can't be found later
+     * @param type record type
+     * @param path path
+     */
+    private void writePath(int type, Path path){
+        Place[] places = path.getPlaces();
+        String[] exits = path.getExitDirections();
+        pathRecords.writeByte(type);
+        pathRecords.writeVarint(places[0].getId());
+        pathRecords.writeString(exits[0]);
+        pathRecords.writeVarint(places[1].getId());
+        pathRecords.writeString(exits[1]);
+    }
+
+    /**
+     * Checks whether the next save should rewrite the world file instead of
+     * appending to the journal
+     * @return true if there's no world file for the journal, writing failed
+     * or the journal is large
+     */
+    public boolean needsCompaction(){
+        return !hasBase || failed || entrySize > Math.max(COMPACTION_MIN_SIZE, baseLength / COMPACTION_RATIO);
+    }
+
+    /**
+     * Creates a journal entry of the changes since the last entry or
+     * snapshot. Has to be called on the thread that modifies the world
+     * @return entry for append() or null if nothing changed
+     */
+    public byte[] createEntry(){
+        if(world == null) return null;
+
+        SectionWriter writer = new SectionWriter();
+        if(epochRecord != null){
+            writer.write(epochRecord.buffer, 0, epochRecord.size);
+            epochRecord = null;
+        }
+
+        // areas of changed places have to be in the table before the places
+        for(PlaceGroup area: world.getPlaceGroups()) addArea(area);
+        for(Place place: changedPlaces){
+            if(place.getPlaceGroup() != null) addArea(place.getPlaceGroup());
+        }
+
+        lastSettings = writeIfChanged(writer, RECORD_SETTINGS, encodeSettings(), lastSettings);
+        lastLayers = writeIfChanged(writer, RECORD_LAYERS, encodeLayers(), lastLayers);
+        WorldMetaJSON metaGetter = worldFile.getMetaGetter();
+        if(metaGetter != null){
+            JSONObject meta = metaGetter.getMeta(getLayerTranslation());
+            if(meta != null){
+                SectionWriter record = new SectionWriter();
+                record.writeString(meta.toString());
+                lastMeta = writeIfChanged(writer, RECORD_META, record, lastMeta);
+            }
+        }
+
+        for(Place place: changedPlaces){
+            Layer layer = place.getLayer();
+            if(layer == null || world.getLayer(layer.getId()) != layer || layer.get(place.getX(), place.getY()) != place){
+                writer.writeByte(RECORD_REMOVE_PLACE);
+                writer.writeVarint(place.getId());
+            } else {
+                writePlace(writer, place);
+            }
+        }
+        changedPlaces.clear();
+
+        // paths after the places, they might connect new places
+        writer.write(pathRecords.buffer, 0, pathRecords.size);
+        pathRecords.reset();
+
+        if(writer.size == 0) return null;
+
+        CRC32 crc = new CRC32();
+        crc.update(writer.buffer, 0, writer.size);
+        ByteBuffer entry = ByteBuffer.allocate(8 + writer.size);
+        entry.putInt(writer.size);
+        entry.putInt((int) crc.getValue());
+        entry.put(writer.buffer, 0, writer.size);
+        entrySize += entry.capacity();
+        return entry.array();
+    }
+
+    /**
+     * Writes a record if it differs from the last written one
+     * @param writer entry
+     * @param type record type
+     * @param record record payload
+     * @param last last written payload or null
+     * @return payload that was written last
+     */
+    private static byte[] writeIfChanged(SectionWriter writer, int type, SectionWriter record, byte[] last){
+        byte[] payload = Arrays.copyOf(record.buffer, record.size);
+        if(Arrays.equals(payload, last)) return last;
+        writer.writeByte(type);
+        writer.writeVarint(payload.length);
+        writer.write(payload, 0, payload.length);
+        return payload;
+    }
+
+    private void addArea(PlaceGroup area){
+        if(!areaIndices.containsKey(area)){
+            areaIndices.put(area, areas.size());
+            areas.add(area);
+        }
+    }
+
+    /**
+     * Gets the id of a layer in the world file
+     * @param id layer id in the world
+     * @return id in the world file
+     */
+    private int getFileLayerId(int id){
+        if(identityLayerIds) return id;
+        Integer fileId = layerIds.get(id);
+        if(fileId == null){
+            fileId = nextLayerId++;
+            layerIds.put(id, fileId);
+        }
+        return fileId;
+    }
+
+    private HashMap<Integer, Integer> getLayerTranslation(){
+        HashMap<Integer, Integer> translation = new HashMap<>();
+        for(Layer layer: world.getLayers()){
+            translation.put(layer.getId(), getFileLayerId(layer.getId()));
+        }
+        return translation;
+    }
+
+    private static void writeColor(SectionWriter writer, Color color){
+        writer.writeByte(color != null ? 1 : 0);
+        if(color != null) writer.writeColor(color);
+    }
+
+    private SectionWriter encodeSettings(){
+        SectionWriter record = new SectionWriter();
+        record.writeString(world.getName());
+        record.writeString(world.getShowPlaceId().name());
+        writeColor(record, world.getTileCenterColor());
+        writeColor(record, world.getPathColorStd());
+        writeColor(record, world.getPathColorNstd());
+        record.writeVarint(world.getPathColors().size());
+        for(Map.Entry<String, Color> pathColor: world.getPathColors().entrySet()){
+            record.writeString(pathColor.getKey());
+            writeColor(record, pathColor.getValue());
+        }
+
+        WorldCoordinate home = world.getHome();
+        record.writeVarint(getFileLayerId(home.getLayer()));
+        record.writeDouble(home.getX());
+        record.writeDouble(home.getY());
+
+        record.writeVarint(world.getRiskLevels().size());
+        for(RiskLevel riskLevel: world.getRiskLevels()){
+            record.writeSignedVarint(riskLevel.getId());
+            record.writeString(riskLevel.getDescription());
+            writeColor(record, riskLevel.getColor());
+        }
+
+        // removed areas stay in the table until the next epoch
+        HashSet<PlaceGroup> worldAreas = new HashSet<>(world.getPlaceGroups());
+        record.writeVarint(areas.size());
+        for(PlaceGroup area: areas){
+            record.writeString(area.getName());
+            writeColor(record, area.getColor());
+            record.writeByte(worldAreas.contains(area) ? 1 : 0);
+        }
+
+        JSONObject preferences = world.getPreferences();
+        record.writeString(preferences != null ? preferences.toString() : "");
+        return record;
+    }
+
+    private SectionWriter encodeLayers(){
+        SectionWriter record = new SectionWriter();
+        record.writeVarint(world.getLayers().size());
+        for(Layer layer: world.getLayers()){
+            record.writeVarint(getFileLayerId(layer.getId()));
+            record.writeByte(layer.hasName() ? 1 : 0);
+            if(layer.hasName()) record.writeString(layer.getName());
+        }
+        return record;
+    }
+
+    private void writePlace(SectionWriter writer, Place place){
+        writer.writeByte(RECORD_PLACE);
+        writer.writeVarint(place.getId());
+        writer.writeVarint(getFileLayerId(place.getLayer().getId()));
+        writer.writeSignedVarint(place.getX());
+        writer.writeSignedVarint(place.getY());
+        writer.writeString(place.getName());
+        writer.writeVarint(place.getPlaceGroup() != null ? areaIndices.get(place.getPlaceGroup()) + 1 : 0);
+        writer.writeSignedVarint(place.getRiskLevel() != null ? place.getRiskLevel().getId() : WorldSnapshot.NO_RISK_LEVEL);
+        writer.writeSignedVarint(place.getRecLevelMin());
+        writer.writeSignedVarint(place.getRecLevelMax());
+        writer.writeString(place.getComments() != null ? place.getComments() : "");
+
+        int flagCount = 0;
+        for(Boolean flag: place.getFlags().values()){
+            if(flag) ++flagCount;
+        }
+        writer.writeVarint(flagCount);
+        for(Map.Entry<String, Boolean> flag: place.getFlags().entrySet()){
+            if(flag.getValue()) writer.writeString(flag.getKey());
+        }
+
+        writer.writeVarint(place.getChildren().size());
+        for(Place child: place.getChildren()) writer.writeVarint(child.getId());
+        writer.writeVarint(place.getParents().size());
+        for(Place parent: place.getParents()) writer.writeVarint(parent.getId());
+    }
+
+    /**
+     * Creates a snapshot to rewrite the world file with compact(). The
+     * journal starts a new epoch with the layer ids of the snapshot. Has to
+     * be called on the thread that modifies the world
+     * @return snapshot
+     */
+    public WorldSnapshot createSnapshot(){
+        WorldSnapshot snapshot = worldFile.createSnapshot(world);
+
+        identityLayerIds = false;
+        layerIds.clear();
+        layerIds.putAll(snapshot.layerIndices);
+        nextLayerId = snapshot.layerIds.length;
+
+        startEpoch();
+        changedPlaces.clear();
+        pathRecords.reset();
+
+        hasBase = true;
+        entrySize = 0;
+        return snapshot;
+    }
+
+    // --------- writing -------------------------------------------------------
+
+    /**
+     * Appends an entry to the journal file. Entries are dropped after writing
+     * failed, the next save rewrites the world file
+     * @param entry entry from createEntry()
+     * @throws IOException
+     */
+    public synchronized void append(byte[] entry) throws IOException {
+        if(failed) return;
+
+        boolean written = false;
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)){
+            // drop incomplete entries of earlier sessions
+            channel.truncate(fileSize);
+            channel.position(fileSize);
+            if(fileSize == 0){
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.put(MAGIC);
+                header.put((byte) VERSION);
+                header.putLong(baseSize);
+                header.putLong(baseModified);
+                header.flip();
+                while(header.hasRemaining()) channel.write(header);
+            }
+            ByteBuffer data = ByteBuffer.wrap(entry);
+            while(data.hasRemaining()) channel.write(data);
+            channel.force(false);
+            fileSize = channel.position();
+            written = true;
+        } finally {
+            if(!written) failed = true;
+        }
+    }
+
+    /**
+     * Rewrites the world file with a snapshot from createSnapshot() and
+     * clears the journal, can be called on any thread
+     * @param snapshot snapshot
+     * @param listener progress listener or null
+     * @throws IOException
+     */
+    public synchronized void compact(WorldSnapshot snapshot, WorldFileProgressListener listener) throws IOException {
+        boolean written = false;
+        try {
+            worldFile.writeSnapshot(snapshot, listener);
+            Files.deleteIfExists(file.toPath());
+
+            File base = new File(worldFile.getFilename());
+            baseSize = base.length();
+            baseModified = base.lastModified();
+            baseLength = baseSize;
+            fileSize = 0;
+            written = true;
+        } finally {
+            failed = !written;
+        }
+    }
+
+    // --------- reading -------------------------------------------------------
+
+    /**
+     * Applies the journal to a world that was just read from the world file.
+     * A journal of another version of the world file is ignored
+     * @param world world
+     * @throws IOException
+     */
+    public void replay(World world) throws IOException {
+        File base = new File(worldFile.getFilename());
+        baseSize = base.length();
+        baseModified = base.lastModified();
+        baseLength = baseSize;
+        hasBase = true;
+        fileSize = 0;
+        entrySize = 0;
+
+        if(!file.exists()) return;
+
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        byte[] magic = new byte[MAGIC.length];
+        if(data.remaining() >= HEADER_SIZE) data.get(magic);
+        if(!Arrays.equals(magic, MAGIC) || data.get() != VERSION
+                || data.getLong() != baseSize || data.getLong() != baseModified){
+            Logger.getLogger(WorldJournal.class.getName()).log(Level.WARNING,
+                    "Ignored journal {0}, it doesn''t belong to the world file", file);
+            return;
+        }
+
+        Replay replay = new Replay(world);
+        int position = HEADER_SIZE;
+        while(data.remaining() >= 8){
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if(length < 0 || length > data.remaining()) break;
+
+            CRC32 crc = new CRC32();
+            crc.update(data.array(), data.position(), length);
+            if((int) crc.getValue() != checksum) break;
+
+            ByteBuffer payload = ByteBuffer.wrap(data.array(), data.position(), length).slice();
+            try {
+                replay.apply(payload);
+            } catch(Exception ex){
+                Logger.getLogger(WorldJournal.class.getName()).log(Level.SEVERE, "Could not replay journal " + file, ex);
+                break;
+            }
+            data.position(data.position() + length);
+            position = data.position();
+        }
+
+        if(position < data.capacity()){
+            Logger.getLogger(WorldJournal.class.getName()).log(Level.WARNING,
+                    "Ignored incomplete entries at the end of journal {0}", file);
+        }
+        fileSize = position;
+        entrySize = position - HEADER_SIZE;
+        metaData = replay.meta;
+    }
+
+    /**
+     * Applies journal entries to a world. Places are looked up by their id,
+     * only the layers that contain places of the entries are loaded
+     */
+    private static class Replay {
+        final World world;
+        final HashMap<Integer, Place> places = new HashMap<>();
+        // layers whose places are in the place map
+        final HashSet<Layer> indexed = new HashSet<>();
+        final ArrayList<PlaceGroup> areas = new ArrayList<>();
+        JSONObject meta = null;
+
+        Replay(World world){
+            this.world = world;
+        }
+
+        private Place getPlace(int id){
+            Place place = places.get(id);
+            if(place == null){
+                indexPlaces();
+                place = places.get(id);
+            }
+            if(place == null){
+                // load the layer that contains the place
+                for(Layer layer: world.getLayers()){
+                    LayerLoader loader = layer.getLoader();
+                    if(loader != null && loader.containsPlace(layer, id)){
+                        layer.isEmpty();
+                        indexPlaces();
+                        place = places.get(id);
+                        break;
+                    }
+                }
+            }
+            return place;
+        }
+
+        /**
+         * Adds the places of layers that were loaded or read since the last
+         * call. A loader reads all places of a layer at once, so each layer
+         * is indexed once
+         */
+        private void indexPlaces(){
+            for(Layer layer: world.getLayers()){
+                if(indexed.contains(layer)) continue;
+                HashSet<Place> layerPlaces = layer.getLoadedPlaces();
+                if(layer.isLoaded() || !layerPlaces.isEmpty()){
+                    for(Place place: layerPlaces) places.put(place.getId(), place);
+                    indexed.add(layer);
+                }
+            }
+        }
+
+        private Layer getLayer(int id){
+            Layer layer = world.getLayer(id);
+            if(layer == null) world.addLayer(layer = new Layer(id, world));
+            return layer;
+        }
+
+        private static Color readColor(ByteBuffer data){
+            return data.get() != 0 ? new Color(readVarint(data)) : null;
+        }
+
+        void apply(ByteBuffer data) throws Exception {
+            // connections are set after all places of the entry exist
+            HashMap<Place, int[][]> connections = new HashMap<>();
+
+            while(data.hasRemaining()){
+                int type = data.get();
+                switch(type){
+                    case RECORD_EPOCH:
+                        readEpoch(data);
+                        break;
+                    case RECORD_SETTINGS:
+                        readVarint(data); // length
+                        readSettings(data);
+                        break;
+                    case RECORD_LAYERS:
+                        readVarint(data);
+                        readLayers(data);
+                        break;
+                    case RECORD_META:
+                        readVarint(data);
+                        meta = new JSONObject(readString(data));
+                        break;
+                    case RECORD_PLACE:
+                        readPlace(data, connections);
+                        break;
+                    case RECORD_REMOVE_PLACE:
+                        Place place = getPlace(readVarint(data));
+                        if(place != null){
+                            places.remove(place.getId());
+                            connections.remove(place);
+                            place.removeConnections();
+                            place.getLayer().remove(place);
+                        }
+                        break;
+                    case RECORD_PATH:
+                    case RECORD_REMOVE_PATH:
+                        readPath(data, type == RECORD_PATH);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown journal record " + type);
+                }
+            }
+
+            for(Map.Entry<Place, int[][]> connection: connections.entrySet()){
+                connect(connection.getKey(), connection.getValue()[0], connection.getValue()[1]);
+            }
+        }
+
+        private void readEpoch(ByteBuffer data){
+            areas.clear();
+            int count = readVarint(data);
+            for(int i = 0; i < count; ++i){
+                String name = readString(data);
+                areas.add(findArea(name, readColor(data)));
+            }
+        }
+
+        private void readSettings(ByteBuffer data){
+            world.setName(readString(data));
+            world.setShowPlaceID(World.ShowPlaceID.valueOf(readString(data)));
+            Color color;
+            if((color = readColor(data)) != null) world.setTileCenterColor(color);
+            if((color = readColor(data)) != null) world.setPathColorStd(color);
+            if((color = readColor(data)) != null) world.setPathColorNstd(color);
+            int count = readVarint(data);
+            for(int i = 0; i < count; ++i){
+                String path = readString(data);
+                world.setPathColor(path, readColor(data));
+            }
+
+            int homeLayer = readVarint(data);
+            double homeX = data.getDouble();
+            double homeY = data.getDouble();
+            world.setHome(new WorldCoordinate(homeLayer, homeX, homeY));
+
+            HashSet<Integer> riskLevels = new HashSet<>();
+            count = readVarint(data);
+            for(int i = 0; i < count; ++i){
+                int id = readSignedVarint(data);
+                String description = readString(data);
+                color = readColor(data);
+                RiskLevel riskLevel = world.getRiskLevel(id);
+                if(riskLevel == null){
+                    world.setRiskLevel(new RiskLevel(id, description, color));
+                } else {
+                    riskLevel.setDescription(description);
+                    riskLevel.setColor(color);
+                }
+                riskLevels.add(id);
+            }
+            for(RiskLevel riskLevel: new ArrayList<>(world.getRiskLevels())){
+                if(!riskLevels.contains(riskLevel.getId())){
+                    try {
+                        world.removeRiskLevel(riskLevel);
+                    } catch (Exception ex) {
+                        Logger.getLogger(WorldJournal.class.getName()).log(Level.WARNING, null, ex);
+                    }
+                }
+            }
+
+            count = readVarint(data);
+            for(int i = 0; i < count; ++i){
+                String name = readString(data);
+                color = readColor(data);
+                boolean exists = data.get() != 0;
+
+                PlaceGroup area;
+                if(i < areas.size()){
+                    area = areas.get(i);
+                    area.setName(name);
+                    area.setColor(color);
+                } else {
+                    area = new PlaceGroup(name, color);
+                    areas.add(area);
+                }
+
+                boolean inWorld = world.getPlaceGroups().contains(area);
+                if(exists && !inWorld) world.addPlaceGroup(area);
+                else if(!exists && inWorld) world.removePlaceGroup(area);
+            }
+
+            String preferences = readString(data);
+            if(!preferences.isEmpty()) world.setPreferences(new JSONObject(preferences));
+        }
+
+        /**
+         * Gets an area of the world that isn't in the area table yet or
+         * creates a new one, if the world file doesn't contain the area
+         */
+        private PlaceGroup findArea(String name, Color color){
+            for(PlaceGroup area: world.getPlaceGroups()){
+                if(area.getName().equals(name) && (color == null ? area.getColor() == null : color.equals(area.getColor()))
+                        && !areas.contains(area)){
+                    return area;
+                }
+            }
+            return new PlaceGroup(name, color);
+        }
+
+        private void readLayers(ByteBuffer data){
+            // the record contains all layers, the others were removed
+            HashSet<Layer> layers = new HashSet<>();
+            int count = readVarint(data);
+            for(int i = 0; i < count; ++i){
+                Layer layer = getLayer(readVarint(data));
+                if(data.get() != 0) layer.setName(readString(data));
+                layers.add(layer);
+            }
+            for(Layer layer: new ArrayList<>(world.getLayers())){
+                if(!layers.contains(layer)){
+                    for(Place place: layer.getPlaces()) places.remove(place.getId());
+                    world.removeLayer(layer);
+                }
+            }
+        }
+
+        private void readPlace(ByteBuffer data, HashMap<Place, int[][]> connections) throws Exception {
+            int id = readVarint(data);
+            Layer layer = getLayer(readVarint(data));
+            int x = readSignedVarint(data);
+            int y = readSignedVarint(data);
+            String name = readString(data);
+
+            Place place = getPlace(id);
+            if(place == null){
+                place = new Place(id, name, x, y, layer);
+                layer.put(place);
+                places.put(id, place);
+            } else if(place.getLayer() != layer || place.getX() != x || place.getY() != y){
+                layer.put(place, x, y);
+            }
+            place.setName(name);
+
+            int area = readVarint(data);
+            place.setPlaceGroup(area > 0 ? areas.get(area - 1) : null);
+            int riskLevel = readSignedVarint(data);
+            place.setRiskLevel(riskLevel != WorldSnapshot.NO_RISK_LEVEL ? world.getRiskLevel(riskLevel) : null);
+            place.setRecLevelMin(readSignedVarint(data));
+            place.setRecLevelMax(readSignedVarint(data));
+            place.setComments(readString(data));
+
+            place.getFlags().clear();
+            int count = readVarint(data);
+            for(int i = 0; i < count; ++i) place.setFlag(readString(data), true);
+
+            int[] children = new int[readVarint(data)];
+            for(int i = 0; i < children.length; ++i) children[i] = readVarint(data);
+            int[] parents = new int[readVarint(data)];
+            for(int i = 0; i < parents.length; ++i) parents[i] = readVarint(data);
+            connections.put(place, new int[][]{children, parents});
+        }
+
+        /**
+         * Replaces the child and parent connections of a place
+         */
+        private void connect(Place place, int[] children, int[] parents){
+            HashSet<Place> newChildren = new HashSet<>();
+            for(int id: children){
+                Place child = getPlace(id);
+                if(child != null) newChildren.add(child);
+            }
+            for(Place child: new ArrayList<>(place.getChildren())){
+                if(!newChildren.contains(child)) place.removeChild(child);
+            }
+            for(Place child: newChildren){
+                if(!place.getChildren().contains(child)) place.connectChild(child);
+            }
+
+            HashSet<Place> newParents = new HashSet<>();
+            for(int id: parents){
+                Place parent = getPlace(id);
+                if(parent != null) newParents.add(parent);
+            }
+            for(Place parent: new ArrayList<>(place.getParents())){
+                if(!newParents.contains(parent)) parent.removeChild(place);
+            }
+            for(Place parent: newParents){
+                if(!place.getParents().contains(parent)) parent.connectChild(place);
+            }
+        }
+
+        private void readPath(ByteBuffer data, boolean connect){
+            Place place0 = getPlace(readVarint(data));
+            String exit0 = readString(data);
+            Place place1 = getPlace(readVarint(data));
+            String exit1 = readString(data);
+            // the places might have been removed later
+            if(place0 == null || place1 == null) return;
+
+            Path path = place0.getExit(exit0);
+            boolean exists = path != null && path.getOtherPlace(place0) == place1
+                    && path.getExitDirections()[path.getPlaces()[0] == place0 ? 1 : 0].equals(exit1);
+            if(connect && !exists){
+                place0.connectPath(new Path(place0, exit0, place1, exit1));
+            } else if(!connect && exists){
+                place0.removePath(path);
+            }
+        }
+    }
+
+}
@@ -25,6 +25,7 @@
 package mudmap2.backend;
 
 import java.util.HashSet;
+import mudmap2.backend.WorldFileReader.BackupManager;
 import mudmap2.backend.WorldFileReader.WorldFile;
 import mudmap2.backend.WorldFileReader.current.WorldFileDefault;
 
@@ -81,7 +82,8 @@ public class WorldManager {
             WorldFile worldFile = new WorldFileDefault(filename);
             if(worldFile.canRead()){
                 ret = worldFile.readFile();
-                worldFile.backup();
+                // the world is opened while the backup is written
+                BackupManager.backup(worldFile);
                 register(ret);
             } else {
                 throw new Exception("Could not read world file: invalid format");
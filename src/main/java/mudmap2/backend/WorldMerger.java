@@ -0,0 +1,487 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Applies the differences between two versions of a world to the open one,
+ *  eg. after the world file was changed by another program. Places are
+ *  matched by their id, layers by the places on them, risk levels by their id
+ *  and place groups by their name. Objects that didn't change aren't
+ *  touched, so the change listeners only see the differences
+ */
+
+package mudmap2.backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Updates a world to another version of it
+ * @author neop
+ */
+public class WorldMerger {
+
+    /**
+     * Number of changed objects
+     */
+    public static class Result {
+        int placesAdded = 0, placesChanged = 0, placesRemoved = 0;
+        int pathsAdded = 0, pathsRemoved = 0;
+        int layersAdded = 0, layersChanged = 0, layersRemoved = 0;
+
+        public int getPlacesAdded(){
+            return placesAdded;
+        }
+
+        public int getPlacesChanged(){
+            return placesChanged;
+        }
+
+        public int getPlacesRemoved(){
+            return placesRemoved;
+        }
+
+        public int getPathsAdded(){
+            return pathsAdded;
+        }
+
+        public int getPathsRemoved(){
+            return pathsRemoved;
+        }
+
+        public int getLayersAdded(){
+            return layersAdded;
+        }
+
+        public int getLayersChanged(){
+            return layersChanged;
+        }
+
+        public int getLayersRemoved(){
+            return layersRemoved;
+        }
+
+        /**
+         * Checks whether the world was changed
+         * @return true if anything was changed
+         */
+        public boolean isChanged(){
+            return placesAdded + placesChanged + placesRemoved + pathsAdded
+                    + pathsRemoved + layersAdded + layersChanged + layersRemoved > 0;
+        }
+
+        @Override
+        public String toString(){
+            return placesAdded + " places added, " + placesChanged + " changed, "
+                    + placesRemoved + " removed, " + pathsAdded + " paths added, "
+                    + pathsRemoved + " removed";
+        }
+    }
+
+    final World target;
+    final World source;
+    final Result result = new Result();
+
+    // places of the target world by id
+    final HashMap<Integer, Place> places = new HashMap<>();
+    // source layer to target layer
+    final HashMap<Layer, Layer> layers = new HashMap<>();
+
+    private WorldMerger(World target, World source){
+        this.target = target;
+        this.source = source;
+    }
+
+    /**
+     * Changes a world so that it equals another version of it. The change
+     * listeners of the target world are called once per changed object,
+     * see World.beginUpdate(). Has to be called on the thread that modifies
+     * the target world
+     * @param target world to change
+     * @param source new version, isn't modified
+     * @return number of changes
+     */
+    public static Result merge(World target, World source){
+        WorldMerger merger = new WorldMerger(target, source);
+        target.beginUpdate();
+        try {
+            merger.mergeWorld();
+            merger.mapLayers();
+            merger.mergePlaces();
+            merger.mergeConnections();
+            merger.removeUnused();
+        } finally {
+            target.endUpdate();
+        }
+        return merger.result;
+    }
+
+    /**
+     * Updates the world name, home position, risk levels and place groups
+     */
+    void mergeWorld(){
+        if(!Objects.equals(target.getName(), source.getName())){
+            target.setName(source.getName());
+        }
+
+        for(RiskLevel riskLevel: source.getRiskLevels()){
+            RiskLevel current = target.getRiskLevel(riskLevel.getId());
+            if(current == null){
+                target.setRiskLevel(new RiskLevel(riskLevel.getId(), riskLevel.getDescription(), riskLevel.getColor()));
+            } else {
+                if(!Objects.equals(current.getDescription(), riskLevel.getDescription())){
+                    current.setDescription(riskLevel.getDescription());
+                }
+                if(!Objects.equals(current.getColor(), riskLevel.getColor())){
+                    current.setColor(riskLevel.getColor());
+                }
+            }
+        }
+
+        for(PlaceGroup placeGroup: source.getPlaceGroups()){
+            PlaceGroup current = getPlaceGroup(placeGroup);
+            if(!Objects.equals(current.getColor(), placeGroup.getColor())){
+                current.setColor(placeGroup.getColor());
+            }
+        }
+    }
+
+    /**
+     * Finds the target layer of each source layer: the layer that contains
+     * most of its places, or a new layer if none does. The names of the
+     * layers are updated
+     */
+    void mapLayers(){
+        for(Layer layer: target.getLayers()){
+            for(Place place: layer.getPlaces()){
+                places.put(place.getId(), place);
+            }
+        }
+
+        HashSet<Layer> mapped = new HashSet<>();
+        ArrayList<Layer> unmapped = new ArrayList<>();
+        for(Layer layer: source.getLayers()){
+            // count the places of the source layer on each target layer
+            HashMap<Layer, Integer> counts = new HashMap<>();
+            for(Place place: layer.getPlaces()){
+                Place current = places.get(place.getId());
+                if(current != null){
+                    Integer count = counts.get(current.getLayer());
+                    counts.put(current.getLayer(), count == null ? 1 : count + 1);
+                }
+            }
+            Layer best = null;
+            int bestCount = 0;
+            for(Map.Entry<Layer, Integer> count: counts.entrySet()){
+                if(count.getValue() > bestCount && !mapped.contains(count.getKey())){
+                    best = count.getKey();
+                    bestCount = count.getValue();
+                }
+            }
+            if(best == null){
+                // empty layers keep their id in the file
+                best = target.getLayer(layer.getId());
+                if(best != null && (mapped.contains(best) || !best.isEmpty())) best = null;
+            }
+            if(best == null){
+                unmapped.add(layer);
+            } else {
+                layers.put(layer, best);
+                mapped.add(best);
+            }
+        }
+
+        for(Layer layer: unmapped){
+            layers.put(layer, target.getNewLayer(layer.hasName() ? layer.getName() : null));
+            ++result.layersAdded;
+        }
+
+        for(Map.Entry<Layer, Layer> entry: layers.entrySet()){
+            Layer layer = entry.getKey();
+            Layer current = entry.getValue();
+            if(layer.hasName() && !layer.getName().equals(current.hasName() ? current.getName() : null)){
+                current.setName(layer.getName());
+                ++result.layersChanged;
+            }
+        }
+    }
+
+    /**
+     * Adds, removes, moves and updates the places
+     */
+    void mergePlaces(){
+        HashSet<Integer> ids = new HashSet<>();
+        // places that move, they are removed first, so that places can swap
+        // their positions
+        LinkedHashMap<Place, Place> moved = new LinkedHashMap<>();
+        ArrayList<Place> added = new ArrayList<>();
+
+        for(Layer layer: source.getLayers()){
+            Layer targetLayer = layers.get(layer);
+            for(Place place: layer.getPlaces()){
+                ids.add(place.getId());
+                Place current = places.get(place.getId());
+                if(current == null){
+                    current = new Place(place.getId(), place.getName(), place.getX(), place.getY(), targetLayer);
+                    places.put(current.getId(), current);
+                    added.add(current);
+                    ++result.placesAdded;
+                } else if(current.getLayer() != targetLayer || current.getX() != place.getX() || current.getY() != place.getY()){
+                    current.getLayer().remove(current);
+                    moved.put(current, place);
+                    ++result.placesChanged;
+                } else if(!equals(current, place)){
+                    ++result.placesChanged;
+                }
+                mergeAttributes(current, place);
+            }
+        }
+
+        // remove the places that aren't in the source world
+        ArrayList<Place> removed = new ArrayList<>();
+        for(Place place: places.values()){
+            if(!ids.contains(place.getId())) removed.add(place);
+        }
+        for(Place place: removed){
+            place.removeConnections();
+            place.getLayer().remove(place);
+            places.remove(place.getId());
+            ++result.placesRemoved;
+        }
+
+        for(Map.Entry<Place, Place> entry: moved.entrySet()){
+            Place place = entry.getKey();
+            Place sourcePlace = entry.getValue();
+            try {
+                layers.get(sourcePlace.getLayer()).put(place, sourcePlace.getX(), sourcePlace.getY());
+            } catch(Exception ex){
+                throw new RuntimeException("Could not move place " + place.getId(), ex);
+            }
+        }
+        for(Place place: added){
+            try {
+                place.getLayer().put(place);
+            } catch(Layer.PlaceNotInsertedException ex){
+                throw new RuntimeException("Could not add place " + place.getId(), ex);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the attributes of two places are equal
+     * @param current place of the target world
+     * @param place place of the source world
+     * @return true if nothing has to be updated
+     */
+    private boolean equals(Place current, Place place){
+        return Objects.equals(current.getName(), place.getName())
+                && Objects.equals(current.getComments(), place.getComments())
+                && current.getRecLevelMin() == place.getRecLevelMin()
+                && current.getRecLevelMax() == place.getRecLevelMax()
+                && getRiskLevelId(current) == getRiskLevelId(place)
+                && Objects.equals(getPlaceGroupName(current), getPlaceGroupName(place))
+                && getFlags(current).equals(getFlags(place));
+    }
+
+    /**
+     * Copies the attributes that differ
+     * @param current place of the target world
+     * @param place place of the source world
+     */
+    private void mergeAttributes(Place current, Place place){
+        if(!Objects.equals(current.getName(), place.getName())) current.setName(place.getName());
+        if(!Objects.equals(current.getComments(), place.getComments())) current.setComments(place.getComments());
+        if(current.getRecLevelMin() != place.getRecLevelMin()) current.setRecLevelMin(place.getRecLevelMin());
+        if(current.getRecLevelMax() != place.getRecLevelMax()) current.setRecLevelMax(place.getRecLevelMax());
+        if(getRiskLevelId(current) != getRiskLevelId(place)){
+            current.setRiskLevel(place.getRiskLevel() == null ? null : target.getRiskLevel(place.getRiskLevel().getId()));
+        }
+        if(!Objects.equals(getPlaceGroupName(current), getPlaceGroupName(place))){
+            current.setPlaceGroup(place.getPlaceGroup() == null ? null : getPlaceGroup(place.getPlaceGroup()));
+        }
+
+        HashMap<String, Boolean> flags = getFlags(place);
+        if(!getFlags(current).equals(flags)){
+            for(String flag: getFlags(current).keySet()){
+                if(!flags.containsKey(flag)) current.setFlag(flag, false);
+            }
+            for(String flag: flags.keySet()){
+                if(!current.getFlag(flag)) current.setFlag(flag, true);
+            }
+        }
+    }
+
+    /**
+     * Adds and removes paths and child relations
+     */
+    void mergeConnections(){
+        HashMap<String, Path> paths = new HashMap<>();
+        HashSet<String> children = new HashSet<>();
+        for(Place place: places.values()){
+            for(Path path: place.getPaths()){
+                paths.put(getKey(path), path);
+            }
+            for(Place child: place.getChildren()){
+                children.add(place.getId() + ">" + child.getId());
+            }
+        }
+
+        HashMap<String, Path> sourcePaths = new HashMap<>();
+        HashSet<String> sourceChildren = new HashSet<>();
+        for(Layer layer: source.getLayers()){
+            for(Place place: layer.getPlaces()){
+                for(Path path: place.getPaths()){
+                    sourcePaths.put(getKey(path), path);
+                }
+                for(Place child: place.getChildren()){
+                    sourceChildren.add(place.getId() + ">" + child.getId());
+                }
+            }
+        }
+
+        for(Map.Entry<String, Path> entry: paths.entrySet()){
+            if(!sourcePaths.containsKey(entry.getKey())){
+                entry.getValue().remove();
+                ++result.pathsRemoved;
+            }
+        }
+        for(Map.Entry<String, Path> entry: sourcePaths.entrySet()){
+            if(!paths.containsKey(entry.getKey())){
+                Path path = entry.getValue();
+                Place[] pathPlaces = path.getPlaces();
+                String[] exits = path.getExitDirections();
+                Place place1 = places.get(pathPlaces[0].getId());
+                Place place2 = places.get(pathPlaces[1].getId());
+                if(place1 != null && place2 != null
+                        && place1.connectPath(new Path(place1, exits[0], place2, exits[1]))){
+                    ++result.pathsAdded;
+                }
+            }
+        }
+
+        for(String child: children){
+            if(!sourceChildren.contains(child)){
+                String[] ids = child.split(">");
+                places.get(Integer.parseInt(ids[0])).removeChild(places.get(Integer.parseInt(ids[1])));
+            }
+        }
+        for(String child: sourceChildren){
+            if(!children.contains(child)){
+                String[] ids = child.split(">");
+                Place parent = places.get(Integer.parseInt(ids[0]));
+                Place place = places.get(Integer.parseInt(ids[1]));
+                if(parent != null && place != null) parent.connectChild(place);
+            }
+        }
+
+        WorldCoordinate home = source.getHome();
+        if(home != null){
+            Layer layer = layers.get(source.getLayer(home.getLayer()));
+            WorldCoordinate coordinate = new WorldCoordinate(layer == null ? home.getLayer() : layer.getId(), home.getX(), home.getY());
+            if(target.getHome() == null || target.getHome().compareTo(coordinate) != 0){
+                target.setHome(coordinate);
+            }
+        }
+    }
+
+    /**
+     * Removes the risk levels, place groups and layers that aren't in the
+     * source world. The places don't use them anymore, since they were
+     * updated, moved or removed before. The world clears the remaining
+     * references when they are removed
+     */
+    void removeUnused(){
+        for(RiskLevel riskLevel: new ArrayList<>(target.getRiskLevels())){
+            if(source.getRiskLevel(riskLevel.getId()) == null){
+                try {
+                    target.removeRiskLevel(riskLevel);
+                } catch(Exception ex){
+                    throw new RuntimeException("Could not remove risk level " + riskLevel.getId(), ex);
+                }
+            }
+        }
+
+        HashSet<String> placeGroups = new HashSet<>();
+        for(PlaceGroup placeGroup: source.getPlaceGroups()) placeGroups.add(placeGroup.getName());
+        for(PlaceGroup placeGroup: new ArrayList<>(target.getPlaceGroups())){
+            if(!placeGroups.contains(placeGroup.getName())) target.removePlaceGroup(placeGroup);
+        }
+
+        HashSet<Layer> mapped = new HashSet<>(layers.values());
+        for(Layer layer: new ArrayList<>(target.getLayers())){
+            if(!mapped.contains(layer)){
+                target.removeLayer(layer);
+                ++result.layersRemoved;
+            }
+        }
+    }
+
+    /**
+     * Gets or creates the place group of the target world with the name of
+     * a source place group
+     * @param placeGroup source place group
+     * @return target place group
+     */
+    private PlaceGroup getPlaceGroup(PlaceGroup placeGroup){
+        for(PlaceGroup current: target.getPlaceGroups()){
+            if(Objects.equals(current.getName(), placeGroup.getName())) return current;
+        }
+        PlaceGroup current = new PlaceGroup(placeGroup.getName(), placeGroup.getColor());
+        target.addPlaceGroup(current);
+        return current;
+    }
+
+    /**
+     * Gets a key that identifies a path by its places and exits, independent
+     * of the order of the places
+     * @param path path
+     * @return key
+     */
+    static String getKey(Path path){
+        Place[] pathPlaces = path.getPlaces();
+        String[] exits = path.getExitDirections();
+        String key1 = pathPlaces[0].getId() + ":" + exits[0];
+        String key2 = pathPlaces[1].getId() + ":" + exits[1];
+        return key1.compareTo(key2) <= 0 ? key1 + "|" + key2 : key2 + "|" + key1;
+    }
+
+    private static int getRiskLevelId(Place place){
+        return place.getRiskLevel() == null ? -1 : place.getRiskLevel().getId();
+    }
+
+    private static String getPlaceGroupName(Place place){
+        return place.getPlaceGroup() == null ? null : place.getPlaceGroup().getName();
+    }
+
+    /**
+     * Gets the set flags of a place
+     * @param place place
+     * @return flags that are true
+     */
+    private static HashMap<String, Boolean> getFlags(Place place){
+        HashMap<String, Boolean> flags = new HashMap<>();
+        for(Map.Entry<String, Boolean> flag: place.getFlags().entrySet()){
+            if(flag.getValue()) flags.put(flag.getKey(), true);
+        }
+        return flags;
+    }
+
+}
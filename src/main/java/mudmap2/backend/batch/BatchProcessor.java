@@ -0,0 +1,486 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Converts, validates and compacts many world files without the GUI. The
+ *  files are processed in parallel, each one by a single thread, so only a
+ *  few worlds are in memory at once
+ */
+
+package mudmap2.backend.batch;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import mudmap2.backend.Layer;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldFileReader.WorldFile;
+import mudmap2.backend.WorldFileReader.WorldFileType;
+import mudmap2.backend.WorldFileReader.current.WorldFileBinary;
+import mudmap2.backend.WorldFileReader.current.WorldFileDefault;
+import mudmap2.backend.WorldFileReader.current.WorldFileJSON;
+import mudmap2.backend.WorldFileReader.current.WorldFileSharded;
+import mudmap2.backend.WorldFileReader.current.WorldJournal;
+import mudmap2.backend.WorldFileReader.current.WorldMetaJSON;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Processes world files on a bounded thread pool
+ * @author neop
+ */
+public class BatchProcessor {
+
+    static final String[] EXTENSIONS = {".m2w.gz", ".m2w", ".m2b", ".m2s"};
+
+    /**
+     * Result of a world file
+     */
+    public static class Report {
+        final File file;
+        WorldFileType type = WorldFileType.UNKNOWN;
+        String worldName = null;
+        int layerCount = 0, placeCount = 0;
+        List<String> problems = new ArrayList<>();
+        File output = null;
+        Exception error = null;
+        long duration = 0;
+
+        Report(File file){
+            this.file = file;
+        }
+
+        public File getFile(){
+            return file;
+        }
+
+        public WorldFileType getType(){
+            return type;
+        }
+
+        public String getWorldName(){
+            return worldName;
+        }
+
+        public int getPlaceCount(){
+            return placeCount;
+        }
+
+        /**
+         * Gets the validation problems
+         * @return problems, empty if the world wasn't validated
+         */
+        public List<String> getProblems(){
+            return problems;
+        }
+
+        /**
+         * Gets the written file
+         * @return file or null if nothing was written
+         */
+        public File getOutput(){
+            return output;
+        }
+
+        /**
+         * Gets the error that stopped processing the file
+         * @return exception or null
+         */
+        public Exception getError(){
+            return error;
+        }
+
+        public boolean isOk(){
+            return error == null && problems.isEmpty();
+        }
+
+        @Override
+        public String toString(){
+            StringBuilder builder = new StringBuilder();
+            builder.append(file).append(": ");
+            if(error != null){
+                builder.append("error: ").append(error.getMessage() != null ? error.getMessage() : error.toString());
+            } else {
+                builder.append(type).append(" \"").append(worldName).append("\", ")
+                    .append(layerCount).append(" layers, ")
+                    .append(placeCount).append(" places");
+                if(output != null) builder.append(", written to ").append(output);
+                builder.append(", ").append(problems.isEmpty() ? "ok" : problems.size() + " problems");
+            }
+            builder.append(" (").append(duration).append(" ms)");
+            for(String problem: problems){
+                builder.append("\n    ").append(problem);
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * Writes the meta data that was read from the world file, with the
+     * layer ids of the new file
+     */
+    static class MetaCopy implements WorldMetaJSON {
+        final JSONObject meta;
+
+        MetaCopy(JSONObject meta){
+            this.meta = meta;
+        }
+
+        @Override
+        public JSONObject getMeta(HashMap<Integer, Integer> layerTranslation){
+            if(meta == null) return null;
+            JSONObject ret = new JSONObject(meta.toString());
+            JSONArray history = meta.optJSONArray("history");
+            if(history != null){
+                JSONArray translated = new JSONArray();
+                for(int i = 0; i < history.length(); ++i){
+                    JSONObject entry = history.optJSONObject(i);
+                    if(entry != null && entry.has("l") && layerTranslation.containsKey(entry.optInt("l"))){
+                        entry = new JSONObject(entry.toString());
+                        entry.put("l", layerTranslation.get(entry.optInt("l")));
+                        translated.put(entry);
+                    }
+                }
+                ret.put("history", translated);
+            }
+            return ret;
+        }
+    }
+
+    // target type, null to keep the type of each file
+    WorldFileType convertTo = null;
+    boolean compress = false;
+    // directory of converted files, null to write them next to the source
+    File outputDirectory = null;
+    boolean validate = true;
+    boolean compact = false;
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Sets the type of the converted files
+     * @param type JSON, BINARY, SHARDED or null to not convert
+     */
+    public void setConvertTo(WorldFileType type){
+        if(type != null && type != WorldFileType.JSON && type != WorldFileType.BINARY && type != WorldFileType.SHARDED){
+            throw new IllegalArgumentException("Can't convert to " + type);
+        }
+        convertTo = type;
+    }
+
+    /**
+     * Compresses converted JSON files
+     * @param compress true to compress
+     */
+    public void setCompress(boolean compress){
+        this.compress = compress;
+    }
+
+    /**
+     * Sets the directory of the converted files
+     * @param directory directory or null to write them next to the sources
+     */
+    public void setOutputDirectory(File directory){
+        outputDirectory = directory;
+    }
+
+    /**
+     * Enables the validation of the worlds, see WorldValidator
+     * @param validate true to validate
+     */
+    public void setValidate(boolean validate){
+        this.validate = validate;
+    }
+
+    /**
+     * Rewrites the world files, journaled files are compacted
+     * @param compact true to compact
+     */
+    public void setCompact(boolean compact){
+        this.compact = compact;
+    }
+
+    /**
+     * Sets the number of files that are processed at once
+     * @param threads number of threads, at least 1
+     */
+    public void setThreads(int threads){
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Gets the world files in a directory or the file itself. Other files
+     * like journals and backups are skipped
+     * @param file file or directory
+     * @return world files
+     */
+    public static List<File> findWorldFiles(File file){
+        ArrayList<File> ret = new ArrayList<>();
+        if(file.isDirectory()){
+            File[] files = file.listFiles();
+            if(files != null){
+                Arrays.sort(files);
+                for(File child: files){
+                    if(child.isFile() && new WorldFileDefault(child.getPath()).canRead()) ret.add(child);
+                }
+            }
+        } else {
+            ret.add(file);
+        }
+        return ret;
+    }
+
+    /**
+     * Processes world files on a thread pool
+     * @param files world files
+     * @return reports in the order of the files
+     */
+    public List<Report> process(Collection<File> files){
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "BatchProcessor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            ArrayList<Future<Report>> futures = new ArrayList<>();
+            for(final File file: files){
+                futures.add(executor.submit(new Callable<Report>() {
+                    @Override
+                    public Report call() throws Exception {
+                        return process(file);
+                    }
+                }));
+            }
+
+            ArrayList<Report> reports = new ArrayList<>();
+            for(Future<Report> future: futures){
+                try {
+                    reports.add(future.get());
+                } catch(InterruptedException ex){
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch(ExecutionException ex){
+                    // process() catches everything
+                    throw new RuntimeException(ex.getCause());
+                }
+            }
+            return reports;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Processes a world file. Errors are stored in the report
+     * @param file world file
+     * @return report
+     */
+    public Report process(File file){
+        Report report = new Report(file);
+        long start = System.currentTimeMillis();
+        WorldJournal journal = null;
+        try {
+            WorldFileDefault worldFile = new WorldFileDefault(file.getPath());
+            report.type = worldFile.getWorldFileType();
+            if(!worldFile.canRead()){
+                throw new Exception("not a world file");
+            }
+
+            World world = worldFile.readFile();
+            journal = worldFile.getJournal();
+            report.worldName = world.getName();
+            report.layerCount = world.getLayers().size();
+            for(Layer layer: world.getLayers()){
+                report.placeCount += layer.getPlaces().size();
+            }
+            MetaCopy meta = new MetaCopy(worldFile.getMetaData());
+
+            if(validate){
+                report.problems = WorldValidator.validate(world);
+            }
+
+            if(convertTo != null && (convertTo != report.type || outputDirectory != null
+                    || (convertTo == WorldFileType.JSON && compress != worldFile.isCompressed()))){
+                File output = getOutputFile(file);
+                if(output.getCanonicalFile().equals(file.getCanonicalFile()) && convertTo == report.type){
+                    // same file, rewrite it
+                    write(worldFile, journal, world, meta);
+                } else {
+                    WorldFile target = createWorldFile(output);
+                    target.setMetaGetter(meta);
+                    target.writeFile(world);
+                }
+                report.output = output;
+            } else if(compact){
+                write(worldFile, journal, world, meta);
+                report.output = file;
+            }
+        } catch(Exception ex){
+            report.error = ex;
+        } finally {
+            if(journal != null) journal.detach();
+        }
+        report.duration = System.currentTimeMillis() - start;
+        return report;
+    }
+
+    /**
+     * Rewrites a world file, a journal is compacted
+     */
+    private void write(WorldFileDefault worldFile, WorldJournal journal, World world, MetaCopy meta) throws Exception {
+        worldFile.setMetaGetter(meta);
+        if(journal != null){
+            journal.compact(journal.createSnapshot(), null);
+        } else {
+            worldFile.writeFile(world);
+        }
+    }
+
+    /**
+     * Gets the file name of a converted world file
+     * @param file source file
+     * @return converted file
+     */
+    File getOutputFile(File file){
+        String name = file.getName();
+        for(String extension: EXTENSIONS){
+            if(name.endsWith(extension)){
+                name = name.substring(0, name.length() - extension.length());
+                break;
+            }
+        }
+        switch(convertTo){
+            case BINARY:
+                name += ".m2b";
+                break;
+            case SHARDED:
+                name += ".m2s";
+                break;
+            default:
+                name += compress ? ".m2w.gz" : ".m2w";
+        }
+        File directory = outputDirectory != null ? outputDirectory : file.getAbsoluteFile().getParentFile();
+        return new File(directory, name);
+    }
+
+    /**
+     * Creates a world file of the target type
+     * @param file file
+     * @return world file
+     */
+    private WorldFile createWorldFile(File file){
+        File directory = file.getParentFile();
+        if(directory != null) directory.mkdirs();
+
+        WorldFile worldFile;
+        switch(convertTo){
+            case BINARY:
+                worldFile = new WorldFileBinary(file.getPath());
+                break;
+            case SHARDED:
+                worldFile = new WorldFileSharded(file.getPath());
+                break;
+            default:
+                worldFile = new WorldFileJSON(file.getPath());
+                worldFile.setCompressed(compress);
+        }
+        return worldFile;
+    }
+
+    /**
+     * Prints the usage of the batch command
+     * @param out stream
+     */
+    static void printUsage(PrintStream out){
+        out.println("Usage: mudmap2 --batch [options] <world file or directory>...");
+        out.println("  --convert json|binary|sharded  convert the world files");
+        out.println("  --compress                     compress converted json files");
+        out.println("  --output <directory>           directory of converted files");
+        out.println("  --compact                      rewrite the world files, compact journals");
+        out.println("  --no-validate                  don't check the worlds");
+        out.println("  --threads <n>                  number of files processed at once");
+    }
+
+    /**
+     * Runs the batch command
+     * @param args command line arguments without --batch
+     * @return exit code: 0 if all files are ok, 1 if a file has problems or
+     * errors, 2 on invalid arguments
+     */
+    public static int run(String[] args){
+        BatchProcessor processor = new BatchProcessor();
+        ArrayList<File> files = new ArrayList<>();
+        try {
+            for(int i = 0; i < args.length; ++i){
+                switch(args[i]){
+                    case "--convert":
+                        processor.setConvertTo(WorldFileType.valueOf(args[++i].toUpperCase()));
+                        break;
+                    case "--compress":
+                        processor.setCompress(true);
+                        break;
+                    case "--output":
+                        processor.setOutputDirectory(new File(args[++i]));
+                        break;
+                    case "--compact":
+                        processor.setCompact(true);
+                        break;
+                    case "--no-validate":
+                        processor.setValidate(false);
+                        break;
+                    case "--threads":
+                        processor.setThreads(Integer.parseInt(args[++i]));
+                        break;
+                    default:
+                        if(args[i].startsWith("--")) throw new IllegalArgumentException("Unknown option " + args[i]);
+                        files.addAll(findWorldFiles(new File(args[i])));
+                }
+            }
+        } catch(IllegalArgumentException | ArrayIndexOutOfBoundsException ex){
+            System.err.println(ex.getMessage() != null ? ex.getMessage() : "Missing argument");
+            printUsage(System.err);
+            return 2;
+        }
+        if(files.isEmpty()){
+            printUsage(System.err);
+            return 2;
+        }
+
+        int failed = 0;
+        for(Report report: processor.process(files)){
+            System.out.println(report);
+            if(!report.isOk()) ++failed;
+        }
+        System.out.println(files.size() + " files, " + failed + " with problems or errors");
+        return failed == 0 ? 0 : 1;
+    }
+
+}
@@ -0,0 +1,106 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Checks the consistency of a world: places that aren't stored where their
+ *  layer and position say, paths and child relations to places that aren't
+ *  on a layer or that only one side knows, and exits with several paths
+ */
+
+package mudmap2.backend.batch;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+
+/**
+ * Finds inconsistencies in a world
+ * @author neop
+ */
+public class WorldValidator {
+
+    private WorldValidator(){}
+
+    /**
+     * Checks a world
+     * @param world world
+     * @return descriptions of the problems, empty if the world is consistent
+     */
+    public static List<String> validate(World world){
+        ArrayList<String> problems = new ArrayList<>();
+
+        // places that are stored on a layer
+        HashSet<Place> places = new HashSet<>();
+        for(Layer layer: world.getLayers()){
+            for(Place place: layer.getPlaces()){
+                places.add(place);
+                if(place.getLayer() != layer){
+                    problems.add("place " + place.getId() + " is stored on layer " + layer.getId()
+                            + " but belongs to " + (place.getLayer() == null ? "no layer" : "layer " + place.getLayer().getId()));
+                } else if(layer.get(place.getX(), place.getY()) != place){
+                    problems.add("place " + place.getId() + " isn't stored at its position "
+                            + place.getX() + "," + place.getY() + " on layer " + layer.getId());
+                }
+            }
+        }
+
+        for(Place place: places){
+            HashSet<String> exits = new HashSet<>();
+            for(Path path: place.getPaths()){
+                Place[] pathPlaces = path.getPlaces();
+                if(pathPlaces[0] != place && pathPlaces[1] != place){
+                    problems.add("place " + place.getId() + " has a path that doesn't connect it");
+                    continue;
+                }
+                String exit = path.getExit(place);
+                if(!exits.add(exit)){
+                    problems.add("place " + place.getId() + " has several paths on exit " + exit);
+                }
+                Place other = path.getOtherPlace(place);
+                if(other == null || !places.contains(other)){
+                    problems.add("path " + place.getId() + " " + exit + " leads to "
+                            + (other == null ? "no place" : "place " + other.getId() + " that isn't on a layer"));
+                } else if(!other.getPaths().contains(path)){
+                    problems.add("path " + place.getId() + " " + exit + " to place " + other.getId()
+                            + " isn't known by place " + other.getId());
+                }
+            }
+
+            for(Place child: place.getChildren()){
+                if(!places.contains(child)){
+                    problems.add("child " + child.getId() + " of place " + place.getId() + " isn't on a layer");
+                } else if(!child.getParents().contains(place)){
+                    problems.add("child " + child.getId() + " doesn't know its parent " + place.getId());
+                }
+            }
+            for(Place parent: place.getParents()){
+                if(!places.contains(parent)){
+                    problems.add("parent " + parent.getId() + " of place " + place.getId() + " isn't on a layer");
+                } else if(!parent.getChildren().contains(place)){
+                    problems.add("parent " + parent.getId() + " doesn't know its child " + place.getId());
+                }
+            }
+        }
+        return problems;
+    }
+
+}
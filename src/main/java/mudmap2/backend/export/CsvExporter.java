@@ -0,0 +1,432 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Exports the layers, places, paths, flags and child relations of a world
+ *  to one CSV or TSV file each. The world is copied to a snapshot when the
+ *  exporter is created, so the export can run on a background thread. The
+ *  places are formatted in chunks on several threads and written in order
+ *  by the exporting thread, only a few chunks are kept in memory at once
+ */
+
+package mudmap2.backend.export;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import mudmap2.backend.Layer;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldFileReader.WorldFileProgressListener;
+import mudmap2.backend.WorldFileReader.WorldSnapshot;
+
+/**
+ * Exports a world to CSV or TSV files for other programs. The exporter is
+ * created on the thread that modifies the world, export() may be called on
+ * any thread
+ * @author neop
+ */
+public class CsvExporter {
+
+    public enum Format {
+        CSV(',', ".csv"),
+        TSV('\t', ".tsv");
+
+        final char separator;
+        final String extension;
+
+        Format(char separator, String extension){
+            this.separator = separator;
+            this.extension = extension;
+        }
+
+        public String getExtension(){
+            return extension;
+        }
+    }
+
+    // places per chunk
+    static final int CHUNK_SIZE = 4096;
+    static final int THREADS = Runtime.getRuntime().availableProcessors();
+    // chunks that are formatted or waiting to be written
+    static final int WINDOW = 2 * THREADS;
+
+    static final ExecutorService executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "CsvExporter");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /**
+     * Formatted rows of some places, reused for further chunks
+     */
+    static class Chunk {
+        final StringBuilder places = new StringBuilder(CHUNK_SIZE * 64);
+        final StringBuilder paths = new StringBuilder(CHUNK_SIZE * 32);
+        final StringBuilder flags = new StringBuilder();
+        final StringBuilder children = new StringBuilder();
+
+        void clear(){
+            places.setLength(0);
+            paths.setLength(0);
+            flags.setLength(0);
+            children.setLength(0);
+        }
+    }
+
+    final WorldSnapshot snapshot;
+    final Format format;
+    final char separator;
+    // all layers ordered by id, including the empty ones
+    final int[] layerIds;
+    final String[] layerNames;
+
+    final ConcurrentLinkedQueue<Chunk> freeChunks = new ConcurrentLinkedQueue<>();
+    // copy buffer from the chunks to the writers
+    final char[] buffer = new char[65536];
+
+    /**
+     * Constructs an exporter and copies the world, must be called on the
+     * thread that modifies the world
+     * @param world world to export
+     * @param format file format
+     */
+    public CsvExporter(World world, Format format){
+        this.format = format;
+        separator = format.separator;
+        snapshot = new WorldSnapshot(world);
+
+        ArrayList<Layer> layers = new ArrayList<>(world.getLayers());
+        Collections.sort(layers, new Comparator<Layer>() {
+            @Override
+            public int compare(Layer l1, Layer l2) {
+                return l1.getId().compareTo(l2.getId());
+            }
+        });
+        layerIds = new int[layers.size()];
+        layerNames = new String[layers.size()];
+        for(int i = 0; i < layerIds.length; ++i){
+            layerIds[i] = layers.get(i).getId();
+            layerNames[i] = layers.get(i).getName();
+        }
+    }
+
+    /**
+     * Gets the file of a table
+     * @param directory export directory
+     * @param table table name, eg. "places"
+     * @return file
+     */
+    public File getFile(File directory, String table){
+        return new File(directory, table + format.extension);
+    }
+
+    /**
+     * Writes the tables layers, places, paths, flags and children to a
+     * directory, existing files are replaced
+     * @param directory export directory
+     * @throws IOException
+     */
+    public void export(File directory) throws IOException {
+        export(directory, null);
+    }
+
+    /**
+     * Writes the tables layers, places, paths, flags and children to a
+     * directory, existing files are replaced
+     * @param directory export directory
+     * @param listener gets the progress or null
+     * @throws IOException
+     */
+    public void export(File directory, WorldFileProgressListener listener) throws IOException {
+        Files.createDirectories(directory.toPath());
+
+        try(Writer layerWriter = createWriter(directory, "layers", "id", "name");
+                Writer placeWriter = createWriter(directory, "places", "id", "layer", "x", "y", "name", "group", "risk", "rec_level_min", "rec_level_max", "comments");
+                Writer pathWriter = createWriter(directory, "paths", "place1", "exit1", "place2", "exit2");
+                Writer flagWriter = createWriter(directory, "flags", "place", "flag");
+                Writer childWriter = createWriter(directory, "children", "parent", "child")){
+
+            StringBuilder row = new StringBuilder();
+            for(int i = 0; i < layerIds.length; ++i){
+                row.append(layerIds[i]).append(separator);
+                appendText(row, layerNames[i]);
+                row.append('\n');
+            }
+            write(layerWriter, row);
+
+            final int[] order = getPlaceOrder();
+            final int[] pathBegin = getPathBegin();
+            final int chunkCount = (order.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            int written = 0;
+            ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+            try {
+                for(int from = 0; from < order.length; from += CHUNK_SIZE){
+                    if(pending.size() >= WINDOW){
+                        writeChunk(pending.poll(), placeWriter, pathWriter, flagWriter, childWriter);
+                        if(listener != null) listener.progressChanged(100 * ++written / chunkCount);
+                    }
+                    final int begin = from;
+                    final int end = Math.min(order.length, from + CHUNK_SIZE);
+                    pending.add(executor.submit(new Callable<Chunk>() {
+                        @Override
+                        public Chunk call() throws Exception {
+                            return formatChunk(order, begin, end, pathBegin);
+                        }
+                    }));
+                }
+                while(!pending.isEmpty()){
+                    writeChunk(pending.poll(), placeWriter, pathWriter, flagWriter, childWriter);
+                    if(listener != null) listener.progressChanged(100 * ++written / chunkCount);
+                }
+            } finally {
+                for(Future<Chunk> future: pending) future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Gets the snapshot indices of the places, ordered by layer and id
+     * @return place indices
+     */
+    private int[] getPlaceOrder(){
+        // the places of a layer are stored together
+        final int layerCount = snapshot.layerIds.length;
+        int[] layerBegin = new int[layerCount + 1];
+        Arrays.fill(layerBegin, snapshot.placeCount);
+        for(int i = snapshot.placeCount - 1; i >= 0; --i){
+            layerBegin[snapshot.placeLayers[i]] = i;
+        }
+
+        Integer[] layers = new Integer[layerCount];
+        for(int l = 0; l < layerCount; ++l) layers[l] = l;
+        Arrays.sort(layers, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer l1, Integer l2) {
+                return Integer.compare(snapshot.layerIds[l1], snapshot.layerIds[l2]);
+            }
+        });
+
+        int[] order = new int[snapshot.placeCount];
+        int count = 0;
+        for(int layer: layers){
+            int end = layerBegin[layer + 1];
+            // id in the high bits, index in the low bits
+            long[] keys = new long[end - layerBegin[layer]];
+            for(int i = layerBegin[layer]; i < end; ++i){
+                keys[i - layerBegin[layer]] = ((long) snapshot.placeIds[i] << 32) | i;
+            }
+            Arrays.sort(keys);
+            for(long key: keys) order[count++] = (int) key;
+        }
+        return order;
+    }
+
+    /**
+     * Gets the first path of each place, the paths of a place are stored
+     * together and in the order of the places
+     * @return index of the first path of each place and the path count
+     */
+    private int[] getPathBegin(){
+        int[] ret = new int[snapshot.placeCount + 1];
+        int path = 0;
+        for(int i = 0; i < snapshot.placeCount; ++i){
+            ret[i] = path;
+            while(path < snapshot.pathCount && snapshot.pathPlaces[2 * path] == snapshot.placeIds[i]) ++path;
+        }
+        ret[snapshot.placeCount] = path;
+        return ret;
+    }
+
+    /**
+     * Creates a buffered writer and writes the header of a table
+     * @param directory export directory
+     * @param table table name
+     * @param columns column names
+     * @return writer
+     * @throws IOException
+     */
+    private Writer createWriter(File directory, String table, String... columns) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(getFile(directory, table).toPath()), StandardCharsets.UTF_8), 65536);
+        for(int i = 0; i < columns.length; ++i){
+            if(i > 0) writer.write(separator);
+            writer.write(columns[i]);
+        }
+        writer.write('\n');
+        return writer;
+    }
+
+    /**
+     * Waits for a chunk and writes it
+     * @param future formatted chunk
+     * @throws IOException
+     */
+    private void writeChunk(Future<Chunk> future, Writer placeWriter, Writer pathWriter,
+            Writer flagWriter, Writer childWriter) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = future.get();
+        } catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", ex);
+        } catch(ExecutionException ex){
+            if(ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+            throw new IOException(ex.getCause());
+        }
+        write(placeWriter, chunk.places);
+        write(pathWriter, chunk.paths);
+        write(flagWriter, chunk.flags);
+        write(childWriter, chunk.children);
+        chunk.clear();
+        freeChunks.add(chunk);
+    }
+
+    /**
+     * Writes the content of a string builder without copying it to a string
+     * @param writer writer
+     * @param builder rows
+     * @throws IOException
+     */
+    private void write(Writer writer, StringBuilder builder) throws IOException {
+        int length = builder.length();
+        for(int offset = 0; offset < length; offset += buffer.length){
+            int count = Math.min(buffer.length, length - offset);
+            builder.getChars(offset, offset + count, buffer, 0);
+            writer.write(buffer, 0, count);
+        }
+    }
+
+    /**
+     * Formats the rows of some places
+     * @param order snapshot indices of the places
+     * @param begin first position in order
+     * @param end position after the last place in order
+     * @param pathBegin first path of each place
+     * @return chunk
+     */
+    Chunk formatChunk(int[] order, int begin, int end, int[] pathBegin){
+        Chunk chunk = freeChunks.poll();
+        if(chunk == null) chunk = new Chunk();
+
+        StringBuilder row = chunk.places;
+        for(int k = begin; k < end; ++k){
+            int i = order[k];
+            int id = snapshot.placeIds[i];
+            row.append(id).append(separator)
+                .append(snapshot.layerIds[snapshot.placeLayers[i]]).append(separator)
+                .append(snapshot.placeX[i]).append(separator)
+                .append(snapshot.placeY[i]).append(separator);
+            appendText(row, snapshot.placeNames[i]);
+            row.append(separator);
+            if(snapshot.placeAreas[i] >= 0) appendText(row, snapshot.areaNames[snapshot.placeAreas[i]]);
+            row.append(separator);
+            if(snapshot.placeRiskLevels[i] != WorldSnapshot.NO_RISK_LEVEL) row.append(snapshot.placeRiskLevels[i]);
+            row.append(separator);
+            if(snapshot.placeLevelMin[i] >= 0) row.append(snapshot.placeLevelMin[i]);
+            row.append(separator);
+            if(snapshot.placeLevelMax[i] >= 0) row.append(snapshot.placeLevelMax[i]);
+            row.append(separator);
+            appendText(row, snapshot.placeComments[i]);
+            row.append('\n');
+
+            // every path is stored by its first place
+            for(int path = pathBegin[i]; path < pathBegin[i + 1]; ++path){
+                chunk.paths.append(id).append(separator);
+                appendText(chunk.paths, snapshot.pathExits[2 * path]);
+                chunk.paths.append(separator).append(snapshot.pathPlaces[2 * path + 1]).append(separator);
+                appendText(chunk.paths, snapshot.pathExits[2 * path + 1]);
+                chunk.paths.append('\n');
+            }
+
+            if(snapshot.placeFlags[i] != null){
+                for(String flag: snapshot.placeFlags[i]){
+                    chunk.flags.append(id).append(separator);
+                    appendText(chunk.flags, flag);
+                    chunk.flags.append('\n');
+                }
+            }
+
+            if(snapshot.placeChildren[i] != null){
+                for(int child: snapshot.placeChildren[i]){
+                    chunk.children.append(id).append(separator).append(child).append('\n');
+                }
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Appends a field. CSV fields with separators, quotes or line breaks are
+     * quoted, in TSV files tabs, line breaks and backslashes are escaped
+     * @param builder row
+     * @param text field or null
+     */
+    void appendText(StringBuilder builder, String text){
+        if(text == null) return;
+        int length = text.length();
+        if(format == Format.TSV){
+            for(int i = 0; i < length; ++i){
+                char c = text.charAt(i);
+                switch(c){
+                    case '\t': builder.append("\\t"); break;
+                    case '\n': builder.append("\\n"); break;
+                    case '\r': builder.append("\\r"); break;
+                    case '\\': builder.append("\\\\"); break;
+                    default: builder.append(c);
+                }
+            }
+        } else {
+            boolean quote = false;
+            for(int i = 0; i < length && !quote; ++i){
+                char c = text.charAt(i);
+                quote = c == separator || c == '"' || c == '\n' || c == '\r';
+            }
+            if(!quote){
+                builder.append(text);
+                return;
+            }
+            builder.append('"');
+            for(int i = 0; i < length; ++i){
+                char c = text.charAt(i);
+                if(c == '"') builder.append('"');
+                builder.append(c);
+            }
+            builder.append('"');
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Describes the lines of a MUD client log by regular expressions: room
+ *  titles, exit lists and commands. The first group of each expression
+ *  contains the title, the exit list or the command
+ */
+
+package mudmap2.backend.logimport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Line format of a MUD client log
+ * @author neop
+ */
+public class LogFormat {
+
+    // any non-empty line, the first one after a command or an exit list
+    public static final String DEFAULT_TITLE = "^\\s*(\\S(?:.*\\S)?)\\s*$";
+    // eg. "[Exits: north east]" or "Obvious exits: n, e and s."
+    public static final String DEFAULT_EXITS = "(?i)^\\s*\\[?\\s*(?:obvious\\s+)?exits?\\s*:\\s*([^.\\]]*)[\\s.\\]]*$";
+    // eg. "> north"
+    public static final String DEFAULT_COMMAND = "^\\s*>\\s*(\\S+)\\s*$";
+    public static final String DEFAULT_EXIT_SEPARATOR = "[\\s,]+(?:and\\s+)?";
+
+    // ANSI color codes of the client
+    static final Pattern ANSI_ESCAPE = Pattern.compile("\u001B\\[[0-9;]*[A-Za-z]");
+
+    final Pattern title;
+    final Pattern exits;
+    final Pattern command;
+    final Pattern exitSeparator;
+
+    // direction names and abbreviations to exit directions
+    final HashMap<String, String> directions = new HashMap<>();
+
+    /**
+     * Constructs the default format
+     */
+    public LogFormat(){
+        this(DEFAULT_TITLE, DEFAULT_EXITS, DEFAULT_COMMAND, DEFAULT_EXIT_SEPARATOR);
+    }
+
+    /**
+     * Constructs a format
+     * @param title expression of room titles
+     * @param exits expression of exit lists
+     * @param command expression of commands, eg. movements
+     * @param exitSeparator expression between the exits of an exit list
+     * @throws java.util.regex.PatternSyntaxException
+     */
+    public LogFormat(String title, String exits, String command, String exitSeparator){
+        this.title = Pattern.compile(title);
+        this.exits = Pattern.compile(exits);
+        this.command = Pattern.compile(command);
+        this.exitSeparator = Pattern.compile(exitSeparator);
+
+        String[][] names = {
+            {"n", "north"}, {"ne", "northeast"}, {"e", "east"}, {"se", "southeast"},
+            {"s", "south"}, {"sw", "southwest"}, {"w", "west"}, {"nw", "northwest"},
+            {"u", "up"}, {"d", "down"}};
+        for(String[] name: names){
+            addDirection(name[0], name[0]);
+            addDirection(name[1], name[0]);
+        }
+    }
+
+    /**
+     * Adds a name of a direction, eg. for other languages
+     * @param name name in the log, case is ignored
+     * @param direction exit direction, eg. "n"
+     */
+    public void addDirection(String name, String direction){
+        directions.put(name.toLowerCase(), direction);
+    }
+
+    /**
+     * Gets the exit direction of a name
+     * @param name name in the log
+     * @return exit direction or null if the name isn't a direction
+     */
+    public String getDirection(String name){
+        return directions.get(name.toLowerCase());
+    }
+
+    /**
+     * Removes the color codes of a line
+     * @param line log line
+     * @return line without color codes
+     */
+    public String clean(String line){
+        if(line.indexOf('\u001B') < 0) return line;
+        return ANSI_ESCAPE.matcher(line).replaceAll("");
+    }
+
+    /**
+     * Gets the room title of a line
+     * @param line log line
+     * @return title or null if the line isn't a title
+     */
+    public String matchTitle(String line){
+        Matcher matcher = title.matcher(line);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Gets the exits of an exit list. Names of directions are translated
+     * to exit directions, other exits are kept
+     * @param line log line
+     * @return exits or null if the line isn't an exit list
+     */
+    public List<String> matchExits(String line){
+        Matcher matcher = exits.matcher(line);
+        if(!matcher.matches()) return null;
+
+        ArrayList<String> ret = new ArrayList<>();
+        String list = matcher.group(1);
+        if(list != null && !list.isEmpty()){
+            for(String exit: exitSeparator.split(list)){
+                if(exit.isEmpty()) continue;
+                String direction = getDirection(exit);
+                ret.add(direction != null ? direction : exit.toLowerCase());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the command of a command line, see getDirection() for movements
+     * @param line log line
+     * @return command or null if the line isn't a command
+     */
+    public String matchCommand(String line){
+        Matcher matcher = command.matcher(line);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+}
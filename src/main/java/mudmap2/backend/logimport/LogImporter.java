@@ -0,0 +1,506 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Reads MUD client logs line by line and creates places and paths for the
+ *  visited rooms. Rooms with the same title and exits are the same place,
+ *  unless their neighbours tell them apart. New places are put next to the
+ *  room they were entered from, on the nearest free position. Reading a log
+ *  doesn't touch the world, so it can be done on another thread than adding
+ *  the rooms. Logs are read in batches of rooms, so large logs don't have to
+ *  fit into memory
+ */
+
+package mudmap2.backend.logimport;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+
+/**
+ * Imports MUD client logs into a layer. The places are created in batches,
+ * see World.beginUpdate()
+ * @author neop
+ */
+public class LogImporter {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * Identifies rooms by their title and their exits
+     */
+    static class RoomKey {
+        final String title;
+        final TreeSet<String> exits;
+        final int hash;
+
+        RoomKey(String title, Collection<String> exits){
+            this.title = title;
+            this.exits = new TreeSet<>(exits);
+            hash = 31 * title.hashCode() + this.exits.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj){
+            if(!(obj instanceof RoomKey)) return false;
+            RoomKey other = (RoomKey) obj;
+            return hash == other.hash && title.equals(other.title) && exits.equals(other.exits);
+        }
+
+        @Override
+        public int hashCode(){
+            return hash;
+        }
+    }
+
+    /**
+     * A room read from a log and the direction it was entered from
+     */
+    public static class Visit {
+        final RoomKey key;
+        // null if the room wasn't entered by a move
+        final String direction;
+
+        Visit(RoomKey key, String direction){
+            this.key = key;
+            this.direction = direction;
+        }
+    }
+
+    /**
+     * Reads the visited rooms from the lines of a log, a batch at a time.
+     * Only the rooms are kept between the batches
+     */
+    public static class LogReader implements Closeable {
+        final LogFormat format;
+        final BufferedReader reader;
+        // channel of the log file or null
+        final FileChannel channel;
+        // rooms are shared by their visits
+        final HashMap<RoomKey, RoomKey> keys = new HashMap<>();
+        // visits of the current batch
+        ArrayList<Visit> visits = new ArrayList<>();
+        boolean finished = false;
+
+        // direction of the last command or null
+        String direction = null;
+        // title of the room that is being read
+        String title = null;
+        // true if the next title line is a room title
+        boolean titleExpected = true;
+
+        LogReader(LogFormat format, Reader reader, FileChannel channel){
+            this.format = format;
+            this.reader = reader instanceof BufferedReader
+                    ? (BufferedReader) reader : new BufferedReader(reader, 65536);
+            this.channel = channel;
+        }
+
+        /**
+         * Reads the next rooms of the log. The world isn't accessed, so this
+         * may be called on any thread
+         * @param maxVisits maximum number of rooms, at least 1
+         * @return visited rooms, empty at the end of the log
+         * @throws IOException
+         */
+        public List<Visit> read(int maxVisits) throws IOException {
+            visits = new ArrayList<>();
+            // a line adds one room at most
+            while(!finished && visits.size() < maxVisits){
+                String line = reader.readLine();
+                if(line == null){
+                    finished = true;
+                } else {
+                    readLine(format.clean(line));
+                }
+            }
+            return visits;
+        }
+
+        /**
+         * Gets the number of bytes read from the log file
+         * @return number of bytes or -1 if the log isn't a file
+         * @throws IOException
+         */
+        public long getPosition() throws IOException {
+            return channel != null ? channel.position() : -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        /**
+         * Reads a line of the log
+         * @param line line without color codes
+         */
+        void readLine(String line){
+            String command = format.matchCommand(line);
+            if(command != null){
+                // other commands, eg. look, don't move
+                direction = format.getDirection(command);
+                titleExpected = true;
+                return;
+            }
+
+            Collection<String> exits = format.matchExits(line);
+            if(exits != null){
+                if(title != null){
+                    RoomKey key = new RoomKey(title, exits);
+                    RoomKey known = keys.get(key);
+                    if(known == null) keys.put(key, known = key);
+                    visits.add(new Visit(known, direction));
+                    direction = null;
+                }
+                title = null;
+                titleExpected = true;
+                return;
+            }
+
+            if(titleExpected){
+                String match = format.matchTitle(line);
+                if(match != null){
+                    title = match;
+                    titleExpected = false;
+                }
+            }
+        }
+    }
+
+    final Layer layer;
+    final World world;
+    final LogFormat format;
+    int batchSize = DEFAULT_BATCH_SIZE;
+
+    // imported places by room
+    final HashMap<RoomKey, ArrayList<Place>> rooms = new HashMap<>();
+    final HashMap<Place, RoomKey> keys = new HashMap<>();
+
+    // the room of the last exit list
+    Place current = null;
+    // direction the next room is entered from or null
+    String direction = null;
+
+    int roomCount = 0, placeCount = 0, pathCount = 0;
+    // rooms of the current batch
+    int batchRooms = 0;
+
+    /**
+     * Constructs an importer for a layer
+     * @param layer layer of the new places
+     * @param format log format
+     */
+    public LogImporter(Layer layer, LogFormat format){
+        this.layer = layer;
+        this.world = layer.getWorld();
+        this.format = format;
+    }
+
+    /**
+     * Sets the number of rooms that are imported before the change listeners
+     * of the world are called
+     * @param batchSize number of rooms, at least 1
+     */
+    public void setBatchSize(int batchSize){
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Gets the number of rooms read from the logs
+     * @return number of rooms
+     */
+    public int getRoomCount(){
+        return roomCount;
+    }
+
+    /**
+     * Gets the number of created places
+     * @return number of places
+     */
+    public int getPlaceCount(){
+        return placeCount;
+    }
+
+    /**
+     * Gets the number of created paths
+     * @return number of paths
+     */
+    public int getPathCount(){
+        return pathCount;
+    }
+
+    /**
+     * Imports a log file, encoded in UTF-8
+     * @param file log file
+     * @throws IOException
+     */
+    public void importLog(File file) throws IOException {
+        try(LogReader reader = openLog(file)){
+            importLog(reader);
+        }
+    }
+
+    /**
+     * Imports a log. Further logs continue with the rooms of the previous
+     * ones, eg. for logs of several sessions
+     * @param reader log
+     * @throws IOException
+     */
+    public void importLog(Reader reader) throws IOException {
+        importLog(openLog(reader));
+    }
+
+    /**
+     * Imports the rooms of a log reader batch by batch
+     * @param reader log reader
+     * @throws IOException
+     */
+    private void importLog(LogReader reader) throws IOException {
+        boolean newSession = true;
+        List<Visit> visits;
+        while(!(visits = reader.read(batchSize)).isEmpty()){
+            importVisits(visits, newSession);
+            newSession = false;
+        }
+    }
+
+    /**
+     * Opens a log file, encoded in UTF-8, to read its rooms in batches
+     * @param file log file
+     * @return log reader, has to be closed
+     * @throws IOException
+     */
+    public LogReader openLog(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        return new LogReader(format, new InputStreamReader(stream, StandardCharsets.UTF_8), stream.getChannel());
+    }
+
+    /**
+     * Opens a log to read its rooms in batches
+     * @param reader log
+     * @return log reader
+     */
+    public LogReader openLog(Reader reader){
+        return new LogReader(format, reader, null);
+    }
+
+    /**
+     * Adds the rooms of a log to the layer, on the thread that modifies the
+     * world. The rooms of a log may be added in several calls
+     * @param visits visited rooms, see LogReader.read()
+     * @param newSession true for the first rooms of a log, a new session
+     * may start anywhere
+     */
+    public void importVisits(List<Visit> visits, boolean newSession){
+        if(newSession){
+            current = null;
+            direction = null;
+        }
+
+        world.beginUpdate();
+        try {
+            for(Visit visit: visits){
+                direction = visit.direction;
+                enterRoom(visit.key);
+            }
+        } finally {
+            world.endUpdate();
+        }
+    }
+
+    /**
+     * Finds or creates the place of a room and connects it to the previous
+     * room
+     * @param key room
+     */
+    void enterRoom(RoomKey key){
+        Place place = findPlace(key);
+        if(place == null){
+            int x = 0, y = 0;
+            if(current != null){
+                x = current.getX();
+                y = current.getY();
+                if(direction != null){
+                    x += getOffsetX(direction);
+                    y += getOffsetY(direction);
+                }
+            }
+            place = createPlace(key, x, y);
+        }
+
+        if(current != null && direction != null && place != current
+                && current.getExit(direction) == null){
+            String opposite = Path.getOppositeDir(direction);
+            if(!opposite.isEmpty() && place.getExit(opposite) == null
+                    && current.connectPath(new Path(current, direction, place, opposite))){
+                ++pathCount;
+            }
+        }
+
+        current = place;
+        direction = null;
+        ++roomCount;
+        if(++batchRooms >= batchSize){
+            // let the listeners see the batch
+            batchRooms = 0;
+            world.endUpdate();
+            world.beginUpdate();
+        }
+    }
+
+    /**
+     * Finds the place of a known room. If several places have the same
+     * title and exits the neighbour decides
+     * @param key room
+     * @return place or null if the room is new
+     */
+    Place findPlace(RoomKey key){
+        if(current != null && direction == null && key.equals(keys.get(current))){
+            // looked at the same room again
+            return current;
+        }
+        if(current != null && direction != null){
+            // the room was entered the same way before
+            Path path = current.getExit(direction);
+            if(path != null){
+                Place other = path.getOtherPlace(current);
+                if(key.equals(keys.get(other))) return other;
+                // the exit leads to another room
+                return null;
+            }
+        }
+
+        ArrayList<Place> candidates = rooms.get(key);
+        if(candidates == null) return null;
+        if(current == null || direction == null){
+            // without a neighbour only unique rooms can be found
+            return candidates.size() == 1 ? candidates.get(0) : null;
+        }
+
+        String opposite = Path.getOppositeDir(direction);
+        for(Place candidate: candidates){
+            // a room that looks the same but has another neighbour is
+            // another room
+            if(candidate != current && (opposite.isEmpty() || candidate.getExit(opposite) == null)){
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a place on the nearest free position
+     * @param key room
+     * @param x preferred x coordinate
+     * @param y preferred y coordinate
+     * @return new place
+     */
+    Place createPlace(RoomKey key, int x, int y){
+        int[] position = findFreePosition(layer, x, y);
+        Place place = new Place(key.title, position[0], position[1], layer);
+        try {
+            layer.put(place);
+        } catch(Layer.PlaceNotInsertedException ex){
+            throw new RuntimeException(ex);
+        }
+
+        ArrayList<Place> candidates = rooms.get(key);
+        if(candidates == null) rooms.put(key, candidates = new ArrayList<>(1));
+        candidates.add(place);
+        keys.put(place, key);
+        ++placeCount;
+        return place;
+    }
+
+    /**
+     * Finds a free position near a position by searching squares of growing
+     * size around it, on each square the position closest to the center
+     * @param layer layer
+     * @param x x coordinate
+     * @param y y coordinate
+     * @return x and y coordinate of a free position
+     */
+    static int[] findFreePosition(Layer layer, int x, int y){
+        if(!layer.exist(x, y)) return new int[]{x, y};
+        for(int radius = 1;; ++radius){
+            int[] best = null;
+            int bestDistance = Integer.MAX_VALUE;
+            for(int dx = -radius; dx <= radius; ++dx){
+                // only the border of the square
+                int step = Math.abs(dx) == radius ? 1 : 2 * radius;
+                for(int dy = -radius; dy <= radius; dy += step){
+                    int distance = dx * dx + dy * dy;
+                    if(distance < bestDistance && !layer.exist(x + dx, y + dy)){
+                        best = new int[]{x + dx, y + dy};
+                        bestDistance = distance;
+                    }
+                }
+            }
+            if(best != null) return best;
+        }
+    }
+
+    /**
+     * Gets the x offset of a direction
+     * @param direction exit direction
+     * @return -1, 0 or 1
+     */
+    static int getOffsetX(String direction){
+        switch(direction){
+            case "ne": case "e": case "se":
+                return 1;
+            case "nw": case "w": case "sw":
+                return -1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Gets the y offset of a direction
+     * @param direction exit direction
+     * @return -1, 0 or 1
+     */
+    static int getOffsetY(String direction){
+        switch(direction){
+            case "nw": case "n": case "ne":
+                return 1;
+            case "sw": case "s": case "se":
+                return -1;
+            default:
+                return 0;
+        }
+    }
+
+}
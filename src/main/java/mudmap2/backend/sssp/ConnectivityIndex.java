@@ -0,0 +1,227 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Connected components of the places of a world (union-find). Connected
+ *  paths are merged immediately, the components are rebuilt after paths or
+ *  places have been removed
+ */
+
+package mudmap2.backend.sssp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.PathChangeListener;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldChangeListener;
+
+/**
+ * Answers whether places are connected by paths without searching
+ * @author neop
+ */
+public class ConnectivityIndex implements WorldChangeListener, PathChangeListener {
+
+    final World world;
+
+    final HashMap<Place, Integer> indices = new HashMap<>();
+    int[] parent = new int[16];
+    int[] componentSize = new int[16];
+    int size = 0;
+    int componentCount = 0;
+
+    // set if the components have to be rebuilt before the next query
+    boolean modified = true;
+
+    /**
+     * Constructs the index for a world
+     * @param world world
+     */
+    public ConnectivityIndex(World world){
+        if(world == null) throw new NullPointerException();
+        this.world = world;
+        world.addChangeListener(this);
+        world.addPathChangeListener(this);
+    }
+
+    /**
+     * Gets the world
+     * @return world
+     */
+    public World getWorld(){
+        return world;
+    }
+
+    /**
+     * Gets the index of a place, adds it as a new component if necessary
+     */
+    private int index(Place place){
+        Integer index = indices.get(place);
+        if(index == null){
+            if(size == parent.length){
+                parent = Arrays.copyOf(parent, size * 2);
+                componentSize = Arrays.copyOf(componentSize, size * 2);
+            }
+            index = size++;
+            parent[index] = index;
+            componentSize[index] = 1;
+            ++componentCount;
+            indices.put(place, index);
+        }
+        return index;
+    }
+
+    private int find(int index){
+        while(parent[index] != index){
+            // path halving
+            parent[index] = parent[parent[index]];
+            index = parent[index];
+        }
+        return index;
+    }
+
+    /**
+     * Gets the root of the component of a place without adding it
+     * @return root index or -1 if the place is not in the index
+     */
+    private int root(Place place){
+        Integer index = indices.get(place);
+        return index == null ? -1 : find(index);
+    }
+
+    private void union(Place a, Place b){
+        int rootA = find(index(a));
+        int rootB = find(index(b));
+        if(rootA == rootB) return;
+        if(componentSize[rootA] < componentSize[rootB]){
+            int tmp = rootA;
+            rootA = rootB;
+            rootB = tmp;
+        }
+        parent[rootB] = rootA;
+        componentSize[rootA] += componentSize[rootB];
+        --componentCount;
+    }
+
+    private void unionPaths(Place place){
+        index(place);
+        for(Path path: place.getPaths()){
+            union(path.getPlaces()[0], path.getPlaces()[1]);
+        }
+    }
+
+    /**
+     * Rebuilds the components if necessary
+     */
+    private void update(){
+        if(modified){
+            indices.clear();
+            size = 0;
+            componentCount = 0;
+            for(Layer layer: world.getLayers()){
+                for(Place place: layer.getLoadedPlaces()){
+                    unionPaths(place);
+                }
+            }
+            modified = false;
+        }
+    }
+
+    /**
+     * Checks whether a place can be reached from another place
+     * @param a place
+     * @param b place
+     * @return true, if both places are connected by paths
+     */
+    public synchronized boolean isReachable(Place a, Place b){
+        if(a == null || b == null) throw new NullPointerException();
+        if(a == b) return true;
+        update();
+        int root = root(a);
+        return root >= 0 && root == root(b);
+    }
+
+    /**
+     * Gets the number of places that can be reached from a place, including
+     * the place itself
+     * @param place place
+     * @return number of places
+     */
+    public synchronized int getComponentSize(Place place){
+        if(place == null) throw new NullPointerException();
+        update();
+        int root = root(place);
+        return root >= 0 ? componentSize[root] : 1;
+    }
+
+    /**
+     * Gets the number of connected components
+     * @return number of components
+     */
+    public synchronized int getComponentCount(){
+        update();
+        return componentCount;
+    }
+
+    /**
+     * Gets all places of the world that can't be reached from a place. Places
+     * of layers that aren't loaded yet are left out
+     * @param place place
+     * @return unreachable places
+     */
+    public synchronized ArrayList<Place> getUnreachablePlaces(Place place){
+        if(place == null) throw new NullPointerException();
+        update();
+        final int root = root(place);
+        ArrayList<Place> ret = new ArrayList<>();
+        for(Layer layer: world.getLayers()){
+            for(Place other: layer.getLoadedPlaces()){
+                if(other != place && (root < 0 || root(other) != root)) ret.add(other);
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized void pathConnected(Path path){
+        if(!modified) union(path.getPlaces()[0], path.getPlaces()[1]);
+    }
+
+    @Override
+    public synchronized void pathRemoved(Path path){
+        Place[] places = path.getPlaces();
+        // places stay connected if there is another path between them
+        if(places[0].getPaths(places[1]).isEmpty()){
+            modified = true;
+        }
+    }
+
+    @Override
+    public synchronized void worldChanged(Object source){
+        if(source instanceof Place){
+            // the place might have been added with existing paths
+            if(!modified) unionPaths((Place) source);
+        } else if(source instanceof Layer){
+            // places might have been removed
+            modified = true;
+        }
+    }
+}
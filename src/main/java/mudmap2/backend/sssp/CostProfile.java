@@ -0,0 +1,237 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  A cost profile describes how expensive it is to use a path or to enter a
+ *  place for weighted path searches
+ */
+
+package mudmap2.backend.sssp;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+
+/**
+ * Cost profile for weighted path searches. Costs have to be positive for paths
+ * and non-negative for places. Double.POSITIVE_INFINITY marks a path or place
+ * that should never be used
+ * @author neop
+ */
+public class CostProfile {
+
+    public static final double DEFAULT_PATH_COST = 1.0;
+
+    String name;
+
+    // cost of a path if no exit cost is defined
+    double pathCost = DEFAULT_PATH_COST;
+    // exit name -> cost of a path that is left by that exit
+    final TreeMap<String, Double> exitCosts = new TreeMap<>();
+    // risk level id -> additional cost for entering a place
+    final TreeMap<Integer, Double> riskLevelCosts = new TreeMap<>();
+
+    // level of the character or -1 to ignore recommended levels
+    int characterLevel = -1;
+    // additional cost per level the character is below the minimal recommended level
+    double levelCost = 0.0;
+
+    /**
+     * Constructs a profile that counts the number of paths
+     * @param name profile name
+     */
+    public CostProfile(String name){
+        this.name = name;
+    }
+
+    /**
+     * Copy constructor
+     * @param profile profile to copy
+     */
+    public CostProfile(CostProfile profile){
+        name = profile.name;
+        pathCost = profile.pathCost;
+        exitCosts.putAll(profile.exitCosts);
+        riskLevelCosts.putAll(profile.riskLevelCosts);
+        characterLevel = profile.characterLevel;
+        levelCost = profile.levelCost;
+    }
+
+    /**
+     * Creates a profile that only counts the number of paths
+     * @return new profile
+     */
+    public static CostProfile createShortest(){
+        return new CostProfile("shortest");
+    }
+
+    /**
+     * Creates a profile that avoids places with the default risk levels
+     * "mobs might attack" and "mobs will attack"
+     * @return new profile
+     */
+    public static CostProfile createRiskAware(){
+        CostProfile profile = new CostProfile("safest");
+        profile.setRiskLevelCost(3, 5.0);
+        profile.setRiskLevelCost(4, 50.0);
+        return profile;
+    }
+
+    /**
+     * Gets the profile name
+     * @return name
+     */
+    public String getName(){
+        return name;
+    }
+
+    /**
+     * Gets the default path cost
+     * @return cost
+     */
+    public double getDefaultPathCost(){
+        return pathCost;
+    }
+
+    /**
+     * Sets the cost of paths without a defined exit cost
+     * @param cost positive cost
+     */
+    public void setDefaultPathCost(double cost){
+        if(!(cost > 0)) throw new IllegalArgumentException("Path cost has to be positive");
+        pathCost = cost;
+    }
+
+    /**
+     * Sets the cost of paths that are left by a certain exit
+     * @param exit exit name, eg. "u"
+     * @param cost positive cost
+     */
+    public void setExitCost(String exit, double cost){
+        if(exit == null) throw new NullPointerException();
+        if(!(cost > 0)) throw new IllegalArgumentException("Path cost has to be positive");
+        exitCosts.put(exit, cost);
+    }
+
+    /**
+     * Gets the exit costs
+     * @return exit name -> cost
+     */
+    public Map<String, Double> getExitCosts(){
+        return exitCosts;
+    }
+
+    /**
+     * Sets the additional cost for entering a place with a certain risk level
+     * @param riskLevelId risk level id
+     * @param cost non-negative cost
+     */
+    public void setRiskLevelCost(int riskLevelId, double cost){
+        if(!(cost >= 0)) throw new IllegalArgumentException("Place cost must not be negative");
+        riskLevelCosts.put(riskLevelId, cost);
+    }
+
+    /**
+     * Gets the risk level costs
+     * @return risk level id -> cost
+     */
+    public Map<Integer, Double> getRiskLevelCosts(){
+        return riskLevelCosts;
+    }
+
+    /**
+     * Gets the character level
+     * @return character level or -1
+     */
+    public int getCharacterLevel(){
+        return characterLevel;
+    }
+
+    /**
+     * Gets the cost per level the character is below the recommended level
+     * @return cost
+     */
+    public double getLevelCost(){
+        return levelCost;
+    }
+
+    /**
+     * Sets the character level and the additional cost per level the character
+     * is below the minimal recommended level of a place
+     * @param characterLevel character level or -1 to ignore recommended levels
+     * @param levelCost non-negative cost
+     */
+    public void setCharacterLevel(int characterLevel, double levelCost){
+        if(!(levelCost >= 0)) throw new IllegalArgumentException("Place cost must not be negative");
+        this.characterLevel = characterLevel;
+        this.levelCost = levelCost;
+    }
+
+    /**
+     * Gets the cost of using a path
+     * @param path path
+     * @param from the place the path is entered from
+     * @return cost
+     */
+    public double getPathCost(Path path, Place from){
+        Double ret = exitCosts.get(path.getExit(from));
+        return ret == null ? pathCost : ret;
+    }
+
+    /**
+     * Gets the additional cost of entering a place
+     * @param place place
+     * @return cost
+     */
+    public double getPlaceCost(Place place){
+        double ret = 0.0;
+        if(place.getRiskLevel() != null){
+            Double risk = riskLevelCosts.get(place.getRiskLevel().getId());
+            if(risk != null) ret += risk;
+        }
+        if(characterLevel >= 0 && place.getRecLevelMin() > characterLevel){
+            ret += levelCost * (place.getRecLevelMin() - characterLevel);
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean equals(Object obj){
+        if(this == obj) return true;
+        if(!(obj instanceof CostProfile)) return false;
+        CostProfile other = (CostProfile) obj;
+        return Objects.equals(name, other.name)
+                && Double.compare(pathCost, other.pathCost) == 0
+                && exitCosts.equals(other.exitCosts)
+                && riskLevelCosts.equals(other.riskLevelCosts)
+                && characterLevel == other.characterLevel
+                && Double.compare(levelCost, other.levelCost) == 0;
+    }
+
+    @Override
+    public int hashCode(){
+        return Objects.hash(name, pathCost, exitCosts, riskLevelCosts, characterLevel, levelCost);
+    }
+
+    @Override
+    public String toString(){
+        return name == null ? "" : name;
+    }
+}
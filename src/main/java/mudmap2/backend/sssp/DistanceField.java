@@ -0,0 +1,492 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Number of paths from a set of source places to every place of a world.
+ *  The field is computed once by a multi-source breadth search on a graph
+ *  snapshot, both are created in the background. Afterwards changes of
+ *  places and paths are applied incrementally, only the places whose
+ *  distances change are visited
+ */
+
+package mudmap2.backend.sssp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.PathChangeListener;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldChangeListener;
+
+/**
+ * Distances from source places, eg. for a heat map. The listener methods read
+ * the world on the thread that modifies it, the graph snapshot is created in
+ * the background. getDistance may be called from any thread
+ * @author neop
+ */
+public class DistanceField implements WorldChangeListener, PathChangeListener {
+
+    final World world;
+    final ArrayList<Place> sources;
+    // called after the distances changed, maybe on a background thread
+    final Runnable updateListener;
+
+    PlaceGraph graph = null;
+    int[] distances = null;
+    // distances of places that aren't in the graph, eg. new places
+    final HashMap<Place, Integer> addedDistances = new HashMap<>();
+    int maxDistance = 0;
+
+    // set if the distances have to be recomputed
+    boolean outdated = true;
+    boolean computing = false;
+    boolean disposed = false;
+
+    /**
+     * Constructs a distance field and starts its computation
+     * @param world world
+     * @param sources source places
+     * @param updateListener called when the distances changed or null
+     */
+    public DistanceField(World world, Collection<Place> sources, Runnable updateListener){
+        if(world == null || sources == null) throw new NullPointerException();
+        this.world = world;
+        this.sources = new ArrayList<>(sources);
+        this.updateListener = updateListener;
+        world.addChangeListener(this);
+        world.addPathChangeListener(this);
+        update();
+    }
+
+    /**
+     * Multi-source breadth search
+     * @param graph graph
+     * @param sources source node indices
+     * @param distances output: number of paths from the nearest source or -1,
+     * size of graph
+     * @param queue work array, size of graph
+     * @return maximum distance of reached nodes
+     */
+    public static int breadthSearch(PlaceGraph graph, int[] sources, int[] distances, int[] queue){
+        Arrays.fill(distances, -1);
+        int head = 0, tail = 0, max = 0;
+        for(int source: sources){
+            if(distances[source] != 0){
+                distances[source] = 0;
+                queue[tail++] = source;
+            }
+        }
+        while(head < tail){
+            int node = queue[head++];
+            int dist = distances[node] + 1;
+            for(int e = graph.getEdgeBegin(node); e < graph.getEdgeEnd(node); ++e){
+                int target = graph.getEdgeTarget(e);
+                if(distances[target] == -1){
+                    distances[target] = dist;
+                    max = dist;
+                    queue[tail++] = target;
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Gets the world
+     * @return world
+     */
+    public World getWorld(){
+        return world;
+    }
+
+    /**
+     * Gets the source places
+     * @return source places
+     */
+    public ArrayList<Place> getSources(){
+        return new ArrayList<>(sources);
+    }
+
+    /**
+     * Gets the number of paths from the nearest source to a place
+     * @param place place
+     * @return distance or -1 if the place is not reachable or the distance is
+     * not known yet
+     */
+    public synchronized int getDistance(Place place){
+        if(graph == null) return -1;
+        int node = graph.indexOf(place);
+        if(node >= 0) return distances[node];
+        Integer ret = addedDistances.get(place);
+        return ret == null ? -1 : ret;
+    }
+
+    /**
+     * Gets the maximum distance of all reachable places
+     * @return maximum distance
+     */
+    public synchronized int getMaxDistance(){
+        return maxDistance;
+    }
+
+    /**
+     * Returns true, if the distances are up to date
+     * @return true, if up to date
+     */
+    public synchronized boolean isUpToDate(){
+        return !outdated && !computing;
+    }
+
+    /**
+     * Starts a recomputation in the background, if the distances are outdated
+     * and no computation is running. The graph snapshot is created in the
+     * background too, so this is cheap enough to be called while painting.
+     * Changes of the world while it runs mark the distances as outdated
+     * again. This only happens for the first computation and if the world
+     * was changed while it was running
+     */
+    public synchronized void update(){
+        if(!outdated || computing || disposed) return;
+        outdated = false;
+        computing = true;
+
+        PathFinder.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                PlaceGraph newGraph;
+                try {
+                    newGraph = new PlaceGraph(world);
+                } catch(RuntimeException ex){
+                    // the world was modified while it was read
+                    setFailed();
+                    return;
+                }
+
+                int[] nodes = new int[sources.size()];
+                int count = 0;
+                for(Place source: sources){
+                    int node = newGraph.indexOf(source);
+                    if(node >= 0) nodes[count++] = node;
+                }
+                int[] newDistances = new int[newGraph.size()];
+                int max = breadthSearch(newGraph, Arrays.copyOf(nodes, count), newDistances, new int[newGraph.size()]);
+                setDistances(newGraph, newDistances, max);
+            }
+        });
+    }
+
+    /**
+     * Ends a computation that couldn't read the world, the next call of
+     * update starts a new one
+     */
+    private void setFailed(){
+        synchronized(this){
+            computing = false;
+            outdated = true;
+            if(disposed) return;
+        }
+        callUpdateListener();
+    }
+
+    private void setDistances(PlaceGraph newGraph, int[] newDistances, int max){
+        synchronized(this){
+            computing = false;
+            if(disposed) return;
+            graph = newGraph;
+            distances = newDistances;
+            addedDistances.clear();
+            maxDistance = max;
+        }
+        callUpdateListener();
+    }
+
+    /**
+     * Stops listening to the world
+     */
+    public synchronized void dispose(){
+        disposed = true;
+        world.removeChangeListener(this);
+        world.removePathChangeListener(this);
+    }
+
+    private void callUpdateListener(){
+        if(updateListener != null) updateListener.run();
+    }
+
+    /**
+     * Marks the distances as outdated, they will be recomputed on the next
+     * call of update
+     */
+    private void setOutdated(){
+        synchronized(this){
+            if(outdated) return;
+            outdated = true;
+        }
+        callUpdateListener();
+    }
+
+    /**
+     * Checks whether a place is on a layer of the world, places on other
+     * layers aren't part of the field
+     */
+    private boolean isInWorld(Place place){
+        Layer layer = place.getLayer();
+        return layer != null && layer.getWorld() == world && world.getLayer(layer.getId()) == layer;
+    }
+
+    /**
+     * Gets the distance of a place, the caller has to hold the lock
+     * @return distance or -1
+     */
+    private int get(Place place){
+        int node = graph.indexOf(place);
+        if(node >= 0) return distances[node];
+        Integer ret = addedDistances.get(place);
+        return ret == null ? -1 : ret;
+    }
+
+    /**
+     * Sets the distance of a place, the caller has to hold the lock
+     */
+    private void set(Place place, int distance){
+        int node = graph.indexOf(place);
+        if(node >= 0){
+            distances[node] = distance;
+        } else {
+            addedDistances.put(place, distance);
+        }
+        maxDistance = Math.max(maxDistance, distance);
+    }
+
+    /**
+     * Applies a connection of two places, distances can only decrease.
+     * Propagates from the nearer place
+     */
+    private void connect(Place a, Place b){
+        int distA = get(a);
+        int distB = get(b);
+        if(distA >= 0 && (distB < 0 || distA + 1 < distB)){
+            propagate(b, distA + 1);
+        } else if(distB >= 0 && (distA < 0 || distB + 1 < distA)){
+            propagate(a, distB + 1);
+        }
+    }
+
+    /**
+     * Breadth search on the current paths that lowers distances
+     */
+    private void propagate(Place start, int distance){
+        ArrayDeque<Place> queue = new ArrayDeque<>();
+        set(start, distance);
+        queue.add(start);
+        while(!queue.isEmpty()){
+            Place place = queue.poll();
+            int dist = get(place) + 1;
+            for(Path path: place.getPaths()){
+                Place other = path.getOtherPlace(place);
+                if(other == place || !isInWorld(other)) continue;
+                int otherDist = get(other);
+                if(otherDist < 0 || dist < otherDist){
+                    set(other, dist);
+                    queue.add(other);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void pathConnected(Path path){
+        synchronized(this){
+            // a running computation doesn't know the new path
+            if(computing) outdated = true;
+            if(graph == null) return;
+
+            Place a = path.getPlaces()[0];
+            Place b = path.getPlaces()[1];
+            if(a == b || !isInWorld(a) || !isInWorld(b)) return;
+            connect(a, b);
+        }
+        callUpdateListener();
+    }
+
+    @Override
+    public void pathRemoved(Path path){
+        synchronized(this){
+            // a running computation still knows the removed path
+            if(computing) outdated = true;
+            if(graph == null) return;
+
+            Place far = getCutPlace(path);
+            if(far == null) return;
+            raise(far);
+        }
+        callUpdateListener();
+    }
+
+    /**
+     * Checks whether distances change after a path has been removed. They only
+     * change if the path was the only link of the farther place to a place
+     * that is one step closer to a source
+     * @return the farther place, if distances change, else null
+     */
+    private Place getCutPlace(Path path){
+        Place a = path.getPlaces()[0];
+        Place b = path.getPlaces()[1];
+        int distA = get(a);
+        int distB = get(b);
+        if(distA < 0 || distB < 0 || Math.abs(distA - distB) != 1) return null;
+
+        Place far = distA > distB ? a : b;
+        return hasShorterNeighbor(far, Collections.<Place>emptySet()) ? null : far;
+    }
+
+    /**
+     * Checks whether a place has a neighbor that is one step closer to a
+     * source and not in a set of excluded places
+     */
+    private boolean hasShorterNeighbor(Place place, Collection<Place> excluded){
+        int dist = get(place) - 1;
+        for(Path path: place.getPaths()){
+            Place other = path.getOtherPlace(place);
+            if(other != place && get(other) == dist && !excluded.contains(other)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Recomputes the distances that increased after a place lost its only
+     * link to a place that is one step closer to a source. Only the places
+     * whose shortest paths led through that place are visited
+     * @param start place that lost its shortest paths
+     */
+    private void raise(Place start){
+        // collect the places without other shortest paths, by distance
+        ArrayList<Place> affected = new ArrayList<>();
+        HashSet<Place> affectedSet = new HashSet<>();
+        affected.add(start);
+        affectedSet.add(start);
+        for(int i = 0; i < affected.size(); ++i){
+            Place place = affected.get(i);
+            int dist = get(place) + 1;
+            for(Path path: place.getPaths()){
+                Place other = path.getOtherPlace(place);
+                if(get(other) == dist && !affectedSet.contains(other)
+                        && !hasShorterNeighbor(other, affectedSet)){
+                    affected.add(other);
+                    affectedSet.add(other);
+                }
+            }
+        }
+
+        // reconnect them to their unaffected neighbors
+        final HashMap<Place, Integer> seedDistances = new HashMap<>();
+        for(Place place: affected){
+            int best = -1;
+            for(Path path: place.getPaths()){
+                Place other = path.getOtherPlace(place);
+                int dist = affectedSet.contains(other) ? -1 : get(other);
+                if(dist >= 0 && (best < 0 || dist + 1 < best)) best = dist + 1;
+            }
+            if(best >= 0) seedDistances.put(place, best);
+        }
+        for(Place place: affected){
+            set(place, -1);
+        }
+        ArrayList<Place> seeds = new ArrayList<>(seedDistances.keySet());
+        Collections.sort(seeds, new Comparator<Place>() {
+            @Override
+            public int compare(Place p1, Place p2) {
+                return Integer.compare(seedDistances.get(p1), seedDistances.get(p2));
+            }
+        });
+        for(Place seed: seeds){
+            set(seed, seedDistances.get(seed));
+        }
+
+        // breadth search inside the affected places, the seeds enter the
+        // queue when it reaches their distance
+        ArrayDeque<Place> queue = new ArrayDeque<>();
+        int nextSeed = 0;
+        while(nextSeed < seeds.size() || !queue.isEmpty()){
+            Place place;
+            if(queue.isEmpty() || (nextSeed < seeds.size()
+                    && get(seeds.get(nextSeed)) <= get(queue.peek()))){
+                place = seeds.get(nextSeed++);
+            } else {
+                place = queue.poll();
+            }
+            int dist = get(place) + 1;
+            for(Path path: place.getPaths()){
+                Place other = path.getOtherPlace(place);
+                if(!affectedSet.contains(other)) continue;
+                int otherDist = get(other);
+                if(otherDist < 0 || dist < otherDist){
+                    set(other, dist);
+                    queue.add(other);
+                }
+            }
+        }
+
+        // the maximum distance might have decreased
+        maxDistance = 0;
+        for(int dist: distances) maxDistance = Math.max(maxDistance, dist);
+        for(int dist: addedDistances.values()) maxDistance = Math.max(maxDistance, dist);
+    }
+
+    @Override
+    public void worldChanged(Object source){
+        if(!(source instanceof Place)) return;
+        Place place = (Place) source;
+        boolean changed = false;
+        synchronized(this){
+            // a running computation might have read the place before
+            if(computing) outdated = true;
+            if(graph == null) return;
+            boolean known = graph.indexOf(place) >= 0 || addedDistances.containsKey(place);
+            if(!isInWorld(place) || place.getLayer().get(place.getX(), place.getY()) != place){
+                // a removed place that still has paths isn't a link anymore
+                if(known && !place.getPaths().isEmpty()) outdated = true;
+                changed = known;
+                if(graph.indexOf(place) >= 0){
+                    distances[graph.indexOf(place)] = -1;
+                } else {
+                    addedDistances.remove(place);
+                }
+            } else if(!known){
+                // new place, its paths might have been connected before it
+                // was added
+                addedDistances.put(place, -1);
+                if(sources.contains(place)) propagate(place, 0);
+                for(Path path: place.getPaths()){
+                    Place other = path.getOtherPlace(place);
+                    if(other != place && isInWorld(other)) connect(place, other);
+                }
+                changed = true;
+            }
+        }
+        if(changed) callUpdateListener();
+    }
+}
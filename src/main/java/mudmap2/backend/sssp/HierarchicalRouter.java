@@ -0,0 +1,460 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Two level route search: places are grouped into clusters (place group on a
+ *  layer), the costs between the entrance places of each cluster are
+ *  precomputed. A query searches the graph of entrances and refines the route
+ *  only inside of the clusters it passes
+ */
+
+package mudmap2.backend.sssp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Place;
+import mudmap2.backend.PlaceGroup;
+
+/**
+ * Hierarchical router for a cost profile. The clusters keep their entrance
+ * costs between graph updates, only clusters that have been marked as modified
+ * or whose entrances changed are recomputed. An instance must not be used by
+ * multiple threads at the same time
+ * @author neop
+ */
+public class HierarchicalRouter {
+
+    /**
+     * Places of a place group on a layer, places without place group form a
+     * cluster per layer
+     */
+    static class Cluster {
+        final int layerId;
+        final PlaceGroup placeGroup;
+
+        // stored entrances and costs between them, indexed by slot
+        Place[] entrances = new Place[0];
+        HashMap<Place, Integer> slots = new HashMap<>();
+        double[][] costs = new double[0][];
+        boolean modified = true;
+
+        // node indices of the entrances in the current graph
+        int[] nodes = new int[0];
+
+        Cluster(int layerId, PlaceGroup placeGroup){
+            this.layerId = layerId;
+            this.placeGroup = placeGroup;
+        }
+    }
+
+    /**
+     * Key of a cluster
+     */
+    static class ClusterKey {
+        final int layerId;
+        final PlaceGroup placeGroup;
+
+        ClusterKey(int layerId, PlaceGroup placeGroup){
+            this.layerId = layerId;
+            this.placeGroup = placeGroup;
+        }
+
+        @Override
+        public boolean equals(Object obj){
+            if(!(obj instanceof ClusterKey)) return false;
+            ClusterKey other = (ClusterKey) obj;
+            return layerId == other.layerId && placeGroup == other.placeGroup;
+        }
+
+        @Override
+        public int hashCode(){
+            return 31 * layerId + System.identityHashCode(placeGroup);
+        }
+    }
+
+    static final int SOURCE = -2;
+
+    final CostProfile profile;
+    final HashMap<ClusterKey, Cluster> clusters = new HashMap<>();
+
+    // state of the current graph
+    PlaceGraph graph = null;
+    ShortestPathSearch costs = null;
+    Cluster[] clusterOf = new Cluster[0];
+    int[] entranceSlot = new int[0];
+    int[] reverseEdge = new int[0];
+
+    // number of clusters recomputed by the last update
+    int recomputed = 0;
+
+    // search state, only valid for nodes with reached[n] == stamp
+    double[] distance, targetDistance, abstractDistance;
+    int[] predecessor, abstractPredecessor;
+    int[] reached, targetReached, abstractReached;
+    int stamp = 0;
+    IndexedMinHeap heap;
+
+    /**
+     * Constructs a router for a cost profile
+     * @param profile cost profile, must not be changed afterwards
+     */
+    public HierarchicalRouter(CostProfile profile){
+        if(profile == null) throw new NullPointerException();
+        this.profile = profile;
+    }
+
+    /**
+     * Gets the cost profile
+     * @return cost profile
+     */
+    public CostProfile getProfile(){
+        return profile;
+    }
+
+    /**
+     * Gets the graph of the last update
+     * @return graph or null
+     */
+    public PlaceGraph getGraph(){
+        return graph;
+    }
+
+    /**
+     * Gets the number of clusters
+     * @return number of clusters
+     */
+    public int getClusterCount(){
+        return clusters.size();
+    }
+
+    /**
+     * Marks the cluster of a place as modified, its entrance costs will be
+     * recomputed on the next update
+     * @param place modified place
+     */
+    public void setModified(Place place){
+        if(place == null) throw new NullPointerException();
+        // the place might have been moved from another cluster
+        if(graph != null){
+            int node = graph.indexOf(place);
+            if(node >= 0) clusterOf[node].modified = true;
+        }
+        Layer layer = place.getLayer();
+        if(layer != null){
+            Cluster cluster = clusters.get(new ClusterKey(layer.getId(), place.getPlaceGroup()));
+            if(cluster != null) cluster.modified = true;
+        }
+    }
+
+    /**
+     * Marks all clusters of a layer as modified
+     * @param layer modified layer
+     */
+    public void setModified(Layer layer){
+        if(layer == null) throw new NullPointerException();
+        for(Cluster cluster: clusters.values()){
+            if(cluster.layerId == layer.getId()) cluster.modified = true;
+        }
+    }
+
+    /**
+     * Updates the clusters for a new graph
+     * @param newGraph graph
+     */
+    public void update(PlaceGraph newGraph){
+        if(newGraph == null) throw new NullPointerException();
+        if(newGraph == graph) return;
+
+        graph = newGraph;
+        costs = new ShortestPathSearch(graph, profile);
+        final int size = graph.size();
+
+        // assign clusters
+        clusterOf = new Cluster[size];
+        HashSet<Cluster> used = new HashSet<>();
+        for(int i = 0; i < size; ++i){
+            Place place = graph.getPlace(i);
+            ClusterKey key = new ClusterKey(graph.getLayerId(graph.getLayerIndex(i)), place.getPlaceGroup());
+            Cluster cluster = clusters.get(key);
+            if(cluster == null){
+                cluster = new Cluster(key.layerId, key.placeGroup);
+                clusters.put(key, cluster);
+            }
+            clusterOf[i] = cluster;
+            used.add(cluster);
+        }
+        clusters.values().retainAll(used);
+
+        reverseEdge = new int[graph.getEdgeCount()];
+        for(int i = 0; i < size; ++i){
+            for(int e = graph.getEdgeBegin(i); e < graph.getEdgeEnd(i); ++e){
+                int target = graph.getEdgeTarget(e);
+                for(int r = graph.getEdgeBegin(target); r < graph.getEdgeEnd(target); ++r){
+                    if(graph.getEdgeTarget(r) == i && graph.getEdgePath(r) == graph.getEdgePath(e)){
+                        reverseEdge[e] = r;
+                        break;
+                    }
+                }
+            }
+        }
+
+        distance = new double[size];
+        targetDistance = new double[size];
+        abstractDistance = new double[size];
+        predecessor = new int[size];
+        abstractPredecessor = new int[size];
+        reached = new int[size];
+        targetReached = new int[size];
+        abstractReached = new int[size];
+        stamp = 0;
+        heap = new IndexedMinHeap(size);
+
+        // find entrances: places with a path to another cluster
+        HashMap<Cluster, ArrayList<Integer>> entrances = new HashMap<>();
+        for(Cluster cluster: used){
+            entrances.put(cluster, new ArrayList<Integer>());
+        }
+        for(int i = 0; i < size; ++i){
+            for(int e = graph.getEdgeBegin(i); e < graph.getEdgeEnd(i); ++e){
+                if(clusterOf[graph.getEdgeTarget(e)] != clusterOf[i]){
+                    entrances.get(clusterOf[i]).add(i);
+                    break;
+                }
+            }
+        }
+
+        entranceSlot = new int[size];
+        Arrays.fill(entranceSlot, -1);
+        recomputed = 0;
+        for(Map.Entry<Cluster, ArrayList<Integer>> entry: entrances.entrySet()){
+            Cluster cluster = entry.getKey();
+            ArrayList<Integer> nodes = entry.getValue();
+
+            boolean changed = cluster.modified || nodes.size() != cluster.entrances.length;
+            for(int i = 0; i < nodes.size() && !changed; ++i){
+                changed = !cluster.slots.containsKey(graph.getPlace(nodes.get(i)));
+            }
+
+            if(changed){
+                cluster.entrances = new Place[nodes.size()];
+                cluster.slots = new HashMap<>();
+                for(int i = 0; i < nodes.size(); ++i){
+                    cluster.entrances[i] = graph.getPlace(nodes.get(i));
+                    cluster.slots.put(cluster.entrances[i], i);
+                }
+            }
+
+            cluster.nodes = new int[nodes.size()];
+            for(int node: nodes){
+                int slot = cluster.slots.get(graph.getPlace(node));
+                cluster.nodes[slot] = node;
+                entranceSlot[node] = slot;
+            }
+
+            if(changed){
+                cluster.costs = new double[nodes.size()][];
+                for(int slot = 0; slot < cluster.nodes.length; ++slot){
+                    clusterSearch(cluster.nodes[slot], -1);
+                    cluster.costs[slot] = new double[cluster.nodes.length];
+                    for(int other = 0; other < cluster.nodes.length; ++other){
+                        cluster.costs[slot][other] = getDistance(cluster.nodes[other]);
+                    }
+                }
+                cluster.modified = false;
+                ++recomputed;
+            }
+        }
+    }
+
+    private void nextStamp(){
+        if(++stamp == Integer.MAX_VALUE){
+            Arrays.fill(reached, 0);
+            Arrays.fill(targetReached, 0);
+            Arrays.fill(abstractReached, 0);
+            stamp = 1;
+        }
+        heap.clear();
+    }
+
+    private double getDistance(int node){
+        return reached[node] == stamp ? distance[node] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Dijkstra search that doesn't leave the cluster of the source
+     * @param source source node index
+     * @param target target node index to stop at or -1
+     */
+    private void clusterSearch(int source, int target){
+        nextStamp();
+        final Cluster cluster = clusterOf[source];
+        reached[source] = stamp;
+        distance[source] = 0.0;
+        predecessor[source] = -1;
+        heap.insertOrDecrease(source, 0.0);
+
+        while(!heap.isEmpty()){
+            int node = heap.poll();
+            if(node == target) return;
+            for(int e = graph.getEdgeBegin(node); e < graph.getEdgeEnd(node); ++e){
+                int next = graph.getEdgeTarget(e);
+                if(clusterOf[next] != cluster) continue;
+                double dist = distance[node] + costs.edgeCost[e] + costs.placeCost[next];
+                if(dist < Double.POSITIVE_INFINITY && (reached[next] != stamp || dist < distance[next])){
+                    reached[next] = stamp;
+                    distance[next] = dist;
+                    predecessor[next] = node;
+                    heap.insertOrDecrease(next, dist);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dijkstra search on reversed edges inside of the cluster of the target.
+     * Computes the cost from each place of the cluster to the target
+     */
+    private void reverseClusterSearch(int target){
+        final Cluster cluster = clusterOf[target];
+        targetReached[target] = stamp;
+        targetDistance[target] = 0.0;
+        heap.clear();
+        heap.insertOrDecrease(target, 0.0);
+
+        while(!heap.isEmpty()){
+            int node = heap.poll();
+            for(int e = graph.getEdgeBegin(node); e < graph.getEdgeEnd(node); ++e){
+                int previous = graph.getEdgeTarget(e);
+                if(clusterOf[previous] != cluster) continue;
+                double dist = targetDistance[node] + costs.edgeCost[reverseEdge[e]] + costs.placeCost[node];
+                if(dist < Double.POSITIVE_INFINITY && (targetReached[previous] != stamp || dist < targetDistance[previous])){
+                    targetReached[previous] = stamp;
+                    targetDistance[previous] = dist;
+                    heap.insertOrDecrease(previous, dist);
+                }
+            }
+        }
+    }
+
+    private void relaxAbstract(int node, int next, double dist){
+        if(dist < Double.POSITIVE_INFINITY && (abstractReached[next] != stamp || dist < abstractDistance[next])){
+            abstractReached[next] = stamp;
+            abstractDistance[next] = dist;
+            abstractPredecessor[next] = node;
+            heap.insertOrDecrease(next, dist);
+        }
+    }
+
+    /**
+     * Searches the cheapest route between two nodes
+     * @param source source node index
+     * @param target target node index
+     * @return cost or Double.POSITIVE_INFINITY if the target is not reachable
+     */
+    public double search(int source, int target){
+        if(graph == null) throw new IllegalStateException("Router has no graph");
+
+        // costs from the source to the entrances of its cluster
+        clusterSearch(source, -1);
+        final Cluster sourceCluster = clusterOf[source];
+        final Cluster targetCluster = clusterOf[target];
+        reverseClusterSearch(target);
+
+        heap.clear();
+        for(int node: sourceCluster.nodes){
+            relaxAbstract(SOURCE, node, getDistance(node));
+        }
+        if(sourceCluster == targetCluster){
+            relaxAbstract(SOURCE, target, getDistance(target));
+        }
+
+        while(!heap.isEmpty()){
+            int node = heap.poll();
+            if(node == target) return abstractDistance[node];
+            final double dist = abstractDistance[node];
+            final Cluster cluster = clusterOf[node];
+
+            // other entrances of the cluster
+            double[] entranceCosts = cluster.costs[entranceSlot[node]];
+            for(int slot = 0; slot < entranceCosts.length; ++slot){
+                relaxAbstract(node, cluster.nodes[slot], dist + entranceCosts[slot]);
+            }
+            // paths to other clusters
+            for(int e = graph.getEdgeBegin(node); e < graph.getEdgeEnd(node); ++e){
+                int next = graph.getEdgeTarget(e);
+                if(clusterOf[next] != cluster){
+                    relaxAbstract(node, next, dist + costs.edgeCost[e] + costs.placeCost[next]);
+                }
+            }
+            if(cluster == targetCluster && targetReached[node] == stamp){
+                relaxAbstract(node, target, dist + targetDistance[node]);
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Searches the cheapest route between two places
+     * @param start start place
+     * @param end end place
+     * @return route or null if no route exists or a place is not in the graph
+     */
+    public Route findRoute(Place start, Place end){
+        if(graph == null) throw new IllegalStateException("Router has no graph");
+        int source = graph.indexOf(start);
+        int target = graph.indexOf(end);
+        if(source < 0 || target < 0) return null;
+        double cost = search(source, target);
+        if(cost == Double.POSITIVE_INFINITY) return null;
+
+        // entrances on the route
+        ArrayList<Integer> waypoints = new ArrayList<>();
+        for(int node = target; node != SOURCE; node = abstractPredecessor[node]){
+            waypoints.add(node);
+        }
+        waypoints.add(source);
+        Collections.reverse(waypoints);
+
+        // refine the route between the waypoints
+        ArrayList<Place> places = new ArrayList<>();
+        places.add(start);
+        for(int i = 1; i < waypoints.size(); ++i){
+            int from = waypoints.get(i - 1);
+            int to = waypoints.get(i);
+            if(from == to) continue;
+
+            if(clusterOf[from] == clusterOf[to]){
+                clusterSearch(from, to);
+                ArrayList<Place> segment = new ArrayList<>();
+                for(int node = to; node != from; node = predecessor[node]){
+                    segment.add(graph.getPlace(node));
+                }
+                Collections.reverse(segment);
+                places.addAll(segment);
+            } else {
+                places.add(graph.getPlace(to));
+            }
+        }
+        return new Route(places, cost);
+    }
+}
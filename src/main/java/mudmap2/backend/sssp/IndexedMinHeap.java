@@ -0,0 +1,179 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  A binary min heap of node indices with primitive keys, used by the
+ *  weighted path search
+ */
+
+package mudmap2.backend.sssp;
+
+import java.util.Arrays;
+
+/**
+ * Binary min heap that stores node indices [0, capacity) keyed by a double.
+ * The key of a node in the heap can be decreased in O(log n)
+ * @author neop
+ */
+public class IndexedMinHeap {
+
+    final int[] heap;
+    final double[] keys;
+    // heap position of a node or -1 if the node is not in the heap
+    final int[] positions;
+    int size = 0;
+
+    /**
+     * Constructs an empty heap
+     * @param capacity number of nodes (node indices: 0 to capacity - 1)
+     */
+    public IndexedMinHeap(int capacity){
+        heap = new int[capacity];
+        keys = new double[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * Gets the number of nodes in the heap
+     * @return number of nodes
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Checks whether the heap is empty
+     * @return true if empty
+     */
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+     * Checks whether a node is in the heap
+     * @param node node index
+     * @return true if the node is in the heap
+     */
+    public boolean contains(int node){
+        return positions[node] >= 0;
+    }
+
+    /**
+     * Gets the key of a node in the heap
+     * @param node node index
+     * @return key
+     */
+    public double getKey(int node){
+        return keys[node];
+    }
+
+    /**
+     * Removes all nodes from the heap
+     */
+    public void clear(){
+        for(int i = 0; i < size; ++i){
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Inserts a node or decreases its key. Nothing happens if the node is
+     * already in the heap with a smaller or equal key
+     * @param node node index
+     * @param key new key
+     * @return true if the node was inserted or its key was decreased
+     */
+    public boolean insertOrDecrease(int node, double key){
+        int pos = positions[node];
+        if(pos < 0){
+            pos = size++;
+            heap[pos] = node;
+            positions[node] = pos;
+        } else if(keys[node] <= key){
+            return false;
+        }
+        keys[node] = key;
+        siftUp(pos);
+        return true;
+    }
+
+    /**
+     * Gets the node with the smallest key without removing it
+     * @return node index
+     * @throws IllegalStateException if the heap is empty
+     */
+    public int peek(){
+        if(size == 0) throw new IllegalStateException("heap is empty");
+        return heap[0];
+    }
+
+    /**
+     * Removes the node with the smallest key
+     * @return node index
+     * @throws IllegalStateException if the heap is empty
+     */
+    public int poll(){
+        if(size == 0) throw new IllegalStateException("heap is empty");
+        int ret = heap[0];
+        positions[ret] = -1;
+        --size;
+        if(size > 0){
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return ret;
+    }
+
+    private void siftUp(int pos){
+        int node = heap[pos];
+        double key = keys[node];
+        while(pos > 0){
+            int parent = (pos - 1) >>> 1;
+            int parentNode = heap[parent];
+            if(keys[parentNode] <= key) break;
+            heap[pos] = parentNode;
+            positions[parentNode] = pos;
+            pos = parent;
+        }
+        heap[pos] = node;
+        positions[node] = pos;
+    }
+
+    private void siftDown(int pos){
+        int node = heap[pos];
+        double key = keys[node];
+        int half = size >>> 1;
+        while(pos < half){
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if(right < size && keys[heap[right]] < keys[heap[child]]){
+                child = right;
+            }
+            int childNode = heap[child];
+            if(key <= keys[childNode]) break;
+            heap[pos] = childNode;
+            positions[childNode] = pos;
+            pos = child;
+        }
+        heap[pos] = node;
+        positions[node] = pos;
+    }
+}
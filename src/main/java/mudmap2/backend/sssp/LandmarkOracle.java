@@ -0,0 +1,208 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Precomputed breadth search distances from a few landmark places. The
+ *  distances give lower and upper bounds of the number of paths between any
+ *  two places (triangle inequality) which are used to guide path searches
+ */
+
+package mudmap2.backend.sssp;
+
+import java.util.Arrays;
+
+/**
+ * Landmark distance tables of a PlaceGraph. The landmarks are chosen by
+ * farthest-point selection: each landmark is the place that is farthest away
+ * from all previously chosen landmarks
+ * @author neop
+ */
+public class LandmarkOracle {
+
+    public static final int DEFAULT_LANDMARK_COUNT = 8;
+
+    static final short UNREACHABLE_SHORT = -1;
+    static final int UNREACHABLE = -1;
+
+    final PlaceGraph graph;
+    final int[] landmarks;
+
+    // distance tables, either the short or the int table of a landmark is set
+    final short[][] shortDistances;
+    final int[][] intDistances;
+
+    /**
+     * Computes the distance tables
+     * @param graph place graph
+     * @param count maximum number of landmarks
+     * @param first first landmark node index or -1 to choose it automatically
+     */
+    public LandmarkOracle(PlaceGraph graph, int count, int first){
+        if(graph == null) throw new NullPointerException();
+        this.graph = graph;
+
+        final int size = graph.size();
+        count = Math.max(0, Math.min(count, size));
+
+        int[] chosen = new int[count];
+        shortDistances = new short[count][];
+        intDistances = new int[count][];
+
+        int[] distances = new int[size];
+        int[] queue = new int[size];
+        // distance to the nearest chosen landmark
+        int[] nearest = new int[size];
+        Arrays.fill(nearest, Integer.MAX_VALUE);
+
+        int next = first >= 0 && first < size ? first : -1;
+        if(next < 0 && size > 0){
+            // start with the place that is farthest away from an arbitrary place
+            breadthSearch(graph, 0, distances, queue);
+            next = farthest(distances);
+        }
+
+        int num = 0;
+        while(num < count && next >= 0){
+            chosen[num] = next;
+            int max = breadthSearch(graph, next, distances, queue);
+            if(max < Short.MAX_VALUE){
+                short[] table = new short[size];
+                for(int i = 0; i < size; ++i){
+                    table[i] = distances[i] == UNREACHABLE ? UNREACHABLE_SHORT : (short) distances[i];
+                }
+                shortDistances[num] = table;
+            } else {
+                intDistances[num] = distances.clone();
+            }
+            ++num;
+
+            // choose the place that is farthest away from all landmarks,
+            // places that are not reachable from any landmark come first
+            next = -1;
+            int nextDistance = 0;
+            for(int i = 0; i < size; ++i){
+                if(distances[i] != UNREACHABLE && distances[i] < nearest[i]){
+                    nearest[i] = distances[i];
+                }
+                if(nearest[i] > nextDistance){
+                    nextDistance = nearest[i];
+                    next = i;
+                }
+            }
+        }
+
+        landmarks = Arrays.copyOf(chosen, num);
+    }
+
+    /**
+     * Breadth search from a node
+     * @param graph graph
+     * @param source source node index
+     * @param distances output: number of paths from source or -1, size of graph
+     * @param queue work array, size of graph
+     * @return maximum distance of reached nodes
+     */
+    public static int breadthSearch(PlaceGraph graph, int source, int[] distances, int[] queue){
+        return DistanceField.breadthSearch(graph, new int[]{source}, distances, queue);
+    }
+
+    private static int farthest(int[] distances){
+        int ret = 0;
+        for(int i = 1; i < distances.length; ++i){
+            if(distances[i] > distances[ret]) ret = i;
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the graph
+     * @return graph
+     */
+    public PlaceGraph getGraph(){
+        return graph;
+    }
+
+    /**
+     * Gets the number of landmarks
+     * @return number of landmarks
+     */
+    public int getLandmarkCount(){
+        return landmarks.length;
+    }
+
+    /**
+     * Gets the node index of a landmark
+     * @param landmark landmark number
+     * @return node index
+     */
+    public int getLandmark(int landmark){
+        return landmarks[landmark];
+    }
+
+    /**
+     * Gets the number of paths from a landmark to a node
+     * @param landmark landmark number
+     * @param node node index
+     * @return distance or -1 if the node is not reachable
+     */
+    public int getDistance(int landmark, int node){
+        if(shortDistances[landmark] != null){
+            return shortDistances[landmark][node];
+        }
+        return intDistances[landmark][node];
+    }
+
+    /**
+     * Gets a lower bound of the number of paths between two nodes
+     * @param a node index
+     * @param b node index
+     * @return lower bound or Integer.MAX_VALUE if b is not reachable from a
+     */
+    public int getLowerBound(int a, int b){
+        int ret = 0;
+        for(int l = 0; l < landmarks.length; ++l){
+            int da = getDistance(l, a);
+            int db = getDistance(l, b);
+            if(da == UNREACHABLE || db == UNREACHABLE){
+                // a landmark reaches only one of them: different components
+                if(da != db) return Integer.MAX_VALUE;
+            } else {
+                ret = Math.max(ret, Math.abs(da - db));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Gets an upper bound of the number of paths between two nodes
+     * @param a node index
+     * @param b node index
+     * @return upper bound or Integer.MAX_VALUE if no landmark reaches both
+     */
+    public int getUpperBound(int a, int b){
+        int ret = Integer.MAX_VALUE;
+        for(int l = 0; l < landmarks.length; ++l){
+            int da = getDistance(l, a);
+            int db = getDistance(l, b);
+            if(da != UNREACHABLE && db != UNREACHABLE){
+                ret = Math.min(ret, da + db);
+            }
+        }
+        return ret;
+    }
+}
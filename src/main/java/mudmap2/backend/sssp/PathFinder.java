@@ -0,0 +1,392 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Entry point for weighted path searches in a world. It keeps a graph of the
+ *  world and recreates it when paths change or places change in a way that
+ *  affects costs. Graphs for the user interface, landmark distances and
+ *  routes through many waypoints are computed in the background
+ */
+
+package mudmap2.backend.sssp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldChangeListener;
+
+/**
+ * Finds weighted routes in a world
+ * @author neop
+ */
+public class PathFinder implements WorldChangeListener {
+
+    /**
+     * Gets called on the background thread with a planned route
+     */
+    public interface RouteListener {
+        void routePlanned(Route route);
+    }
+
+    // minimum number of places for the hierarchical search in findRoute
+    public static final int HIERARCHICAL_MIN_SIZE = 2000;
+
+    // computes landmark distances and plans routes, shared by all path finders
+    static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "PathFinder");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    final World world;
+
+    PlaceGraph graph = null;
+    // topology version of the world when the graph was created
+    long graphTopology = 0;
+    // number of place and layer changes, a graph that was created in the
+    // background is dropped if the world changed meanwhile
+    long changeCount = 0;
+    boolean graphPending = false;
+    // one search per cost profile, reused until the graph changes
+    final HashMap<CostProfile, ShortestPathSearch> searches = new HashMap<>();
+    // hierarchical routers are kept and updated incrementally
+    final HashMap<CostProfile, HierarchicalRouter> routers = new HashMap<>();
+
+    // found routes, valid while the version doesn't change. The version is
+    // increased whenever the graph is discarded
+    final RouteCache routeCache = new RouteCache();
+    long version = 0;
+
+    // landmark distances of the current graph, null until they are computed
+    LandmarkOracle landmarks = null;
+    // graph of the landmark computation that is currently running
+    PlaceGraph landmarkGraph = null;
+    int landmarkCount = LandmarkOracle.DEFAULT_LANDMARK_COUNT;
+
+    /**
+     * Constructs a path finder for a world
+     * @param world world
+     */
+    public PathFinder(World world){
+        if(world == null) throw new NullPointerException();
+        this.world = world;
+        world.addChangeListener(this);
+    }
+
+    /**
+     * Gets the world
+     * @return world
+     */
+    public World getWorld(){
+        return world;
+    }
+
+    /**
+     * Gets the graph of the current world state
+     * @return graph
+     */
+    public synchronized PlaceGraph getGraph(){
+        if(graph == null){
+            graphTopology = world.getTopologyVersion();
+            graph = new PlaceGraph(world);
+        }
+        return graph;
+    }
+
+    /**
+     * Gets the graph of the current world state without creating it on the
+     * calling thread. If it doesn't exist, it will be created in the
+     * background
+     * @return graph or null if it is not created yet
+     */
+    public synchronized PlaceGraph getGraphInBackground(){
+        if(graph == null && !graphPending){
+            graphPending = true;
+            final long topology = world.getTopologyVersion();
+            final long stamp = changeCount;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    PlaceGraph newGraph = null;
+                    try {
+                        newGraph = new PlaceGraph(world);
+                    } catch(RuntimeException ex){
+                        // the world was modified while it was read, the
+                        // graph is requested again
+                    }
+                    setGraph(newGraph, topology, stamp);
+                }
+            });
+        }
+        return graph;
+    }
+
+    /**
+     * Installs a graph that was created in the background, if the world
+     * didn't change meanwhile
+     */
+    synchronized void setGraph(PlaceGraph newGraph, long topology, long stamp){
+        graphPending = false;
+        if(graph == null && newGraph != null && stamp == changeCount){
+            graph = newGraph;
+            graphTopology = topology;
+        }
+    }
+
+    /**
+     * Gets a search for a cost profile
+     * @param profile cost profile
+     * @return search
+     */
+    public synchronized ShortestPathSearch getSearch(CostProfile profile){
+        if(profile == null) throw new NullPointerException();
+        PlaceGraph currentGraph = getGraph();
+        ShortestPathSearch search = searches.get(profile);
+        if(search == null){
+            // copy the profile, so later changes don't affect the search
+            CostProfile copy = new CostProfile(profile);
+            search = new ShortestPathSearch(currentGraph, copy);
+            search.setLandmarks(getLandmarks());
+            searches.put(copy, search);
+        }
+        return search;
+    }
+
+    /**
+     * Gets a hierarchical router for a cost profile, updated for the current
+     * graph
+     * @param profile cost profile
+     * @return router
+     */
+    public synchronized HierarchicalRouter getRouter(CostProfile profile){
+        if(profile == null) throw new NullPointerException();
+        HierarchicalRouter router = routers.get(profile);
+        if(router == null){
+            CostProfile copy = new CostProfile(profile);
+            router = new HierarchicalRouter(copy);
+            routers.put(copy, router);
+        }
+        router.update(getGraph());
+        return router;
+    }
+
+    /**
+     * Gets the landmark distances of the current graph. If they are not
+     * available yet, their computation and the graph will be created in the
+     * background
+     * @return landmarks or null if the computation is not finished
+     */
+    public synchronized LandmarkOracle getLandmarks(){
+        final PlaceGraph currentGraph = getGraphInBackground();
+        if(currentGraph == null) return null;
+        if(landmarks == null && landmarkGraph != currentGraph){
+            landmarkGraph = currentGraph;
+            // the home place is the first landmark, so its distances are exact
+            final int home = indexOfHome(currentGraph);
+            final int count = landmarkCount;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    setLandmarks(new LandmarkOracle(currentGraph, count, home));
+                }
+            });
+        }
+        return landmarks;
+    }
+
+    /**
+     * Installs computed landmarks, if the graph is still up to date
+     */
+    synchronized void setLandmarks(LandmarkOracle oracle){
+        if(oracle.getGraph() == graph){
+            landmarks = oracle;
+            landmarkGraph = null;
+            for(ShortestPathSearch search: searches.values()){
+                search.setLandmarks(oracle);
+            }
+        }
+    }
+
+    /**
+     * Sets the number of landmarks used for the next computation
+     * @param count number of landmarks
+     */
+    public synchronized void setLandmarkCount(int count){
+        if(count < 0) throw new IllegalArgumentException("Negative landmark count");
+        landmarkCount = count;
+    }
+
+    /**
+     * Gets the node index of the place at the home position
+     */
+    private int indexOfHome(PlaceGraph currentGraph){
+        Place place = world.getHomePlace();
+        return place == null ? -1 : currentGraph.indexOf(place);
+    }
+
+    /**
+     * Gets the number of paths on the shortest route from the home place to a
+     * place. The result is only available after the graph and its landmark
+     * distances have been computed in the background. Only the layer of the
+     * home place is loaded for this, places of other layers that aren't
+     * loaded yet are left out of the graph
+     * @param place place
+     * @return number of paths or -1 if the place is not reachable from home or
+     * the distance is not known yet
+     */
+    public synchronized int getDistanceFromHome(Place place){
+        if(place == null) throw new NullPointerException();
+        LandmarkOracle oracle = getLandmarks();
+        if(oracle == null || oracle.getLandmarkCount() == 0) return -1;
+
+        PlaceGraph currentGraph = oracle.getGraph();
+        int home = indexOfHome(currentGraph);
+        int node = currentGraph.indexOf(place);
+        if(home < 0 || node < 0) return -1;
+        if(oracle.getLandmark(0) != home){
+            // the home position has been moved, recompute with the new home
+            landmarks = null;
+            getLandmarks();
+            return -1;
+        }
+        return oracle.getDistance(0, node);
+    }
+
+    /**
+     * Finds the cheapest route between two places
+     * @param start start place
+     * @param end end place
+     * @param profile cost profile
+     * @return route or null if the end place is not reachable
+     */
+    public synchronized Route findRoute(Place start, Place end, CostProfile profile){
+        if(start == null || end == null || profile == null) throw new NullPointerException();
+        Route route = routeCache.get(start, end, profile, version);
+        if(route == null){
+            // large worlds are searched on the graph of cluster entrances
+            if(getGraph().size() >= HIERARCHICAL_MIN_SIZE){
+                route = getRouter(profile).findRoute(start, end);
+            } else {
+                route = getSearch(profile).findRoute(start, end);
+            }
+            if(route != null) routeCache.put(start, end, profile, version, route);
+        }
+        return route;
+    }
+
+    /**
+     * Gets the cache of found routes
+     * @return route cache
+     */
+    public RouteCache getRouteCache(){
+        return routeCache;
+    }
+
+    /**
+     * Plans the cheapest route through multiple waypoints
+     * @param waypoints waypoints, the route starts at the first one
+     * @param profile cost profile
+     * @param closed true, if the route returns to the first waypoint
+     * @return route or null if a waypoint is not reachable
+     */
+    public synchronized Route planRoute(List<Place> waypoints, CostProfile profile, boolean closed){
+        if(waypoints == null) throw new NullPointerException();
+        return new RoutePlanner(getSearch(profile)).plan(waypoints, closed);
+    }
+
+    /**
+     * Plans the cheapest route through multiple waypoints in the background.
+     * The graph is taken on the calling thread, the planner works on a copy
+     * of its search, so that later world changes don't affect it
+     * @param waypoints waypoints, the route starts at the first one
+     * @param profile cost profile
+     * @param closed true, if the route returns to the first waypoint
+     * @param listener gets the route or null if a waypoint is not reachable
+     */
+    public synchronized void planRouteInBackground(List<Place> waypoints, CostProfile profile,
+            final boolean closed, final RouteListener listener){
+        if(waypoints == null || listener == null) throw new NullPointerException();
+        final RoutePlanner planner = new RoutePlanner(new ShortestPathSearch(getSearch(profile)));
+        final ArrayList<Place> places = new ArrayList<>(waypoints);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.routePlanned(planner.plan(places, closed));
+            }
+        });
+    }
+
+    /**
+     * Discards the graph, searches and routers
+     */
+    public synchronized void invalidate(){
+        discardGraph();
+        routers.clear();
+    }
+
+    private void discardGraph(){
+        ++version;
+        graph = null;
+        searches.clear();
+        landmarks = null;
+    }
+
+    /**
+     * Checks whether the graph has to be recreated after a change
+     * @param place changed place or null for other changes
+     * @return true if paths, positions or costs changed
+     */
+    private boolean isGraphChanged(Place place){
+        if(graph == null) return true;
+        if(world.getTopologyVersion() != graphTopology) return true;
+        return place != null && !graph.isCurrent(place);
+    }
+
+    @Override
+    public synchronized void worldChanged(Object source){
+        // names, comments and other fields that costs don't depend on keep
+        // the graph
+        if(source instanceof Place){
+            ++changeCount;
+            if(isGraphChanged((Place) source)){
+                for(HierarchicalRouter router: routers.values()){
+                    router.setModified((Place) source);
+                }
+                discardGraph();
+            }
+        } else if(source instanceof Layer){
+            ++changeCount;
+            if(isGraphChanged(null)){
+                for(HierarchicalRouter router: routers.values()){
+                    router.setModified((Layer) source);
+                }
+                discardGraph();
+            }
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  A compact, read-only snapshot of the places and paths of a world. Places
+ *  are numbered from 0 to size() - 1, the paths are stored as adjacency arrays
+ *  so that searches don't need to touch the place objects
+ */
+
+package mudmap2.backend.sssp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.PlaceGroup;
+import mudmap2.backend.RiskLevel;
+import mudmap2.backend.World;
+
+/**
+ * Read-only graph of all places and paths of a world. Changes of the world
+ * are not reflected, a new graph has to be created instead
+ * @author neop
+ */
+public class PlaceGraph {
+
+    // node index -> place
+    final Place[] places;
+    // place -> node index
+    final HashMap<Place, Integer> indices;
+
+    // node coordinates, the layer is stored as dense layer index
+    final int[] layerIndex;
+    final int[] posX;
+    final int[] posY;
+    final int[] layerIds;
+
+    // fields that costs and clusters depend on, to detect relevant changes
+    final RiskLevel[] riskLevels;
+    final int[] levelMin;
+    final PlaceGroup[] areas;
+
+    // adjacency arrays: edges of node n are edgeBegin[n] to edgeBegin[n + 1] - 1
+    final int[] edgeBegin;
+    final int[] edgeTarget;
+    final Path[] edgePath;
+
+    // places with paths to other layers, per dense layer index
+    final int[][] portals;
+
+    /**
+     * Creates a graph from the current state of a world, without loading
+     * layers that aren't loaded yet
+     * @param world world
+     */
+    public PlaceGraph(World world){
+        if(world == null) throw new NullPointerException();
+
+        ArrayList<Place> placeList = new ArrayList<>();
+        ArrayList<Integer> layerList = new ArrayList<>();
+        for(Layer layer: world.getLayers()){
+            layerList.add(layer.getId());
+            // layers that aren't loaded yet are left out, paths only lead
+            // to places that were read
+            placeList.addAll(layer.getLoadedPlaces());
+        }
+
+        final int size = placeList.size();
+        places = placeList.toArray(new Place[size]);
+        indices = new HashMap<>(size * 2);
+        layerIds = new int[layerList.size()];
+        HashMap<Integer, Integer> layerIndices = new HashMap<>();
+        for(int i = 0; i < layerIds.length; ++i){
+            layerIds[i] = layerList.get(i);
+            layerIndices.put(layerIds[i], i);
+        }
+
+        layerIndex = new int[size];
+        posX = new int[size];
+        posY = new int[size];
+        riskLevels = new RiskLevel[size];
+        levelMin = new int[size];
+        areas = new PlaceGroup[size];
+        for(int i = 0; i < size; ++i){
+            Place place = places[i];
+            indices.put(place, i);
+            layerIndex[i] = layerIndices.get(place.getLayer().getId());
+            posX[i] = place.getX();
+            posY[i] = place.getY();
+            riskLevels[i] = place.getRiskLevel();
+            levelMin[i] = place.getRecLevelMin();
+            areas[i] = place.getPlaceGroup();
+        }
+
+        // count edges, paths to places that aren't on a layer of this world
+        // and paths from a place to itself are ignored
+        edgeBegin = new int[size + 1];
+        for(int i = 0; i < size; ++i){
+            int count = 0;
+            for(Path path: places[i].getPaths()){
+                Place other = path.getOtherPlace(places[i]);
+                if(other != places[i] && indices.containsKey(other)) ++count;
+            }
+            edgeBegin[i + 1] = edgeBegin[i] + count;
+        }
+
+        edgeTarget = new int[edgeBegin[size]];
+        edgePath = new Path[edgeBegin[size]];
+        int[] portalCount = new int[layerIds.length];
+        boolean[] isPortal = new boolean[size];
+        for(int i = 0; i < size; ++i){
+            int e = edgeBegin[i];
+            for(Path path: places[i].getPaths()){
+                Place other = path.getOtherPlace(places[i]);
+                Integer otherIndex = indices.get(other);
+                if(other != places[i] && otherIndex != null){
+                    edgeTarget[e] = otherIndex;
+                    edgePath[e] = path;
+                    ++e;
+                    if(layerIndex[otherIndex] != layerIndex[i] && !isPortal[i]){
+                        isPortal[i] = true;
+                        ++portalCount[layerIndex[i]];
+                    }
+                }
+            }
+        }
+
+        portals = new int[layerIds.length][];
+        for(int l = 0; l < layerIds.length; ++l){
+            portals[l] = new int[portalCount[l]];
+        }
+        Arrays.fill(portalCount, 0);
+        for(int i = 0; i < size; ++i){
+            if(isPortal[i]){
+                portals[layerIndex[i]][portalCount[layerIndex[i]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of places in the graph
+     * @return number of places
+     */
+    public int size(){
+        return places.length;
+    }
+
+    /**
+     * Gets the number of directed edges (each path is stored twice)
+     * @return number of edges
+     */
+    public int getEdgeCount(){
+        return edgeTarget.length;
+    }
+
+    /**
+     * Gets the node index of a place
+     * @param place place
+     * @return node index or -1 if the place is not in the graph
+     */
+    public int indexOf(Place place){
+        Integer ret = indices.get(place);
+        return ret == null ? -1 : ret;
+    }
+
+    /**
+     * Gets the place of a node
+     * @param node node index
+     * @return place
+     */
+    public Place getPlace(int node){
+        return places[node];
+    }
+
+    /**
+     * Gets the first edge index of a node
+     * @param node node index
+     * @return edge index
+     */
+    public int getEdgeBegin(int node){
+        return edgeBegin[node];
+    }
+
+    /**
+     * Gets the edge index after the last edge of a node
+     * @param node node index
+     * @return edge index
+     */
+    public int getEdgeEnd(int node){
+        return edgeBegin[node + 1];
+    }
+
+    /**
+     * Gets the node an edge leads to
+     * @param edge edge index
+     * @return node index
+     */
+    public int getEdgeTarget(int edge){
+        return edgeTarget[edge];
+    }
+
+    /**
+     * Gets the path of an edge
+     * @param edge edge index
+     * @return path
+     */
+    public Path getEdgePath(int edge){
+        return edgePath[edge];
+    }
+
+    /**
+     * Gets the dense layer index of a node (0 to getLayerCount() - 1)
+     * @param node node index
+     * @return layer index
+     */
+    public int getLayerIndex(int node){
+        return layerIndex[node];
+    }
+
+    /**
+     * Gets the number of layers
+     * @return number of layers
+     */
+    public int getLayerCount(){
+        return layerIds.length;
+    }
+
+    /**
+     * Gets the layer id of a dense layer index
+     * @param layerIndex layer index
+     * @return layer id
+     */
+    public int getLayerId(int layerIndex){
+        return layerIds[layerIndex];
+    }
+
+    /**
+     * Gets the x coordinate of a node
+     * @param node node index
+     * @return x coordinate
+     */
+    public int getX(int node){
+        return posX[node];
+    }
+
+    /**
+     * Gets the y coordinate of a node
+     * @param node node index
+     * @return y coordinate
+     */
+    public int getY(int node){
+        return posY[node];
+    }
+
+    /**
+     * Checks whether the fields of a place that costs and clusters depend on
+     * are unchanged since the graph was created. Path changes aren't checked,
+     * they change the topology version of the world
+     * @param place place
+     * @return false if the place was added or moved or its risk level,
+     * recommended level or area changed
+     */
+    public boolean isCurrent(Place place){
+        int node = indexOf(place);
+        // new places have to be in the graph, eg. as waypoints
+        if(node < 0) return place.getLayer() == null;
+        Layer layer = place.getLayer();
+        return layer != null && layer.getId() == layerIds[layerIndex[node]]
+                && place.getX() == posX[node] && place.getY() == posY[node]
+                && place.getRiskLevel() == riskLevels[node]
+                && place.getRecLevelMin() == levelMin[node]
+                && place.getPlaceGroup() == areas[node];
+    }
+
+    /**
+     * Gets the nodes of a layer that have paths to other layers
+     * @param layerIndex dense layer index
+     * @return node indices, don't modify
+     */
+    public int[] getPortals(int layerIndex){
+        return portals[layerIndex];
+    }
+}
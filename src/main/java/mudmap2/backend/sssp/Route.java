@@ -0,0 +1,89 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Result of a path search: the places of a route and its cost
+ */
+
+package mudmap2.backend.sssp;
+
+import java.util.Collections;
+import java.util.List;
+import mudmap2.backend.Place;
+
+/**
+ * A route between two places
+ * @author neop
+ */
+public class Route {
+
+    final List<Place> places;
+    final double cost;
+
+    /**
+     * Constructs a route
+     * @param places places from start to end
+     * @param cost cost of the route
+     */
+    public Route(List<Place> places, double cost){
+        if(places == null) throw new NullPointerException();
+        if(places.isEmpty()) throw new IllegalArgumentException("A route needs at least one place");
+        this.places = Collections.unmodifiableList(places);
+        this.cost = cost;
+    }
+
+    /**
+     * Gets the places from start to end
+     * @return places
+     */
+    public List<Place> getPlaces(){
+        return places;
+    }
+
+    /**
+     * Gets the start place
+     * @return start place
+     */
+    public Place getStart(){
+        return places.get(0);
+    }
+
+    /**
+     * Gets the end place
+     * @return end place
+     */
+    public Place getEnd(){
+        return places.get(places.size() - 1);
+    }
+
+    /**
+     * Gets the number of paths of the route
+     * @return number of paths
+     */
+    public int getLength(){
+        return places.size() - 1;
+    }
+
+    /**
+     * Gets the cost of the route
+     * @return cost
+     */
+    public double getCost(){
+        return cost;
+    }
+}
@@ -0,0 +1,174 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Least recently used cache of route search results. Each entry stores the
+ *  version of the world it was found in, entries of other versions are never
+ *  returned
+ */
+
+package mudmap2.backend.sssp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import mudmap2.backend.Place;
+
+/**
+ * Cache of routes keyed by start place, end place and cost profile
+ * @author neop
+ */
+public class RouteCache {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Cache key, the profile is null for unweighted searches
+     */
+    static class Key {
+        final Place start;
+        final Place end;
+        final CostProfile profile;
+
+        Key(Place start, Place end, CostProfile profile){
+            this.start = start;
+            this.end = end;
+            this.profile = profile;
+        }
+
+        @Override
+        public boolean equals(Object obj){
+            if(!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return start == other.start && end == other.end && Objects.equals(profile, other.profile);
+        }
+
+        @Override
+        public int hashCode(){
+            int hash = 7;
+            hash = 31 * hash + System.identityHashCode(start);
+            hash = 31 * hash + System.identityHashCode(end);
+            hash = 31 * hash + Objects.hashCode(profile);
+            return hash;
+        }
+    }
+
+    final int capacity;
+    final LinkedHashMap<Key, Route> entries;
+    // version of the cached entries
+    long version = Long.MIN_VALUE;
+
+    int hits = 0, misses = 0;
+
+    /**
+     * Constructs a cache with the default capacity
+     */
+    public RouteCache(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a cache
+     * @param capacity maximum number of routes
+     */
+    public RouteCache(final int capacity){
+        if(capacity < 1) throw new IllegalArgumentException("Capacity has to be positive");
+        this.capacity = capacity;
+        entries = new LinkedHashMap<Key, Route>(16, 0.75f, true){
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Route> eldest){
+                return size() > RouteCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Drops all entries, if the version has changed
+     */
+    private void setVersion(long newVersion){
+        if(newVersion != version){
+            entries.clear();
+            version = newVersion;
+        }
+    }
+
+    /**
+     * Gets a cached route
+     * @param start start place
+     * @param end end place
+     * @param profile cost profile or null for unweighted searches
+     * @param version current version of the world
+     * @return route or null if not cached
+     */
+    public synchronized Route get(Place start, Place end, CostProfile profile, long version){
+        setVersion(version);
+        Route ret = entries.get(new Key(start, end, profile));
+        if(ret == null) ++misses;
+        else ++hits;
+        return ret;
+    }
+
+    /**
+     * Adds a route
+     * @param start start place
+     * @param end end place
+     * @param profile cost profile or null for unweighted searches, it is
+     * copied
+     * @param version version of the world the route was found in
+     * @param route route
+     */
+    public synchronized void put(Place start, Place end, CostProfile profile, long version, Route route){
+        if(route == null) throw new NullPointerException();
+        setVersion(version);
+        CostProfile copy = profile != null ? new CostProfile(profile) : null;
+        entries.put(new Key(start, end, copy), route);
+    }
+
+    /**
+     * Removes all routes
+     */
+    public synchronized void clear(){
+        entries.clear();
+    }
+
+    /**
+     * Gets the number of cached routes
+     * @return number of routes
+     */
+    public synchronized int size(){
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of successful lookups
+     * @return number of hits
+     */
+    public synchronized int getHits(){
+        return hits;
+    }
+
+    /**
+     * Gets the number of failed lookups
+     * @return number of misses
+     */
+    public synchronized int getMisses(){
+        return misses;
+    }
+}
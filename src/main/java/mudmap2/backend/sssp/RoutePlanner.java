@@ -0,0 +1,328 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Plans a route through multiple waypoints: the costs between all waypoints
+ *  are computed in parallel, then the order of the visits is chosen by the
+ *  nearest neighbour heuristic and improved by 2-opt and waypoint moves. The
+ *  moves are evaluated by their cost difference in constant time
+ */
+
+package mudmap2.backend.sssp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import mudmap2.backend.Place;
+
+/**
+ * Route planner for multiple waypoints
+ * @author neop
+ */
+public class RoutePlanner {
+
+    // shared by all planners, one task per waypoint
+    static final ForkJoinPool pool = new ForkJoinPool();
+
+    // maximum number of 2-opt passes
+    static final int MAX_PASSES = 100;
+    // minimum cost decrease of an accepted move, against rounding errors
+    static final double EPSILON = 1e-9;
+
+    final ShortestPathSearch search;
+
+    /**
+     * Constructs a planner
+     * @param search search that provides the graph, costs and landmarks. It
+     * is copied for each parallel task
+     */
+    public RoutePlanner(ShortestPathSearch search){
+        if(search == null) throw new NullPointerException();
+        this.search = search;
+    }
+
+    /**
+     * Computes the costs from each waypoint to every other waypoint
+     */
+    class DistanceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int[] nodes;
+        final double[][] matrix;
+        final int begin, end;
+
+        DistanceTask(int[] nodes, double[][] matrix, int begin, int end){
+            this.nodes = nodes;
+            this.matrix = matrix;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute(){
+            if(end - begin > 1){
+                int middle = (begin + end) / 2;
+                invokeAll(new DistanceTask(nodes, matrix, begin, middle),
+                          new DistanceTask(nodes, matrix, middle, end));
+            } else if(end > begin){
+                ShortestPathSearch taskSearch = new ShortestPathSearch(search);
+                taskSearch.searchAll(nodes[begin]);
+                for(int i = 0; i < nodes.length; ++i){
+                    matrix[begin][i] = taskSearch.getDistance(nodes[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the cost matrix of the waypoints
+     * @param waypoints waypoints
+     * @return matrix[from][to], Double.POSITIVE_INFINITY for unreachable
+     * waypoints
+     */
+    public double[][] computeDistances(List<Place> waypoints){
+        final PlaceGraph graph = search.getGraph();
+        int[] nodes = new int[waypoints.size()];
+        for(int i = 0; i < nodes.length; ++i){
+            nodes[i] = graph.indexOf(waypoints.get(i));
+            if(nodes[i] < 0) throw new IllegalArgumentException("Waypoint is not in the graph: " + waypoints.get(i));
+        }
+
+        double[][] matrix = new double[nodes.length][nodes.length];
+        pool.invoke(new DistanceTask(nodes, matrix, 0, nodes.length));
+        return matrix;
+    }
+
+    /**
+     * Gets the cost of visiting the waypoints in an order
+     * @param matrix cost matrix
+     * @param order order of the waypoints
+     * @param closed true, if the route returns to the first waypoint
+     * @return cost
+     */
+    public static double getCost(double[][] matrix, int[] order, boolean closed){
+        double ret = 0.0;
+        for(int i = 1; i < order.length; ++i){
+            ret += matrix[order[i - 1]][order[i]];
+        }
+        if(closed && order.length > 1){
+            ret += matrix[order[order.length - 1]][order[0]];
+        }
+        return ret;
+    }
+
+    /**
+     * Costs of the sections of a waypoint order as prefix sums in both
+     * directions, so that the cost difference of a reversed section or a
+     * moved waypoint is known in constant time. The costs may depend on the
+     * direction. Unreachable sections are counted separately, an order with
+     * fewer of them is cheaper
+     */
+    static class OrderCosts {
+        final double[][] matrix;
+        final int[] order;
+        final boolean closed;
+
+        // forward[k]: cost of the sections from order[0] to order[k],
+        // backward[k]: the same sections in the opposite direction
+        final double[] forward, backward;
+        final int[] forwardUnreachable, backwardUnreachable;
+
+        // cost difference of the last evaluated move
+        double costDelta;
+        int unreachableDelta;
+
+        OrderCosts(double[][] matrix, int[] order, boolean closed){
+            this.matrix = matrix;
+            this.order = order;
+            this.closed = closed;
+            forward = new double[order.length];
+            backward = new double[order.length];
+            forwardUnreachable = new int[order.length];
+            backwardUnreachable = new int[order.length];
+            update();
+        }
+
+        /**
+         * Recomputes the prefix sums after the order was changed
+         */
+        final void update(){
+            for(int k = 1; k < order.length; ++k){
+                double cost = matrix[order[k - 1]][order[k]];
+                boolean unreachable = cost == Double.POSITIVE_INFINITY;
+                forward[k] = forward[k - 1] + (unreachable ? 0.0 : cost);
+                forwardUnreachable[k] = forwardUnreachable[k - 1] + (unreachable ? 1 : 0);
+
+                cost = matrix[order[k]][order[k - 1]];
+                unreachable = cost == Double.POSITIVE_INFINITY;
+                backward[k] = backward[k - 1] + (unreachable ? 0.0 : cost);
+                backwardUnreachable[k] = backwardUnreachable[k - 1] + (unreachable ? 1 : 0);
+            }
+        }
+
+        /**
+         * Gets the waypoint after position j or -1 at the end of an open route
+         */
+        private int getNext(int j){
+            if(j + 1 < order.length) return order[j + 1];
+            return closed ? order[0] : -1;
+        }
+
+        private void add(int from, int to, int sign){
+            if(to < 0) return;
+            double cost = matrix[from][to];
+            if(cost == Double.POSITIVE_INFINITY){
+                unreachableDelta += sign;
+            } else {
+                costDelta += sign * cost;
+            }
+        }
+
+        private boolean isCheaper(){
+            return unreachableDelta < 0 || (unreachableDelta == 0 && costDelta < -EPSILON);
+        }
+
+        /**
+         * Checks whether reversing the section i..j makes the route cheaper
+         * @param i first position, at least 1
+         * @param j last position, greater than i
+         * @return true, if the route gets cheaper
+         */
+        boolean isReverseCheaper(int i, int j){
+            final int previous = order[i - 1];
+            final int next = getNext(j);
+            costDelta = (backward[j] - backward[i]) - (forward[j] - forward[i]);
+            unreachableDelta = (backwardUnreachable[j] - backwardUnreachable[i])
+                    - (forwardUnreachable[j] - forwardUnreachable[i]);
+            add(previous, order[i], -1);
+            add(order[j], next, -1);
+            add(previous, order[j], 1);
+            add(order[i], next, 1);
+            return isCheaper();
+        }
+
+        /**
+         * Checks whether moving the waypoint at position j to position i
+         * makes the route cheaper
+         * @param i new position, at least 1
+         * @param j old position, greater than i
+         * @return true, if the route gets cheaper
+         */
+        boolean isMoveCheaper(int i, int j){
+            final int previous = order[i - 1];
+            final int next = getNext(j);
+            costDelta = 0.0;
+            unreachableDelta = 0;
+            add(previous, order[i], -1);
+            add(order[j - 1], order[j], -1);
+            add(order[j], next, -1);
+            add(previous, order[j], 1);
+            add(order[j], order[i], 1);
+            add(order[j - 1], next, 1);
+            return isCheaper();
+        }
+    }
+
+    /**
+     * Orders the waypoints, the first waypoint stays first
+     * @param matrix cost matrix
+     * @param closed true, if the route returns to the first waypoint
+     * @return order of the waypoints
+     */
+    public static int[] orderWaypoints(double[][] matrix, boolean closed){
+        final int count = matrix.length;
+        int[] order = new int[count];
+        if(count == 0) return order;
+
+        // nearest neighbour
+        boolean[] visited = new boolean[count];
+        visited[0] = true;
+        for(int i = 1; i < count; ++i){
+            int previous = order[i - 1];
+            int next = -1;
+            for(int j = 0; j < count; ++j){
+                if(!visited[j] && (next < 0 || matrix[previous][j] < matrix[previous][next])){
+                    next = j;
+                }
+            }
+            order[i] = next;
+            visited[next] = true;
+        }
+
+        // 2-opt: reverse sections of the route while it gets cheaper. Moving
+        // single waypoints also finds improvements at the open end of the
+        // route that 2-opt can't reach
+        OrderCosts costs = new OrderCosts(matrix, order, closed);
+        boolean improved = true;
+        for(int pass = 0; improved && pass < MAX_PASSES; ++pass){
+            improved = false;
+            for(int i = 1; i < count - 1; ++i){
+                for(int j = i + 1; j < count; ++j){
+                    if(costs.isReverseCheaper(i, j)){
+                        // reverse i..j
+                        for(int a = i, b = j; a < b; ++a, --b){
+                            int tmp = order[a];
+                            order[a] = order[b];
+                            order[b] = tmp;
+                        }
+                        costs.update();
+                        improved = true;
+                    }
+                    if(costs.isMoveCheaper(i, j)){
+                        // move waypoint j to position i
+                        int waypoint = order[j];
+                        System.arraycopy(order, i, order, i + 1, j - i);
+                        order[i] = waypoint;
+                        costs.update();
+                        improved = true;
+                    }
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Plans a route through all waypoints
+     * @param waypoints waypoints, the route starts at the first one
+     * @param closed true, if the route returns to the first waypoint
+     * @return route or null if a waypoint is not reachable
+     */
+    public Route plan(List<Place> waypoints, boolean closed){
+        if(waypoints == null) throw new NullPointerException();
+        if(waypoints.isEmpty()) throw new IllegalArgumentException("No waypoints");
+
+        double[][] matrix = computeDistances(waypoints);
+        int[] order = orderWaypoints(matrix, closed);
+        if(getCost(matrix, order, closed) == Double.POSITIVE_INFINITY) return null;
+
+        int[] visits = closed ? Arrays.copyOf(order, order.length + 1) : order;
+        ArrayList<Place> places = new ArrayList<>();
+        places.add(waypoints.get(0));
+        double cost = 0.0;
+        for(int i = 1; i < visits.length; ++i){
+            Route section = search.findRoute(waypoints.get(visits[i - 1]), waypoints.get(visits[i]));
+            List<Place> sectionPlaces = section.getPlaces();
+            places.addAll(sectionPlaces.subList(1, sectionPlaces.size()));
+            cost += section.getCost();
+        }
+        return new Route(places, cost);
+    }
+}
@@ -0,0 +1,341 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*  File description
+ *
+ *  Dijkstra / A* search on a PlaceGraph with the costs of a CostProfile
+ */
+
+package mudmap2.backend.sssp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import mudmap2.backend.Place;
+
+/**
+ * Weighted shortest path search on a PlaceGraph. The path and place costs are
+ * evaluated once on construction, the search state is reused between queries.
+ * An instance must not be used by multiple threads at the same time
+ * @author neop
+ */
+public class ShortestPathSearch {
+
+    final PlaceGraph graph;
+    final CostProfile profile;
+
+    // cost of entering a place and of using an edge
+    final double[] placeCost;
+    final double[] edgeCost;
+
+    // factor for the A* heuristic (lower bound of cost per grid distance)
+    final double heuristicFactor;
+    // lower bound of the cost of a single step
+    final double minStep;
+    // optional landmark distances for a tighter heuristic
+    LandmarkOracle landmarks = null;
+
+    // search state, only valid for nodes with reached[n] == stamp
+    final double[] distance;
+    final int[] predecessor;
+    final int[] reached;
+    final int[] settled;
+    int stamp = 0;
+    final IndexedMinHeap heap;
+
+    // heuristic state of the current query
+    int target, targetLayer, targetX, targetY;
+    int portalDistance;
+
+    /**
+     * Constructs a search for a graph and a cost profile
+     * @param graph place graph
+     * @param profile cost profile
+     */
+    public ShortestPathSearch(PlaceGraph graph, CostProfile profile){
+        if(graph == null || profile == null) throw new NullPointerException();
+        this.graph = graph;
+        this.profile = profile;
+
+        final int size = graph.size();
+        placeCost = new double[size];
+        for(int i = 0; i < size; ++i){
+            placeCost[i] = profile.getPlaceCost(graph.getPlace(i));
+        }
+
+        edgeCost = new double[graph.getEdgeCount()];
+        double minimum = Double.POSITIVE_INFINITY;
+        int maxSpan = 0;
+        for(int i = 0; i < size; ++i){
+            Place place = graph.getPlace(i);
+            for(int e = graph.getEdgeBegin(i); e < graph.getEdgeEnd(i); ++e){
+                int target = graph.getEdgeTarget(e);
+                edgeCost[e] = profile.getPathCost(graph.getEdgePath(e), place);
+
+                double step = edgeCost[e] + placeCost[target];
+                if(step < Double.POSITIVE_INFINITY){
+                    minimum = Math.min(minimum, step);
+                    if(graph.getLayerIndex(i) == graph.getLayerIndex(target)){
+                        maxSpan = Math.max(maxSpan, gridDistance(i, target));
+                    }
+                }
+            }
+        }
+        // each step costs at least minStep and changes the grid position on a
+        // layer by at most maxSpan, the factor is reduced slightly to keep the
+        // heuristic admissible despite rounding
+        if(maxSpan > 0 && minimum < Double.POSITIVE_INFINITY){
+            heuristicFactor = minimum / maxSpan * (1.0 - 1e-9);
+        } else {
+            heuristicFactor = 0.0;
+        }
+        minStep = minimum < Double.POSITIVE_INFINITY ? minimum * (1.0 - 1e-9) : 0.0;
+
+        distance = new double[size];
+        predecessor = new int[size];
+        reached = new int[size];
+        settled = new int[size];
+        heap = new IndexedMinHeap(size);
+    }
+
+    /**
+     * Constructs a search that shares the costs and landmarks of another
+     * search, but has its own search state. Used to search in parallel
+     * @param search search to copy the costs from
+     */
+    public ShortestPathSearch(ShortestPathSearch search){
+        graph = search.graph;
+        profile = search.profile;
+        placeCost = search.placeCost;
+        edgeCost = search.edgeCost;
+        heuristicFactor = search.heuristicFactor;
+        minStep = search.minStep;
+        landmarks = search.landmarks;
+
+        final int size = graph.size();
+        distance = new double[size];
+        predecessor = new int[size];
+        reached = new int[size];
+        settled = new int[size];
+        heap = new IndexedMinHeap(size);
+    }
+
+    /**
+     * Gets the graph
+     * @return graph
+     */
+    public PlaceGraph getGraph(){
+        return graph;
+    }
+
+    /**
+     * Gets the cost profile
+     * @return cost profile
+     */
+    public CostProfile getProfile(){
+        return profile;
+    }
+
+    /**
+     * Sets landmark distances that are used to improve the heuristic
+     * @param landmarks landmarks of the same graph or null
+     */
+    public void setLandmarks(LandmarkOracle landmarks){
+        if(landmarks != null && landmarks.getGraph() != graph){
+            throw new IllegalArgumentException("Landmarks belong to another graph");
+        }
+        this.landmarks = landmarks;
+    }
+
+    /**
+     * Gets the landmark distances
+     * @return landmarks or null
+     */
+    public LandmarkOracle getLandmarks(){
+        return landmarks;
+    }
+
+    /**
+     * Chebyshev distance of two nodes on the grid
+     */
+    private int gridDistance(int a, int b){
+        return Math.max(Math.abs(graph.getX(a) - graph.getX(b)), Math.abs(graph.getY(a) - graph.getY(b)));
+    }
+
+    private int gridDistance(int node, int x, int y){
+        return Math.max(Math.abs(graph.getX(node) - x), Math.abs(graph.getY(node) - y));
+    }
+
+    /**
+     * Prepares the heuristic for a target node. A route to the target either
+     * stays on the target layer or enters it through a place with a path to
+     * another layer (portal), so the grid distance to the target or from the
+     * nearest portal to the target is a lower bound
+     */
+    private void prepareHeuristic(int target){
+        this.target = target;
+        targetLayer = graph.getLayerIndex(target);
+        targetX = graph.getX(target);
+        targetY = graph.getY(target);
+        portalDistance = Integer.MAX_VALUE;
+        for(int portal: graph.getPortals(targetLayer)){
+            portalDistance = Math.min(portalDistance, gridDistance(portal, targetX, targetY));
+        }
+    }
+
+    /**
+     * Lower bound of the cost from a node to the current target. The route
+     * needs at least as many steps as the landmark lower bound, each step
+     * costs at least minStep. The maximum of both bounds is still consistent
+     */
+    private double heuristic(int node){
+        double ret = 0.0;
+        if(heuristicFactor != 0.0){
+            int dist = portalDistance;
+            if(graph.getLayerIndex(node) == targetLayer){
+                dist = Math.min(dist, gridDistance(node, targetX, targetY));
+            }
+            if(dist == Integer.MAX_VALUE) return Double.POSITIVE_INFINITY;
+            ret = heuristicFactor * dist;
+        }
+        if(landmarks != null){
+            int steps = landmarks.getLowerBound(node, target);
+            if(steps == Integer.MAX_VALUE) return Double.POSITIVE_INFINITY;
+            ret = Math.max(ret, minStep * steps);
+        }
+        return ret;
+    }
+
+    /**
+     * Resets the search state and adds the source node
+     */
+    private void begin(int source){
+        if(++stamp == Integer.MAX_VALUE){
+            Arrays.fill(reached, 0);
+            Arrays.fill(settled, 0);
+            stamp = 1;
+        }
+        heap.clear();
+        reached[source] = stamp;
+        distance[source] = 0.0;
+        predecessor[source] = -1;
+    }
+
+    /**
+     * Searches the cheapest route between two nodes (A*)
+     * @param source source node index
+     * @param target target node index
+     * @return cost of the route or Double.POSITIVE_INFINITY if the target is
+     * not reachable
+     */
+    public double search(int source, int target){
+        begin(source);
+        prepareHeuristic(target);
+        double estimate = heuristic(source);
+        if(estimate == Double.POSITIVE_INFINITY) return estimate;
+        heap.insertOrDecrease(source, estimate);
+
+        while(!heap.isEmpty()){
+            int node = heap.poll();
+            if(node == target) return distance[node];
+            settled[node] = stamp;
+            relax(node, true);
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Computes the cost from a source node to all other nodes (Dijkstra)
+     * @param source source node index
+     */
+    public void searchAll(int source){
+        begin(source);
+        heap.insertOrDecrease(source, 0.0);
+
+        while(!heap.isEmpty()){
+            int node = heap.poll();
+            settled[node] = stamp;
+            relax(node, false);
+        }
+    }
+
+    private void relax(int node, boolean useHeuristic){
+        final double nodeDistance = distance[node];
+        for(int e = graph.getEdgeBegin(node); e < graph.getEdgeEnd(node); ++e){
+            int target = graph.getEdgeTarget(e);
+            if(settled[target] == stamp) continue;
+
+            double dist = nodeDistance + edgeCost[e] + placeCost[target];
+            if(dist == Double.POSITIVE_INFINITY) continue;
+
+            if(reached[target] != stamp || dist < distance[target]){
+                reached[target] = stamp;
+                distance[target] = dist;
+                predecessor[target] = node;
+                double key = useHeuristic ? dist + heuristic(target) : dist;
+                if(key < Double.POSITIVE_INFINITY) heap.insertOrDecrease(target, key);
+            }
+        }
+    }
+
+    /**
+     * Gets the cost of the route to a node found by the last search
+     * @param node node index
+     * @return cost or Double.POSITIVE_INFINITY if the node was not reached
+     */
+    public double getDistance(int node){
+        return reached[node] == stamp ? distance[node] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Gets the predecessor of a node on the route found by the last search
+     * @param node node index
+     * @return node index or -1 for the source or unreached nodes
+     */
+    public int getPredecessor(int node){
+        return reached[node] == stamp ? predecessor[node] : -1;
+    }
+
+    /**
+     * Gets the route to a node found by the last search
+     * @param target node index
+     * @return route or null if the node was not reached
+     */
+    public Route getRoute(int target){
+        if(reached[target] != stamp) return null;
+        ArrayList<Place> places = new ArrayList<>();
+        for(int node = target; node >= 0; node = predecessor[node]){
+            places.add(graph.getPlace(node));
+        }
+        Collections.reverse(places);
+        return new Route(places, distance[target]);
+    }
+
+    /**
+     * Searches the cheapest route between two places
+     * @param start start place
+     * @param end end place
+     * @return route or null if no route exists or a place is not in the graph
+     */
+    public Route findRoute(Place start, Place end){
+        int source = graph.indexOf(start);
+        int target = graph.indexOf(end);
+        if(source < 0 || target < 0) return null;
+        if(search(source, target) == Double.POSITIVE_INFINITY) return null;
+        return getRoute(target);
+    }
+}
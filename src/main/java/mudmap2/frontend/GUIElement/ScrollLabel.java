@@ -48,6 +48,8 @@ public final class ScrollLabel extends JPanel implements Runnable{
     long message_start_time;
 
     String current_text, default_text;
+    // shown instead of the default text, if set
+    String status_text = null;
     boolean is_default_text;
 
     final long min_message_time = 5000; // 4s
@@ -96,6 +98,16 @@ public final class ScrollLabel extends JPanel implements Runnable{
      */
     public void setText(String s){
         default_text = s;
+        if(is_default_text && status_text == null) setDisplayedText(s);
+    }
+
+    /**
+     * Sets a status text that replaces the default text until it is reset,
+     * eg. the progress of a task. Messages are still shown first
+     * @param s status text or null to show the default text again
+     */
+    synchronized public void setStatus(String s){
+        status_text = s;
         if(is_default_text) setDisplayedText(s);
     }
 
@@ -137,7 +149,7 @@ public final class ScrollLabel extends JPanel implements Runnable{
     synchronized private void nextMessage(){
         if(!(is_default_text = messages.isEmpty())){
             setDisplayedText(messages.pollFirst());
-        } else setDisplayedText(getText());
+        } else setDisplayedText(status_text);
     }
 
     /**
@@ -145,7 +157,7 @@ public final class ScrollLabel extends JPanel implements Runnable{
      * @param s
      */
     synchronized private void setDisplayedText(String s){
-        if(s == null) s = getText();
+        if(s == null) s = status_text != null ? status_text : getText();
         current_text = s;
         message_start_time = getTimeMS();
         repaint();
@@ -4,6 +4,7 @@ import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedList;
 
@@ -21,6 +22,9 @@ import mudmap2.backend.Layer;
 import mudmap2.backend.LayerElement;
 import mudmap2.backend.Path;
 import mudmap2.backend.Place;
+import mudmap2.backend.sssp.CostProfile;
+import mudmap2.backend.sssp.PathFinder;
+import mudmap2.backend.sssp.Route;
 import mudmap2.frontend.dialog.PathConnectDialog;
 import mudmap2.frontend.dialog.PathConnectNeighborsDialog;
 import mudmap2.frontend.dialog.PlaceCommentDialog;
@@ -39,6 +43,8 @@ public class ContextMenu extends JPopupMenu implements ActionListener {
 
     private static final long serialVersionUID = 1L;
     private static final String ACTION_FIND_PATH = "find_path";
+    private static final String ACTION_FIND_SAFE_PATH = "find_safe_path";
+    private static final String ACTION_PLAN_ROUTE = "plan_route";
     private static final String ACTION_PASTE = "paste";
     private static final String ACTION_CUT = "cut";
     private static final String ACTION_COPY = "copy";
@@ -177,6 +183,10 @@ public class ContextMenu extends JPopupMenu implements ActionListener {
                 if (!parent.isPassive()) {
                     mPaths.addSeparator();
                     MenuHelper.addMenuItem(mPaths, "Find shortest path", ContextMenu.ACTION_FIND_PATH, this);
+                    MenuHelper.addMenuItem(mPaths, "Find safest path", ContextMenu.ACTION_FIND_SAFE_PATH, this, "Find a path that avoids dangerous places");
+                    if (!parent.placeGroupGetSelection().isEmpty()) {
+                        MenuHelper.addMenuItem(mPaths, "Plan route through selection", ContextMenu.ACTION_PLAN_ROUTE, this, "Find a short route from this place through all selected places");
+                    }
                 }
             }
 
@@ -314,7 +324,11 @@ public class ContextMenu extends JPopupMenu implements ActionListener {
                 final Place end = psdlg2.getSelection();
                 if (end != null) {
                     parent.placeGroupReset();
-                    Place place_it = parent.getWorld().breadthSearch(place, end);
+                    // don't search if the place is not connected at all
+                    Place place_it = null;
+                    if (parent.getWorld().getConnectivityIndex().isReachable(place, end)) {
+                        place_it = parent.getWorld().breadthSearch(place, end);
+                    }
                     if (place_it == null) {
                         parent.callMessageListeners("No Path found");
                         JOptionPane.showMessageDialog(this, StringHelper.join("Could not find path to ", end.getName()));
@@ -332,6 +346,63 @@ public class ContextMenu extends JPopupMenu implements ActionListener {
 
                 }
                 break;
+            case ContextMenu.ACTION_FIND_SAFE_PATH:
+                final PlaceSelectionDialog psdlg3 = new PlaceSelectionDialog(rootFrame, parent.getWorld(), parent.getPosition(), true);
+                psdlg3.setVisible(true);
+                final Place safeEnd = psdlg3.getSelection();
+                if (safeEnd != null) {
+                    parent.placeGroupReset();
+                    Route route = null;
+                    if (parent.getWorld().getConnectivityIndex().isReachable(place, safeEnd)) {
+                        route = parent.getWorld().getPathFinder().findRoute(place, safeEnd, CostProfile.createRiskAware());
+                    }
+                    if (route == null) {
+                        parent.callMessageListeners("No Path found");
+                        JOptionPane.showMessageDialog(this, StringHelper.join("Could not find path to ", safeEnd.getName()));
+                    } else {
+                        parent.getPlaceGroup().addAll(route.getPlaces());
+                        parent.worldChanged(place);
+                        parent.callMessageListeners(StringHelper.join("Path found, length: ", route.getLength(), ", cost: ", route.getCost()));
+                    }
+                }
+                break;
+            case ContextMenu.ACTION_PLAN_ROUTE:
+                final ArrayList<Place> waypoints = new ArrayList<>(parent.placeGroupGetSelection());
+                waypoints.remove(place);
+                waypoints.add(0, place);
+
+                // don't search if a waypoint is not connected at all
+                boolean reachable = true;
+                for (final Place waypoint : waypoints) {
+                    reachable &= parent.getWorld().getConnectivityIndex().isReachable(place, waypoint);
+                }
+                parent.placeGroupReset();
+                if (!reachable) {
+                    parent.callMessageListeners("No route found");
+                    break;
+                }
+
+                // the order of many waypoints takes a while
+                parent.callMessageListeners("Planning route...");
+                parent.getWorld().getPathFinder().planRouteInBackground(waypoints, CostProfile.createShortest(), false, new PathFinder.RouteListener() {
+                    @Override
+                    public void routePlanned(final Route plannedRoute) {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (plannedRoute == null) {
+                                    parent.callMessageListeners("No route found");
+                                } else {
+                                    parent.placeGroupReset();
+                                    parent.getPlaceGroup().addAll(plannedRoute.getPlaces());
+                                    parent.worldChanged(place);
+                                    parent.callMessageListeners(StringHelper.join("Route found, length: ", plannedRoute.getLength(), ", waypoints: ", waypoints.size()));
+                                }
+                            }
+                        });
+                    }
+                });
+                break;
             case ContextMenu.ACTION_EXPAND_ALL:
                 //north
                 for (final Place pl : layer.getPlacesList(PlaceYComparator.BACKWARD)) {
@@ -16,6 +16,7 @@
  */
 package mudmap2.frontend.GUIElement.WorldPanel;
 
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
@@ -23,13 +24,19 @@ import java.awt.FontMetrics;
 import java.awt.GradientPaint;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.Transparency;
 import java.awt.font.TextAttribute;
 import java.awt.geom.CubicCurve2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.ArrayDeque;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -37,14 +44,20 @@ import java.util.Objects;
 import mudmap2.utils.Pair;
 import mudmap2.backend.Layer;
 import mudmap2.backend.Path;
+import mudmap2.backend.PathChangeListener;
 import mudmap2.backend.Place;
+import mudmap2.backend.PlaceGroup;
+import mudmap2.backend.RiskLevel;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldChangeListener;
 import mudmap2.backend.WorldCoordinate;
+import mudmap2.backend.sssp.DistanceField;
 
 /**
  *
  * @author Neop
  */
-public class MapPainterDefault implements MapPainter {
+public class MapPainterDefault implements MapPainter, WorldChangeListener, PathChangeListener {
 
     static final float PATH_STROKE_WIDTH = 3;
 
@@ -75,6 +88,74 @@ public class MapPainterDefault implements MapPainter {
     Boolean showPlaceCursor = true;
     Boolean showPlaceSelection = true;
 
+    // heat map overlay or null
+    DistanceField distanceField = null;
+    // heat map colors by distance, for the current maximum distance
+    Color[] heatMapColors = new Color[0];
+
+    // pixels of the cached tile images, about 64 MB
+    static final long TILE_CACHE_PIXELS = 16L * 1024 * 1024;
+
+    /**
+     * Rendered tile of a place and the colors it was rendered with that can
+     * change without a world change event
+     */
+    static class TileImage {
+        final BufferedImage image;
+        boolean selected;
+        int heatMapRGB, placeGroupRGB, riskLevelRGB;
+        // name of the place and parents and children whose names are drawn
+        String name;
+        Place[] related;
+
+        TileImage(BufferedImage image){
+            this.image = image;
+        }
+    }
+
+    // rendered tiles by place, least recently drawn first
+    final LinkedHashMap<Place, TileImage> tileCache = new LinkedHashMap<Place, TileImage>(256, 0.75f, true){
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Place, TileImage> eldest){
+            if(size() > maxTileCacheSize){
+                removeTileReferences(eldest.getKey(), eldest.getValue());
+                freeTileImages.add(eldest.getValue().image);
+                return true;
+            }
+            return false;
+        }
+    };
+    // images of removed tiles, for other tiles of the same size
+    final ArrayDeque<BufferedImage> freeTileImages = new ArrayDeque<>();
+    int maxTileCacheSize = 0;
+    // cached tiles that show the name of a place, as parent or child
+    final HashMap<Place, HashSet<Place>> tileDependents = new HashMap<>();
+    // cached tiles by place name, their name might become ambiguous
+    final HashMap<String, HashSet<Place>> tileNames = new HashMap<>();
+    // cached tiles of places whose name wasn't unique on their layer
+    final HashSet<Place> ambiguousNameTiles = new HashSet<>();
+
+    // path overlay, kept while the map size doesn't change
+    BufferedImage pathImage = null;
+    Graphics2D pathGraphics = null;
+    // area of the path overlay that was drawn on: the last frame's area is
+    // cleared, the current one is drawn on the map
+    final Rectangle pathArea = new Rectangle();
+    int pathAreaX1, pathAreaY1, pathAreaX2, pathAreaY2;
+    // screen positions of the tiles of the current frame, x and y, to mask
+    // out the paths below the tiles
+    int[] tilePositions = new int[512];
+    int tilePositionCount = 0;
+
+    // world and settings the cached tiles were rendered with, changes of the
+    // world remove the tiles of the changed places
+    World tileCacheWorld = null;
+    int tileCacheTileSize = 0;
+    Font tileCacheFont = null;
+    Boolean tileCacheShowPaths = null;
+
     public MapPainterDefault() {}
 
     @Override
@@ -126,6 +207,37 @@ public class MapPainterDefault implements MapPainter {
         return false;
     }
 
+    /**
+     * Sets the distance field that is shown as a heat map
+     * @param distanceField distance field or null to hide the heat map
+     */
+    public void setDistanceField(DistanceField distanceField){
+        this.distanceField = distanceField;
+    }
+
+    public DistanceField getDistanceField(){
+        return distanceField;
+    }
+
+    /**
+     * Gets the heat map color of a distance, from green (near) to red (far).
+     * The colors are created once per maximum distance
+     * @param distance distance
+     * @param maxDistance maximum distance
+     * @return color
+     */
+    Color getHeatMapColor(int distance, int maxDistance){
+        if(heatMapColors.length != maxDistance + 1){
+            heatMapColors = new Color[maxDistance + 1];
+            for(int i = 0; i <= maxDistance; ++i){
+                float ratio = maxDistance > 0 ? (float) i / maxDistance : 0.0f;
+                int rgb = Color.HSBtoRGB((1.0f - ratio) / 3.0f, 1.0f, 1.0f);
+                heatMapColors[i] = new Color((rgb & 0xFFFFFF) | 0x80000000, true);
+            }
+        }
+        return heatMapColors[Math.min(distance, maxDistance)];
+    }
+
     public Boolean isGridEnabled(){
         return showGrid;
     }
@@ -506,6 +618,530 @@ public class MapPainterDefault implements MapPainter {
         g.drawLine(Math.round(a), Math.round(b), Math.round(c), Math.round(d));
     }
 
+    /**
+     * Gets the rendered tile of a place from the tile cache, renders it if
+     * it isn't cached or was rendered with other colors
+     * @param g map graphics
+     * @param place place
+     * @param layer layer of the place
+     * @param selected true if the place is selected or cut
+     * @param heatMapColor heat map color or null
+     * @param tileBorderWidthScaled tile border width
+     * @param maxLines max number of text lines
+     * @param drawText true if the tile is large enough for text
+     * @return tile image
+     */
+    private BufferedImage getTileImage(Graphics g, Place place, Layer layer, boolean selected, Color heatMapColor,
+            int tileBorderWidthScaled, int maxLines, boolean drawText){
+        final int heatMapRGB = getRGB(heatMapColor);
+        final int placeGroupRGB = place.getPlaceGroup() == null ? 0 : getRGB(place.getPlaceGroup().getColor());
+        final int riskLevelRGB = place.getRiskLevel() == null ? 0 : getRGB(place.getRiskLevel().getColor());
+
+        TileImage tile = tileCache.get(place);
+        if(tile != null && tile.selected == selected && tile.heatMapRGB == heatMapRGB
+                && tile.placeGroupRGB == placeGroupRGB && tile.riskLevelRGB == riskLevelRGB){
+            return tile.image;
+        }
+
+        if(tile == null){
+            BufferedImage image = freeTileImages.poll();
+            if(image == null){
+                image = ((Graphics2D) g).getDeviceConfiguration().createCompatibleImage(tileSize, tileSize, Transparency.TRANSLUCENT);
+            }
+            tile = new TileImage(image);
+            tileCache.put(place, tile);
+        } else {
+            removeTileReferences(place, tile);
+        }
+        addTileReferences(place, layer, tile);
+        tile.selected = selected;
+        tile.heatMapRGB = heatMapRGB;
+        tile.placeGroupRGB = placeGroupRGB;
+        tile.riskLevelRGB = riskLevelRGB;
+
+        Graphics2D graphics = tile.image.createGraphics();
+        try {
+            graphics.setComposite(AlphaComposite.Clear);
+            graphics.fillRect(0, 0, tileSize, tileSize);
+            graphics.setComposite(AlphaComposite.SrcOver);
+            graphics.setRenderingHints(((Graphics2D) g).getRenderingHints());
+            graphics.setFont(g.getFont());
+            paintTile(graphics, place, layer, selected, heatMapColor, tileBorderWidthScaled, maxLines, drawText);
+        } finally {
+            graphics.dispose();
+        }
+        return tile.image;
+    }
+
+    private static int getRGB(Color color){
+        return color == null ? 0 : color.getRGB();
+    }
+
+    /**
+     * Remembers the places and the name a tile depends on
+     */
+    private void addTileReferences(Place place, Layer layer, TileImage tile){
+        tile.name = place.getName();
+        HashSet<Place> names = tileNames.get(tile.name);
+        if(names == null) tileNames.put(tile.name, names = new HashSet<>());
+        names.add(place);
+        if(!layer.isPlaceNameUnique(tile.name)) ambiguousNameTiles.add(place);
+
+        tile.related = new Place[place.getParents().size() + place.getChildren().size()];
+        int i = 0;
+        for(Place parent: place.getParents()) tile.related[i++] = parent;
+        for(Place child: place.getChildren()) tile.related[i++] = child;
+        for(Place related: tile.related){
+            HashSet<Place> dependents = tileDependents.get(related);
+            if(dependents == null) tileDependents.put(related, dependents = new HashSet<>());
+            dependents.add(place);
+        }
+    }
+
+    /**
+     * Forgets the places and the name a tile depends on
+     */
+    private void removeTileReferences(Place place, TileImage tile){
+        HashSet<Place> names = tileNames.get(tile.name);
+        if(names != null){
+            names.remove(place);
+            if(names.isEmpty()) tileNames.remove(tile.name);
+        }
+        ambiguousNameTiles.remove(place);
+        for(Place related: tile.related){
+            HashSet<Place> dependents = tileDependents.get(related);
+            if(dependents != null){
+                dependents.remove(place);
+                if(dependents.isEmpty()) tileDependents.remove(related);
+            }
+        }
+    }
+
+    /**
+     * Removes the tile of a place from the cache
+     * @param place place
+     */
+    private void removeTile(Place place){
+        TileImage tile = tileCache.remove(place);
+        if(tile != null){
+            removeTileReferences(place, tile);
+            freeTileImages.add(tile.image);
+        }
+    }
+
+    /**
+     * Removes the tiles of some places from the cache
+     * @param places places or null
+     */
+    private void removeTiles(Collection<Place> places){
+        if(places != null){
+            for(Place place: new ArrayList<>(places)) removeTile(place);
+        }
+    }
+
+    /**
+     * Removes all tiles from the cache
+     */
+    private void clearTileCache(){
+        // the images can be reused by other places of the same size
+        for(TileImage tile: tileCache.values()) freeTileImages.add(tile.image);
+        tileCache.clear();
+        tileDependents.clear();
+        tileNames.clear();
+        ambiguousNameTiles.clear();
+    }
+
+    /**
+     * Clears the tile cache if the world or a setting of the painter changed
+     * since the tiles were rendered. Changes of the world remove the tiles
+     * of the changed places, see worldChanged
+     * @param g map graphics
+     * @param layer shown layer
+     */
+    private void updateTileCache(Graphics g, Layer layer){
+        final World world = layer == null ? null : layer.getWorld();
+
+        if(world != tileCacheWorld || tileSize != tileCacheTileSize
+                || !Objects.equals(g.getFont(), tileCacheFont)
+                || !Objects.equals(showPaths, tileCacheShowPaths)){
+            clearTileCache();
+            if(tileSize != tileCacheTileSize) freeTileImages.clear();
+
+            if(world != tileCacheWorld){
+                if(tileCacheWorld != null){
+                    tileCacheWorld.removeChangeListener(this);
+                    tileCacheWorld.removePathChangeListener(this);
+                }
+                if(world != null){
+                    world.addChangeListener(this);
+                    world.addPathChangeListener(this);
+                }
+            }
+            tileCacheWorld = world;
+            tileCacheTileSize = tileSize;
+            tileCacheFont = g.getFont();
+            tileCacheShowPaths = showPaths;
+        }
+
+        // keep at least the tiles of two screens
+        final long visibleTiles = (long) ((graphicsWidth / tileSize) + 2) * (long) ((graphicsHeight / tileSize) + 2);
+        maxTileCacheSize = (int) Math.max(2 * visibleTiles, TILE_CACHE_PIXELS / ((long) tileSize * tileSize));
+    }
+
+    /**
+     * Gets the number of cached tile images
+     * @return number of tiles
+     */
+    int getTileCacheSize(){
+        return tileCache.size();
+    }
+
+    @Override
+    public void worldChanged(Object source){
+        if(source instanceof Place){
+            // the tiles of its parents and children show its name and the
+            // tiles of places with the same name might show their id
+            Place place = (Place) source;
+            removeTile(place);
+            removeTiles(place.getParents());
+            removeTiles(place.getChildren());
+            removeTiles(tileDependents.get(place));
+            removeTiles(tileNames.get(place.getName()));
+            removeTiles(ambiguousNameTiles);
+        } else if(!(source instanceof Layer || source instanceof RiskLevel || source instanceof PlaceGroup)){
+            // settings of the world, eg. colors or how place names are shown.
+            // Layer changes are reported for their places too, the colors
+            // of risk levels and areas are checked when a tile is drawn
+            clearTileCache();
+        }
+    }
+
+    @Override
+    public void pathConnected(Path path){
+        // the exits are drawn on the tiles
+        removeTile(path.getPlaces()[0]);
+        removeTile(path.getPlaces()[1]);
+    }
+
+    @Override
+    public void pathRemoved(Path path){
+        removeTile(path.getPlaces()[0]);
+        removeTile(path.getPlaces()[1]);
+    }
+
+    /**
+     * Draws the tile of a place at 0, 0: place group, heat map and risk
+     * level colors, text, flags and exits
+     * @param g tile graphics
+     * @param curPlace place
+     * @param layer layer of the place
+     * @param selected true if the place is selected or cut
+     * @param heatMapColor heat map color or null
+     * @param tileBorderWidthScaled tile border width
+     * @param maxLines max number of text lines
+     * @param drawText true if the tile is large enough for text
+     */
+    private void paintTile(Graphics g, Place curPlace, Layer layer, boolean selected, Color heatMapColor,
+            int tileBorderWidthScaled, int maxLines, boolean drawText){
+        FontMetrics fm = g.getFontMetrics();
+
+        // number of drawn text lines
+        int lineNum = 0;
+
+        // draw place group color
+        if(curPlace.getPlaceGroup() != null){
+            g.setColor(curPlace.getPlaceGroup().getColor());
+            g.fillRect(0, 0, tileSize, tileSize);
+        }
+
+        // draw heat map color
+        if(heatMapColor != null){
+            g.setColor(heatMapColor);
+            g.fillRect(0, 0, tileSize, tileSize);
+        }
+
+        // draw tile center color
+        if(drawText){
+            g.setColor(layer.getWorld().getTileCenterColor());
+            g.fillRect(tileBorderWidthScaled, tileBorderWidthScaled,
+                    tileSize - 2 * tileBorderWidthScaled, tileSize - 2 * tileBorderWidthScaled);
+        }
+
+        // draw risk level border
+        if(curPlace.getRiskLevel() != null){
+            g.setColor(curPlace.getRiskLevel().getColor());
+            ((Graphics2D)g).setStroke(new BasicStroke(getRiskLevelStrokeWidth()));
+            g.drawRect(tileBorderWidthScaled, tileBorderWidthScaled,
+                    tileSize - 2 * tileBorderWidthScaled - (int) (0.5 * getRiskLevelStrokeWidth()),
+                    tileSize - 2 * tileBorderWidthScaled - (int) (0.5 * getRiskLevelStrokeWidth()));
+        }
+
+        LinkedList<String> text = new LinkedList<>();
+        String flags = "", exits = "";
+
+        // draw text, if tiles are large enough
+        if(drawText){
+            g.setColor(Color.BLACK);
+
+            // place name
+            // gets place name if unique, else place name with ID
+            String placeName;
+            switch(layer.getWorld().getShowPlaceId()){
+                default:
+                case UNIQUE:
+                    placeName = curPlace.getName();
+                    if(!layer.isPlaceNameUnique(placeName)){
+                        placeName = curPlace.toString();
+                    }
+                    break;
+                case NONE:
+                    placeName = curPlace.getName(); // name only
+                    break;
+                case ALL:
+                    placeName = curPlace.toString(); // name and id
+                    break;
+            }
+            text.add(placeName);
+
+            int reclvlmin = curPlace.getRecLevelMin(), reclvlmax = curPlace.getRecLevelMax();
+            if(reclvlmin > -1 || reclvlmax > -1){
+                String levelString = "lvl " + (reclvlmin > -1 ? reclvlmin : "?") + " - " + (reclvlmax > -1 ? reclvlmax : "?");
+                text.add(levelString);
+            }
+
+            // parents
+            if(lineNum < maxLines && !curPlace.getParents().isEmpty()){
+                int parentsNum = curPlace.getParents().size();
+                String paStr = "Pa" + (parentsNum > 1 ? " (" + curPlace.getParents().size() + "): " : ": ");
+
+                boolean firstParent = true;
+                for(Place parent: curPlace.getParents()){
+                    paStr += (firstParent ? "" : ", ") + parent.getName();
+                    firstParent = false;
+                }
+                text.add(paStr);
+            }
+
+            // children
+            if(lineNum < maxLines && !curPlace.getChildren().isEmpty()){
+                int childrenNum = curPlace.getChildren().size();
+                String chStr = "Ch" + (childrenNum > 1 ? " (" + curPlace.getChildren().size() + "): " : ": ");
+
+                boolean firstChild = true;
+                for(Place child: curPlace.getChildren()){
+                    chStr += (firstChild ? "" : ", ") + child.getName();
+                    firstChild = false;
+                }
+                text.add(chStr);
+            }
+
+            // flags
+            if(lineNum < maxLines){
+                // place has comments
+                if(!curPlace.getComments().isEmpty()) flags += "Co";
+                if(!curPlace.getChildren().isEmpty()) flags += "Ch";
+                if(!curPlace.getParents().isEmpty()) flags += "Pa";
+
+                // other flags
+                for(Map.Entry<String, Boolean> flag: curPlace.getFlags().entrySet()){
+                    if(flag.getValue()) flags += flag.getKey().toUpperCase();
+                    if(fm.stringWidth(flags) >= tileSize - 2 * tileBorderWidthScaled) break;
+                }
+            }
+        }
+
+        // mark place group selection
+        if(selected){
+            g.setColor(new Color(255, 255, 255, 128));
+            g.fillRect(0, 0, tileSize, tileSize);
+        }
+
+        // draw exit dots, if tiles are larger than 20
+        boolean exitUp = false, exitDown = false, exitnstd = false;
+        if(getShowPaths() && tileSize >= 20){
+            for(Path path: curPlace.getPaths()){
+                g.setColor(layer.getWorld().getPathColor(path.getExitDirections()[path.getPlaces()[0] == curPlace ? 0 : 1]));
+                String exit = path.getExit(curPlace);
+                switch (exit) {
+                    case "u":
+                        exitUp = true;
+                        break;
+                    case "d":
+                        exitDown = true;
+                        break;
+                    default:
+                        Pair<Integer, Integer> exitOffset = getExitOffset(exit, tileBorderWidthScaled);
+                        if(exitOffset.first != tileSize / 2 || exitOffset.second != tileSize / 2){
+                            int exitCircleRadius2 = getExitCircleRadius();
+                            g.fillOval(exitOffset.first - exitCircleRadius2, exitOffset.second - exitCircleRadius2, 2 * exitCircleRadius2, 2 * exitCircleRadius2);
+                        } else { // non-standard exit
+                            exitnstd = true;
+                        }
+                        break;
+                }
+            }
+        }
+
+        // draw exits
+        if(tileSize >= 20 && (exitUp || exitDown) && drawText && lineNum <= maxLines){
+            // have some arrows: ⬆⬇ ↑↓
+            exits = "" + (exitnstd ? "+" : "") + (exitUp ? "↑" : "") + (exitDown ? "↓" : "");
+        }
+
+        g.setColor(Color.BLACK);
+        final int border = (int) (tileBorderWidthScaled + getRiskLevelStrokeWidth());
+        drawText(g, border, border, tileSize - 2 * border, tileSize - 2 * border, text, flags, exits);
+    }
+
+    /**
+     * Draws the path lines of a place
+     * @param graphicPath path graphics
+     * @param curPlace place
+     * @param layer layer of the place
+     * @param placeXpx x coordinate of the place tile in pixel
+     * @param placeYpx y coordinate of the place tile in pixel
+     * @param tileBorderWidthScaled tile border width
+     */
+    private void drawPaths(Graphics graphicPath, Place curPlace, Layer layer, int placeXpx, int placeYpx, int tileBorderWidthScaled){
+        for(Path path: curPlace.getPaths()){
+            Place otherPlace = path.getOtherPlace(curPlace);
+
+            // if both places of a path are on the same layer and at least one of the two places is on the screen
+            // usually the main place (path.getPlaces()[0]) draws the path. If it isn't on screen, the other place draws it
+            if(Objects.equals(otherPlace.getLayer().getId(), layer.getId()) && (path.getPlaces()[0] == curPlace || !isOnScreen(otherPlace))){
+                Color colorPlace1 = layer.getWorld().getPathColor(path.getExitDirections()[0]);
+                Color colorPlace2 = layer.getWorld().getPathColor(path.getExitDirections()[1]);
+                if(path.getPlaces()[0] != curPlace) {
+                    Color tmp = colorPlace1;
+                    colorPlace1 = colorPlace2;
+                    colorPlace2 = tmp;
+                }
+
+                Pair<Integer, Integer> exitOffset = getExitOffset(path.getExit(curPlace), tileBorderWidthScaled);
+                Pair<Integer, Integer> exitOffsetOther = getExitOffset(path.getExit(otherPlace), tileBorderWidthScaled);
+
+                boolean drawCurves = getPathsCurved();
+
+                // exit positions on the map
+                final double exit1x = placeXpx + exitOffset.first;
+                final double exit1y = placeYpx + exitOffset.second;
+                final double exit2x = placeXpx + (otherPlace.getX() - curPlace.getX()) * tileSize + exitOffsetOther.first;
+                final double exit2y = placeYpx - (otherPlace.getY() - curPlace.getY()) * tileSize + exitOffsetOther.second;
+
+                if(colorPlace1.equals(colorPlace2)){ // same color
+                    ((Graphics2D) graphicPath).setPaint(colorPlace1);
+                } else { // draw gradient
+                    GradientPaint gp = new GradientPaint((float) exit1x, (float) exit1y, colorPlace1,
+                                                         (float) exit2x, (float) exit2y, colorPlace2);
+                    ((Graphics2D) graphicPath).setPaint(gp);
+                }
+
+                if(drawCurves){
+                    Pair<Double, Double> normal1 = getExitNormal(path.getExit(curPlace));
+                    Pair<Double, Double> normal2 = getExitNormal(path.getExit(otherPlace));
+
+                    double dx = exit2x - exit1x;
+                    double dy = exit2y - exit1y;
+
+                    if(drawCurves = Math.sqrt(dx * dx + dy * dy) >= 1.5 * tileSize){
+                        CubicCurve2D c = new CubicCurve2D.Double();
+                        c.setCurve(// point 1
+                                exit1x, exit1y,
+                                // point 2
+                                exit1x + normal1.first * tileSize, exit1y - normal1.second * tileSize,
+                                // point 3
+                                exit2x + normal2.first * tileSize, exit2y - normal2.second * tileSize,
+                                // point 4
+                                exit2x, exit2y);
+                        ((Graphics2D) graphicPath).draw(c);
+                        // the curve is inside its control points
+                        addPathArea(c.getBounds());
+                    }
+                }
+
+                if(!drawCurves) {
+                    graphicPath.drawLine((int) exit1x, (int) exit1y, (int) exit2x, (int) exit2y);
+                    addPathArea((int) Math.min(exit1x, exit2x), (int) Math.min(exit1y, exit2y),
+                            (int) Math.max(exit1x, exit2x), (int) Math.max(exit1y, exit2y));
+                }
+            }
+        }
+    }
+
+    /**
+     * Extends the drawn area of the path overlay
+     * @param bounds bounds of a drawn path
+     */
+    private void addPathArea(Rectangle bounds){
+        addPathArea(bounds.x, bounds.y, bounds.x + bounds.width, bounds.y + bounds.height);
+    }
+
+    /**
+     * Extends the drawn area of the path overlay by a rectangle and the
+     * stroke width
+     * @param x1 min x coordinate
+     * @param y1 min y coordinate
+     * @param x2 max x coordinate
+     * @param y2 max y coordinate
+     */
+    private void addPathArea(int x1, int y1, int x2, int y2){
+        final int stroke = (int) Math.ceil(getPathStrokeWidth()) + 1;
+        pathAreaX1 = Math.min(pathAreaX1, x1 - stroke);
+        pathAreaY1 = Math.min(pathAreaY1, y1 - stroke);
+        pathAreaX2 = Math.max(pathAreaX2, x2 + stroke);
+        pathAreaY2 = Math.max(pathAreaY2, y2 + stroke);
+    }
+
+    /**
+     * Prepares the path overlay for a frame: creates it if the map size
+     * changed, otherwise the area that was drawn on in the last frame is
+     * cleared
+     * @return path graphics or null if the map is empty
+     */
+    private Graphics2D preparePathGraphics(){
+        final int width = (int) graphicsWidth, height = (int) graphicsHeight;
+        if(width <= 0 || height <= 0) return null;
+
+        if(pathImage == null || pathImage.getWidth() != width || pathImage.getHeight() != height){
+            if(pathGraphics != null) pathGraphics.dispose();
+            pathImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            pathGraphics = pathImage.createGraphics();
+            pathGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            pathGraphics.setBackground(new Color(0, 0, 0, 0));
+        } else if(!pathArea.isEmpty()){
+            pathGraphics.clearRect(pathArea.x, pathArea.y, pathArea.width, pathArea.height);
+        }
+        pathArea.setBounds(0, 0, 0, 0);
+        pathGraphics.setStroke(new BasicStroke(getPathStrokeWidth()));
+
+        pathAreaX1 = pathAreaY1 = Integer.MAX_VALUE;
+        pathAreaX2 = pathAreaY2 = Integer.MIN_VALUE;
+        tilePositionCount = 0;
+        return pathGraphics;
+    }
+
+    /**
+     * Masks out the tiles on the path overlay and draws the area that was
+     * drawn on to the map
+     * @param g map graphics
+     * @param tileBorderWidthScaled tile border width
+     */
+    private void drawPathGraphics(Graphics g, int tileBorderWidthScaled){
+        if(pathAreaX1 > pathAreaX2) return;
+        pathArea.setBounds(pathAreaX1, pathAreaY1, pathAreaX2 - pathAreaX1, pathAreaY2 - pathAreaY1);
+        Rectangle.intersect(pathArea, new Rectangle(0, 0, pathImage.getWidth(), pathImage.getHeight()), pathArea);
+        if(pathArea.isEmpty()) return;
+
+        // mask out tile positions
+        final int clearTileSize = tileSize - 2 * tileBorderWidthScaled;
+        for(int i = 0; i < tilePositionCount; i += 2){
+            pathGraphics.clearRect(tilePositions[i] + tileBorderWidthScaled, tilePositions[i + 1] + tileBorderWidthScaled, clearTileSize, clearTileSize);
+        }
+
+        final int x2 = pathArea.x + pathArea.width, y2 = pathArea.y + pathArea.height;
+        g.drawImage(pathImage, pathArea.x, pathArea.y, x2, y2, pathArea.x, pathArea.y, x2, y2, null);
+    }
+
     @Override
     public void paint(Graphics g, int tileSize, double graphicsWidth, double graphicsHeight, Layer layer, WorldCoordinate curPos) {
         this.graphicsWidth = graphicsWidth;
@@ -514,6 +1150,7 @@ public class MapPainterDefault implements MapPainter {
         this.curPos = curPos;
 
         tileFont = g.getFont();
+        updateTileCache(g, layer);
 
         final float selectionStrokeWidth = getTileSelectionStrokeWidth();
         final int tileBorderWidthScaled = getTileBorderWidth();
@@ -537,13 +1174,16 @@ public class MapPainterDefault implements MapPainter {
 
         // prepare graphic for paths
         // Paths will be drawn on this graphic and later on copied to g
-        ArrayList<Pair<Integer, Integer>> tilePositions = new ArrayList<>(); // to mask out the tile positions on graphic_path
-        BufferedImage imagePath = new BufferedImage((int) graphicsWidth, (int) graphicsHeight, BufferedImage.TYPE_INT_ARGB);
-        Graphics graphicPath = imagePath.getGraphics();
-        ((Graphics2D) graphicPath).setStroke(new BasicStroke(getPathStrokeWidth()));
-        ((Graphics2D) graphicPath).setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        final Graphics2D graphicPath = getShowPaths() ? preparePathGraphics() : null;
         ((Graphics2D) g).setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
+        // recompute the heat map in the background, if necessary
+        int maxDistance = 0;
+        if(distanceField != null){
+            distanceField.update();
+            maxDistance = distanceField.getMaxDistance();
+        }
+
         // getPlace the locations of copied places
         HashSet<Pair<Integer, Integer>> copiedPlaceLocations = null;
         if(showPlaceSelection){
@@ -586,209 +1226,29 @@ public class MapPainterDefault implements MapPainter {
                     final int placeXpx = (int) Math.round((tileX + placeXpxConst) * tileSize);
                     final int placeYpx = (int) Math.round((tileY + placeYpxConst) * tileSize);
 
-                    tilePositions.add(new Pair<>(placeXpx, placeYpx));
-
-                    // number of drawn text lines
-                    int lineNum = 0;
-
-                    // draw place group color
-                    if(curPlace.getPlaceGroup() != null){
-                        g.setColor(curPlace.getPlaceGroup().getColor());
-                        g.fillRect(placeXpx, placeYpx, tileSize, tileSize);
-                    }
-
-                    // draw tile center color
-                    if(drawText){
-                        g.setColor(layer.getWorld().getTileCenterColor());
-                        g.fillRect(placeXpx + tileBorderWidthScaled, placeYpx + tileBorderWidthScaled,
-                                tileSize - 2 * tileBorderWidthScaled, tileSize - 2 * tileBorderWidthScaled);
-                    }
-
-                    // draw risk level border
-                    if(curPlace.getRiskLevel() != null){
-                        g.setColor(curPlace.getRiskLevel().getColor());
-                        ((Graphics2D)g).setStroke(new BasicStroke(getRiskLevelStrokeWidth()));
-                        g.drawRect(placeXpx + tileBorderWidthScaled, placeYpx + tileBorderWidthScaled,
-                                tileSize - 2 * tileBorderWidthScaled - (int) (0.5 * getRiskLevelStrokeWidth()),
-                                tileSize - 2 * tileBorderWidthScaled - (int) (0.5 * getRiskLevelStrokeWidth()));
-                    }
-
-                    LinkedList<String> text = new LinkedList<>();
-                    String flags = "", exits = "";
-
-                    // draw text, if tiles are large enough
-                    if(drawText){
-                        g.setColor(Color.BLACK);
-
-                        // place name
-                        // gets place name if unique, else place name with ID
-                        String placeName;
-                        switch(layer.getWorld().getShowPlaceId()){
-                            default:
-                            case UNIQUE:
-                                placeName = curPlace.getName();
-                                if(!layer.isPlaceNameUnique(placeName)){
-                                    placeName = curPlace.toString();
-                                }
-                                break;
-                            case NONE:
-                                placeName = curPlace.getName(); // name only
-                                break;
-                            case ALL:
-                                placeName = curPlace.toString(); // name and id
-                                break;
-                        }
-                        text.add(placeName);
-
-                        int reclvlmin = curPlace.getRecLevelMin(), reclvlmax = curPlace.getRecLevelMax();
-                        if(reclvlmin > -1 || reclvlmax > -1){
-                            String levelString = "lvl " + (reclvlmin > -1 ? reclvlmin : "?") + " - " + (reclvlmax > -1 ? reclvlmax : "?");
-                            text.add(levelString);
-                        }
-
-                        // parents
-                        if(lineNum < maxLines && !curPlace.getParents().isEmpty()){
-                            int parentsNum = curPlace.getParents().size();
-                            String paStr = "Pa" + (parentsNum > 1 ? " (" + curPlace.getParents().size() + "): " : ": ");
-
-                            boolean firstParent = true;
-                            for(Place parent: curPlace.getParents()){
-                                paStr += (firstParent ? "" : ", ") + parent.getName();
-                                firstParent = false;
-                            }
-                            text.add(paStr);
-                        }
-
-                        // children
-                        if(lineNum < maxLines && !curPlace.getChildren().isEmpty()){
-                            int childrenNum = curPlace.getChildren().size();
-                            String chStr = "Ch" + (childrenNum > 1 ? " (" + curPlace.getChildren().size() + "): " : ": ");
-
-                            boolean firstChild = true;
-                            for(Place child: curPlace.getChildren()){
-                                chStr += (firstChild ? "" : ", ") + child.getName();
-                                firstChild = false;
-                            }
-                            text.add(chStr);
-                        }
-
-                        // flags
-                        if(lineNum < maxLines){
-                            // place has comments
-                            if(!curPlace.getComments().isEmpty()) flags += "Co";
-                            if(!curPlace.getChildren().isEmpty()) flags += "Ch";
-                            if(!curPlace.getParents().isEmpty()) flags += "Pa";
-
-                            // other flags
-                            for(Map.Entry<String, Boolean> flag: curPlace.getFlags().entrySet()){
-                                if(flag.getValue()) flags += flag.getKey().toUpperCase();
-                                if(fm.stringWidth(flags) >= tileSize - 2 * tileBorderWidthScaled) break;
-                            }
+                    if(graphicPath != null){
+                        // to mask out the tile position on graphicPath
+                        if(tilePositionCount + 2 > tilePositions.length){
+                            tilePositions = Arrays.copyOf(tilePositions, 2 * tilePositions.length);
                         }
+                        tilePositions[tilePositionCount++] = placeXpx;
+                        tilePositions[tilePositionCount++] = placeYpx;
                     }
 
-                    // mark place group selection
-                    if(showPlaceSelection && (isSelected(curPlace) || (mudmap2.CopyPaste.isCut() && mudmap2.CopyPaste.isMarked(curPlace)))){
-                        g.setColor(new Color(255, 255, 255, 128));
-                        g.fillRect(placeXpx, placeYpx, tileSize, tileSize);
+                    Color heatMapColor = null;
+                    if(distanceField != null){
+                        final int distance = distanceField.getDistance(curPlace);
+                        if(distance >= 0) heatMapColor = getHeatMapColor(distance, maxDistance);
                     }
+                    final boolean selected = showPlaceSelection && (isSelected(curPlace) || (mudmap2.CopyPaste.isCut() && mudmap2.CopyPaste.isMarked(curPlace)));
 
-                    // draw path lines here
-                    boolean exitUp = false, exitDown = false, exitnstd = false;
-                    if(getShowPaths()){
-                        for(Path path: curPlace.getPaths()){
-                            Place otherPlace = path.getOtherPlace(curPlace);
-
-                            Color colorPlace1 = layer.getWorld().getPathColor(path.getExitDirections()[0]);
-                            Color colorPlace2 = layer.getWorld().getPathColor(path.getExitDirections()[1]);
-                            if(path.getPlaces()[0] != curPlace) {
-                                Color tmp = colorPlace1;
-                                colorPlace1 = colorPlace2;
-                                colorPlace2 = tmp;
-                            }
-
-                            // if both places of a path are on the same layer and at least one of the two places is on the screen
-                            // usually the main place (path.getPlaces()[0]) draws the path. If it isn't on screen, the other place draws it
-                            if(Objects.equals(otherPlace.getLayer().getId(), layer.getId()) && (path.getPlaces()[0] == curPlace || !isOnScreen(otherPlace))){
-                                Pair<Integer, Integer> exitOffset = getExitOffset(path.getExit(curPlace), tileBorderWidthScaled);
-                                Pair<Integer, Integer> exitOffsetOther = getExitOffset(path.getExit(otherPlace), tileBorderWidthScaled);
-
-                                boolean drawCurves = getPathsCurved();
-
-                                // exit positions on the map
-                                final double exit1x = placeXpx + exitOffset.first;
-                                final double exit1y = placeYpx + exitOffset.second;
-                                final double exit2x = placeXpx + (otherPlace.getX() - curPlace.getX()) * tileSize + exitOffsetOther.first;
-                                final double exit2y = placeYpx - (otherPlace.getY() - curPlace.getY()) * tileSize + exitOffsetOther.second;
-
-                                if(colorPlace1.equals(colorPlace2)){ // same color
-                                    ((Graphics2D) graphicPath).setPaint(colorPlace1);
-                                } else { // draw gradient
-                                    GradientPaint gp = new GradientPaint((float) exit1x, (float) exit1y, colorPlace1,
-                                                                         (float) exit2x, (float) exit2y, colorPlace2);
-                                    ((Graphics2D) graphicPath).setPaint(gp);
-                                }
-
-                                if(drawCurves){
-                                    Pair<Double, Double> normal1 = getExitNormal(path.getExit(curPlace));
-                                    Pair<Double, Double> normal2 = getExitNormal(path.getExit(otherPlace));
-
-                                    double dx = exit2x - exit1x;
-                                    double dy = exit2y - exit1y;
-
-                                    if(drawCurves = Math.sqrt(dx * dx + dy * dy) >= 1.5 * tileSize){
-                                        CubicCurve2D c = new CubicCurve2D.Double();
-                                        c.setCurve(// point 1
-                                                exit1x, exit1y,
-                                                // point 2
-                                                exit1x + normal1.first * tileSize, exit1y - normal1.second * tileSize,
-                                                // point 3
-                                                exit2x + normal2.first * tileSize, exit2y - normal2.second * tileSize,
-                                                // point 4
-                                                exit2x, exit2y);
-                                        ((Graphics2D) graphicPath).draw(c);
-                                    }
-                                }
-
-                                if(!drawCurves) {
-                                    graphicPath.drawLine((int) exit1x, (int) exit1y, (int) exit2x, (int) exit2y);
-                                }
-                            }
-
-                            // draw exit dots, if tiles are larger than 20
-                            if(tileSize >= 20){
-                                g.setColor(colorPlace1);
-                                String exit = path.getExit(curPlace);
-                                switch (exit) {
-                                    case "u":
-                                        exitUp = true;
-                                        break;
-                                    case "d":
-                                        exitDown = true;
-                                        break;
-                                    default:
-                                        Pair<Integer, Integer> exitOffset = getExitOffset(exit, tileBorderWidthScaled);
-                                        if(exitOffset.first != tileSize / 2 || exitOffset.second != tileSize / 2){
-                                            int exitCircleRadius2 = getExitCircleRadius();
-                                            g.fillOval(placeXpx + exitOffset.first - exitCircleRadius2, placeYpx + exitOffset.second - exitCircleRadius2, 2 * exitCircleRadius2, 2 * exitCircleRadius2);
-                                        } else { // non-standard exit
-                                            exitnstd = true;
-                                        }
-                                        break;
-                                }
-                            }
-                        }
-                    }
+                    g.drawImage(getTileImage(g, curPlace, layer, selected, heatMapColor, tileBorderWidthScaled, maxLines, drawText),
+                            placeXpx, placeYpx, null);
 
-                    // draw exits
-                    if(tileSize >= 20 && (exitUp || exitDown) && drawText && lineNum <= maxLines){
-                        // have some arrows: ⬆⬇ ↑↓
-                        exits = "" + (exitnstd ? "+" : "") + (exitUp ? "↑" : "") + (exitDown ? "↓" : "");
+                    // draw path lines here
+                    if(graphicPath != null){
+                        drawPaths(graphicPath, curPlace, layer, placeXpx, placeYpx, tileBorderWidthScaled);
                     }
-
-                    g.setColor(Color.BLACK);
-                    final int border = (int) (tileBorderWidthScaled + getRiskLevelStrokeWidth());
-                    drawText(g, placeXpx + border, placeYpx + border, tileSize - 2 * border, tileSize - 2 * border, text, flags, exits);
                 }
 
                 //TODO: extract from parent loop
@@ -820,16 +1280,8 @@ public class MapPainterDefault implements MapPainter {
             }
         }
 
-        // mask out tile positions on graphicPath
-        ((Graphics2D) graphicPath).setBackground(new Color(0,0,0,0));
-        int clearTileSize = tileSize - 2 * tileBorderWidthScaled;
-        for(Pair<Integer, Integer> p: tilePositions)
-            //graphicPath.clearRect(p.first, p.second, p.first + tileSize, p.second + tileSize);
-            graphicPath.clearRect(p.first + tileBorderWidthScaled, p.second + tileBorderWidthScaled, clearTileSize, clearTileSize);
-
         // draw graphicPath to g
-        if(getShowPaths()) g.drawImage(imagePath, 0, 0, null);
-        graphicPath.dispose();
+        if(graphicPath != null) drawPathGraphics(g, tileBorderWidthScaled);
     }
 
 }
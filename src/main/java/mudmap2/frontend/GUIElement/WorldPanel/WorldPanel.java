@@ -20,19 +20,23 @@ import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.event.FocusAdapter;
 import java.awt.event.FocusEvent;
+import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
+import javax.swing.ToolTipManager;
 
 import mudmap2.backend.Layer;
 import mudmap2.backend.Place;
 import mudmap2.backend.World;
 import mudmap2.backend.WorldChangeListener;
 import mudmap2.backend.WorldCoordinate;
+import mudmap2.backend.sssp.DistanceField;
 
 /**
  *
@@ -163,6 +167,7 @@ public class WorldPanel extends JPanel implements WorldChangeListener {
 
         if (!passive) {
             world.addChangeListener(this);
+            ToolTipManager.sharedInstance().registerComponent(this);
         }
     }
 
@@ -218,6 +223,66 @@ public class WorldPanel extends JPanel implements WorldChangeListener {
         getWorld().setHome(new WorldCoordinate(getPosition()));
     }
 
+    /**
+     * Selects all places that can't be reached from the home place
+     */
+    public void selectUnreachableFromHome() {
+        final Place home = getWorld().getHomePlace();
+        if (home == null) {
+            callMessageListeners("There is no place at the home position");
+            return;
+        }
+
+        placeGroupReset();
+        placeGroup.addAll(getWorld().getConnectivityIndex().getUnreachablePlaces(home));
+        callMessageListeners(placeGroup.size() + " places can't be reached from home");
+        repaint();
+    }
+
+    /**
+     * Shows or hides the distance heat map. The distances are measured from
+     * the selected place or, if no place is selected, from the home place
+     * @param enabled true to show the heat map
+     * @return true, if the heat map has the requested state
+     */
+    public boolean setDistanceHeatmap(final boolean enabled) {
+        final MapPainterDefault painter = (MapPainterDefault) getMappainter();
+        if (enabled == (painter.getDistanceField() != null)) {
+            return true;
+        }
+
+        if (enabled) {
+            Place source = getSelectedPlace();
+            if (source == null) {
+                source = getWorld().getHomePlace();
+            }
+            if (source == null) {
+                callMessageListeners("Select a place or set a home position for the heat map");
+                return false;
+            }
+            painter.setDistanceField(new DistanceField(getWorld(), Collections.singleton(source), new Runnable() {
+                @Override
+                public void run() {
+                    repaint();
+                }
+            }));
+            callMessageListeners("Showing distances from " + source.getName());
+        } else {
+            painter.getDistanceField().dispose();
+            painter.setDistanceField(null);
+        }
+        repaint();
+        return true;
+    }
+
+    /**
+     * Returns true, if the distance heat map is shown
+     * @return true, if shown
+     */
+    public boolean isDistanceHeatmapEnabled() {
+        return ((MapPainterDefault) getMappainter()).getDistanceField() != null;
+    }
+
     /**
      * Get the selected place or null
      * @return place or null
@@ -455,6 +520,30 @@ public class WorldPanel extends JPanel implements WorldChangeListener {
         callCursorListeners();
     }
 
+    /**
+     * Shows the name of the place under the mouse and its distance from the
+     * home place, if the distance has already been computed
+     * @param event mouse event
+     * @return tool tip text or null
+     */
+    @Override
+    public String getToolTipText(final MouseEvent event) {
+        final Layer layer = getWorld().getLayer(getPosition().getLayer());
+        if (layer == null) {
+            return null;
+        }
+        final Place place = layer.get(getPlacePosX(event.getX()), getPlacePosY(event.getY()));
+        if (place == null) {
+            return null;
+        }
+
+        final int distance = getWorld().getPathFinder().getDistanceFromHome(place);
+        if (distance < 0) {
+            return place.getName();
+        }
+        return place.getName() + " (" + distance + (distance == 1 ? " step" : " steps") + " from home)";
+    }
+
     // ========================= map coordinate maths ==========================
 
     /**
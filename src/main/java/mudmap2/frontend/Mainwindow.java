@@ -35,12 +35,14 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.swing.ImageIcon;
 import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -52,14 +54,18 @@ import javax.swing.JPanel;
 import javax.swing.JTabbedPane;
 import javax.swing.KeyStroke;
 import javax.swing.SwingConstants;
+import javax.swing.Timer;
 import javax.swing.WindowConstants;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
+import mudmap2.backend.Layer;
 import mudmap2.backend.World;
+import mudmap2.backend.WorldCoordinate;
 import mudmap2.backend.WorldFileList;
 import mudmap2.backend.WorldFileList.WorldFileEntry;
 import mudmap2.backend.WorldManager;
+import mudmap2.backend.export.CsvExporter;
 import mudmap2.frontend.GUIElement.WorldPanel.MapPainterDefault;
 import mudmap2.frontend.dialog.AboutDialog;
 import mudmap2.frontend.dialog.EditWorldDialog;
@@ -92,10 +98,13 @@ public final class Mainwindow extends JFrame implements KeyEventDispatcher, Acti
     JCheckBoxMenuItem menuWorldCurvedPaths;
     JCheckBoxMenuItem menuWorldShowCursor;
     JCheckBoxMenuItem menuWorldShowGrid;
+    JCheckBoxMenuItem menuWorldDistanceHeatmap;
 
     JMenuItem menuFileSave;
     JMenuItem menuFileSaveAs;
     JMenuItem menuFileSaveAsImage;
+    JMenuItem menuFileExportCsv;
+    JMenuItem menuFileImportLog;
 
     JMenuItem menuWorldEditWorld;
     JMenuItem menuWorldPathColors;
@@ -104,10 +113,15 @@ public final class Mainwindow extends JFrame implements KeyEventDispatcher, Acti
 
     JMenuItem menuWorldSetHomePosition;
     JMenuItem menuWorldGotoHomePosition;
+    JMenuItem menuWorldSelectUnreachable;
 
     JTabbedPane tabbedPane = null;
     JPanel infoPanel = null;
 
+    // checks the tabs for autosave
+    static final int AUTOSAVE_CHECK_INTERVAL = 5000;
+    final Timer autosaveTimer;
+
     public Mainwindow() {
         super(StringHelper.join("MUD Map ", Mainwindow.class.getPackage().getImplementationVersion()));
 
@@ -132,6 +146,16 @@ public final class Mainwindow extends JFrame implements KeyEventDispatcher, Acti
         });
 
         initGui();
+
+        autosaveTimer = new Timer(AUTOSAVE_CHECK_INTERVAL, new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent event) {
+                for (final WorldTab tab : worldTabs.values()) {
+                    tab.autosave();
+                }
+            }
+        });
+        autosaveTimer.start();
     }
 
     private ActionListener newWorldFileEntryActionListener(final WorldFileEntry entry) {
@@ -166,6 +190,8 @@ public final class Mainwindow extends JFrame implements KeyEventDispatcher, Acti
         menuFileSave = MenuHelper.addMenuItem(menuFile, "Save", "save_world", KeyEvent.VK_S, KeystrokeHelper.ctrl(KeyEvent.VK_S), this);
         menuFileSaveAs = MenuHelper.addMenuItem(menuFile, "Save As...", "save_world_as", KeystrokeHelper.ctrlAlt(KeyEvent.VK_S), this);
         menuFileSaveAsImage = MenuHelper.addMenuItem(menuFile, "Export As Image", "export_image", KeyEvent.VK_E, KeystrokeHelper.ctrl(KeyEvent.VK_E), this);
+        menuFileExportCsv = MenuHelper.addMenuItem(menuFile, "Export As CSV", "export_csv", this);
+        menuFileImportLog = MenuHelper.addMenuItem(menuFile, "Import Log...", "import_log", this);
         menuFile.addSeparator();
         MenuHelper.addMenuItem(menuFile, "Quit", "quit", KeyEvent.VK_Q, KeystrokeHelper.ctrl(KeyEvent.VK_Q), this);
 
@@ -185,10 +211,12 @@ public final class Mainwindow extends JFrame implements KeyEventDispatcher, Acti
         menuWorld.addSeparator();
         menuWorldSetHomePosition = MenuHelper.addMenuItem(menuWorld, "Set Home Position", "set_home", this);
         menuWorldGotoHomePosition = MenuHelper.addMenuItem(menuWorld, "Go to Home Position", "goto_home", this);
+        menuWorldSelectUnreachable = MenuHelper.addMenuItem(menuWorld, "Select Places Unreachable from Home", "select_unreachable", this);
         menuWorld.addSeparator();
         menuWorldCurvedPaths = MenuHelper.addCheckboxMenuItem(menuWorld, "Curved Paths", this);
         menuWorldShowCursor = MenuHelper.addCheckboxMenuItem(menuWorld, "Show Place Cursor", KeyStroke.getKeyStroke(KeyEvent.VK_P, 0), this);
         menuWorldShowGrid = MenuHelper.addCheckboxMenuItem(menuWorld, "Show Grid", this);
+        menuWorldDistanceHeatmap = MenuHelper.addCheckboxMenuItem(menuWorld, "Distance Heatmap", this);
 
         //menu entries: Help
         MenuHelper.addMenuItem(menuHelp, "Keyboard Shortcuts", KeyEvent.VK_K, new KeyboardShortcutDialog(this));
@@ -256,11 +284,18 @@ public final class Mainwindow extends JFrame implements KeyEventDispatcher, Acti
      * Closes all tabs
      */
     public void closeTabs() {
+        autosaveTimer.stop();
         for (final WorldTab tab : worldTabs.values()) {
-            final int ret = JOptionPane.showConfirmDialog(this, StringHelper.join("Save world \"", tab.getWorld().getName(), "\"?"), "Save world", JOptionPane.YES_NO_OPTION);
-            if (ret == JOptionPane.YES_OPTION) {
-                tab.save();
+            // unchanged worlds aren't written again
+            if (tab.isModified()) {
+                final int ret = JOptionPane.showConfirmDialog(this, StringHelper.join("Save world \"", tab.getWorld().getName(), "\"?"), "Save world", JOptionPane.YES_NO_OPTION);
+                if (ret == JOptionPane.YES_OPTION) {
+                    tab.save();
+                }
             }
+            // the world file is written in the background
+            tab.waitForSave();
+            tab.close();
             WorldManager.close(tab.getWorld());
             removeTab(tab);
         }
@@ -311,10 +346,13 @@ public final class Mainwindow extends JFrame implements KeyEventDispatcher, Acti
         menuFileSave.setEnabled(enabled);
         menuFileSaveAs.setEnabled(enabled);
         menuFileSaveAsImage.setEnabled(enabled);
+        menuFileExportCsv.setEnabled(enabled);
+        menuFileImportLog.setEnabled(enabled);
 
         //menuWorldCurvedPaths.setEnabled(enabled);
         menuWorldEditWorld.setEnabled(enabled);
         menuWorldGotoHomePosition.setEnabled(enabled);
+        menuWorldSelectUnreachable.setEnabled(enabled);
         menuWorldPathColors.setEnabled(enabled);
         menuWorldSetHomePosition.setEnabled(enabled);
         menuWorldPlaceGroups.setEnabled(enabled);
@@ -362,6 +400,49 @@ public final class Mainwindow extends JFrame implements KeyEventDispatcher, Acti
                 dlg.setVisible(true);
             }
             break;
+        case "export_csv":
+            if (wt != null) {
+                final JFileChooser chooser = new JFileChooser();
+                chooser.setDialogTitle("Export As CSV");
+                chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+                // comma or tab separated tables
+                final JComboBox<CsvExporter.Format> format = new JComboBox<>(CsvExporter.Format.values());
+                final JPanel formatPanel = new JPanel();
+                formatPanel.add(new JLabel("Format:"));
+                formatPanel.add(format);
+                chooser.setAccessory(formatPanel);
+                if (chooser.showSaveDialog(wt) == JFileChooser.APPROVE_OPTION) {
+                    wt.exportCsv(chooser.getSelectedFile(), (CsvExporter.Format) format.getSelectedItem());
+                }
+            }
+            break;
+        case "import_log":
+            if (wt != null && !wt.getWorldPanel().isPassive()) {
+                final JFileChooser chooser = new JFileChooser();
+                chooser.setDialogTitle("Import Log");
+                if (chooser.showOpenDialog(wt) == JFileChooser.APPROVE_OPTION) {
+                    // the rooms are added to an existing or a new map
+                    final World world = wt.getWorld();
+                    final String newLayer = "New map";
+                    final ArrayList<Object> choices = new ArrayList<>();
+                    choices.add(newLayer);
+                    choices.addAll(world.getLayers());
+                    final Layer current = world.getLayer(wt.getWorldPanel().getPosition().getLayer());
+                    final Object choice = JOptionPane.showInputDialog(Mainwindow.this, "Add the rooms to map:", "Import Log",
+                            JOptionPane.QUESTION_MESSAGE, null, choices.toArray(), current != null ? current : newLayer);
+                    if (choice != null) {
+                        Layer layer;
+                        if (choice == newLayer) {
+                            layer = world.getNewLayer(chooser.getSelectedFile().getName());
+                            wt.getWorldPanel().pushPosition(new WorldCoordinate(layer.getId(), 0, 0));
+                        } else {
+                            layer = (Layer) choice;
+                        }
+                        wt.importLog(chooser.getSelectedFile(), layer);
+                    }
+                }
+            }
+            break;
         case "quit":
             quit();
             break;
@@ -395,6 +476,11 @@ public final class Mainwindow extends JFrame implements KeyEventDispatcher, Acti
                 wt.getWorldPanel().gotoHome();
             }
             break;
+        case "select_unreachable":
+            if (wt != null) {
+                wt.getWorldPanel().selectUnreachableFromHome();
+            }
+            break;
         default:
             final String message = StringHelper.join(getClass().getName(), ": ActionCommand not recognized");
             Logger.getLogger(WorldManager.class.getName()).log(Level.SEVERE, message);
@@ -423,12 +509,20 @@ public final class Mainwindow extends JFrame implements KeyEventDispatcher, Acti
                 mapPainter.setGridEnabled(((JCheckBoxMenuItem) e.getSource()).isSelected());
                 wt.repaint();
             }
+        } else if (e.getSource() == menuWorldDistanceHeatmap) {
+            if (wt != null) {
+                final boolean enabled = ((JCheckBoxMenuItem) e.getSource()).isSelected();
+                if (!wt.getWorldPanel().setDistanceHeatmap(enabled)) {
+                    menuWorldDistanceHeatmap.setState(false);
+                }
+            }
         } else if (tabbedPane != null && e.getSource() == tabbedPane) { // tab changed
             if (wt != null) {
                 wt.getWorldPanel().callStatusUpdateListeners();
                 menuWorldCurvedPaths.setState(((MapPainterDefault) wt.getWorldPanel().getMappainter()).getPathsCurved());
                 menuWorldShowGrid.setState(((MapPainterDefault) wt.getWorldPanel().getMappainter()).isGridEnabled());
                 menuWorldShowCursor.setState(wt.getWorldPanel().isCursorEnabled());
+                menuWorldDistanceHeatmap.setState(wt.getWorldPanel().isDistanceHeatmapEnabled());
             }
         } else {
             final String message = StringHelper.join(getClass().getName(), ": ChangeEvent not recognized");
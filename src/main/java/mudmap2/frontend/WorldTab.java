@@ -32,6 +32,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.BoxLayout;
@@ -43,18 +49,25 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
 import javax.swing.JSplitPane;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import mudmap2.backend.Layer;
 import mudmap2.backend.Place;
 import mudmap2.backend.World;
 import mudmap2.backend.WorldCoordinate;
+import mudmap2.backend.WorldMerger;
 import mudmap2.backend.WorldFileList;
 import mudmap2.backend.WorldFileReader.WorldFile;
-import mudmap2.backend.WorldFileReader.WorldFileType;
+import mudmap2.backend.WorldFileReader.WorldFileProgressListener;
+import mudmap2.backend.WorldFileReader.WorldFileWatcher;
+import mudmap2.backend.WorldFileReader.WorldSnapshot;
 import mudmap2.backend.WorldFileReader.current.WorldFileDefault;
-import mudmap2.backend.WorldFileReader.current.WorldFileJSON;
+import mudmap2.backend.WorldFileReader.current.WorldJournal;
 import mudmap2.backend.WorldFileReader.current.WorldMetaJSON;
+import mudmap2.backend.export.CsvExporter;
+import mudmap2.backend.logimport.LogFormat;
+import mudmap2.backend.logimport.LogImporter;
 import mudmap2.frontend.GUIElement.WorldPanel.PlaceSelectionListener;
 import mudmap2.frontend.GUIElement.ScrollLabel;
 import mudmap2.frontend.GUIElement.WorldPanel.MapPainterDefault;
@@ -73,7 +86,7 @@ import mudmap2.frontend.dialog.SaveWorldDialog;
  *
  * @author neop
  */
-public class WorldTab extends JPanel implements LayerPanelListener,PlacePanelListener,StatusListener,WorldPanelListener,WorldMetaJSON {
+public class WorldTab extends JPanel implements LayerPanelListener,PlacePanelListener,StatusListener,WorldPanelListener,WorldMetaJSON,WorldFileWatcher.Listener {
     private static final long serialVersionUID = 1L;
 
     JFrame parentFrame;
@@ -85,6 +98,32 @@ public class WorldTab extends JPanel implements LayerPanelListener,PlacePanelLis
     JPanel palInfoBar;
     ScrollLabel labelInfobar;
 
+    // writes world files, one after another
+    static final ExecutorService saveExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "WorldTab save");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    Future<?> pendingSave = null;
+
+    // autosave after the world was modified for some seconds or by some
+    // changes, 0 disables the trigger
+    static int autosaveInterval = Integer.getInteger("autosaveInterval", 300);
+    static int autosaveChanges = Integer.getInteger("autosaveChanges", 500);
+
+    // modification count of the world at the last save
+    long savedModificationCount = 0;
+    // time of the first unsaved change seen by autosave(), 0 if unknown
+    long modifiedSince = 0;
+
+    // world file that is watched for changes by other programs or null
+    String watchedFile = null;
+    // true if a reload waits for the running save or reload
+    boolean reloadPending = false;
+
     // world_meta file version supported by this WorldTab
     static final int META_FILE_VER_MAJOR = 2;
     static final int META_FILE_VER_MINOR = 0;
@@ -121,6 +160,8 @@ public class WorldTab extends JPanel implements LayerPanelListener,PlacePanelLis
     private void create(World world, boolean passive){
         createGui(world, passive);
         readMeta();
+        savedModificationCount = world.getModificationCount();
+        watchWorldFile();
     }
 
     /**
@@ -234,11 +275,13 @@ public class WorldTab extends JPanel implements LayerPanelListener,PlacePanelLis
     }
 
     /**
-     * Saves the changes in the world
+     * Saves the changes in the world. The changes are appended to the journal
+     * of the world file, the world file is rewritten from a snapshot when the
+     * journal gets large. Both are written in the background
      */
     public void save(){
         if(!worldPanel.isPassive()){
-            WorldFile worldFile = getWorld().getWorldFile();
+            final WorldFile worldFile = getWorld().getWorldFile();
 
             if(worldFile == null){
                 SaveWorldDialog dlg = new SaveWorldDialog(null, this);
@@ -251,33 +294,379 @@ public class WorldTab extends JPanel implements LayerPanelListener,PlacePanelLis
 
             if(worldFile != null){
                 // set meta data writer
-                if(worldFile.getWorldFileType() == WorldFileType.JSON){
-                    WorldFileJSON wfj = null;
-                    if(worldFile instanceof WorldFileJSON){
-                        wfj = (WorldFileJSON) worldFile;
-                    } else if(worldFile instanceof WorldFileDefault){
-                        wfj = (WorldFileJSON) ((WorldFileDefault) worldFile).getWorldFile();
-                    }
-                    if(wfj != null) wfj.setMetaGetter(this);
+                worldFile.setMetaGetter(this);
+
+                final World world = getWorld();
+                final long modificationCount = world.getModificationCount();
+                modifiedSince = 0;
+                WorldJournal journal = worldFile.getJournal();
+                if(journal == null && worldFile.isJournaled()){
+                    // the first save writes the world file
+                    journal = new WorldJournal(worldFile);
+                    journal.attach(world);
+                    worldFile.setJournal(journal);
                 }
 
+                // append the changes to the journal or rewrite the world file
+                // if the journal got large
+                final WorldJournal worldJournal = journal;
+                final WorldSnapshot snapshot;
+                if(journal == null){
+                    snapshot = worldFile.createSnapshot(world);
+                } else {
+                    snapshot = journal.needsCompaction() ? journal.createSnapshot() : null;
+                }
+                final byte[] entry = snapshot == null ? journal.createEntry() : null;
+                final String worldName = world.getName();
+                labelInfobar.setStatus("Saving world...");
+
                 // write world file
+                pendingSave = saveExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            WorldFileProgressListener listener = new WorldFileProgressListener() {
+                                @Override
+                                public void progressChanged(final int percent) {
+                                    labelInfobar.setStatus("Saving world... " + percent + "%");
+                                }
+                            };
+                            // don't reload our own changes, the state of the
+                            // file and journal is recorded right after writing
+                            WorldFileWatcher.beginWrite(worldFile.getFilename());
+                            try {
+                                if(worldJournal == null){
+                                    worldFile.writeSnapshot(snapshot, listener);
+                                } else if(snapshot != null){
+                                    worldJournal.compact(snapshot, listener);
+                                } else if(entry != null){
+                                    worldJournal.append(entry);
+                                }
+                            } finally {
+                                WorldFileWatcher.endWrite(worldFile.getFilename());
+                            }
+                            SwingUtilities.invokeLater(new Runnable() {
+                                @Override
+                                public void run() {
+                                    labelInfobar.setStatus(null);
+                                    savedModificationCount = modificationCount;
+                                    watchWorldFile();
+                                    // set world as recently used
+                                    WorldFileList.push(new WorldFileList.WorldFileEntry(worldName, new File(worldFile.getFilename())));
+                                    showMessage("World saved");
+                                }
+                            });
+                        } catch (IOException ex) {
+                            Logger.getLogger(WorldTab.class.getName()).log(Level.SEVERE, null, ex);
+                            SwingUtilities.invokeLater(new Runnable() {
+                                @Override
+                                public void run() {
+                                    labelInfobar.setStatus(null);
+                                    JOptionPane.showMessageDialog(getParent(),
+                                            "Could not save world file " + worldFile.getFilename(),
+                                            "Saving world file",
+                                            JOptionPane.ERROR_MESSAGE);
+                                }
+                            });
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Checks whether the world was changed since it was opened or saved
+     * @return true if there are unsaved changes
+     */
+    public boolean isModified(){
+        return getWorld().getModificationCount() != savedModificationCount;
+    }
+
+    /**
+     * Saves the world in the background if it has been modified for the
+     * autosave interval or by enough changes. Worlds without a world file
+     * aren't saved automatically. Has to be called on the event dispatch
+     * thread, like save()
+     * @return true if the world is saved
+     */
+    public boolean autosave(){
+        if(worldPanel.isPassive() || getWorld().getWorldFile() == null || !isModified()){
+            return false;
+        }
+        // the previous save is still running
+        if(pendingSave != null && !pendingSave.isDone()) return false;
+
+        long now = System.currentTimeMillis();
+        if(modifiedSince == 0) modifiedSince = now;
+
+        long changes = getWorld().getModificationCount() - savedModificationCount;
+        if((autosaveInterval > 0 && now - modifiedSince >= autosaveInterval * 1000L)
+                || (autosaveChanges > 0 && changes >= autosaveChanges)){
+            save();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Waits until the last save of this tab has been written
+     */
+    public void waitForSave(){
+        if(pendingSave != null){
+            try {
+                pendingSave.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                Logger.getLogger(WorldTab.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+
+    /**
+     * Watches the world file, so that changes by other programs are reloaded
+     */
+    private void watchWorldFile(){
+        WorldFile worldFile = getWorld().getWorldFile();
+        if(worldPanel.isPassive() || worldFile == null || worldFile.getFilename().isEmpty()
+                || worldFile.getFilename().equals(watchedFile)){
+            return;
+        }
+        close();
+        try {
+            WorldFileWatcher.watch(worldFile.getFilename(), this);
+            watchedFile = worldFile.getFilename();
+        } catch (IOException ex) {
+            Logger.getLogger(WorldTab.class.getName()).log(Level.WARNING, "Could not watch world file " + worldFile.getFilename(), ex);
+        }
+    }
+
+    /**
+     * Stops watching the world file, has to be called when the tab is closed
+     */
+    public void close(){
+        if(watchedFile != null){
+            WorldFileWatcher.unwatch(watchedFile);
+            watchedFile = null;
+        }
+    }
+
+    @Override
+    public void worldFileChanged(String filename) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                reload();
+            }
+        });
+    }
+
+    /**
+     * Reads the world file again after it was changed by another program.
+     * The file is read in the background, only the differences are applied
+     * to the world, see WorldMerger. The user is asked before unsaved
+     * changes are discarded. If a save or reload is still running, the world
+     * is reloaded after it. Has to be called on the event dispatch thread
+     */
+    public void reload(){
+        final WorldFile worldFile = getWorld().getWorldFile();
+        if(worldPanel.isPassive() || worldFile == null) return;
+        // a save or reload is still running, the save executor runs one task
+        // after another
+        if(pendingSave != null && !pendingSave.isDone()){
+            if(!reloadPending){
+                reloadPending = true;
+                saveExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                reloadPending = false;
+                                reload();
+                            }
+                        });
+                    }
+                });
+            }
+            return;
+        }
+
+        if(isModified()){
+            int ret = JOptionPane.showConfirmDialog(this,
+                    "The world file was changed by another program. Reload it and discard the unsaved changes?",
+                    "Reload world", JOptionPane.YES_NO_OPTION);
+            if(ret != JOptionPane.YES_OPTION) return;
+        }
+
+        final String filename = worldFile.getFilename();
+        labelInfobar.setStatus("Reloading world...");
+        pendingSave = saveExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
                 try {
-                    World world = getWorld();
-                    worldFile.writeFile(world);
-                    // set world as recently used
-                    WorldFileList.push(new WorldFileList.WorldFileEntry(world.getName(), new File(worldFile.getFilename())));
+                    WorldFileDefault file = new WorldFileDefault(filename);
+                    final World world = file.readFile();
+                    if(file.getJournal() != null) file.getJournal().detach();
+
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            labelInfobar.setStatus(null);
+                            // the tab got another world file meanwhile
+                            if(getWorld().getWorldFile() != worldFile) return;
+
+                            WorldMerger.Result result = WorldMerger.merge(getWorld(), world);
+                            // the file no longer matches the journal or layer files
+                            worldFile.invalidate();
+                            savedModificationCount = getWorld().getModificationCount();
+                            modifiedSince = 0;
+                            showMessage("World reloaded (" + result + ")");
+                        }
+                    });
+                } catch (Exception ex) {
+                    Logger.getLogger(WorldTab.class.getName()).log(Level.SEVERE, null, ex);
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            labelInfobar.setStatus(null);
+                            JOptionPane.showMessageDialog(getParent(),
+                                    "Could not reload world file " + filename,
+                                    "Reloading world file",
+                                    JOptionPane.ERROR_MESSAGE);
+                        }
+                    });
+                }
+            }
+        });
+    }
 
-                    showMessage("World saved");
-                } catch (IOException ex) {
+    /**
+     * Exports the world to CSV or TSV tables. The world is copied on the
+     * calling thread, like for saving, the tables are written on the
+     * background thread of the tab. Has to be called on the event dispatch
+     * thread
+     * @param directory export directory
+     * @param format table format
+     */
+    public void exportCsv(final File directory, CsvExporter.Format format){
+        final CsvExporter exporter = new CsvExporter(getWorld(), format);
+        labelInfobar.setStatus("Exporting world...");
+        saveExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    exporter.export(directory, new WorldFileProgressListener() {
+                        @Override
+                        public void progressChanged(final int percent) {
+                            labelInfobar.setStatus("Exporting world... " + percent + "%");
+                        }
+                    });
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            labelInfobar.setStatus(null);
+                            showMessage("World exported to " + directory.getPath());
+                        }
+                    });
+                } catch (final IOException ex) {
                     Logger.getLogger(WorldTab.class.getName()).log(Level.SEVERE, null, ex);
-                    JOptionPane.showMessageDialog(getParent(),
-                            "Could not save world file " + worldFile.getFilename(),
-                            "Saving world file",
-                            JOptionPane.ERROR_MESSAGE);
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            labelInfobar.setStatus(null);
+                            JOptionPane.showMessageDialog(getParent(),
+                                    "Could not export world: " + ex.getMessage(),
+                                    "Export As CSV",
+                                    JOptionPane.ERROR_MESSAGE);
+                        }
+                    });
                 }
             }
+        });
+    }
+
+    /**
+     * Imports a MUD client log into a layer. A batch of rooms is read on the
+     * background thread of the tab and added on the event dispatch thread,
+     * then the next batch is read. Only one batch is kept in memory and the
+     * map stays usable meanwhile. Has to be called on the event dispatch
+     * thread
+     * @param file log file, encoded in UTF-8
+     * @param layer layer of the new places
+     */
+    public void importLog(final File file, Layer layer){
+        final LogImporter importer = new LogImporter(layer, new LogFormat());
+        final LogImporter.LogReader reader;
+        try {
+            reader = importer.openLog(file);
+        } catch (IOException ex) {
+            Logger.getLogger(WorldTab.class.getName()).log(Level.SEVERE, null, ex);
+            showLogError(file);
+            return;
         }
+        labelInfobar.setStatus("Importing log...");
+        readLogBatch(file, importer, reader, true);
+    }
+
+    /**
+     * Reads the next batch of rooms of a log in the background and adds it
+     * on the event dispatch thread, which reads the following batch
+     * @param file log file
+     * @param importer log importer
+     * @param reader reader of the log file
+     * @param newSession true for the first batch
+     */
+    private void readLogBatch(final File file, final LogImporter importer,
+            final LogImporter.LogReader reader, final boolean newSession){
+        saveExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final List<LogImporter.Visit> visits = reader.read(LogImporter.DEFAULT_BATCH_SIZE);
+                    final long position = reader.getPosition();
+                    if(visits.isEmpty()) reader.close();
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            if(visits.isEmpty()){
+                                labelInfobar.setStatus(null);
+                                showMessage("Log imported (" + importer.getRoomCount() + " rooms, "
+                                        + importer.getPlaceCount() + " new places, " + importer.getPathCount() + " new paths)");
+                            } else {
+                                importer.importVisits(visits, newSession);
+                                labelInfobar.setStatus("Importing log... " + (100 * position / Math.max(1, file.length())) + "%");
+                                readLogBatch(file, importer, reader, false);
+                            }
+                        }
+                    });
+                } catch (IOException ex) {
+                    Logger.getLogger(WorldTab.class.getName()).log(Level.SEVERE, null, ex);
+                    try {
+                        reader.close();
+                    } catch (IOException ex1) {
+                        Logger.getLogger(WorldTab.class.getName()).log(Level.SEVERE, null, ex1);
+                    }
+                    SwingUtilities.invokeLater(new Runnable() {
+                        @Override
+                        public void run() {
+                            labelInfobar.setStatus(null);
+                            showLogError(file);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Tells the user that a log file couldn't be read
+     * @param file log file
+     */
+    private void showLogError(File file){
+        JOptionPane.showMessageDialog(getParent(),
+                "Could not read log file " + file.getPath(),
+                "Importing log",
+                JOptionPane.ERROR_MESSAGE);
     }
 
     /**
@@ -402,15 +791,9 @@ public class WorldTab extends JPanel implements LayerPanelListener,PlacePanelLis
     public void readMeta(){
         WorldFile worldFile = getWorld().getWorldFile();
 
-        // set meta data writer
-        if(worldFile != null && worldFile.getWorldFileType() == WorldFileType.JSON){
-            WorldFileJSON wfj = null;
-            if(worldFile instanceof WorldFileJSON){
-                wfj = (WorldFileJSON) worldFile;
-            } else if(worldFile instanceof WorldFileDefault){
-                wfj = (WorldFileJSON) ((WorldFileDefault) worldFile).getWorldFile();
-            }
-            if(wfj != null) setMeta(wfj.getMetaData());
+        // read meta data
+        if(worldFile != null){
+            setMeta(worldFile.getMetaData());
         }
     }
 
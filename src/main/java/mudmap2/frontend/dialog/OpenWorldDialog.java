@@ -30,8 +30,11 @@ import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.filechooser.FileFilter;
 import mudmap2.backend.World;
+import mudmap2.backend.WorldFileReader.WorldFileFilterBinary;
+import mudmap2.backend.WorldFileReader.WorldFileFilterCompressed;
 import mudmap2.backend.WorldFileReader.WorldFileFilterJSON;
 import mudmap2.backend.WorldFileReader.WorldFileFilterM2W;
+import mudmap2.backend.WorldFileReader.WorldFileFilterSharded;
 import mudmap2.backend.WorldManager;
 import mudmap2.frontend.Mainwindow;
 
@@ -58,6 +61,9 @@ public class OpenWorldDialog implements ActionListener{
 
         FileFilter filter;
         filechooser.addChoosableFileFilter(filter = new WorldFileFilterM2W());
+        filechooser.addChoosableFileFilter(new WorldFileFilterBinary());
+        filechooser.addChoosableFileFilter(new WorldFileFilterCompressed());
+        filechooser.addChoosableFileFilter(new WorldFileFilterSharded());
         filechooser.addChoosableFileFilter(new WorldFileFilterJSON());
         filechooser.setFileHidingEnabled(false);
 
@@ -24,9 +24,14 @@ import javax.swing.JRadioButton;
 import javax.swing.filechooser.FileFilter;
 import mudmap2.Environment;
 import mudmap2.backend.WorldFileReader.WorldFile;
+import mudmap2.backend.WorldFileReader.WorldFileFilterBinary;
+import mudmap2.backend.WorldFileReader.WorldFileFilterCompressed;
 import mudmap2.backend.WorldFileReader.WorldFileFilterJSON;
 import mudmap2.backend.WorldFileReader.WorldFileFilterM2W;
+import mudmap2.backend.WorldFileReader.WorldFileFilterSharded;
+import mudmap2.backend.WorldFileReader.current.WorldFileBinary;
 import mudmap2.backend.WorldFileReader.current.WorldFileJSON;
+import mudmap2.backend.WorldFileReader.current.WorldFileSharded;
 import mudmap2.frontend.WorldTab;
 
 /**
@@ -53,6 +58,9 @@ public class SaveWorldDialog extends JFileChooser {
 
         FileFilter filter;
         addChoosableFileFilter(filter = new WorldFileFilterM2W());
+        addChoosableFileFilter(new WorldFileFilterBinary());
+        addChoosableFileFilter(new WorldFileFilterCompressed());
+        addChoosableFileFilter(new WorldFileFilterSharded());
         addChoosableFileFilter(new WorldFileFilterJSON());
 
         setFileFilter(filter);
@@ -67,6 +75,23 @@ public class SaveWorldDialog extends JFileChooser {
             if(!file.endsWith(".m2w")){
                 file = file + ".m2w";
             }
+        } else if(getFileFilter() instanceof WorldFileFilterBinary){
+            if(!file.endsWith(".m2b")){
+                file = file + ".m2b";
+            }
+            return new WorldFileBinary(file);
+        } else if(getFileFilter() instanceof WorldFileFilterCompressed){
+            if(!file.endsWith(".m2w.gz")){
+                file = file + ".m2w.gz";
+            }
+            WorldFile worldFile = new WorldFileJSON(file);
+            worldFile.setCompressed(true);
+            return worldFile;
+        } else if(getFileFilter() instanceof WorldFileFilterSharded){
+            if(!file.endsWith(".m2s")){
+                file = file + ".m2s";
+            }
+            return new WorldFileSharded(file);
         }
 
         WorldFile worldFile = new WorldFileJSON(file);
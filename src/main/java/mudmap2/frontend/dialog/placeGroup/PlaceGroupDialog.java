@@ -75,15 +75,16 @@ public class PlaceGroupDialog extends ActionDialog {
     /**
      * Constructs a modify / delete dialog for existing place groups
      * @param parent parent window
+     * @param world world of the place groups
      * @param placeGroups place group(s) to be modified
      */
-    public PlaceGroupDialog(JFrame parent, Collection<PlaceGroup> placeGroups) {
+    public PlaceGroupDialog(JFrame parent, World world, Collection<PlaceGroup> placeGroups) {
         super(parent, (placeGroups.size() == 1) ?
                 "Edit place group - " + placeGroups.toArray(new PlaceGroup[1])[0].getName() :
                 "Edit " + placeGroups.size() + " place groups", true);
 
         this.placeGroups = placeGroups;
-        world = null;
+        this.world = world;
         place = null;
     }
 
@@ -245,14 +246,17 @@ public class PlaceGroupDialog extends ActionDialog {
             PlaceGroup group = place.getPlaceGroup();
             group.setName(textfieldName.getText());
             group.setColor(colorChooserButton.getColor());
+            if(world != null) world.callListeners(group);
         } else if(placeGroups != null){ // existing of group
             if(placeGroups.size() == 1){ // existing single entry of group
                 PlaceGroup group = placeGroups.toArray(new PlaceGroup[1])[0];
                 group.setName(textfieldName.getText());
                 group.setColor(colorChooserButton.getColor());
+                if(world != null) world.callListeners(group);
             } else { // existing multiple entries of group
                 for(PlaceGroup group: placeGroups){
                     group.setColor(colorChooserButton.getColor());
+                    if(world != null) world.callListeners(group);
                 }
             }
         }
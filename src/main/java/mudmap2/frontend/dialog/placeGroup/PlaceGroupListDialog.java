@@ -100,7 +100,7 @@ public class PlaceGroupListDialog extends ListDialog {
 
     @Override
     protected void modifyEntry(){
-        (new PlaceGroupDialog((JFrame) getParent(), getList().getSelectedValuesList())).setVisible(true);
+        (new PlaceGroupDialog((JFrame) getParent(), world, getList().getSelectedValuesList())).setVisible(true);
         updateList();
     }
 
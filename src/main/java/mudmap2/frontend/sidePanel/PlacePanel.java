@@ -29,8 +29,11 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.JTree;
+import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
+import javax.swing.event.TreeWillExpandListener;
+import javax.swing.tree.ExpandVetoException;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import mudmap2.backend.Layer;
@@ -44,7 +47,7 @@ import mudmap2.utils.AlphanumComparator;
  * @author neop
  */
 public class PlacePanel extends JPanel
-        implements KeyListener, TreeSelectionListener, WorldChangeListener {
+        implements KeyListener, TreeSelectionListener, TreeWillExpandListener, WorldChangeListener {
 
     private static final long serialVersionUID = 1L;
 
@@ -89,6 +92,7 @@ public class PlacePanel extends JPanel
         root = new DefaultMutableTreeNode(world.getName());
         tree = new JTree(root);
         tree.getSelectionModel().addTreeSelectionListener(this);
+        tree.addTreeWillExpandListener(this);
 
         JScrollPane scrollPane = new JScrollPane(tree,
                 JScrollPane.VERTICAL_SCROLLBAR_ALWAYS,
@@ -128,16 +132,11 @@ public class PlacePanel extends JPanel
             root.add(layerNode);
             layerNodes.put(layer, layerNode);
 
-            HashSet<Place> places = layer.getPlaces();
-            ArrayList<Place> placeList = new ArrayList<>(places);
-            Collections.sort(placeList, new AlphanumComparator<>());
-
-            for(Place place: placeList){
-                if(!useKeywords || place.matchKeywords(keywords)){
-                    PlaceTreeNode placeNode = new PlaceTreeNode(place);
-                    layerNode.add(placeNode);
-                    placeNodes.put(place, placeNode);
-                }
+            // places of layers that aren't loaded yet are added on expansion
+            if(useKeywords || layer.isLoaded()){
+                layerNode.populate(keywords);
+            } else {
+                layerNode.add(new DefaultMutableTreeNode("..."));
             }
         }
 
@@ -200,6 +199,20 @@ public class PlacePanel extends JPanel
         }
     }
 
+    @Override
+    public void treeWillExpand(TreeExpansionEvent event) throws ExpandVetoException {
+        Object component = event.getPath().getLastPathComponent();
+        if(component instanceof LayerTreeNode && !((LayerTreeNode) component).isPopulated()){
+            LayerTreeNode layerNode = (LayerTreeNode) component;
+            layerNode.removeAllChildren();
+            layerNode.populate(new String[0]);
+            ((DefaultTreeModel) tree.getModel()).nodeStructureChanged(layerNode);
+        }
+    }
+
+    @Override
+    public void treeWillCollapse(TreeExpansionEvent event) throws ExpandVetoException {}
+
     @Override
     public void worldChanged(Object source) {
         if(!useKeywords){ // don't update when keywords/search is in use
@@ -213,12 +226,14 @@ public class PlacePanel extends JPanel
                 Place place = (Place) source;
                 if(placeNodes.containsKey(place)){
                     placeNodes.get(place).update();
-                } else if(layerNodes.containsKey(place.getLayer())) { // new place
+                } else if(layerNodes.containsKey(place.getLayer())
+                        && layerNodes.get(place.getLayer()).isPopulated()) { // new place
                     HashSet<Place> places = place.getLayer().getPlaces();
                     ArrayList<Place> placeList = new ArrayList<>(places);
                     Collections.sort(placeList, new AlphanumComparator<>());
 
                     Integer pos = placeList.indexOf(place);
+                    if(pos < 0) return; // removed place
 
                     PlaceTreeNode placeNode = new PlaceTreeNode(place);
                     placeNodes.put(place, placeNode);
@@ -234,6 +249,7 @@ public class PlacePanel extends JPanel
         private static final long serialVersionUID = 1L;
 
         Layer layer;
+        boolean populated = false;
 
         public LayerTreeNode(Layer layer){
             super(layer.getName());
@@ -244,6 +260,28 @@ public class PlacePanel extends JPanel
             return layer;
         }
 
+        public boolean isPopulated() {
+            return populated;
+        }
+
+        /**
+         * Adds the places of the layer, loads the layer if necessary
+         * @param keywords places have to match all keywords, if not empty
+         */
+        public void populate(String[] keywords){
+            ArrayList<Place> placeList = new ArrayList<>(layer.getPlaces());
+            Collections.sort(placeList, new AlphanumComparator<>());
+
+            for(Place place: placeList){
+                if(keywords.length == 0 || place.matchKeywords(keywords)){
+                    PlaceTreeNode placeNode = new PlaceTreeNode(place);
+                    add(placeNode);
+                    placeNodes.put(place, placeNode);
+                }
+            }
+            populated = true;
+        }
+
         public void update(){
             setUserObject(layer.getName());
         }
@@ -17,8 +17,10 @@
 package mudmap2.backend;
 
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import mudmap2.backend.prquadtree.Quadtree;
@@ -520,6 +522,31 @@ public class LayerTest {
         }
     }
 
+    /**
+     * Test of putAll method, of class Layer.
+     */
+    @Test
+    public void testPutAll() {
+        System.out.println("putAll");
+
+        Layer instance = new Layer(world);
+        Place pl1 = new Place("MyPlace", 0, 0, null);
+        Place pl2 = new Place("MyPlace", 3, -4, null);
+        Place pl3 = new Place("MyPlace", 0, 0, null);
+
+        List<Place> failed = instance.putAll(Arrays.asList(pl1, pl2, pl3));
+        assertEquals(1, failed.size());
+        assertSame(pl3, failed.get(0));
+        assertNull(pl3.getLayer());
+
+        assertSame(instance, pl1.getLayer());
+        assertSame(instance, pl2.getLayer());
+        assertEquals(pl1, instance.get(0, 0));
+        assertEquals(pl2, instance.get(3, -4));
+        assertEquals(2, instance.getPlaces().size());
+        assertEquals(-4, instance.getYMin());
+    }
+
     /**
      * Test of getPlace method, of class Layer.
      */
@@ -26,6 +26,8 @@ import java.util.LinkedList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import mudmap2.Environment;
+import mudmap2.backend.WorldFileReader.current.WorldFileJSON;
+import org.apache.commons.io.FileUtils;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.After;
@@ -281,4 +283,120 @@ public class WorldFileListTest {
         }
     }
 
+    /**
+     * Test of getWorldName method, of class WorldFileList.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testGetWorldName() throws Exception {
+        System.out.println("getWorldName");
+
+        new WorldFileJSON(file1.getAbsolutePath()).writeFile(new World("First"));
+        assertEquals("First", WorldFileList.getWorldName(file1));
+        // not a world file
+        assertNull(WorldFileList.getWorldName(file2));
+
+        // the cached name is used until the file changes
+        FileUtils.writeStringToFile(file1, "{\"fileVer\":\"2.0\",\"worldName\":\"Other\"}");
+        file1.setLastModified(1000000);
+        assertEquals("Other", WorldFileList.getWorldName(file1));
+        assertTrue(file2.delete());
+        assertTrue(file2.createNewFile());
+        file2.setLastModified(1000000);
+        assertNull(WorldFileList.getWorldName(file2));
+    }
+
+    /**
+     * Test of read method with the legacy available worlds file
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testReadWorldList() throws Exception {
+        System.out.println("readWorldList");
+
+        File tempPath = File.createTempFile("junit_mudmap_filelist", "");
+        tempPath.delete();
+        tempPath.mkdirs();
+        Environment.setUserDataDir(tempPath.getAbsolutePath() + File.separator);
+
+        new WorldFileJSON(file1.getAbsolutePath()).writeFile(new World("First"));
+        FileUtils.writeStringToFile(new File(Environment.getWorldsDir(), "worlds"),
+                "f " + file1.getAbsolutePath() + "\nf " + file2.getAbsolutePath() + "\n");
+
+        WorldFileList.read();
+        LinkedList<WorldFileList.WorldFileEntry> entries = WorldFileList.getEntries();
+        // file2 isn't a world file
+        assertEquals(1, entries.size());
+        assertEquals("First", entries.getFirst().getWorldName());
+
+        // an unchanged file isn't read again
+        long modified = file1.lastModified();
+        String content = FileUtils.readFileToString(file1);
+        FileUtils.writeStringToFile(file1, content.replace("First", "Other"));
+        file1.setLastModified(modified);
+        WorldFileList.read();
+        assertEquals("First", WorldFileList.getEntries().getFirst().getWorldName());
+
+        FileUtils.deleteDirectory(tempPath);
+    }
+
+    /**
+     * Test of the world name cache file, of class WorldFileList.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testNameCache() throws Exception {
+        System.out.println("nameCache");
+
+        File tempPath = File.createTempFile("junit_mudmap_filelist", "");
+        tempPath.delete();
+        tempPath.mkdirs();
+        Environment.setUserDataDir(tempPath.getAbsolutePath() + File.separator);
+        File cacheFile = new File(tempPath, "worldnames");
+
+        // names read in this session are written with the history
+        new WorldFileJSON(file1.getAbsolutePath()).writeFile(new World("First"));
+        assertEquals("First", WorldFileList.getWorldName(file1));
+        WorldFileList.write();
+        assertTrue(cacheFile.exists());
+        JSONObject jRoot = new JSONObject(FileUtils.readFileToString(cacheFile));
+        boolean found = false;
+        for(int i = 0; i < jRoot.getJSONArray("names").length(); ++i){
+            JSONObject jElement = jRoot.getJSONArray("names").getJSONObject(i);
+            if(jElement.getString("file").equals(file1.getAbsolutePath())){
+                assertEquals("First", jElement.getString("name"));
+                assertEquals(file1.length(), jElement.getLong("length"));
+                found = true;
+            }
+        }
+        assertTrue(found);
+
+        // cached names of unchanged files are used without reading the file
+        FileUtils.writeStringToFile(file3, "not a world");
+        file3.setLastModified(2000000);
+        JSONObject jElement = new JSONObject();
+        jElement.put("file", file3.getAbsolutePath());
+        jElement.put("modified", file3.lastModified());
+        jElement.put("length", file3.length());
+        jElement.put("readable", true);
+        jElement.put("name", "Cached");
+        // modified files are read again
+        JSONObject jModified = new JSONObject();
+        jModified.put("file", file2.getAbsolutePath());
+        jModified.put("modified", file2.lastModified() + 5000);
+        jModified.put("length", file2.length());
+        jModified.put("readable", true);
+        jModified.put("name", "Modified");
+        jRoot = new JSONObject();
+        jRoot.put("ver", "2.0");
+        jRoot.put("names", new JSONArray().put(jElement).put(jModified));
+        FileUtils.writeStringToFile(cacheFile, jRoot.toString());
+
+        WorldFileList.read();
+        assertEquals("Cached", WorldFileList.getWorldName(file3));
+        assertNull(WorldFileList.getWorldName(file2));
+
+        FileUtils.deleteDirectory(tempPath);
+    }
+
 }
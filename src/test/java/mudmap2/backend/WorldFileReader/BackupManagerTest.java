@@ -0,0 +1,185 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.WorldFileReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldFileReader.current.WorldFileDefault;
+import mudmap2.backend.WorldFileReader.current.WorldFileJSON;
+import mudmap2.backend.WorldFileReader.current.WorldJournal;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class BackupManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public BackupManagerTest() {
+    }
+
+    @After
+    public void tearDown() {
+        BackupManager.setBackupCount(BackupManager.DEFAULT_BACKUP_COUNT);
+    }
+
+    private static byte[] decompress(File file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(InputStream in = new GZIPInputStream(Files.newInputStream(file.toPath()))){
+            byte[] buffer = new byte[4096];
+            int count;
+            while((count = in.read(buffer)) > 0) out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Test of createBackup method, of class BackupManager.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCreateBackup() throws Exception {
+        System.out.println("createBackup");
+
+        String filename = folder.getRoot() + "/world.m2w";
+        File file = new File(filename);
+        WorldFileJSON worldFile = new WorldFileJSON(filename);
+        assertNull(BackupManager.createBackup(worldFile));
+
+        worldFile.writeFile(new World("First"));
+        File backup = BackupManager.createBackup(worldFile);
+        assertTrue(backup.getName().endsWith(BackupManager.SUFFIX_COMPRESSED));
+        assertTrue(Arrays.equals(Files.readAllBytes(file.toPath()), decompress(backup)));
+
+        // unchanged file, no new backup
+        assertEquals(backup, BackupManager.createBackup(worldFile));
+        assertEquals(1, BackupManager.getBackups(filename).size());
+
+        // changed file
+        worldFile.writeFile(new World("Second"));
+        file.setLastModified(file.lastModified() + 5000);
+        File backup2 = BackupManager.createBackup(worldFile);
+        assertFalse(backup.equals(backup2));
+        assertEquals(Arrays.asList(backup, backup2), BackupManager.getBackups(filename));
+        assertTrue(Arrays.equals(Files.readAllBytes(file.toPath()), decompress(backup2)));
+        // no temporary files left
+        assertEquals(2, BackupManager.getBackupDirectory(filename).list().length);
+    }
+
+    /**
+     * Test of journal backups, of class BackupManager.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testBackupJournal() throws Exception {
+        System.out.println("backup journal");
+
+        BackupManager.setBackupCount(1);
+        String filename = folder.getRoot() + "/world.m2w";
+        File file = new File(filename);
+        File journal = WorldJournal.getJournalFile(filename);
+        WorldFileJSON worldFile = new WorldFileJSON(filename);
+        worldFile.writeFile(new World("World"));
+        Files.write(journal.toPath(), new byte[]{1, 2, 3});
+
+        File backup = BackupManager.createBackup(worldFile);
+        File journalBackup = BackupManager.getJournalBackup(backup);
+        assertTrue(journalBackup.getName().endsWith(BackupManager.SUFFIX_JOURNAL));
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3}, decompress(journalBackup)));
+        assertEquals(Arrays.asList(backup), BackupManager.getBackups(filename));
+
+        // appended journal, unchanged world file
+        Files.write(journal.toPath(), new byte[]{1, 2, 3, 4});
+        journal.setLastModified(journal.lastModified() + 5000);
+        assertEquals(backup, BackupManager.createBackup(worldFile));
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3, 4}, decompress(journalBackup)));
+
+        // compacted world file, the old pair is removed
+        Files.write(journal.toPath(), new byte[0]);
+        file.setLastModified(file.lastModified() + 10000);
+        File backup2 = BackupManager.createBackup(worldFile);
+        assertFalse(BackupManager.getJournalBackup(backup2).exists());
+        assertFalse(backup.exists());
+        assertFalse(journalBackup.exists());
+        assertEquals(1, BackupManager.getBackupDirectory(filename).list().length);
+    }
+
+    /**
+     * Test of backup rotation, of class BackupManager.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRotation() throws Exception {
+        System.out.println("rotation");
+
+        BackupManager.setBackupCount(2);
+        String filename = folder.getRoot() + "/world.m2w";
+        File file = new File(filename);
+        WorldFileJSON worldFile = new WorldFileJSON(filename);
+        worldFile.writeFile(new World("World"));
+
+        long modified = file.lastModified();
+        File[] backups = new File[4];
+        for(int i = 0; i < backups.length; ++i){
+            file.setLastModified(modified + i * 10000);
+            backups[i] = BackupManager.createBackup(worldFile);
+        }
+
+        List<File> kept = BackupManager.getBackups(filename);
+        assertEquals(Arrays.asList(backups[2], backups[3]), kept);
+        assertFalse(backups[0].exists());
+    }
+
+    /**
+     * Test of backups of compressed files, of class BackupManager.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testBackupCompressed() throws Exception {
+        System.out.println("backup compressed");
+
+        String filename = folder.getRoot() + "/world.m2w.gz";
+        File file = new File(filename);
+        WorldFileJSON worldFile = new WorldFileJSON(filename);
+        worldFile.setCompressed(true);
+        worldFile.writeFile(new World("Compressed"));
+        byte[] content = Files.readAllBytes(file.toPath());
+
+        File backup = BackupManager.backup(new WorldFileDefault(filename)).get();
+        assertTrue(backup.getName().endsWith(BackupManager.SUFFIX_LINK));
+        assertTrue(Arrays.equals(content, Files.readAllBytes(backup.toPath())));
+
+        // writing the world file replaces it, the backup keeps the old version
+        worldFile.writeFile(new World("Changed"));
+        assertTrue(Arrays.equals(content, Files.readAllBytes(backup.toPath())));
+    }
+
+}
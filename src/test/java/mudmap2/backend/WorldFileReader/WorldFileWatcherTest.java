@@ -0,0 +1,117 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mudmap2.backend.WorldFileReader;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class WorldFileWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public WorldFileWatcherTest() {
+    }
+
+    /**
+     * Test of watch method, of class WorldFileWatcher.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWatch() throws Exception {
+        System.out.println("watch");
+
+        final LinkedBlockingQueue<String> changes = new LinkedBlockingQueue<>();
+        WorldFileWatcher.Listener listener = new WorldFileWatcher.Listener() {
+            @Override
+            public void worldFileChanged(String filename) {
+                changes.add(filename);
+            }
+        };
+
+        File file = new File(folder.getRoot(), "world.m2w");
+        Files.write(file.toPath(), "first".getBytes());
+        WorldFileWatcher.watch(file.getPath(), listener);
+        assertTrue(WorldFileWatcher.isWatched(file.getPath()));
+
+        // changes by other programs are reported once
+        Files.write(file.toPath(), "second version".getBytes());
+        assertEquals(file.getAbsolutePath(), changes.poll(10, TimeUnit.SECONDS));
+
+        // recorded changes and other files aren't reported
+        Files.write(file.toPath(), "third".getBytes());
+        WorldFileWatcher.update(file.getPath());
+        Files.write(new File(folder.getRoot(), "other.m2w").toPath(), "other".getBytes());
+        assertNull(changes.poll(2 * WorldFileWatcher.QUIET_TIME + 500, TimeUnit.MILLISECONDS));
+
+        // journals belong to the world file
+        Files.write(new File(file.getPath() + ".journal").toPath(), "journal".getBytes());
+        assertEquals(file.getAbsolutePath(), changes.poll(10, TimeUnit.SECONDS));
+
+        WorldFileWatcher.unwatch(file.getPath());
+        assertFalse(WorldFileWatcher.isWatched(file.getPath()));
+        Files.write(file.toPath(), "fourth version".getBytes());
+        assertNull(changes.poll(2 * WorldFileWatcher.QUIET_TIME + 500, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Test of beginWrite and endWrite methods, of class WorldFileWatcher.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWrite() throws Exception {
+        System.out.println("beginWrite");
+
+        final LinkedBlockingQueue<String> changes = new LinkedBlockingQueue<>();
+        WorldFileWatcher.Listener listener = new WorldFileWatcher.Listener() {
+            @Override
+            public void worldFileChanged(String filename) {
+                changes.add(filename);
+            }
+        };
+
+        File file = new File(folder.getRoot(), "written.m2w");
+        Files.write(file.toPath(), "first".getBytes());
+        WorldFileWatcher.watch(file.getPath(), listener);
+
+        // changes during a slow write aren't reported
+        WorldFileWatcher.beginWrite(file.getPath());
+        Files.write(file.toPath(), "second version".getBytes());
+        Files.write(new File(file.getPath() + ".journal").toPath(), "journal".getBytes());
+        assertNull(changes.poll(2 * WorldFileWatcher.QUIET_TIME + 500, TimeUnit.MILLISECONDS));
+        WorldFileWatcher.endWrite(file.getPath());
+        assertNull(changes.poll(2 * WorldFileWatcher.QUIET_TIME + 500, TimeUnit.MILLISECONDS));
+
+        // later changes by other programs are reported
+        Files.write(file.toPath(), "third version!".getBytes());
+        assertEquals(file.getAbsolutePath(), changes.poll(10, TimeUnit.SECONDS));
+
+        WorldFileWatcher.unwatch(file.getPath());
+    }
+
+}
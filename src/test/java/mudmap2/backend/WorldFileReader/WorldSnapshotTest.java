@@ -0,0 +1,93 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.WorldFileReader;
+
+import java.awt.Color;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.PlaceGroup;
+import mudmap2.backend.World;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class WorldSnapshotTest {
+
+    public WorldSnapshotTest() {
+    }
+
+    /**
+     * Test of the constructor, of class WorldSnapshot.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWorldSnapshot() throws Exception {
+        System.out.println("WorldSnapshot");
+
+        World world = new World("Snapshot");
+        Layer layer = world.getNewLayer();
+        world.getNewLayer(); // empty layer
+        Place pl0 = new Place("A", 0, 0, layer);
+        Place pl1 = new Place("B", 1, 0, layer);
+        layer.put(pl0);
+        layer.put(pl1);
+        pl0.connectPath(new Path(pl0, "e", pl1, "w"));
+        pl0.connectChild(pl1);
+        pl0.setFlag("shop", true);
+        pl0.setFlag("bank", false);
+        PlaceGroup group = new PlaceGroup("Group", Color.red);
+        world.addPlaceGroup(group);
+        world.addPlaceGroup(new PlaceGroup("Unused", Color.blue));
+        pl1.setPlaceGroup(group);
+
+        WorldSnapshot instance = new WorldSnapshot(world);
+
+        // later changes don't affect the snapshot
+        pl0.setName("Changed");
+        world.setName("Changed");
+        pl1.removePath(pl1.getPathTo("w"));
+
+        assertEquals("Snapshot", instance.name);
+        assertEquals(1, instance.layerIds.length);
+        assertEquals((int) layer.getId(), instance.layerIds[0]);
+        assertEquals(Integer.valueOf(0), instance.layerIndices.get(layer.getId()));
+        assertEquals(2, instance.placeCount);
+        assertEquals(1, instance.pathCount);
+        assertEquals(1, instance.areaNames.length);
+        assertEquals("Group", instance.areaNames[0]);
+
+        int i0 = instance.placeIds[0] == pl0.getId() ? 0 : 1;
+        int i1 = 1 - i0;
+        assertEquals("A", instance.placeNames[i0]);
+        assertEquals(-1, instance.placeAreas[i0]);
+        assertEquals(0, instance.placeAreas[i1]);
+        assertArrayEquals(new String[]{"shop"}, instance.placeFlags[i0]);
+        assertNull(instance.placeFlags[i1]);
+        assertArrayEquals(new int[]{pl1.getId()}, instance.placeChildren[i0]);
+        assertArrayEquals(new int[]{pl0.getId()}, instance.placeParents[i1]);
+        assertNull(instance.placeComments[i0]);
+        assertEquals(WorldSnapshot.NO_RISK_LEVEL, instance.placeRiskLevels[i0]);
+        assertEquals(pl0.getId(), instance.pathPlaces[0]);
+        assertEquals("e", instance.pathExits[0]);
+        assertEquals("w", instance.pathExits[1]);
+    }
+
+}
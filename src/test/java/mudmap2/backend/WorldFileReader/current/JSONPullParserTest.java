@@ -0,0 +1,162 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.WorldFileReader.current;
+
+import java.io.IOException;
+import java.io.StringReader;
+import mudmap2.backend.WorldFileReader.current.JSONPullParser.Token;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class JSONPullParserTest {
+
+    public JSONPullParserTest() {
+    }
+
+    private JSONPullParser parser(String json){
+        return new JSONPullParser(new StringReader(json));
+    }
+
+    /**
+     * Test of next method, of class JSONPullParser.
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testNext() throws IOException {
+        System.out.println("next");
+
+        JSONPullParser instance = parser(" {\"a\" : [1, -2.5e1, \"x\"], \"b\":{}, \"c\":true,\n\"d\":false,\"e\":null,\"f\":[]} ");
+        assertEquals(Token.BEGIN_OBJECT, instance.next());
+        assertEquals(Token.NAME, instance.next());
+        assertEquals("a", instance.getString());
+        assertEquals(Token.BEGIN_ARRAY, instance.next());
+        assertEquals(Token.NUMBER, instance.next());
+        assertEquals(1, instance.getInt());
+        assertEquals(Token.NUMBER, instance.next());
+        assertEquals(-25.0, instance.getDouble(), 0.0);
+        assertEquals(-25, instance.getInt());
+        assertEquals(Token.STRING, instance.next());
+        assertEquals("x", instance.getString());
+        assertEquals(Token.END_ARRAY, instance.next());
+        assertEquals(Token.NAME, instance.next());
+        assertEquals(Token.BEGIN_OBJECT, instance.next());
+        assertEquals(Token.END_OBJECT, instance.next());
+        assertEquals(Token.NAME, instance.next());
+        assertEquals(Token.TRUE, instance.next());
+        assertEquals(Token.NAME, instance.next());
+        assertEquals(Token.FALSE, instance.next());
+        assertEquals(Token.NAME, instance.next());
+        assertEquals(Token.NULL, instance.next());
+        assertEquals(Token.NAME, instance.next());
+        assertEquals("f", instance.getString());
+        assertEquals(Token.BEGIN_ARRAY, instance.next());
+        assertEquals(Token.END_ARRAY, instance.next());
+        assertEquals(Token.END_OBJECT, instance.next());
+        assertEquals(Token.END_DOCUMENT, instance.next());
+    }
+
+    /**
+     * Test of getString method, of class JSONPullParser.
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testGetString() throws IOException {
+        System.out.println("getString");
+
+        JSONPullParser instance = parser("[\"a\\\"b\\\\c\\/d\\n\\u00e4\", {\"key\":1}, {\"key\":2}]");
+        instance.next(Token.BEGIN_ARRAY);
+        instance.next(Token.STRING);
+        assertEquals("a\"b\\c/d\nä", instance.getString());
+
+        // names are reused
+        instance.next(Token.BEGIN_OBJECT);
+        instance.next(Token.NAME);
+        String name1 = instance.getString();
+        instance.skipValue();
+        instance.next();
+        instance.next(Token.END_OBJECT);
+        instance.next(Token.BEGIN_OBJECT);
+        instance.next(Token.NAME);
+        assertSame(name1, instance.getString());
+
+        // strings longer than the buffer
+        StringBuilder builder = new StringBuilder("\"");
+        for(int i = 0; i < 40000; ++i) builder.append((char) ('a' + i % 26));
+        builder.append("\"");
+        instance = parser(builder.toString());
+        instance.next(Token.STRING);
+        assertEquals(builder.substring(1, builder.length() - 1), instance.getString());
+    }
+
+    /**
+     * Test of skipValue and readValue methods, of class JSONPullParser.
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testSkipReadValue() throws IOException {
+        System.out.println("skipValue / readValue");
+
+        JSONPullParser instance = parser("{\"skip\":[{\"a\":[[]]},2],\"read\":{\"b\":[1,\"c\",true,null],\"d\":1.5}}");
+        instance.next(Token.BEGIN_OBJECT);
+        instance.next(Token.NAME);
+        instance.next(Token.BEGIN_ARRAY);
+        instance.skipValue();
+        assertEquals(Token.END_ARRAY, instance.getToken());
+        instance.next(Token.NAME);
+        assertEquals("read", instance.getString());
+        instance.next();
+
+        JSONObject object = instance.readObject();
+        JSONArray array = object.getJSONArray("b");
+        assertEquals(4, array.length());
+        assertEquals(1, array.getInt(0));
+        assertEquals("c", array.getString(1));
+        assertTrue(array.getBoolean(2));
+        assertTrue(array.isNull(3));
+        assertEquals(1.5, object.getDouble("d"), 0.0);
+        assertEquals(Token.END_OBJECT, instance.next());
+        assertEquals(Token.END_DOCUMENT, instance.next());
+    }
+
+    /**
+     * Test of syntax errors
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testSyntaxError() throws IOException {
+        System.out.println("syntax error");
+
+        String[] invalid = {"{\"a\" 1}", "[1 2]", "{\"a\":1,}", "[tru]", "\"open", "{} {}", "{1:2}"};
+        for(String json: invalid){
+            JSONPullParser instance = parser(json);
+            try {
+                while(instance.next() != Token.END_DOCUMENT){}
+                fail(json);
+            } catch(JSONException ex){
+                // expected
+            }
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.WorldFileReader.current;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class JSONStreamWriterTest {
+
+    public JSONStreamWriterTest() {
+    }
+
+    /**
+     * Test of writing a document, of class JSONStreamWriter.
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testWrite() throws IOException {
+        System.out.println("write");
+
+        JSONObject preferences = new JSONObject();
+        preferences.put("k", new JSONArray().put(1).put("v"));
+
+        StringWriter out = new StringWriter();
+        JSONStreamWriter instance = new JSONStreamWriter(out);
+        instance.beginObject();
+        instance.name("s").value("a\"b\\c\n</\u0001\t");
+        instance.name("i").value(42);
+        instance.name("d").value(1.5);
+        instance.name("b").value(true);
+        instance.name("n").value((String) null);
+        instance.name("a").beginArray().value(1).beginArray().endArray().beginObject().endObject().endArray();
+        instance.name("o").value(preferences);
+        instance.endObject();
+        instance.close();
+
+        JSONObject result = new JSONObject(out.toString());
+        assertEquals("a\"b\\c\n</\u0001\t", result.getString("s"));
+        assertEquals(42, result.getInt("i"));
+        assertEquals(1.5, result.getDouble("d"), 0.0);
+        assertTrue(result.getBoolean("b"));
+        assertTrue(result.isNull("n"));
+        assertEquals(3, result.getJSONArray("a").length());
+        assertEquals("v", result.getJSONObject("o").getJSONArray("k").getString(1));
+    }
+
+    /**
+     * Test of invalid structures
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testInvalidStructure() throws IOException {
+        System.out.println("invalid structure");
+
+        try {
+            new JSONStreamWriter(new StringWriter()).beginObject().value(1);
+            fail("value without name");
+        } catch(JSONException ex){
+            // expected
+        }
+        try {
+            new JSONStreamWriter(new StringWriter()).beginArray().name("a");
+            fail("name in array");
+        } catch(JSONException ex){
+            // expected
+        }
+        try {
+            new JSONStreamWriter(new StringWriter()).beginArray().endObject();
+            fail("mismatched end");
+        } catch(JSONException ex){
+            // expected
+        }
+    }
+
+}
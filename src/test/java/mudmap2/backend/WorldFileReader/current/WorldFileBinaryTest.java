@@ -0,0 +1,382 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.WorldFileReader.current;
+
+import java.awt.Color;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.PlaceGroup;
+import mudmap2.backend.RiskLevel;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldCoordinate;
+import mudmap2.backend.WorldFileReader.Exception.WorldFileReadError;
+import mudmap2.backend.WorldFileReader.WorldFileType;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class WorldFileBinaryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public WorldFileBinaryTest() {
+    }
+
+    /**
+     * Test of varint encoding, of class WorldFileBinary.
+     */
+    @Test
+    public void testVarint() {
+        System.out.println("varint");
+
+        int[] values = {0, 1, -1, 63, -64, 64, 127, 128, 300, -300, 1 << 20, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        WorldFileBinary.SectionWriter writer = new WorldFileBinary.SectionWriter();
+        for(int value: values){
+            writer.writeVarint(value);
+            writer.writeSignedVarint(value);
+        }
+        writer.writeString("Bär");
+
+        ByteBuffer data = ByteBuffer.wrap(writer.buffer, 0, writer.size);
+        for(int value: values){
+            assertEquals(value, WorldFileBinary.readVarint(data));
+            assertEquals(value, WorldFileBinary.readSignedVarint(data));
+        }
+        assertEquals("Bär", WorldFileBinary.readString(data));
+        assertFalse(data.hasRemaining());
+
+        // small values take one byte
+        writer.reset();
+        writer.writeSignedVarint(-5);
+        writer.writeVarint(100);
+        assertEquals(2, writer.size);
+    }
+
+    /**
+     * Test of readFile and writeFile methods, of class WorldFileBinary.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testReadWriteFile() throws Exception {
+        System.out.println("readFile / writeFile");
+
+        World world = new World("Binary");
+        Layer layer1 = world.getNewLayer();
+        Layer layer2 = world.getNewLayer();
+        layer1.setName("MyLayer");
+        world.setTileCenterColor(Color.pink);
+        world.setPathColor("up", Color.cyan);
+        world.setRiskLevel(new RiskLevel(7, "risky", Color.magenta));
+
+        Place pl0 = new Place("Foo", -3, 5, layer1);
+        Place pl1 = new Place("Foo", 200, -70000, layer1);
+        Place pl2 = new Place("Baz", 6, 4, layer2);
+        layer1.put(pl0);
+        layer1.put(pl1);
+        layer2.put(pl2);
+        world.setHome(new WorldCoordinate(layer1.getId(), -3, 5));
+
+        pl0.connectPath(new Path(pl0, "n", pl1, "s"));
+        pl1.connectPath(new Path(pl1, "up", pl2, "down"));
+        pl0.connectChild(pl2);
+
+        PlaceGroup group = new PlaceGroup("Group", Color.orange);
+        world.addPlaceGroup(group);
+        pl0.setPlaceGroup(group);
+        pl1.setRiskLevel(world.getRiskLevel(7));
+        pl1.setRecLevelMin(3);
+        pl1.setRecLevelMax(12);
+        pl0.setFlag("shop", true);
+        pl0.setComments("first line\r\nsecond line");
+
+        final int layer2Id = layer2.getId();
+        String file = folder.getRoot() + "/world.m2b";
+        WorldFileBinary writer = new WorldFileBinary(file);
+        writer.setMetaGetter(new WorldMetaJSON() {
+            @Override
+            public JSONObject getMeta(HashMap<Integer, Integer> layerTranslation) {
+                return new JSONObject().put("tileSize", 42).put("layer", layerTranslation.get(layer2Id));
+            }
+        });
+        writer.writeFile(world);
+
+        WorldFileBinary reader = new WorldFileBinary(file);
+        assertTrue(reader.canRead());
+        assertEquals("Binary", reader.readWorldName());
+        World result = reader.readFile();
+
+        assertEquals("Binary", result.getName());
+        assertEquals(Color.pink, result.getTileCenterColor());
+        assertEquals(Color.cyan, result.getPathColor("up"));
+        assertEquals("risky", result.getRiskLevel(7).getDescription());
+        assertEquals(2, result.getLayers().size());
+        assertEquals(42, reader.getMetaData().getInt("tileSize"));
+
+        Layer layer1r = result.getLayer(result.getHome().getLayer());
+        assertNotNull(layer1r);
+        assertEquals("MyLayer", layer1r.getName());
+        assertEquals(-3, result.getHome().getX(), 0.0);
+        Layer layer2r = result.getLayer(reader.getMetaData().getInt("layer"));
+        assertNotNull(layer2r);
+        assertFalse(layer2r.hasName());
+
+        Place pl0r = layer1r.get(-3, 5);
+        Place pl1r = layer1r.get(200, -70000);
+        Place pl2r = layer2r.get(6, 4);
+        assertEquals("Foo", pl0r.getName());
+        assertEquals("Foo", pl1r.getName());
+        assertEquals("Baz", pl2r.getName());
+        assertEquals(pl0.getId(), pl0r.getId());
+
+        assertEquals(pl0r.getPathTo("n"), pl1r.getPathTo("s"));
+        assertNotNull(pl0r.getPathTo("n"));
+        assertEquals(pl1r.getPathTo("up"), pl2r.getPathTo("down"));
+        assertTrue(pl0r.getChildren().contains(pl2r));
+        assertTrue(pl2r.getParents().contains(pl0r));
+
+        assertEquals("Group", pl0r.getPlaceGroup().getName());
+        assertEquals(Color.orange, pl0r.getPlaceGroup().getColor());
+        assertNull(pl1r.getPlaceGroup());
+        assertEquals(7, pl1r.getRiskLevel().getId());
+        assertEquals(3, pl1r.getRecLevelMin());
+        assertEquals(12, pl1r.getRecLevelMax());
+        assertTrue(pl0r.getFlag("shop"));
+        assertEquals("first line\r\nsecond line", pl0r.getComments());
+
+        // detection by magic number
+        WorldFileDefault detected = new WorldFileDefault(file);
+        assertEquals(WorldFileType.BINARY, detected.getWorldFileType());
+        assertEquals("Binary", detected.readWorldName());
+        assertEquals(3, detected.readFile().getLayer(layer1r.getId()).getPlaces().size()
+                + detected.readFile().getLayer(layer2r.getId()).getPlaces().size());
+
+        // JSON files aren't binary files
+        String jsonFile = folder.getRoot() + "/world.json";
+        new WorldFileJSON(jsonFile).writeFile(world);
+        assertFalse(new WorldFileBinary(jsonFile).canRead());
+        assertEquals(WorldFileType.JSON, new WorldFileDefault(jsonFile).getWorldFileType());
+        assertTrue(new File(file).length() < new File(jsonFile).length());
+    }
+
+    /**
+     * Test of lazy loading, of class WorldFileBinary.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testReadFileLazy() throws Exception {
+        System.out.println("readFile lazy");
+
+        World world = new World("Lazy");
+        Layer layerA = world.getNewLayer();
+        Layer layerB = world.getNewLayer();
+        Layer layerC = world.getNewLayer();
+        Layer layerD = world.getNewLayer();
+        Place plA = new Place("A", 0, 0, layerA);
+        Place plB = new Place("B", 1, 0, layerB);
+        Place plC = new Place("C", 2, 0, layerC);
+        Place plD = new Place("D", 3, 0, layerD);
+        layerA.put(plA);
+        layerB.put(plB);
+        layerC.put(plC);
+        layerD.put(plD);
+        // A - B by path, B - C by child
+        plA.connectPath(new Path(plA, "e", plB, "w"));
+        plB.connectChild(plC);
+
+        String file = folder.getRoot() + "/lazy.m2b";
+        new WorldFileBinary(file).writeFile(world);
+        int maxId = Math.max(Math.max(plA.getId(), plB.getId()), Math.max(plC.getId(), plD.getId()));
+
+        World result = new WorldFileBinary(file).readFile();
+        assertEquals(4, result.getLayers().size());
+        assertFalse(result.isLoaded());
+        for(Layer layer: result.getLayers()) assertFalse(layer.isLoaded());
+        // new places don't get the ids of places that aren't loaded
+        assertTrue(new Place("new", 0, 0, null).getId() > maxId);
+
+        // layers are identified by their only place
+        Layer layerAr = null, layerBr = null, layerDr = null;
+        for(Layer layer: result.getLayers()){
+            String name = layer.getPlaces().iterator().next().getName();
+            if(name.equals("A")) layerAr = layer;
+            else if(name.equals("B")) layerBr = layer;
+            else if(name.equals("D")) layerDr = layer;
+        }
+        assertTrue(result.isLoaded());
+
+        result = new WorldFileBinary(file).readFile();
+        layerAr = result.getLayer(layerAr.getId());
+        layerBr = result.getLayer(layerBr.getId());
+        layerDr = result.getLayer(layerDr.getId());
+
+        // the path to the neighbor layer is complete, the neighbor isn't
+        Place plAr = layerAr.get(0, 0);
+        assertTrue(layerAr.isLoaded());
+        Place plBr = plAr.getPathTo("e").getOtherPlace(plAr);
+        assertEquals("B", plBr.getName());
+        assertSame(layerBr, plBr.getLayer());
+        assertFalse(layerBr.isLoaded());
+        assertFalse(layerDr.isLoaded());
+
+        assertEquals(1, layerBr.getPlaces().size());
+        assertTrue(layerBr.isLoaded());
+        assertEquals(1, plBr.getChildren().size());
+        assertEquals("C", plBr.getChildren().iterator().next().getName());
+        assertFalse(layerDr.isLoaded());
+
+        // everything is read without lazy loading
+        WorldFileBinary reader = new WorldFileBinary(file);
+        reader.setLazyLoading(false);
+        assertTrue(reader.readFile().isLoaded());
+    }
+
+    /**
+     * Gets a layer by its name without loading it
+     */
+    private static Layer getLayer(World world, String name){
+        for(Layer layer: world.getLayers()){
+            if(name.equals(layer.getName())) return layer;
+        }
+        return null;
+    }
+
+    /**
+     * Test of writing a lazily read world, of class WorldFileBinary.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWriteFileLazy() throws Exception {
+        System.out.println("writeFile lazy");
+
+        World world = new World("Lazy");
+        RiskLevel risk = new RiskLevel("risky", Color.RED);
+        world.setRiskLevel(risk);
+        PlaceGroup area = new PlaceGroup("Town", Color.BLUE);
+        world.addPlaceGroup(area);
+        Layer layerA = world.getNewLayer("A");
+        Layer layerB = world.getNewLayer("B");
+        Layer layerC = world.getNewLayer("C");
+        Layer layerD = world.getNewLayer("D");
+        Place plA = new Place("A", 0, 0, layerA);
+        Place plB = new Place("B", 1, 0, layerB);
+        Place plC = new Place("C", 2, 0, layerC);
+        Place plD = new Place("D", 3, 0, layerD);
+        Place plD2 = new Place("D2", 4, 0, layerD);
+        layerA.put(plA);
+        layerB.put(plB);
+        layerC.put(plC);
+        layerD.put(plD);
+        layerD.put(plD2);
+        plD2.setPlaceGroup(area);
+        plD2.setRiskLevel(risk);
+        plD2.setRecLevelMin(3);
+        plD2.setRecLevelMax(7);
+        plD2.setFlag("shop", true);
+        plD2.setComments("comment");
+        // paths and children between read and unread layers, in both
+        // directions
+        plA.connectPath(new Path(plA, "e", plB, "w"));
+        plD.connectPath(new Path(plD, "n", plA, "s"));
+        plC.connectPath(new Path(plC, "u", plD2, "d"));
+        plB.connectChild(plC);
+        plA.connectChild(plD);
+        plD2.connectChild(plA);
+
+        String file = folder.getRoot() + "/lazy.m2b";
+        new WorldFileBinary(file).writeFile(world);
+
+        World result = new WorldFileBinary(file).readFile();
+        Layer layerAr = getLayer(result, "A");
+        Place plAr = layerAr.get(0, 0);
+        Place plE = new Place("E", 1, 1, layerAr);
+        layerAr.put(plE);
+        plE.connectPath(new Path(plE, "s", plAr, "n"));
+
+        String copy = folder.getRoot() + "/copy.m2b";
+        new WorldFileBinary(copy).writeFile(result);
+        // writing doesn't load the other layers
+        assertFalse(getLayer(result, "B").isLoaded());
+        assertFalse(getLayer(result, "C").isLoaded());
+        assertFalse(getLayer(result, "D").isLoaded());
+
+        WorldFileBinary reader = new WorldFileBinary(copy);
+        reader.setLazyLoading(false);
+        result = reader.readFile();
+        plAr = getLayer(result, "A").get(0, 0);
+        Place plBr = getLayer(result, "B").get(1, 0);
+        Place plCr = getLayer(result, "C").get(2, 0);
+        Place plDr = getLayer(result, "D").get(3, 0);
+        Place plD2r = getLayer(result, "D").get(4, 0);
+        Place plEr = getLayer(result, "A").get(1, 1);
+        assertEquals("A", plAr.getName());
+        assertEquals("E", plEr.getName());
+        assertEquals(2, getLayer(result, "D").getPlaces().size());
+
+        assertSame(plBr, plAr.getExit("e").getOtherPlace(plAr));
+        assertSame(plDr, plAr.getExit("s").getOtherPlace(plAr));
+        assertSame(plAr, plEr.getExit("s").getOtherPlace(plEr));
+        assertSame(plD2r, plCr.getExit("u").getOtherPlace(plCr));
+        assertEquals(3, plAr.getPaths().size());
+        assertTrue(plBr.getChildren().contains(plCr));
+        assertTrue(plAr.getChildren().contains(plDr));
+        assertTrue(plD2r.getChildren().contains(plAr));
+        assertEquals(1, plAr.getParents().size());
+
+        assertEquals("D2", plD2r.getName());
+        assertEquals("Town", plD2r.getPlaceGroup().getName());
+        assertEquals("risky", plD2r.getRiskLevel().getDescription());
+        assertEquals(3, plD2r.getRecLevelMin());
+        assertEquals(7, plD2r.getRecLevelMax());
+        assertTrue(plD2r.getFlag("shop"));
+        assertEquals("comment", plD2r.getComments());
+    }
+
+    /**
+     * Test of readFile with a truncated file
+     * @throws java.lang.Exception
+     */
+    @Test(expected = WorldFileReadError.class)
+    public void testReadCorruptFile() throws Exception {
+        System.out.println("readFile corrupt");
+
+        World world = new World("Corrupt");
+        Layer layer = world.getNewLayer();
+        for(int i = 0; i < 100; ++i) layer.put(new Place("Place " + i, i, 0, layer));
+
+        File file = new File(folder.getRoot() + "/corrupt.m2b");
+        new WorldFileBinary(file.getPath()).writeFile(world);
+
+        byte[] data = Files.readAllBytes(file.toPath());
+        // keep the header, cut the places
+        Files.write(file.toPath(), Arrays.copyOf(data, data.length / 2));
+        new WorldFileBinary(file.getPath()).readFile();
+    }
+
+}
@@ -29,8 +29,11 @@ import mudmap2.backend.Layer;
 import mudmap2.backend.Path;
 import mudmap2.backend.Place;
 import mudmap2.backend.World;
+import mudmap2.backend.WorldFileReader.WorldFileProgressListener;
 import mudmap2.backend.WorldFileReader.WorldFileType;
+import mudmap2.backend.WorldFileReader.WorldSnapshot;
 import org.apache.commons.io.FileUtils;
+import org.json.JSONObject;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -209,6 +212,210 @@ public class WorldFileJSONTest {
         // TODO: test labels
     }
 
+    /**
+     * Test of readFile method with references before their targets
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testReadFileKeyOrder() throws Exception {
+        System.out.println("readFile key order");
+
+        String content = "{\"paths\":[[{\"p\":2,\"e\":\"s\"},{\"e\":\"n\",\"p\":1}]],"
+                + "\"places\":[{\"c\":[2],\"a\":1,\"r\":7,\"lvlMax\":20,\"n\":\"Foo\",\"id\":1,\"l\":0,\"x\":0,\"y\":0,"
+                + "\"co\":[\"first\",\"second\"],\"f\":[\"a\"]},"
+                + "{\"id\":2,\"n\":\"B\\u00e4r \\\"2\\\"\",\"l\":0,\"x\":0,\"y\":1},"
+                + "{\"id\":3,\"n\":\"incomplete\",\"c\":[1]}],"
+                + "\"areas\":[{\"id\":1,\"name\":\"area\",\"col\":\"#ff0000\"}],"
+                + "\"riskLevels\":[{\"id\":7,\"desc\":\"risky\",\"col\":\"#00ff00\"}],"
+                + "\"layers\":[{\"id\":0,\"name\":\"MyLayer\",\"centerX\":5,\"centerY\":5}],"
+                + "\"unknown\":{\"a\":[1,2,{\"b\":null}]},"
+                + "\"meta\":{\"x\":1.5},"
+                + "\"worldName\":\"Order\",\"fileVer\":\"2.0\"}";
+        File file = new File(folder.getRoot() + "/order");
+        FileUtils.writeStringToFile(file, content);
+
+        WorldFileJSON instance = new WorldFileJSON(file.getPath());
+        assertEquals("Order", instance.readWorldName());
+        World world = instance.readFile();
+
+        assertEquals("Order", world.getName());
+        assertEquals(1, world.getLayers().size());
+        Layer layer = world.getLayer(0);
+        assertEquals("MyLayer", layer.getName());
+        assertEquals(2, layer.getPlaces().size());
+
+        Place pl1 = layer.get(0, 0);
+        Place pl2 = layer.get(0, 1);
+        assertEquals("Foo", pl1.getName());
+        assertEquals("B\u00e4r \"2\"", pl2.getName());
+        assertEquals("area", pl1.getPlaceGroup().getName());
+        assertEquals("risky", pl1.getRiskLevel().getDescription());
+        assertEquals(-1, pl1.getRecLevelMin());
+        assertEquals(20, pl1.getRecLevelMax());
+        assertTrue(pl1.getFlag("a"));
+        assertEquals("first\r\nsecond", pl1.getComments());
+        assertEquals(pl1.getPathTo("n"), pl2.getPathTo("s"));
+        assertNotNull(pl1.getPathTo("n"));
+        assertEquals(1, pl1.getChildren().size());
+        assertTrue(pl1.getChildren().contains(pl2));
+        assertEquals(1.5, instance.getMetaData().getDouble("x"), 0.0);
+    }
+
+    /**
+     * Test of readFile method with connections between layers
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testReadFileLayers() throws Exception {
+        System.out.println("readFile layers");
+
+        String content = "{\"fileVer\":\"2.0\",\"worldName\":\"Layers\","
+                + "\"layers\":[{\"id\":0},{\"id\":1}],"
+                + "\"places\":[{\"id\":1,\"n\":\"A\",\"l\":0,\"x\":0,\"y\":0,\"c\":[2,3]},"
+                + "{\"id\":2,\"n\":\"B\",\"l\":0,\"x\":1,\"y\":0},"
+                + "{\"id\":3,\"n\":\"C\",\"l\":1,\"x\":0,\"y\":0},"
+                + "{\"id\":4,\"n\":\"D\",\"l\":1,\"x\":0,\"y\":0,\"c\":[1]}],"
+                + "\"paths\":[[{\"p\":1,\"e\":\"e\"},{\"p\":2,\"e\":\"w\"}],"
+                + "[{\"p\":1,\"e\":\"d\"},{\"p\":3,\"e\":\"u\"}],"
+                + "[{\"p\":2,\"e\":\"d\"},{\"p\":4,\"e\":\"u\"}],"
+                + "[{\"p\":3,\"e\":\"n\"},{\"p\":4,\"e\":\"s\"}]]}";
+        File file = new File(folder.getRoot() + "/layers");
+        FileUtils.writeStringToFile(file, content);
+
+        World world = new WorldFileJSON(file.getPath()).readFile();
+        Place plA = world.getLayer(0).get(0, 0);
+        Place plB = world.getLayer(0).get(1, 0);
+        Place plC = world.getLayer(1).get(0, 0);
+        assertEquals("A", plA.getName());
+        assertEquals("C", plC.getName());
+        assertSame(world.getLayer(1), plC.getLayer());
+
+        // paths and children within and between layers
+        assertSame(plB, plA.getPathTo("e").getOtherPlace(plA));
+        assertSame(plC, plA.getPathTo("d").getOtherPlace(plA));
+        assertEquals(2, plA.getChildren().size());
+        assertTrue(plA.getChildren().contains(plB));
+        assertTrue(plC.getParents().contains(plA));
+
+        // D couldn't be inserted, its connections are dropped
+        assertEquals(1, world.getLayer(1).getPlaces().size());
+        assertNull(plB.getPathTo("d"));
+        assertNull(plC.getPathTo("n"));
+        assertTrue(plA.getParents().isEmpty());
+    }
+
+    /**
+     * Test of readFile method without file version
+     * @throws java.lang.Exception
+     */
+    @Test(expected = mudmap2.backend.WorldFileReader.Exception.WorldFileInvalidTypeException.class)
+    public void testReadFileNoVersion() throws Exception {
+        System.out.println("readFile no version");
+
+        File file = new File(folder.getRoot() + "/nover");
+        FileUtils.writeStringToFile(file, "{\"worldName\":\"NoVersion\",\"places\":[]}");
+        new WorldFileJSON(file.getPath()).readFile();
+    }
+
+    /**
+     * Test of writeSnapshot method, a failed write keeps the old file
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWriteSnapshotFailure() throws Exception {
+        System.out.println("writeSnapshot failure");
+
+        World world = new World("Snapshot");
+        Layer layer = world.getNewLayer();
+        layer.put(new Place("Foo", 0, 0, layer));
+
+        File file = new File(folder.getRoot() + "/snapshot");
+        WorldFileJSON instance = new WorldFileJSON(file.getPath());
+        instance.writeFile(world);
+        String content = FileUtils.readFileToString(file);
+
+        world.setName("Changed");
+        WorldSnapshot snapshot = instance.createSnapshot(world);
+        try {
+            instance.writeSnapshot(snapshot, new WorldFileProgressListener() {
+                @Override
+                public void progressChanged(int percent) {
+                    throw new IllegalStateException("write aborted");
+                }
+            });
+            fail();
+        } catch(IllegalStateException ex){
+            // expected
+        }
+
+        assertEquals(content, FileUtils.readFileToString(file));
+        assertEquals(1, folder.getRoot().list().length);
+
+        final int[] progress = {-1};
+        instance.writeSnapshot(snapshot, new WorldFileProgressListener() {
+            @Override
+            public void progressChanged(int percent) {
+                assertTrue(percent > progress[0]);
+                progress[0] = percent;
+            }
+        });
+        assertEquals(100, progress[0]);
+        assertEquals("Changed", new WorldFileJSON(file.getPath()).readWorldName());
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    /**
+     * Test of reading and writing compressed files, of class WorldFileJSON.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testReadWriteCompressed() throws Exception {
+        System.out.println("readFile / writeFile compressed");
+
+        World world = new World("Compressed");
+        Layer layer = world.getNewLayer();
+        for(int i = 0; i < 200; ++i) layer.put(new Place("Place " + i, i % 20, i / 20, layer));
+
+        File plain = new File(folder.getRoot() + "/plain.m2w");
+        new WorldFileJSON(plain.getPath()).writeFile(world);
+        File file = new File(folder.getRoot() + "/world.m2w.gz");
+        WorldFileJSON instance = new WorldFileJSON(file.getPath());
+        instance.setCompressed(true);
+        instance.setCompressionLevel(9);
+        instance.writeFile(world);
+
+        assertTrue(WorldFileJSON.isGzipFile(file));
+        assertFalse(WorldFileJSON.isGzipFile(plain));
+        assertTrue(file.length() * 5 < plain.length());
+
+        // detected by the magic number
+        WorldFileDefault detected = new WorldFileDefault(file.getPath());
+        assertEquals(WorldFileType.JSON, detected.getWorldFileType());
+        assertEquals("Compressed", detected.readWorldName());
+        World result = detected.readFile();
+        assertEquals(200, result.getLayers().iterator().next().getPlaces().size());
+        // stays compressed when saved again
+        assertTrue(detected.isCompressed());
+        assertFalse(new WorldFileDefault(plain.getPath()).isCompressed());
+
+        try {
+            instance.setCompressionLevel(10);
+            fail();
+        } catch(IllegalArgumentException ex){
+            // expected
+        }
+
+        // truncated compressed data
+        byte[] data = FileUtils.readFileToByteArray(file);
+        FileUtils.writeByteArrayToFile(file, java.util.Arrays.copyOf(data, data.length / 2));
+        try {
+            new WorldFileJSON(file.getPath()).readFile();
+            fail();
+        } catch(mudmap2.backend.WorldFileReader.Exception.WorldFileReadError ex){
+            // expected
+        }
+    }
+
     /**
      * Test of backup method, of class WorldFileJSON.
      * @throws java.io.IOException
@@ -252,6 +459,58 @@ public class WorldFileJSONTest {
         }
     }
 
+    /**
+     * Test of readHeader and canRead methods with large files
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testReadHeader() throws Exception {
+        System.out.println("readHeader");
+
+        World world = new World("Header");
+        Layer layer = world.getNewLayer();
+        Place place = new Place("Foo", 0, 0, layer);
+        layer.put(place);
+        layer.put(new Place("Bar", 0, 1, layer));
+        place.connectPath(new Path(place, "n", layer.get(0, 1), "s"));
+
+        String file = folder.getRoot() + "/header";
+        new WorldFileJSON(file).writeFile(world);
+        JSONObject header = new WorldFileJSON(file).readHeader();
+        assertEquals("Header", header.getString("worldName"));
+        assertEquals("2.0", header.getString("fileVer"));
+        assertEquals(2, header.getInt("placeCount"));
+        assertEquals(1, header.getInt("layerCount"));
+        assertEquals(1, header.getInt("pathCount"));
+
+        // old file with the world name after a large places array
+        StringBuilder content = new StringBuilder("{\"places\":[");
+        for(int i = 0; i < 10000; ++i){
+            if(i > 0) content.append(',');
+            content.append("{\"id\":").append(i).append(",\"n\":\"place\",\"l\":0,\"x\":").append(i).append(",\"y\":0}");
+        }
+        content.append("],\"fileVer\":\"2.0\",\"worldName\":\"Old\"}");
+        assertTrue(content.length() > WorldFileJSON.HEADER_LIMIT);
+        File oldFile = new File(folder.getRoot() + "/old");
+        FileUtils.writeStringToFile(oldFile, content.toString());
+
+        WorldFileJSON instance = new WorldFileJSON(oldFile.getPath());
+        header = instance.readHeader();
+        assertTrue(header.has("places"));
+        assertFalse(header.has("worldName"));
+        assertTrue(instance.canRead());
+        assertEquals("Old", instance.readWorldName());
+        assertEquals(10000, instance.readFile().getLayer(0).getPlaces().size());
+
+        // not a world file
+        File other = new File(folder.getRoot() + "/other");
+        FileUtils.writeStringToFile(other, "{\"foo\":[1,2,3]}");
+        assertFalse(new WorldFileJSON(other.getPath()).canRead());
+        FileUtils.writeStringToFile(other, "worldName");
+        assertFalse(new WorldFileJSON(other.getPath()).canRead());
+        assertNull(new WorldFileJSON(other.getPath()).readWorldName());
+    }
+
     /**
      * Test of readWorldName method, of class WorldFileJSON.
      */
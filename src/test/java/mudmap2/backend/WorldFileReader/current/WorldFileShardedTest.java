@@ -0,0 +1,278 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2014  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.WorldFileReader.current;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TreeSet;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.PlaceGroup;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldFileReader.WorldFile;
+import mudmap2.backend.WorldFileReader.WorldFileType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class WorldFileShardedTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public WorldFileShardedTest() {
+    }
+
+    private static Place findPlace(World world, String name){
+        for(Layer layer: world.getLayers()){
+            for(Place place: layer.getPlaces()){
+                if(place.getName().equals(name)) return place;
+            }
+        }
+        return null;
+    }
+
+    private static TreeSet<String> listShards(WorldFileSharded worldFile){
+        return new TreeSet<>(Arrays.asList(worldFile.getShardDirectory().list()));
+    }
+
+    /**
+     * Creates a world with two layers, places A and B on the first layer and
+     * C on the second one
+     */
+    private World createWorld() throws Exception {
+        World world = new World("Sharded");
+        Layer layer1 = world.getNewLayer("Surface");
+        Layer layer2 = world.getNewLayer("Cave");
+        Place plA = new Place("A", 0, 0, layer1);
+        Place plB = new Place("B", 1, 0, layer1);
+        Place plC = new Place("C", 4, 2, layer2);
+        layer1.put(plA);
+        layer1.put(plB);
+        layer2.put(plC);
+
+        plA.setPlaceGroup(new PlaceGroup("Town", Color.BLUE));
+        plA.setComments("comment");
+        plA.setFlag("shop", true);
+        plA.setRecLevelMin(3);
+        plA.setRecLevelMax(7);
+        plA.connectPath(new Path(plA, "e", plB, "w"));
+        plB.connectPath(new Path(plB, "d", plC, "u"));
+        plA.connectChild(plC);
+        return world;
+    }
+
+    /**
+     * Test of writeFile and readFile, of class WorldFileSharded.
+     */
+    @Test
+    public void testWriteRead() throws Exception {
+        System.out.println("writeRead");
+
+        String file = folder.getRoot() + "/world.m2s";
+        WorldFileSharded worldFile = new WorldFileSharded(file);
+        worldFile.writeFile(createWorld());
+        assertTrue(worldFile.canRead());
+        assertEquals("Sharded", worldFile.readWorldName());
+
+        World world = new WorldFileSharded(file).readFile();
+        assertEquals("Sharded", world.getName());
+        assertEquals(2, world.getLayers().size());
+
+        Place plA = findPlace(world, "A");
+        Place plB = findPlace(world, "B");
+        Place plC = findPlace(world, "C");
+        assertEquals("Surface", plA.getLayer().getName());
+        assertEquals("Cave", plC.getLayer().getName());
+        assertSame(plA, plA.getLayer().get(0, 0));
+        assertEquals(4, plC.getX());
+        assertEquals(2, plC.getY());
+        assertEquals("comment", plA.getComments());
+        assertTrue(plA.getFlag("shop"));
+        assertEquals(3, plA.getRecLevelMin());
+        assertEquals(7, plA.getRecLevelMax());
+        assertEquals("Town", plA.getPlaceGroup().getName());
+        assertEquals(Color.BLUE, plA.getPlaceGroup().getColor());
+        assertNull(plB.getPlaceGroup());
+
+        assertSame(plB, plA.getExit("e").getOtherPlace(plA));
+        assertSame(plC, plB.getExit("d").getOtherPlace(plB));
+        assertTrue(plA.getChildren().contains(plC));
+        assertTrue(plC.getParents().contains(plA));
+    }
+
+    /**
+     * Test of dirty layer tracking, of class WorldFileSharded.
+     */
+    @Test
+    public void testDirtyLayers() throws Exception {
+        System.out.println("dirtyLayers");
+
+        String file = folder.getRoot() + "/world.m2s";
+        WorldFileSharded worldFile = new WorldFileSharded(file);
+        worldFile.writeFile(createWorld());
+
+        worldFile = new WorldFileSharded(file);
+        World world = worldFile.readFile();
+        TreeSet<String> before = listShards(worldFile);
+        assertEquals(3, before.size());
+
+        // only the file of the changed layer is replaced
+        findPlace(world, "C").setName("C2");
+        worldFile.writeFile(world);
+        TreeSet<String> after = listShards(worldFile);
+        assertEquals(3, after.size());
+        TreeSet<String> kept = new TreeSet<>(before);
+        kept.retainAll(after);
+        assertEquals(2, kept.size());
+        for(String name: kept) assertFalse(name.startsWith("layer" + findPlace(world, "C2").getLayer().getId() + "."));
+
+        // nothing changed, no file is replaced
+        worldFile.writeFile(world);
+        assertEquals(after, listShards(worldFile));
+
+        // a new path between layers replaces the path file
+        Place plA = findPlace(world, "A");
+        Place plC = findPlace(world, "C2");
+        plA.connectPath(new Path(plA, "n", plC, "s"));
+        worldFile.writeFile(world);
+        TreeSet<String> paths = listShards(worldFile);
+        assertEquals(3, paths.size());
+        for(String name: after){
+            if(name.endsWith(".m2p")) assertFalse(paths.contains(name));
+        }
+
+        World result = new WorldFileSharded(file).readFile();
+        Place plAr = findPlace(result, "A");
+        Place plCr = findPlace(result, "C2");
+        assertNotNull(plCr);
+        assertSame(plCr, plAr.getExit("n").getOtherPlace(plAr));
+        assertSame(findPlace(result, "B"), plAr.getExit("e").getOtherPlace(plAr));
+        assertTrue(plAr.getChildren().contains(plCr));
+
+        // removed places and paths
+        plA.getExit("e").remove();
+        findPlace(world, "B").removeConnections();
+        findPlace(world, "B").getLayer().remove(findPlace(world, "B"));
+        worldFile.writeFile(world);
+        result = new WorldFileSharded(file).readFile();
+        assertNull(findPlace(result, "B"));
+        assertNull(findPlace(result, "A").getExit("e"));
+        assertNotNull(findPlace(result, "A").getExit("n"));
+    }
+
+    /**
+     * Test of writing snapshots after writing an earlier snapshot failed
+     */
+    @Test
+    public void testWriteFailed() throws Exception {
+        System.out.println("writeFailed");
+
+        String file = folder.getRoot() + "/world.m2s";
+        WorldFileSharded worldFile = new WorldFileSharded(file);
+        World world = createWorld();
+        worldFile.writeFile(world);
+
+        // the first snapshot is queued while the second one is created
+        findPlace(world, "A").setName("A2");
+        WorldFileSharded.ShardSnapshot first = (WorldFileSharded.ShardSnapshot) worldFile.createSnapshot(world);
+        findPlace(world, "C").setName("C2");
+        WorldFileSharded.ShardSnapshot second = (WorldFileSharded.ShardSnapshot) worldFile.createSnapshot(world);
+
+        // a directory with the name of the first layer file fails the write
+        String blocked = first.files.keySet().iterator().next();
+        assertTrue(new File(worldFile.getShardDirectory(), blocked).mkdir());
+        try {
+            worldFile.writeSnapshot(first, null);
+            fail();
+        } catch(IOException ex){
+            // expected
+        }
+        worldFile.writeSnapshot(second, null);
+        assertFalse(listShards(worldFile).contains(blocked));
+
+        World result = new WorldFileSharded(file).readFile();
+        assertNotNull(findPlace(result, "A2"));
+        assertNotNull(findPlace(result, "C2"));
+        assertNotNull(findPlace(result, "B"));
+
+        // the next save only writes the changed layer
+        findPlace(world, "B").setName("B2");
+        worldFile.writeFile(world);
+        assertEquals(3, listShards(worldFile).size());
+        result = new WorldFileSharded(file).readFile();
+        assertNotNull(findPlace(result, "A2"));
+        assertNotNull(findPlace(result, "B2"));
+        assertNotNull(findPlace(result, "C2"));
+    }
+
+    /**
+     * Test of loading a sharded world with WorldFileDefault
+     */
+    @Test
+    public void testWorldFileDefault() throws Exception {
+        System.out.println("worldFileDefault");
+
+        String file = folder.getRoot() + "/world.m2s";
+        new WorldFileSharded(file).writeFile(createWorld());
+
+        WorldFile worldFile = new WorldFileDefault(file);
+        assertEquals(WorldFileType.SHARDED, worldFile.getWorldFileType());
+        assertFalse(worldFile.isJournaled());
+        World world = worldFile.readFile();
+        assertNull(worldFile.getJournal());
+        assertNotNull(findPlace(world, "C"));
+
+        // a json world isn't a sharded world
+        String jsonFile = folder.getRoot() + "/world.m2w";
+        new WorldFileJSON(jsonFile).writeFile(createWorld());
+        assertFalse(new WorldFileSharded(jsonFile).canRead());
+        assertEquals(WorldFileType.JSON, new WorldFileDefault(jsonFile).getWorldFileType());
+
+        // changes are written to the sharded file
+        findPlace(world, "A").setName("A2");
+        worldFile.writeSnapshot(worldFile.createSnapshot(world), null);
+        assertNotNull(findPlace(new WorldFileSharded(file).readFile(), "A2"));
+    }
+
+    /**
+     * Test of backup, of class WorldFileSharded.
+     */
+    @Test
+    public void testBackup() throws Exception {
+        System.out.println("backup");
+
+        String file = folder.getRoot() + "/world.m2s";
+        WorldFileSharded worldFile = new WorldFileSharded(file);
+        worldFile.writeFile(createWorld());
+        worldFile.backup();
+
+        assertTrue(new File(file + ".bak").exists());
+        World world = new WorldFileSharded(file + ".bak").readFile();
+        assertNotNull(findPlace(world, "A"));
+        assertNotNull(findPlace(world, "C"));
+    }
+
+}
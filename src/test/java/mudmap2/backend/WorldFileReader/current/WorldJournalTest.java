@@ -0,0 +1,285 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2014  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.WorldFileReader.current;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.RandomAccessFile;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.PlaceGroup;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldFileReader.WorldFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class WorldJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public WorldJournalTest() {
+    }
+
+    private static Place findPlace(World world, String name){
+        for(Layer layer: world.getLayers()){
+            for(Place place: layer.getPlaces()){
+                if(place.getName().equals(name)) return place;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes a world with places A and B connected by a path, B is in an area
+     */
+    private String writeWorld(boolean binary) throws Exception {
+        World world = new World("Journal");
+        Layer layer = world.getNewLayer();
+        Place plA = new Place("A", 0, 0, layer);
+        Place plB = new Place("B", 1, 0, layer);
+        layer.put(plA);
+        layer.put(plB);
+        plB.setPlaceGroup(new PlaceGroup("Town", Color.BLUE));
+        plA.connectPath(new Path(plA, "e", plB, "w"));
+
+        String file = folder.getRoot() + (binary ? "/world.m2b" : "/world.m2w");
+        if(binary) new WorldFileBinary(file).writeFile(world);
+        else new WorldFileJSON(file).writeFile(world);
+        return file;
+    }
+
+    /**
+     * Test of createEntry, append and replay, of class WorldJournal.
+     */
+    @Test
+    public void testReplay() throws Exception {
+        System.out.println("replay");
+
+        for(boolean binary: new boolean[]{false, true}){
+            String file = writeWorld(binary);
+            long modified = new File(file).lastModified();
+
+            WorldFile worldFile = new WorldFileDefault(file);
+            World world = worldFile.readFile();
+            WorldJournal journal = worldFile.getJournal();
+            assertNotNull(journal);
+            assertFalse(journal.needsCompaction());
+
+            Place plA = findPlace(world, "A");
+            Place plB = findPlace(world, "B");
+            Layer layer = plA.getLayer();
+            PlaceGroup town = world.getPlaceGroups().get(0);
+
+            plA.setName("A2");
+            plA.setComments("comment");
+            plA.setFlag("shop", true);
+            plA.setPlaceGroup(town);
+            town.setName("City");
+            layer.setName("Surface");
+            Place plC = new Place(1000, "C", 0, 1, layer);
+            layer.put(plC);
+            plC.connectPath(new Path(plC, "n", plA, "s"));
+            plA.connectChild(plC);
+            layer.put(plB, 5, 5);
+            Layer layer2 = world.getNewLayer("Cave");
+            Place plD = new Place(1001, "D", 0, 0, layer2);
+            layer2.put(plD);
+            plA.getExit("e").remove();
+            world.setName("Journal 2");
+
+            journal.append(journal.createEntry());
+            assertTrue(journal.getFile().exists());
+            // the world file wasn't written
+            assertEquals(modified, new File(file).lastModified());
+
+            // removals in a second entry
+            plD.removeConnections();
+            plD.getLayer().remove(plD);
+            journal.append(journal.createEntry());
+
+            World result = new WorldFileDefault(file).readFile();
+            assertEquals("Journal 2", result.getName());
+            Place plAr = findPlace(result, "A2");
+            assertNotNull(plAr);
+            assertEquals("comment", plAr.getComments());
+            assertTrue(plAr.getFlag("shop"));
+            assertEquals("City", plAr.getPlaceGroup().getName());
+            assertEquals(1, result.getPlaceGroups().size());
+            assertSame(plAr.getPlaceGroup(), findPlace(result, "B").getPlaceGroup());
+            assertEquals("Surface", plAr.getLayer().getName());
+            assertNull(plAr.getExit("e"));
+
+            Place plCr = findPlace(result, "C");
+            assertNotNull(plCr);
+            assertEquals(1000, plCr.getId());
+            assertSame(plAr, plCr.getExit("n").getOtherPlace(plCr));
+            assertTrue(plAr.getChildren().contains(plCr));
+
+            Place plBr = findPlace(result, "B");
+            assertEquals(5, plBr.getX());
+            assertSame(plBr, plBr.getLayer().get(5, 5));
+            assertNull(findPlace(result, "D"));
+            assertEquals(2, result.getLayers().size());
+        }
+    }
+
+    /**
+     * Test of replaying entries on a lazily read world, of class WorldJournal.
+     */
+    @Test
+    public void testReplayLazy() throws Exception {
+        System.out.println("replay lazy");
+
+        World world = new World("Journal");
+        Layer layer = world.getNewLayer("Surface");
+        Layer layer2 = world.getNewLayer("Cave");
+        layer.put(new Place("A", 0, 0, layer));
+        layer2.put(new Place("B", 0, 0, layer2));
+        String file = folder.getRoot() + "/world.m2b";
+        new WorldFileBinary(file).writeFile(world);
+
+        WorldFile worldFile = new WorldFileDefault(file);
+        world = worldFile.readFile();
+        Layer surface = null, cave = null;
+        for(Layer l: world.getLayers()){
+            if(l.getName().equals("Surface")) surface = l;
+            else cave = l;
+        }
+        surface.get(0, 0).setName("A2");
+        assertFalse(cave.isLoaded());
+        worldFile.getJournal().append(worldFile.getJournal().createEntry());
+
+        World result = new WorldFileDefault(file).readFile();
+        for(Layer l: result.getLayers()){
+            // only the layer of the changed place is loaded by the replay
+            assertEquals(l.getName().equals("Surface"), l.isLoaded());
+        }
+        assertNotNull(findPlace(result, "A2"));
+        assertNotNull(findPlace(result, "B"));
+    }
+
+    /**
+     * Test of incomplete entries, of class WorldJournal.
+     */
+    @Test
+    public void testReplayIncomplete() throws Exception {
+        System.out.println("replay incomplete");
+
+        String file = writeWorld(false);
+        WorldFile worldFile = new WorldFileDefault(file);
+        World world = worldFile.readFile();
+        WorldJournal journal = worldFile.getJournal();
+
+        findPlace(world, "A").setName("A2");
+        journal.append(journal.createEntry());
+        findPlace(world, "B").setName("B2");
+        journal.append(journal.createEntry());
+
+        // cut the last entry
+        try(RandomAccessFile data = new RandomAccessFile(journal.getFile(), "rw")){
+            data.setLength(data.length() - 2);
+        }
+
+        worldFile = new WorldFileDefault(file);
+        World result = worldFile.readFile();
+        assertNotNull(findPlace(result, "A2"));
+        assertNotNull(findPlace(result, "B"));
+
+        // new entries replace the incomplete one
+        findPlace(result, "B").setName("B3");
+        worldFile.getJournal().append(worldFile.getJournal().createEntry());
+        result = new WorldFileDefault(file).readFile();
+        assertNotNull(findPlace(result, "A2"));
+        assertNotNull(findPlace(result, "B3"));
+    }
+
+    /**
+     * Test of createSnapshot and compact, of class WorldJournal.
+     */
+    @Test
+    public void testCompact() throws Exception {
+        System.out.println("compact");
+
+        String file = writeWorld(false);
+        WorldFile worldFile = new WorldFileDefault(file);
+        World world = worldFile.readFile();
+        WorldJournal journal = worldFile.getJournal();
+
+        findPlace(world, "A").setName("A2");
+        journal.append(journal.createEntry());
+        assertTrue(journal.getFile().exists());
+
+        journal.compact(journal.createSnapshot(), null);
+        assertFalse(journal.getFile().exists());
+        assertNotNull(findPlace(new WorldFileJSON(file).readFile(), "A2"));
+
+        // entries after compaction use the layer ids of the new world file
+        Layer layer = world.getNewLayer("New");
+        layer.put(new Place(2000, "E", 3, 3, layer));
+        findPlace(world, "B").setName("B2");
+        journal.append(journal.createEntry());
+
+        World result = new WorldFileDefault(file).readFile();
+        assertNotNull(findPlace(result, "A2"));
+        assertNotNull(findPlace(result, "B2"));
+        Place plE = findPlace(result, "E");
+        assertEquals("New", plE.getLayer().getName());
+        assertNotSame(findPlace(result, "A2").getLayer(), plE.getLayer());
+
+        // a journal of an older world file is ignored
+        findPlace(world, "B2").setName("B9");
+        new WorldFileJSON(file).writeFile(world);
+        new File(file).setLastModified(new File(file).lastModified() - 10000);
+        result = new WorldFileDefault(file).readFile();
+        assertNotNull(findPlace(result, "B9"));
+    }
+
+    /**
+     * Test of needsCompaction, of class WorldJournal.
+     */
+    @Test
+    public void testNeedsCompaction() throws Exception {
+        System.out.println("needsCompaction");
+
+        String file = writeWorld(false);
+        World world = new WorldFileJSON(file).readFile();
+
+        // a new journal has no world file yet
+        WorldJournal journal = new WorldJournal(new WorldFileJSON(file));
+        world.setWorldFile(journal.worldFile);
+        journal.attach(world);
+        assertTrue(journal.needsCompaction());
+        journal.compact(journal.createSnapshot(), null);
+        assertFalse(journal.needsCompaction());
+
+        Place place = findPlace(world, "A");
+        for(int i = 0; !journal.needsCompaction(); ++i){
+            place.setComments("comment " + i + " of a place that is changed many times");
+            journal.append(journal.createEntry());
+        }
+        assertTrue(journal.getFile().length() > WorldJournal.COMPACTION_MIN_SIZE);
+    }
+
+}
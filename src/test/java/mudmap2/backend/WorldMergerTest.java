@@ -0,0 +1,261 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+
+package mudmap2.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class WorldMergerTest {
+
+    public WorldMergerTest() {
+    }
+
+    /**
+     * Creates a world with two connected places and a child relation
+     * @param name world name
+     * @param firstId id of the first place
+     * @return world
+     */
+    private static World createWorld(String name, int firstId) throws Exception {
+        World world = new World(name);
+        Layer layer = world.getNewLayer("layer");
+        Place place1 = new Place(firstId, "place 1", 0, 0, layer);
+        Place place2 = new Place(firstId + 1, "place 2", 1, 0, layer);
+        Place place3 = new Place(firstId + 2, "place 3", 0, 1, layer);
+        layer.put(place1);
+        layer.put(place2);
+        layer.put(place3);
+        place1.connectPath(new Path(place1, "e", place2, "w"));
+        place1.connectPath(new Path(place1, "n", place3, "s"));
+        place1.connectChild(place3);
+        return world;
+    }
+
+    private static Place getPlace(World world, int id){
+        for(Layer layer: world.getLayers()){
+            for(Place place: layer.getPlaces()){
+                if(place.getId() == id) return place;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Test of merge method, of class WorldMerger.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testMerge() throws Exception {
+        System.out.println("merge");
+
+        World target = createWorld("world", 5000);
+        World source = createWorld("renamed", 5000);
+        Place place1 = getPlace(target, 5000);
+        Place place3 = getPlace(target, 5002);
+
+        // unchanged worlds aren't touched
+        long count = target.getModificationCount();
+        WorldMerger.Result result = WorldMerger.merge(target, createWorld("world", 5000));
+        assertFalse(result.isChanged());
+        assertEquals(count, target.getModificationCount());
+
+        // rename a place, swap two places, remove one, add one
+        Layer layer = source.getLayers().iterator().next();
+        getPlace(source, 5000).setName("renamed place");
+        getPlace(source, 5000).setFlag("shop", true);
+        Place source2 = getPlace(source, 5001);
+        Place source3 = getPlace(source, 5002);
+        source2.removeConnections();
+        layer.remove(source2);
+        layer.put(source3, 1, 0);
+        Place source4 = new Place(5003, "place 4", 0, 1, layer);
+        layer.put(source4);
+        source3.connectPath(new Path(source3, "n", source4, "s"));
+
+        result = WorldMerger.merge(target, source);
+        assertTrue(result.isChanged());
+        assertEquals(1, result.getPlacesAdded());
+        assertEquals(2, result.getPlacesChanged());
+        assertEquals(1, result.getPlacesRemoved());
+        assertEquals(1, result.getPathsAdded());
+        assertEquals(0, result.getLayersAdded());
+
+        assertEquals("renamed", target.getName());
+        assertEquals(1, target.getLayers().size());
+        Layer targetLayer = target.getLayers().iterator().next();
+        assertEquals(3, targetLayer.getPlaces().size());
+
+        // unchanged places are the same objects
+        assertSame(place1, targetLayer.get(0, 0));
+        assertSame(place3, targetLayer.get(1, 0));
+        assertEquals("renamed place", place1.getName());
+        assertTrue(place1.getFlag("shop"));
+        assertNull(getPlace(target, 5001));
+
+        Place place4 = targetLayer.get(0, 1);
+        assertEquals(5003, place4.getId());
+        assertEquals("place 4", place4.getName());
+        assertNotNull(place3.getExit("n"));
+        assertSame(place4, place3.getExit("n").getOtherPlace(place3));
+        assertNotNull(place1.getExit("n"));
+        assertNull(place1.getExit("e"));
+        assertTrue(place1.getChildren().contains(place3));
+
+        // the merged world equals the source
+        result = WorldMerger.merge(target, source);
+        assertFalse(result.isChanged());
+    }
+
+    /**
+     * Test of merge method, of class WorldMerger, with new layers.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testMergeLayers() throws Exception {
+        System.out.println("mergeLayers");
+
+        World target = createWorld("world", 5100);
+        World source = createWorld("world", 5100);
+        Layer layer = source.getNewLayer("new layer");
+        Place place = new Place(5110, "new place", 3, 3, layer);
+        layer.put(place);
+        PlaceGroup placeGroup = new PlaceGroup("group", java.awt.Color.red);
+        source.addPlaceGroup(placeGroup);
+        place.setPlaceGroup(placeGroup);
+        // move a place to the new layer
+        layer.put(getPlace(source, 5101), 4, 4);
+
+        WorldMerger.Result result = WorldMerger.merge(target, source);
+        assertEquals(1, result.getLayersAdded());
+        assertEquals(1, result.getPlacesAdded());
+        assertEquals(1, result.getPlacesChanged());
+        assertEquals(2, target.getLayers().size());
+
+        Place targetPlace = getPlace(target, 5110);
+        assertNotNull(targetPlace);
+        assertEquals("new layer", targetPlace.getLayer().getName());
+        assertSame(targetPlace, targetPlace.getLayer().get(3, 3));
+        assertNotNull(targetPlace.getPlaceGroup());
+        assertNotSame(placeGroup, targetPlace.getPlaceGroup());
+        assertEquals("group", targetPlace.getPlaceGroup().getName());
+        assertSame(targetPlace.getLayer(), getPlace(target, 5101).getLayer());
+
+        List<Place> places = new ArrayList<>(targetPlace.getLayer().getPlaces());
+        assertEquals(2, places.size());
+        assertFalse(WorldMerger.merge(target, source).isChanged());
+    }
+
+    /**
+     * Test of merge method, of class WorldMerger, with a removed risk level.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testMergeRemovedRiskLevel() throws Exception {
+        System.out.println("mergeRemovedRiskLevel");
+
+        World target = createWorld("world", 5200);
+        World source = createWorld("world", 5200);
+        RiskLevel riskLevel = new RiskLevel(10, "removed", java.awt.Color.red);
+        target.setRiskLevel(riskLevel);
+        getPlace(target, 5200).setRiskLevel(riskLevel);
+
+        WorldMerger.Result result = WorldMerger.merge(target, source);
+        assertTrue(result.isChanged());
+        assertNull(target.getRiskLevel(10));
+        assertNull(getPlace(target, 5200).getRiskLevel());
+        assertEquals(source.getRiskLevels().size(), target.getRiskLevels().size());
+        assertFalse(WorldMerger.merge(target, source).isChanged());
+    }
+
+    /**
+     * Test of merge method, of class WorldMerger, with a removed place group.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testMergeRemovedPlaceGroup() throws Exception {
+        System.out.println("mergeRemovedPlaceGroup");
+
+        World target = createWorld("world", 5300);
+        World source = createWorld("world", 5300);
+        PlaceGroup placeGroup = new PlaceGroup("removed", java.awt.Color.red);
+        target.addPlaceGroup(placeGroup);
+        getPlace(target, 5301).setPlaceGroup(placeGroup);
+        // groups without places are removed too
+        target.addPlaceGroup(new PlaceGroup("unused", java.awt.Color.blue));
+        PlaceGroup kept = new PlaceGroup("kept", java.awt.Color.green);
+        source.addPlaceGroup(kept);
+
+        WorldMerger.merge(target, source);
+        assertNull(getPlace(target, 5301).getPlaceGroup());
+        assertEquals(1, target.getPlaceGroups().size());
+        assertEquals("kept", target.getPlaceGroups().get(0).getName());
+        assertFalse(WorldMerger.merge(target, source).isChanged());
+    }
+
+    /**
+     * Test of merge method, of class WorldMerger, with a removed layer.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testMergeRemovedLayer() throws Exception {
+        System.out.println("mergeRemovedLayer");
+
+        World target = createWorld("world", 5400);
+        World source = createWorld("world", 5400);
+        Layer layer = target.getNewLayer("removed");
+        Place place = new Place(5410, "removed place", 0, 0, layer);
+        layer.put(place);
+        place.connectPath(new Path(place, "u", getPlace(target, 5400), "d"));
+        getPlace(target, 5400).connectChild(place);
+        target.getNewLayer("empty");
+
+        WorldMerger.Result result = WorldMerger.merge(target, source);
+        assertEquals(2, result.getLayersRemoved());
+        assertEquals(1, result.getPlacesRemoved());
+        assertEquals(1, target.getLayers().size());
+        assertNull(target.getLayer(layer.getId()));
+        assertNull(getPlace(target, 5410));
+        assertNull(getPlace(target, 5400).getExit("d"));
+        assertFalse(getPlace(target, 5400).getChildren().contains(place));
+        assertFalse(WorldMerger.merge(target, source).isChanged());
+    }
+
+    /**
+     * Test of getKey method, of class WorldMerger.
+     */
+    @Test
+    public void testGetKey() {
+        System.out.println("getKey");
+
+        World world = new World();
+        Layer layer = world.getNewLayer();
+        Place place1 = new Place(5200, "1", 0, 0, layer);
+        Place place2 = new Place(5201, "2", 1, 0, layer);
+        assertEquals(WorldMerger.getKey(new Path(place1, "e", place2, "w")),
+                WorldMerger.getKey(new Path(place2, "w", place1, "e")));
+        assertFalse(WorldMerger.getKey(new Path(place1, "e", place2, "w")).equals(
+                WorldMerger.getKey(new Path(place1, "e", place2, "n"))));
+    }
+
+}
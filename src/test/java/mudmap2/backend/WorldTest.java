@@ -296,6 +296,30 @@ public class WorldTest {
         }
     }
 
+    /**
+     * Test of removeLayer method, of class World.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testRemoveLayer() throws Exception {
+        System.out.println("removeLayer");
+
+        World instance = new World();
+        Layer layer1 = instance.getNewLayer();
+        Layer layer2 = instance.getNewLayer();
+        Place place1 = new Place("Place1", 0, 0, layer1);
+        Place place2 = new Place("Place2", 0, 0, layer2);
+        layer1.put(place1);
+        layer2.put(place2);
+        place1.connectPath(new Path(place1, "u", place2, "d"));
+
+        instance.removeLayer(layer2);
+        assertNull(instance.getLayer(layer2.getId()));
+        assertEquals(1, instance.getLayers().size());
+        assertTrue(place1.getPaths().isEmpty());
+        assertTrue(layer2.getPlaces().isEmpty());
+    }
+
     /**
      * Test of getNewLayer method, of class World.
      */
@@ -835,6 +859,93 @@ public class WorldTest {
         assertNotSame(orig, instance.getPreferences());
     }
 
+    /**
+     * Test of beginUpdate and endUpdate methods, of class World.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testUpdate() throws Exception {
+        System.out.println("update");
+
+        World instance = new World();
+        Layer layer = instance.getNewLayer("Layer");
+        final ArrayList<Object> changes = new ArrayList<>();
+        instance.addChangeListener(new WorldChangeListener() {
+            @Override
+            public void worldChanged(Object source) {
+                changes.add(source);
+            }
+        });
+
+        instance.beginUpdate();
+        instance.beginUpdate();
+        Place place = new Place("Place", 0, 0, layer);
+        layer.put(place);
+        place.setName("Other");
+        instance.endUpdate();
+        assertTrue(instance.isUpdating());
+        assertTrue(changes.isEmpty());
+
+        instance.endUpdate();
+        assertFalse(instance.isUpdating());
+        // once per changed object
+        assertEquals(1, changes.size());
+        assertSame(place, changes.get(0));
+
+        try {
+            instance.endUpdate();
+            fail();
+        } catch(IllegalStateException ex){
+        }
+    }
+
+    /**
+     * Test of getModificationCount method, of class World.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testGetModificationCount() throws Exception {
+        System.out.println("getModificationCount");
+
+        World instance = new World();
+        Layer layer = instance.getNewLayer("Layer");
+        long count = instance.getModificationCount();
+
+        Place place = new Place("Place", 0, 0, layer);
+        layer.put(place);
+        assertTrue(instance.getModificationCount() > count);
+
+        count = instance.getModificationCount();
+        place.setName("Other");
+        assertTrue(instance.getModificationCount() > count);
+
+        // filling a layer by its loader isn't a change
+        final Layer loaded = instance.getNewLayer("Loaded");
+        loaded.setLoader(new LayerLoader() {
+            @Override
+            public void load(Layer layer) {
+                try {
+                    layer.put(new Place("Loaded", 1, 1, layer));
+                } catch (Layer.PlaceNotInsertedException ex) {
+                    fail(ex.getMessage());
+                }
+            }
+
+            @Override
+            public boolean containsPlace(Layer layer, int id) {
+                return false;
+            }
+
+            @Override
+            public LayerLoader.LayerData read(Layer layer) {
+                return new LayerLoader.LayerData(0, 0);
+            }
+        });
+        count = instance.getModificationCount();
+        assertEquals(1, loaded.getPlaces().size());
+        assertEquals(count, instance.getModificationCount());
+    }
+
 
     /**
      * Test of breadthSearch method, of class World.
@@ -0,0 +1,162 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.batch;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldFileReader.WorldFile;
+import mudmap2.backend.WorldFileReader.WorldFileType;
+import mudmap2.backend.WorldFileReader.current.WorldFileBinary;
+import mudmap2.backend.WorldFileReader.current.WorldFileDefault;
+import mudmap2.backend.WorldFileReader.current.WorldFileJSON;
+import mudmap2.backend.WorldFileReader.current.WorldJournal;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class BatchProcessorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public BatchProcessorTest() {
+    }
+
+    private static World createWorld(String name) throws Exception {
+        World world = new World(name);
+        Layer layer = world.getNewLayer("Layer");
+        Place plA = new Place("A", 0, 0, layer);
+        Place plB = new Place("B", 1, 0, layer);
+        layer.put(plA);
+        layer.put(plB);
+        plA.connectPath(new Path(plA, "e", plB, "w"));
+        return world;
+    }
+
+    private static Place findPlace(World world, String name){
+        for(Layer layer: world.getLayers()){
+            for(Place place: layer.getPlaces()){
+                if(place.getName().equals(name)) return place;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Test of process method, of class BatchProcessor.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testProcess() throws Exception {
+        System.out.println("process");
+
+        File directory = folder.newFolder("worlds");
+        new WorldFileJSON(directory + "/first.m2w").writeFile(createWorld("First"));
+        new WorldFileBinary(directory + "/second.m2b").writeFile(createWorld("Second"));
+        Files.write(new File(directory, "notes.txt").toPath(), "no world".getBytes());
+
+        List<File> files = BatchProcessor.findWorldFiles(directory);
+        assertEquals(2, files.size());
+        files.add(new File(directory, "notes.txt"));
+
+        File output = new File(folder.getRoot(), "converted");
+        BatchProcessor instance = new BatchProcessor();
+        instance.setConvertTo(WorldFileType.BINARY);
+        instance.setOutputDirectory(output);
+        instance.setThreads(2);
+        List<BatchProcessor.Report> reports = instance.process(files);
+
+        assertEquals(3, reports.size());
+        assertTrue(reports.get(0).isOk());
+        assertEquals(WorldFileType.JSON, reports.get(0).getType());
+        assertEquals("First", reports.get(0).getWorldName());
+        assertEquals(2, reports.get(0).getPlaceCount());
+        assertEquals(new File(output, "first.m2b"), reports.get(0).getOutput());
+        assertEquals(new File(output, "second.m2b"), reports.get(1).getOutput());
+        assertNotNull(reports.get(2).getError());
+        assertFalse(reports.get(2).isOk());
+
+        WorldFile converted = new WorldFileDefault(output + "/first.m2b");
+        assertEquals(WorldFileType.BINARY, converted.getWorldFileType());
+        World world = converted.readFile();
+        Place plA = findPlace(world, "A");
+        assertSame(findPlace(world, "B"), plA.getExit("e").getOtherPlace(plA));
+    }
+
+    /**
+     * Test of compacting journaled world files, of class BatchProcessor.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testCompact() throws Exception {
+        System.out.println("compact");
+
+        String file = folder.getRoot() + "/world.m2w";
+        WorldFileJSON worldFileJSON = new WorldFileJSON(file);
+        final World original = createWorld("Journaled");
+        worldFileJSON.setMetaGetter(new mudmap2.backend.WorldFileReader.current.WorldMetaJSON() {
+            @Override
+            public JSONObject getMeta(HashMap<Integer, Integer> layerTranslation) {
+                JSONObject meta = new JSONObject();
+                meta.put("tileSize", 42);
+                JSONArray history = new JSONArray();
+                history.put(new JSONObject().put("l", layerTranslation.get(original.getLayers().iterator().next().getId())).put("x", 1).put("y", 0));
+                meta.put("history", history);
+                return meta;
+            }
+        });
+        worldFileJSON.writeFile(original);
+
+        WorldFile worldFile = new WorldFileDefault(file);
+        World world = worldFile.readFile();
+        WorldJournal journal = worldFile.getJournal();
+        findPlace(world, "A").setName("A2");
+        journal.append(journal.createEntry());
+        journal.detach();
+        assertTrue(journal.getFile().exists());
+
+        BatchProcessor instance = new BatchProcessor();
+        instance.setCompact(true);
+        BatchProcessor.Report report = instance.process(new File(file));
+        assertNull(report.getError());
+        assertEquals(new File(file), report.getOutput());
+        assertFalse(WorldJournal.getJournalFile(file).exists());
+
+        WorldFileJSON result = new WorldFileJSON(file);
+        world = result.readFile();
+        assertNotNull(findPlace(world, "A2"));
+        // the meta data is kept
+        JSONObject meta = result.getMetaData();
+        assertEquals(42, meta.getInt("tileSize"));
+        assertEquals((int) world.getLayers().iterator().next().getId(),
+                meta.getJSONArray("history").getJSONObject(0).getInt("l"));
+    }
+
+}
@@ -0,0 +1,73 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.batch;
+
+import java.util.List;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class WorldValidatorTest {
+
+    public WorldValidatorTest() {
+    }
+
+    /**
+     * Test of validate method, of class WorldValidator.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testValidate() throws Exception {
+        System.out.println("validate");
+
+        World world = new World("Validate");
+        Layer layer = world.getNewLayer("Layer");
+        Place plA = new Place("A", 0, 0, layer);
+        Place plB = new Place("B", 1, 0, layer);
+        layer.put(plA);
+        layer.put(plB);
+        plA.connectPath(new Path(plA, "e", plB, "w"));
+        plA.connectChild(plB);
+        assertTrue(WorldValidator.validate(world).isEmpty());
+
+        // a place that was never put on its layer
+        Place off = new Place("Off", 5, 5, layer);
+        plB.connectPath(new Path(plB, "n", off, "s"));
+        List<String> problems = WorldValidator.validate(world);
+        assertEquals(1, problems.size());
+        assertTrue(problems.get(0).contains("isn't on a layer"));
+
+        // a second path on the same exit, only known by one place
+        plA.getPaths().add(new Path(plA, "e", plB, "e"));
+        problems = WorldValidator.validate(world);
+        assertEquals(3, problems.size());
+        assertTrue(problems.contains("place " + plA.getId() + " has several paths on exit e"));
+
+        // a child that doesn't know its parent
+        plB.getParents().clear();
+        problems = WorldValidator.validate(world);
+        assertTrue(problems.contains("child " + plB.getId() + " doesn't know its parent " + plA.getId()));
+    }
+
+}
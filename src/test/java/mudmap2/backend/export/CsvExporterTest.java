@@ -0,0 +1,178 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.export;
+
+import java.awt.Color;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.PlaceGroup;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldFileReader.WorldFileProgressListener;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class CsvExporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public CsvExporterTest() {
+    }
+
+    private static List<String> readLines(File file) throws Exception {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Test of export method, of class CsvExporter.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testExport() throws Exception {
+        System.out.println("export");
+
+        World world = new World("Export");
+        Layer layer = world.getNewLayer("Surface");
+        Place plA = new Place("Gate, north", 0, 0, layer);
+        Place plB = new Place("\"Inn\"", 1, 0, layer);
+        layer.put(plA);
+        layer.put(plB);
+        plA.setPlaceGroup(new PlaceGroup("Town", Color.BLUE));
+        plA.setRiskLevel(world.getRiskLevel(1));
+        plA.setRecLevelMin(3);
+        plA.setComments("line1\nline2");
+        plA.setFlag("shop", true);
+        plA.setFlag("bank", false);
+        plA.connectPath(new Path(plA, "e", plB, "w"));
+        plA.connectChild(plB);
+
+        File directory = new File(folder.getRoot(), "csv");
+        CsvExporter instance = new CsvExporter(world, CsvExporter.Format.CSV);
+        instance.export(directory);
+
+        assertEquals(Arrays.asList("id,name", layer.getId() + ",Surface"),
+                readLines(instance.getFile(directory, "layers")));
+
+        List<String> places = readLines(instance.getFile(directory, "places"));
+        assertEquals("id,layer,x,y,name,group,risk,rec_level_min,rec_level_max,comments", places.get(0));
+        assertEquals(plA.getId() + "," + layer.getId() + ",0,0,\"Gate, north\",Town,1,3,,\"line1", places.get(1));
+        assertEquals("line2\"", places.get(2));
+        assertEquals(plB.getId() + "," + layer.getId() + ",1,0,\"\"\"Inn\"\"\",,,,,", places.get(3));
+
+        assertEquals(Arrays.asList("place1,exit1,place2,exit2", plA.getId() + ",e," + plB.getId() + ",w"),
+                readLines(instance.getFile(directory, "paths")));
+        assertEquals(Arrays.asList("place,flag", plA.getId() + ",shop"),
+                readLines(instance.getFile(directory, "flags")));
+        assertEquals(Arrays.asList("parent,child", plA.getId() + "," + plB.getId()),
+                readLines(instance.getFile(directory, "children")));
+
+        // tsv
+        instance = new CsvExporter(world, CsvExporter.Format.TSV);
+        instance.export(directory);
+        places = readLines(instance.getFile(directory, "places"));
+        assertEquals(3, places.size());
+        assertEquals(plA.getId() + "\t" + layer.getId() + "\t0\t0\tGate, north\tTown\t1\t3\t\tline1\\nline2", places.get(1));
+    }
+
+    /**
+     * Test of exporting a copy of the world, of class CsvExporter.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testExportSnapshot() throws Exception {
+        System.out.println("exportSnapshot");
+
+        World world = new World("Export");
+        Layer layer = world.getNewLayer("Surface");
+        Layer empty = world.getNewLayer("Empty");
+        Place place = new Place("Gate", 0, 0, layer);
+        layer.put(place);
+
+        CsvExporter instance = new CsvExporter(world, CsvExporter.Format.CSV);
+        // changes after the exporter was created aren't exported
+        place.setName("Renamed");
+        layer.put(new Place("Inn", 1, 0, layer));
+
+        final ArrayList<Integer> progress = new ArrayList<>();
+        File directory = folder.getRoot();
+        instance.export(directory, new WorldFileProgressListener() {
+            @Override
+            public void progressChanged(int percent) {
+                progress.add(percent);
+            }
+        });
+        assertEquals(Arrays.asList(100), progress);
+
+        assertEquals(Arrays.asList("id,name", layer.getId() + ",Surface", empty.getId() + ",Empty"),
+                readLines(instance.getFile(directory, "layers")));
+        List<String> places = readLines(instance.getFile(directory, "places"));
+        assertEquals(2, places.size());
+        assertEquals(place.getId() + "," + layer.getId() + ",0,0,Gate,,,,,", places.get(1));
+    }
+
+    /**
+     * Test of exporting many places, of class CsvExporter.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testExportChunks() throws Exception {
+        System.out.println("exportChunks");
+
+        World world = new World("Export");
+        int count = 0;
+        for(int l = 0; l < 3; ++l){
+            Layer layer = world.getNewLayer("Layer " + l);
+            Place previous = null;
+            for(int i = 0; i < CsvExporter.CHUNK_SIZE + 100; ++i){
+                Place place = new Place("Place " + i, i % 100, i / 100, layer);
+                layer.put(place);
+                if(previous != null) previous.connectPath(new Path(previous, "n", place, "s"));
+                previous = place;
+                ++count;
+            }
+        }
+
+        File directory = folder.getRoot();
+        CsvExporter instance = new CsvExporter(world, CsvExporter.Format.TSV);
+        instance.export(directory);
+
+        List<String> places = readLines(instance.getFile(directory, "places"));
+        assertEquals(count + 1, places.size());
+        // ordered by layer and id
+        int previousId = -1;
+        for(int i = 1; i < places.size(); ++i){
+            int id = Integer.parseInt(places.get(i).substring(0, places.get(i).indexOf('\t')));
+            assertTrue(id > previousId);
+            previousId = id;
+        }
+        assertEquals(count - 3 + 1, readLines(instance.getFile(directory, "paths")).size());
+    }
+
+}
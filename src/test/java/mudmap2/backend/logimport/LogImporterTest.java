@@ -0,0 +1,218 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.logimport;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class LogImporterTest {
+
+    public LogImporterTest() {
+    }
+
+    private static String log(String... lines){
+        StringBuilder builder = new StringBuilder();
+        for(String line: lines) builder.append(line).append('\n');
+        return builder.toString();
+    }
+
+    /**
+     * Test of importLog method, of class LogImporter.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testImportLog() throws Exception {
+        System.out.println("importLog");
+
+        Layer layer = new World("Import").getNewLayer("Log");
+        LogImporter instance = new LogImporter(layer, new LogFormat());
+        instance.importLog(new StringReader(log(
+                "Market",
+                "A busy market.",
+                "[Exits: east north]",
+                "> east",
+                "\u001B[1;33mSmithy\u001B[0m",
+                "[Exits: west]",
+                "> look",
+                "Smithy",
+                "[Exits: west]",
+                "> w",
+                "Market",
+                "A busy market.",
+                "[Exits: east north]",
+                "> north",
+                "Gate",
+                "Obvious exits: south and down.")));
+
+        assertEquals(5, instance.getRoomCount());
+        assertEquals(3, instance.getPlaceCount());
+        assertEquals(2, instance.getPathCount());
+        assertEquals(3, layer.getPlaces().size());
+
+        Place market = layer.get(0, 0);
+        assertEquals("Market", market.getName());
+        Place smithy = market.getExit("e").getOtherPlace(market);
+        assertEquals("Smithy", smithy.getName());
+        assertEquals(1, smithy.getX());
+        assertEquals(0, smithy.getY());
+        assertSame(market, smithy.getExit("w").getOtherPlace(smithy));
+        Place gate = market.getExit("n").getOtherPlace(market);
+        assertEquals("Gate", gate.getName());
+        assertEquals(1, gate.getY());
+    }
+
+    /**
+     * Test of rooms that look the same, of class LogImporter.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testSameRooms() throws Exception {
+        System.out.println("sameRooms");
+
+        Layer layer = new World("Import").getNewLayer("Log");
+        LogImporter instance = new LogImporter(layer, new LogFormat());
+        instance.importLog(new StringReader(log(
+                "Start", "[Exits: east]",
+                "> e", "Corridor", "[Exits: east west]",
+                "> e", "Corridor", "[Exits: east west]",
+                "> e", "End", "[Exits: west]",
+                "> w", "Corridor", "[Exits: east west]",
+                "> w", "Corridor", "[Exits: east west]",
+                "> w", "Start", "[Exits: east]")));
+
+        // the neighbours tell the corridors apart
+        assertEquals(4, instance.getPlaceCount());
+        assertEquals(3, instance.getPathCount());
+        assertEquals("Corridor", layer.get(1, 0).getName());
+        assertEquals("Corridor", layer.get(2, 0).getName());
+        assertEquals("End", layer.get(3, 0).getName());
+
+        // a circle of rooms leads back to the first one
+        layer = new World("Import").getNewLayer("Log");
+        instance = new LogImporter(layer, new LogFormat());
+        instance.importLog(new StringReader(log(
+                "A", "[Exits: east north]",
+                "> e", "B", "[Exits: west north]",
+                "> n", "C", "[Exits: south west]",
+                "> w", "D", "[Exits: east south]",
+                "> s", "A", "[Exits: east north]")));
+        assertEquals(4, instance.getPlaceCount());
+        assertEquals(4, instance.getPathCount());
+        Place placeA = layer.get(0, 0);
+        assertSame(layer.get(0, 1), placeA.getExit("n").getOtherPlace(placeA));
+    }
+
+    /**
+     * Test of openLog and importVisits methods, of class LogImporter.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testImportVisits() throws Exception {
+        System.out.println("importVisits");
+
+        String text = log(
+                "Start", "[Exits: east]",
+                "> e", "Corridor", "[Exits: east west]",
+                "> e", "Corridor", "[Exits: east west]",
+                "> e", "End", "[Exits: west]",
+                "> w", "Corridor", "[Exits: east west]");
+
+        // reading doesn't touch the world
+        World world = new World("Import");
+        Layer layer = world.getNewLayer("Log");
+        LogImporter instance = new LogImporter(layer, new LogFormat());
+        LogImporter.LogReader reader = instance.openLog(new StringReader(text));
+        List<LogImporter.Visit> first = reader.read(2);
+        assertEquals(2, first.size());
+        assertTrue(layer.getPlaces().isEmpty());
+        assertEquals(0, instance.getRoomCount());
+
+        // rooms added in several calls are connected like in one import
+        instance.importVisits(first, true);
+        List<LogImporter.Visit> second = reader.read(10);
+        assertEquals(3, second.size());
+        // rooms of earlier batches are known
+        assertSame(first.get(1).key, second.get(0).key);
+        assertTrue(reader.read(10).isEmpty());
+        instance.importVisits(second, false);
+        assertEquals(5, instance.getRoomCount());
+        assertEquals(4, instance.getPlaceCount());
+        assertEquals(3, instance.getPathCount());
+        assertEquals("End", layer.get(3, 0).getName());
+    }
+
+    /**
+     * Test of placing rooms on free positions, of class LogImporter.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testFindFreePosition() throws Exception {
+        System.out.println("findFreePosition");
+
+        Layer layer = new World("Import").getNewLayer("Log");
+        assertTrue(Arrays.equals(new int[]{0, 0}, LogImporter.findFreePosition(layer, 0, 0)));
+
+        layer.put(new Place("Taken", 1, 0, layer));
+        LogImporter instance = new LogImporter(layer, new LogFormat());
+        instance.importLog(new StringReader(log(
+                "Room", "[Exits: east]",
+                "> east", "Other room", "[Exits: west]")));
+
+        assertEquals("Taken", layer.get(1, 0).getName());
+        Place room = layer.get(0, 0);
+        Place other = room.getExit("e").getOtherPlace(room);
+        assertEquals("Other room", other.getName());
+        // next to the taken position
+        assertEquals(1, Math.max(Math.abs(other.getX() - 1), Math.abs(other.getY())));
+    }
+
+    /**
+     * Test of a custom format, of class LogFormat.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testLogFormat() throws Exception {
+        System.out.println("logFormat");
+
+        LogFormat format = new LogFormat("^\\*\\* (.*) \\*\\*$", "^Ausgänge: (.*)$", "^#(\\w+)$", "\\s*,\\s*");
+        format.addDirection("norden", "n");
+        format.addDirection("süden", "s");
+        assertEquals(Arrays.asList("n", "s", "tor"), format.matchExits("Ausgänge: Norden, Süden, Tor"));
+        assertNull(format.matchTitle("Eine Beschreibung"));
+
+        Layer layer = new World("Import").getNewLayer("Log");
+        LogImporter instance = new LogImporter(layer, format);
+        instance.setBatchSize(1);
+        instance.importLog(new StringReader(log(
+                "** Platz **", "Eine Beschreibung", "Ausgänge: Norden",
+                "#norden", "** Turm **", "Ausgänge: Süden")));
+        assertEquals(2, instance.getPlaceCount());
+        assertEquals("Turm", layer.get(0, 1).getName());
+        assertFalse(layer.getWorld().isUpdating());
+    }
+
+}
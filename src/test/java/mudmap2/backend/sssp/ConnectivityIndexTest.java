@@ -0,0 +1,129 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.sssp;
+
+import java.util.ArrayList;
+import java.util.Random;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldCoordinate;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class ConnectivityIndexTest {
+
+    public ConnectivityIndexTest() {
+    }
+
+    /**
+     * Compares the index with breadth searches while paths are added and
+     * removed
+     */
+    @Test
+    public void testIsReachable() throws Exception {
+        System.out.println("isReachable");
+
+        World world = ShortestPathSearchTest.createRandomWorld(7, 2, 10);
+        ConnectivityIndex index = world.getConnectivityIndex();
+        Random random = new Random(7);
+
+        ArrayList<Place> places = new ArrayList<>();
+        for(Layer layer: world.getLayers()){
+            places.addAll(layer.getPlaces());
+        }
+
+        for(int round = 0; round < 10; ++round){
+            // modify some paths
+            for(int i = 0; i < 5; ++i){
+                Place place = places.get(random.nextInt(places.size()));
+                if(random.nextBoolean() && !place.getPaths().isEmpty()){
+                    place.getPaths().iterator().next().remove();
+                } else {
+                    Place other = places.get(random.nextInt(places.size()));
+                    if(other != place){
+                        place.connectPath(new Path(place, "x" + round + i, other, "y" + round + i));
+                    }
+                }
+            }
+
+            PlaceGraph graph = new PlaceGraph(world);
+            int[] distances = new int[graph.size()];
+            int[] queue = new int[graph.size()];
+            for(int i = 0; i < 10; ++i){
+                int source = random.nextInt(graph.size());
+                LandmarkOracle.breadthSearch(graph, source, distances, queue);
+                int reached = 0;
+                for(int target = 0; target < graph.size(); ++target){
+                    boolean expected = distances[target] >= 0;
+                    if(expected) ++reached;
+                    assertEquals(expected, index.isReachable(graph.getPlace(source), graph.getPlace(target)));
+                }
+                assertEquals(reached, index.getComponentSize(graph.getPlace(source)));
+            }
+        }
+    }
+
+    /**
+     * Test of getUnreachablePlaces and getComponentCount methods
+     */
+    @Test
+    public void testGetUnreachablePlaces() throws Exception {
+        System.out.println("getUnreachablePlaces");
+
+        World world = new World("Unittest");
+        Layer layer = world.getNewLayer();
+        Place home = new Place("home", 0, 0, layer);
+        Place a = new Place("a", 1, 0, layer);
+        Place b = new Place("b", 2, 0, layer);
+        layer.put(home);
+        layer.put(a);
+        layer.put(b);
+        home.connectPath(new Path(home, "e", a, "w"));
+        world.setHome(new WorldCoordinate(layer.getId(), 0, 0));
+        assertEquals(home, world.getHomePlace());
+
+        ConnectivityIndex index = world.getConnectivityIndex();
+        assertEquals(2, index.getComponentCount());
+        ArrayList<Place> unreachable = index.getUnreachablePlaces(home);
+        assertEquals(1, unreachable.size());
+        assertEquals(b, unreachable.get(0));
+
+        // paths of places that are added later
+        Place c = new Place("c", 3, 0, layer);
+        c.connectPath(new Path(c, "w", b, "e"));
+        layer.put(c);
+        assertTrue(index.isReachable(b, c));
+        assertEquals(2, index.getComponentCount());
+
+        a.connectPath(new Path(a, "e", b, "w"));
+        assertEquals(1, index.getComponentCount());
+        assertTrue(index.getUnreachablePlaces(home).isEmpty());
+
+        // removed places
+        c.removeConnections();
+        layer.remove(c);
+        assertFalse(index.isReachable(b, c));
+        assertEquals(1, index.getComponentCount());
+        assertEquals(3, index.getComponentSize(home));
+    }
+}
@@ -0,0 +1,231 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.sssp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class DistanceFieldTest {
+
+    public DistanceFieldTest() {
+    }
+
+    static void waitForUpdate(DistanceField field) throws InterruptedException {
+        for(int i = 0; i < 500; ++i){
+            field.update();
+            if(field.isUpToDate()) return;
+            Thread.sleep(10);
+        }
+        fail("Distance field was not updated");
+    }
+
+    /**
+     * Compares the field with the minimum of single source breadth searches
+     */
+    static void assertDistances(World world, DistanceField field){
+        PlaceGraph graph = new PlaceGraph(world);
+        int[] expected = new int[graph.size()];
+        Arrays.fill(expected, -1);
+        int[] distances = new int[graph.size()];
+        int[] queue = new int[graph.size()];
+        for(Place source: field.getSources()){
+            LandmarkOracle.breadthSearch(graph, graph.indexOf(source), distances, queue);
+            for(int i = 0; i < graph.size(); ++i){
+                if(distances[i] >= 0 && (expected[i] < 0 || distances[i] < expected[i])){
+                    expected[i] = distances[i];
+                }
+            }
+        }
+        for(int i = 0; i < graph.size(); ++i){
+            assertEquals(expected[i], field.getDistance(graph.getPlace(i)));
+        }
+    }
+
+    /**
+     * Test of the distances after paths were connected and removed
+     */
+    @Test
+    public void testUpdate() throws Exception {
+        System.out.println("update");
+
+        World world = ShortestPathSearchTest.createRandomWorld(11, 2, 10);
+        ArrayList<Place> places = new ArrayList<>();
+        for(Layer layer: world.getLayers()){
+            places.addAll(layer.getPlaces());
+        }
+        Random random = new Random(11);
+
+        ArrayList<Place> sources = new ArrayList<>();
+        sources.add(places.get(0));
+        sources.add(places.get(places.size() - 1));
+        DistanceField field = new DistanceField(world, sources, null);
+        waitForUpdate(field);
+        assertDistances(world, field);
+
+        for(int round = 0; round < 20; ++round){
+            Place a = places.get(random.nextInt(places.size()));
+            Place b = places.get(random.nextInt(places.size()));
+            if(a == b) continue;
+
+            // connected paths are applied immediately
+            a.connectPath(new Path(a, "x" + round, b, "y" + round));
+            assertTrue(field.isUpToDate());
+            assertDistances(world, field);
+
+            // removed paths too
+            if(!a.getPaths().isEmpty()){
+                a.getPaths().iterator().next().remove();
+            }
+            assertTrue(field.isUpToDate());
+            assertDistances(world, field);
+        }
+
+        field.dispose();
+    }
+
+    /**
+     * Added and removed places are applied without a recomputation
+     */
+    @Test
+    public void testChanges() throws Exception {
+        System.out.println("changes");
+
+        World world = ShortestPathSearchTest.createRandomWorld(5, 2, 12);
+        ArrayList<Place> places = new ArrayList<>();
+        for(Layer layer: world.getLayers()){
+            places.addAll(layer.getPlaces());
+        }
+        Layer layer = world.getLayers().iterator().next();
+        Random random = new Random(5);
+
+        DistanceField field = new DistanceField(world, Arrays.asList(places.get(0)), null);
+        waitForUpdate(field);
+        assertDistances(world, field);
+
+        for(int round = 0; round < 200; ++round){
+            int action = random.nextInt(4);
+            if(action == 0){
+                // new place with paths to existing places
+                Place place = new Place("new", 100 + round, 0, layer);
+                layer.put(place);
+                for(int i = 0; i < 2; ++i){
+                    Place other = places.get(1 + random.nextInt(places.size() - 1));
+                    place.connectPath(new Path(place, "a" + i, other, "b" + i));
+                }
+                places.add(place);
+            } else if(action == 1 && places.size() > 2){
+                // removed place, not a source
+                Place place = places.remove(1 + random.nextInt(places.size() - 1));
+                place.removeConnections();
+                place.getLayer().remove(place);
+            } else if(action == 2){
+                Place a = places.get(random.nextInt(places.size()));
+                if(!a.getPaths().isEmpty()){
+                    a.getPaths().iterator().next().remove();
+                }
+            } else {
+                Place a = places.get(random.nextInt(places.size()));
+                Place b = places.get(random.nextInt(places.size()));
+                if(a != b) a.connectPath(new Path(a, "x" + round, b, "y" + round));
+            }
+            assertTrue(field.isUpToDate());
+            assertDistances(world, field);
+        }
+
+        field.dispose();
+    }
+
+    /**
+     * Places that are added later are included immediately
+     */
+    @Test
+    public void testNewPlace() throws Exception {
+        System.out.println("newPlace");
+
+        World world = new World("Unittest");
+        Layer layer = world.getNewLayer();
+        Place a = new Place("a", 0, 0, layer);
+        layer.put(a);
+        DistanceField field = new DistanceField(world, Arrays.asList(a), null);
+        waitForUpdate(field);
+        assertEquals(0, field.getDistance(a));
+
+        Place b = new Place("b", 1, 0, layer);
+        layer.put(b);
+        assertTrue(field.isUpToDate());
+        assertEquals(-1, field.getDistance(b));
+        b.connectPath(new Path(a, "e", b, "w"));
+        assertTrue(field.isUpToDate());
+        assertEquals(1, field.getDistance(b));
+        assertEquals(1, field.getMaxDistance());
+
+        field.dispose();
+    }
+
+    /**
+     * The graph is created in the background, not by the constructor
+     */
+    @Test
+    public void testBackground() throws Exception {
+        System.out.println("background");
+
+        World world = new World("Unittest");
+        Layer layer = world.getNewLayer();
+        Place a = new Place("a", 0, 0, layer);
+        layer.put(a);
+
+        // keep the background thread busy
+        final CountDownLatch latch = new CountDownLatch(1);
+        PathFinder.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        DistanceField field = new DistanceField(world, Arrays.asList(a), null);
+        assertFalse(field.isUpToDate());
+        assertEquals(-1, field.getDistance(a));
+
+        // the graph is created afterwards, so it contains the new place
+        Place b = new Place("b", 1, 0, layer);
+        layer.put(b);
+        b.connectPath(new Path(a, "e", b, "w"));
+        latch.countDown();
+        waitForUpdate(field);
+        assertEquals(0, field.getDistance(a));
+        assertEquals(1, field.getDistance(b));
+
+        field.dispose();
+    }
+}
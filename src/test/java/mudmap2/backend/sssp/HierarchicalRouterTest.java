@@ -0,0 +1,134 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.sssp;
+
+import java.util.List;
+import java.util.Random;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.PlaceGroup;
+import mudmap2.backend.World;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class HierarchicalRouterTest {
+
+    public HierarchicalRouterTest() {
+    }
+
+    /**
+     * Creates a random world and assigns place groups by quadrant
+     */
+    static World createClusteredWorld(long seed) throws Exception {
+        World world = ShortestPathSearchTest.createRandomWorld(seed, 3, 12);
+        PlaceGroup[] groups = new PlaceGroup[3];
+        for(int i = 0; i < groups.length; ++i){
+            groups[i] = new PlaceGroup("group" + i);
+            world.addPlaceGroup(groups[i]);
+        }
+        for(Layer layer: world.getLayers()){
+            for(Place place: layer.getPlaces()){
+                int quadrant = (place.getX() < 6 ? 0 : 1) + (place.getY() < 6 ? 0 : 2);
+                if(quadrant < groups.length) place.setPlaceGroup(groups[quadrant]);
+            }
+        }
+        return world;
+    }
+
+    /**
+     * Compares the hierarchical search with a Dijkstra search
+     */
+    @Test
+    public void testSearch() throws Exception {
+        System.out.println("search");
+
+        CostProfile profile = CostProfile.createRiskAware();
+        profile.setExitCost("u", 3.0);
+
+        for(long seed = 0; seed < 5; ++seed){
+            PlaceGraph graph = new PlaceGraph(createClusteredWorld(seed));
+            HierarchicalRouter router = new HierarchicalRouter(profile);
+            router.update(graph);
+            assertEquals(12, router.getClusterCount());
+            ShortestPathSearch dijkstra = new ShortestPathSearch(graph, profile);
+
+            Random random = new Random(seed);
+            for(int i = 0; i < 20; ++i){
+                int source = random.nextInt(graph.size());
+                dijkstra.searchAll(source);
+                for(int j = 0; j < 20; ++j){
+                    int target = random.nextInt(graph.size());
+                    double expected = dijkstra.getDistance(target);
+                    Route route = router.findRoute(graph.getPlace(source), graph.getPlace(target));
+                    if(expected == Double.POSITIVE_INFINITY){
+                        assertNull(route);
+                        continue;
+                    }
+
+                    assertNotNull(route);
+                    assertEquals(expected, route.getCost(), 1e-9);
+                    List<Place> places = route.getPlaces();
+                    assertEquals(graph.getPlace(source), places.get(0));
+                    assertEquals(graph.getPlace(target), places.get(places.size() - 1));
+                    for(int k = 1; k < places.size(); ++k){
+                        assertFalse(places.get(k - 1).getPaths(places.get(k)).isEmpty());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Only the modified cluster is recomputed
+     */
+    @Test
+    public void testIncrementalUpdate() throws Exception {
+        System.out.println("incrementalUpdate");
+
+        World world = createClusteredWorld(1);
+        PathFinder pathFinder = world.getPathFinder();
+        CostProfile profile = CostProfile.createShortest();
+        HierarchicalRouter router = pathFinder.getRouter(profile);
+        assertEquals(router.getClusterCount(), router.recomputed);
+
+        // connect two neighbouring places of the same cluster
+        Layer layer = world.getLayers().iterator().next();
+        Place a = null, b = null;
+        for(Place place: layer.getPlaces()){
+            Place other = layer.get(place.getX() + 1, place.getY());
+            if(other != null && place.getX() + 1 < 6 && place.getPlaceGroup() == other.getPlaceGroup()
+                    && place.getPaths(other).isEmpty()){
+                a = place;
+                b = other;
+                break;
+            }
+        }
+        assertNotNull(a);
+        a.connectPath(new Path(a, "e", b, "w"));
+
+        assertSame(router, pathFinder.getRouter(profile));
+        assertEquals(1, router.recomputed);
+
+        Route route = pathFinder.getRouter(profile).findRoute(a, b);
+        assertEquals(1, route.getLength());
+    }
+}
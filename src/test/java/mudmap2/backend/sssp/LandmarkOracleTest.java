@@ -0,0 +1,164 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.sssp;
+
+import java.util.Random;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldCoordinate;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class LandmarkOracleTest {
+
+    public LandmarkOracleTest() {
+    }
+
+    /**
+     * Test of getLowerBound and getUpperBound, compared with breadth searches
+     */
+    @Test
+    public void testBounds() throws Exception {
+        System.out.println("bounds");
+
+        for(long seed = 0; seed < 3; ++seed){
+            PlaceGraph graph = new PlaceGraph(ShortestPathSearchTest.createRandomWorld(seed, 3, 12));
+            LandmarkOracle oracle = new LandmarkOracle(graph, 6, -1);
+            assertEquals(6, oracle.getLandmarkCount());
+
+            Random random = new Random(seed);
+            int[] distances = new int[graph.size()];
+            int[] queue = new int[graph.size()];
+            for(int i = 0; i < 20; ++i){
+                int source = random.nextInt(graph.size());
+                LandmarkOracle.breadthSearch(graph, source, distances, queue);
+                for(int target = 0; target < graph.size(); ++target){
+                    int lower = oracle.getLowerBound(source, target);
+                    int upper = oracle.getUpperBound(source, target);
+                    if(distances[target] < 0){
+                        assertEquals(Integer.MAX_VALUE, upper);
+                    } else {
+                        assertTrue(lower <= distances[target]);
+                        assertTrue(upper >= distances[target]);
+                    }
+                }
+            }
+
+            // landmark distances are exact
+            for(int l = 0; l < oracle.getLandmarkCount(); ++l){
+                LandmarkOracle.breadthSearch(graph, oracle.getLandmark(l), distances, queue);
+                for(int node = 0; node < graph.size(); ++node){
+                    assertEquals(distances[node], oracle.getDistance(l, node));
+                }
+            }
+        }
+    }
+
+    /**
+     * The landmarks are chosen from different components and far apart
+     */
+    @Test
+    public void testLandmarkSelection() throws Exception {
+        System.out.println("landmarkSelection");
+
+        World world = new World("Unittest");
+        Layer layer = world.getNewLayer();
+        // a line of 10 places and a separate pair
+        Place[] line = new Place[10];
+        for(int i = 0; i < line.length; ++i){
+            line[i] = new Place("line" + i, i, 0, layer);
+            layer.put(line[i]);
+            if(i > 0) line[i].connectPath(new Path(line[i - 1], "e", line[i], "w"));
+        }
+        Place a = new Place("a", 0, 5, layer);
+        Place b = new Place("b", 1, 5, layer);
+        layer.put(a);
+        layer.put(b);
+        a.connectPath(new Path(a, "e", b, "w"));
+
+        PlaceGraph graph = new PlaceGraph(world);
+        LandmarkOracle oracle = new LandmarkOracle(graph, 3, graph.indexOf(line[0]));
+        assertEquals(3, oracle.getLandmarkCount());
+        assertEquals(line[0], graph.getPlace(oracle.getLandmark(0)));
+        // places that are not reachable from any landmark come first
+        Place second = graph.getPlace(oracle.getLandmark(1));
+        assertTrue(second == a || second == b);
+        assertEquals(line[9], graph.getPlace(oracle.getLandmark(2)));
+
+        assertEquals(9, oracle.getLowerBound(graph.indexOf(line[0]), graph.indexOf(line[9])));
+        assertEquals(Integer.MAX_VALUE, oracle.getLowerBound(graph.indexOf(line[3]), graph.indexOf(a)));
+    }
+
+    /**
+     * A* with landmarks finds the same costs as Dijkstra
+     */
+    @Test
+    public void testSearchWithLandmarks() throws Exception {
+        System.out.println("searchWithLandmarks");
+
+        CostProfile profile = CostProfile.createRiskAware();
+        for(long seed = 0; seed < 3; ++seed){
+            PlaceGraph graph = new PlaceGraph(ShortestPathSearchTest.createRandomWorld(seed, 3, 12));
+            ShortestPathSearch astar = new ShortestPathSearch(graph, profile);
+            astar.setLandmarks(new LandmarkOracle(graph, LandmarkOracle.DEFAULT_LANDMARK_COUNT, -1));
+            ShortestPathSearch dijkstra = new ShortestPathSearch(graph, profile);
+
+            Random random = new Random(seed);
+            for(int i = 0; i < 20; ++i){
+                int source = random.nextInt(graph.size());
+                dijkstra.searchAll(source);
+                for(int j = 0; j < 20; ++j){
+                    int target = random.nextInt(graph.size());
+                    assertEquals(dijkstra.getDistance(target), astar.search(source, target), 1e-9);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of getDistanceFromHome method, of class PathFinder
+     */
+    @Test
+    public void testDistanceFromHome() throws Exception {
+        System.out.println("distanceFromHome");
+
+        World world = new World("Unittest");
+        Layer layer = world.getNewLayer();
+        Place[] line = new Place[5];
+        for(int i = 0; i < line.length; ++i){
+            line[i] = new Place("line" + i, i, 0, layer);
+            layer.put(line[i]);
+            if(i > 0) line[i].connectPath(new Path(line[i - 1], "e", line[i], "w"));
+        }
+        world.setHome(new WorldCoordinate(layer.getId(), 1, 0));
+
+        PathFinder pathFinder = world.getPathFinder();
+        int distance = -1;
+        for(int i = 0; i < 500 && distance < 0; ++i){
+            distance = pathFinder.getDistanceFromHome(line[4]);
+            if(distance < 0) Thread.sleep(10);
+        }
+        assertEquals(3, distance);
+        assertEquals(1, pathFinder.getDistanceFromHome(line[0]));
+    }
+}
@@ -0,0 +1,176 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.sssp;
+
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class PathFinderTest {
+
+    World world;
+    Layer layer;
+    Place start, danger, detour1, detour2, end;
+
+    public PathFinderTest() {
+    }
+
+    /**
+     * start - danger - end
+     *   |               |
+     * detour1 ----- detour2
+     */
+    @Before
+    public void setUp() throws Exception {
+        world = new World("Unittest");
+        layer = world.getNewLayer();
+
+        start = new Place("start", 0, 0, layer);
+        danger = new Place("danger", 1, 0, layer);
+        end = new Place("end", 2, 0, layer);
+        detour1 = new Place("detour1", 0, -1, layer);
+        detour2 = new Place("detour2", 2, -1, layer);
+        layer.put(start);
+        layer.put(danger);
+        layer.put(end);
+        layer.put(detour1);
+        layer.put(detour2);
+
+        danger.setRiskLevel(world.getRiskLevel(4));
+
+        start.connectPath(new Path(start, "e", danger, "w"));
+        danger.connectPath(new Path(danger, "e", end, "w"));
+        start.connectPath(new Path(start, "s", detour1, "n"));
+        detour1.connectPath(new Path(detour1, "e", detour2, "w"));
+        detour2.connectPath(new Path(detour2, "n", end, "s"));
+    }
+
+    /**
+     * Test of findRoute method, of class PathFinder.
+     */
+    @Test
+    public void testFindRoute() {
+        System.out.println("findRoute");
+
+        PathFinder instance = new PathFinder(world);
+
+        Route shortest = instance.findRoute(start, end, CostProfile.createShortest());
+        assertNotNull(shortest);
+        assertEquals(2, shortest.getLength());
+        assertEquals(2.0, shortest.getCost(), 0.0);
+        assertEquals(start, shortest.getStart());
+        assertEquals(danger, shortest.getPlaces().get(1));
+        assertEquals(end, shortest.getEnd());
+
+        Route safest = instance.findRoute(start, end, CostProfile.createRiskAware());
+        assertNotNull(safest);
+        assertEquals(3, safest.getLength());
+        assertFalse(safest.getPlaces().contains(danger));
+
+        Route self = instance.findRoute(start, start, CostProfile.createShortest());
+        assertNotNull(self);
+        assertEquals(0, self.getLength());
+    }
+
+    /**
+     * Test of worldChanged method, of class PathFinder.
+     */
+    @Test
+    public void testWorldChanged() throws Exception {
+        System.out.println("worldChanged");
+
+        PathFinder instance = new PathFinder(world);
+        CostProfile profile = CostProfile.createShortest();
+        assertEquals(2, instance.findRoute(start, end, profile).getLength());
+
+        // remove the direct connection
+        danger.getExit("e").remove();
+        assertEquals(3, instance.findRoute(start, end, profile).getLength());
+
+        Place unreachable = new Place("unreachable", 5, 5, layer);
+        layer.put(unreachable);
+        assertNull(instance.findRoute(start, unreachable, profile));
+    }
+
+    /**
+     * Test of worldChanged method with changes that don't affect the graph,
+     * of class PathFinder.
+     */
+    @Test
+    public void testWorldChangedCosts() throws Exception {
+        System.out.println("worldChanged costs");
+
+        PathFinder instance = new PathFinder(world);
+        PlaceGraph graph = instance.getGraph();
+        start.setName("renamed");
+        start.setComments("comment");
+        assertSame(graph, instance.getGraph());
+
+        danger.setRiskLevel(null);
+        assertFalse(graph == instance.getGraph());
+        graph = instance.getGraph();
+        end.setRecLevelMin(10);
+        assertFalse(graph == instance.getGraph());
+        graph = instance.getGraph();
+        danger.getExit("e").remove();
+        assertFalse(graph == instance.getGraph());
+    }
+
+    /**
+     * Test of getGraphInBackground method, of class PathFinder.
+     */
+    @Test
+    public void testGetGraphInBackground() throws Exception {
+        System.out.println("getGraphInBackground");
+
+        PathFinder instance = new PathFinder(world);
+        assertNull(instance.getGraphInBackground());
+        PlaceGraph graph = null;
+        for(int i = 0; i < 500 && graph == null; ++i){
+            Thread.sleep(10);
+            graph = instance.getGraphInBackground();
+        }
+        assertNotNull(graph);
+        assertEquals(5, graph.size());
+        assertSame(graph, instance.getGraph());
+    }
+
+    /**
+     * Test of exit costs
+     */
+    @Test
+    public void testExitCost() {
+        System.out.println("exitCost");
+
+        CostProfile profile = CostProfile.createShortest();
+        profile.setExitCost("e", 10.0);
+
+        Route route = new PathFinder(world).findRoute(start, end, profile);
+        assertNotNull(route);
+        // s, e (10), n
+        assertEquals(12.0, route.getCost(), 1e-9);
+        assertFalse(route.getPlaces().contains(danger));
+    }
+}
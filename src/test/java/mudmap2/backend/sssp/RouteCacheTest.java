@@ -0,0 +1,140 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.sssp;
+
+import java.util.Arrays;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class RouteCacheTest {
+
+    public RouteCacheTest() {
+    }
+
+    /**
+     * Test of get and put methods
+     */
+    @Test
+    public void testGetPut() throws Exception {
+        System.out.println("getPut");
+
+        World world = new World("Unittest");
+        Layer layer = world.getNewLayer();
+        Place a = new Place("a", 0, 0, layer);
+        Place b = new Place("b", 1, 0, layer);
+        Place c = new Place("c", 2, 0, layer);
+        Route ab = new Route(Arrays.asList(a, b), 1.0);
+        Route bc = new Route(Arrays.asList(b, c), 1.0);
+        Route ac = new Route(Arrays.asList(a, b, c), 2.0);
+
+        RouteCache cache = new RouteCache(2);
+        CostProfile profile = CostProfile.createShortest();
+        cache.put(a, b, profile, 0, ab);
+        cache.put(b, c, null, 0, bc);
+        assertSame(ab, cache.get(a, b, CostProfile.createShortest(), 0));
+        assertNull(cache.get(a, b, null, 0));
+        assertNull(cache.get(a, b, CostProfile.createRiskAware(), 0));
+
+        // the least recently used entry is removed
+        cache.put(a, c, profile, 0, ac);
+        assertEquals(2, cache.size());
+        assertNull(cache.get(b, c, null, 0));
+        assertSame(ab, cache.get(a, b, profile, 0));
+
+        // later changes of the profile don't affect the key
+        profile.setDefaultPathCost(2.0);
+        assertSame(ac, cache.get(a, c, CostProfile.createShortest(), 0));
+
+        // a new version drops all entries
+        assertNull(cache.get(a, c, CostProfile.createShortest(), 1));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Test of the cache in World.breadthSearch
+     */
+    @Test
+    public void testBreadthSearch() throws Exception {
+        System.out.println("breadthSearch");
+
+        World world = new World("Unittest");
+        Layer layer = world.getNewLayer();
+        Place[] line = new Place[4];
+        for(int i = 0; i < line.length; ++i){
+            line[i] = new Place("line" + i, i, 0, layer);
+            layer.put(line[i]);
+            if(i > 0) line[i].connectPath(new Path(line[i - 1], "e", line[i], "w"));
+        }
+
+        assertEquals(line[3], world.breadthSearch(line[0], line[3]));
+        assertEquals(1, world.getRouteCache().getMisses());
+
+        // another search overwrites the predecessors, a cache hit restores them
+        world.breadthSearch(line[3], line[0]);
+        assertEquals(line[3], world.breadthSearch(line[0], line[3]));
+        assertEquals(1, world.getRouteCache().getHits());
+        assertEquals(line[2], line[3].getBreadthSearchData().predecessor);
+        assertEquals(line[1], line[2].getBreadthSearchData().predecessor);
+        assertEquals(line[0], line[1].getBreadthSearchData().predecessor);
+
+        // a new path changes the topology version
+        long version = world.getTopologyVersion();
+        line[0].connectPath(new Path(line[0], "n", line[3], "n"));
+        assertTrue(world.getTopologyVersion() > version);
+        assertEquals(line[3], world.breadthSearch(line[0], line[3]));
+        assertEquals(line[0], line[3].getBreadthSearchData().predecessor);
+
+        // removed places
+        version = world.getTopologyVersion();
+        layer.remove(line[2]);
+        assertTrue(world.getTopologyVersion() > version);
+    }
+
+    /**
+     * Test of the cache in PathFinder.findRoute
+     */
+    @Test
+    public void testFindRoute() throws Exception {
+        System.out.println("findRoute");
+
+        World world = new World("Unittest");
+        Layer layer = world.getNewLayer();
+        Place a = new Place("a", 0, 0, layer);
+        Place b = new Place("b", 1, 0, layer);
+        layer.put(a);
+        layer.put(b);
+        a.connectPath(new Path(a, "e", b, "w"));
+
+        PathFinder pathFinder = world.getPathFinder();
+        Route route = pathFinder.findRoute(a, b, CostProfile.createShortest());
+        assertSame(route, pathFinder.findRoute(a, b, CostProfile.createShortest()));
+
+        // place changes can change the costs
+        b.setRiskLevel(world.getRiskLevel(4));
+        Route safe = pathFinder.findRoute(a, b, CostProfile.createRiskAware());
+        assertNotSame(route, pathFinder.findRoute(a, b, CostProfile.createShortest()));
+        assertSame(safe, pathFinder.findRoute(a, b, CostProfile.createRiskAware()));
+    }
+}
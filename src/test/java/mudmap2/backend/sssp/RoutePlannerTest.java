@@ -0,0 +1,204 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.sssp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class RoutePlannerTest {
+
+    public RoutePlannerTest() {
+    }
+
+    /**
+     * Test of computeDistances method, compared with sequential searches
+     */
+    @Test
+    public void testComputeDistances() throws Exception {
+        System.out.println("computeDistances");
+
+        PlaceGraph graph = new PlaceGraph(ShortestPathSearchTest.createRandomWorld(3, 3, 12));
+        ShortestPathSearch search = new ShortestPathSearch(graph, CostProfile.createRiskAware());
+        Random random = new Random(3);
+        ArrayList<Place> waypoints = new ArrayList<>();
+        for(int i = 0; i < 12; ++i){
+            waypoints.add(graph.getPlace(random.nextInt(graph.size())));
+        }
+
+        double[][] matrix = new RoutePlanner(search).computeDistances(waypoints);
+        for(int i = 0; i < waypoints.size(); ++i){
+            search.searchAll(graph.indexOf(waypoints.get(i)));
+            for(int j = 0; j < waypoints.size(); ++j){
+                assertEquals(search.getDistance(graph.indexOf(waypoints.get(j))), matrix[i][j], 1e-9);
+            }
+        }
+    }
+
+    /**
+     * Test of orderWaypoints method
+     */
+    @Test
+    public void testOrderWaypoints() {
+        System.out.println("orderWaypoints");
+
+        // points on a line, nearest neighbour starting at 2 goes the wrong way
+        int[] positions = {2, 0, 3, 5, 9};
+        double[][] matrix = new double[positions.length][positions.length];
+        for(int i = 0; i < positions.length; ++i){
+            for(int j = 0; j < positions.length; ++j){
+                matrix[i][j] = Math.abs(positions[i] - positions[j]);
+            }
+        }
+
+        int[] order = RoutePlanner.orderWaypoints(matrix, false);
+        assertEquals(0, order[0]);
+        assertEquals(11.0, RoutePlanner.getCost(matrix, order, false), 1e-9);
+
+        order = RoutePlanner.orderWaypoints(matrix, true);
+        assertEquals(0, order[0]);
+        assertEquals(18.0, RoutePlanner.getCost(matrix, order, true), 1e-9);
+    }
+
+    /**
+     * Test of the cost differences of OrderCosts, compared with getCost
+     */
+    @Test
+    public void testOrderCosts() {
+        System.out.println("orderCosts");
+
+        // direction dependent costs, some waypoints can't be reached
+        Random random = new Random(7);
+        final int count = 9;
+        double[][] matrix = new double[count][count];
+        for(int i = 0; i < count; ++i){
+            for(int j = 0; j < count; ++j){
+                matrix[i][j] = random.nextInt(10) == 0 ? Double.POSITIVE_INFINITY : random.nextInt(100);
+            }
+        }
+        int[] order = new int[count];
+        for(int i = 0; i < count; ++i) order[i] = (i * 4) % count;
+
+        for(boolean closed: new boolean[]{false, true}){
+            RoutePlanner.OrderCosts costs = new RoutePlanner.OrderCosts(matrix, order, closed);
+            double[] cost = getCost(matrix, order, closed);
+            for(int i = 1; i < count - 1; ++i){
+                for(int j = i + 1; j < count; ++j){
+                    int[] candidate = order.clone();
+                    for(int a = i, b = j; a < b; ++a, --b){
+                        candidate[a] = order[b];
+                        candidate[b] = order[a];
+                    }
+                    double[] candidateCost = getCost(matrix, candidate, closed);
+                    costs.isReverseCheaper(i, j);
+                    assertEquals(candidateCost[0] - cost[0], costs.unreachableDelta, 0.0);
+                    assertEquals(candidateCost[1] - cost[1], costs.costDelta, 1e-9);
+
+                    candidate = order.clone();
+                    candidate[i] = order[j];
+                    System.arraycopy(order, i, candidate, i + 1, j - i);
+                    candidateCost = getCost(matrix, candidate, closed);
+                    costs.isMoveCheaper(i, j);
+                    assertEquals(candidateCost[0] - cost[0], costs.unreachableDelta, 0.0);
+                    assertEquals(candidateCost[1] - cost[1], costs.costDelta, 1e-9);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of unreachable sections and the cost of the others
+     */
+    private static double[] getCost(double[][] matrix, int[] order, boolean closed){
+        double[] ret = new double[2];
+        int sections = closed ? order.length : order.length - 1;
+        for(int i = 0; i < sections; ++i){
+            double cost = matrix[order[i]][order[(i + 1) % order.length]];
+            if(cost == Double.POSITIVE_INFINITY){
+                ++ret[0];
+            } else {
+                ret[1] += cost;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Test of planRoute method, of class PathFinder
+     */
+    @Test
+    public void testPlanRoute() throws Exception {
+        System.out.println("planRoute");
+
+        World world = new World("Unittest");
+        Layer layer = world.getNewLayer();
+        Place[] line = new Place[10];
+        for(int i = 0; i < line.length; ++i){
+            line[i] = new Place("line" + i, i, 0, layer);
+            layer.put(line[i]);
+            if(i > 0) line[i].connectPath(new Path(line[i - 1], "e", line[i], "w"));
+        }
+
+        ArrayList<Place> waypoints = new ArrayList<>();
+        waypoints.add(line[0]);
+        waypoints.add(line[7]);
+        waypoints.add(line[3]);
+        waypoints.add(line[9]);
+
+        Route route = world.getPathFinder().planRoute(waypoints, CostProfile.createShortest(), false);
+        assertNotNull(route);
+        assertEquals(9, route.getLength());
+        List<Place> places = route.getPlaces();
+        for(int i = 0; i < line.length; ++i){
+            assertEquals(line[i], places.get(i));
+        }
+
+        route = world.getPathFinder().planRoute(waypoints, CostProfile.createShortest(), true);
+        assertEquals(18, route.getLength());
+        assertEquals(line[0], route.getEnd());
+
+        // in the background
+        final ArrayBlockingQueue<Route> planned = new ArrayBlockingQueue<>(1);
+        world.getPathFinder().planRouteInBackground(waypoints, CostProfile.createShortest(), false, new PathFinder.RouteListener() {
+            @Override
+            public void routePlanned(Route route) {
+                planned.add(route);
+            }
+        });
+        route = planned.poll(10, TimeUnit.SECONDS);
+        assertNotNull(route);
+        assertEquals(places, route.getPlaces());
+
+        // unreachable waypoint
+        Place other = new Place("other", 0, 5, layer);
+        layer.put(other);
+        waypoints.add(other);
+        assertNull(world.getPathFinder().planRoute(waypoints, CostProfile.createShortest(), false));
+    }
+}
@@ -0,0 +1,144 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.backend.sssp;
+
+import java.util.Random;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.World;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class ShortestPathSearchTest {
+
+    public ShortestPathSearchTest() {
+    }
+
+    /**
+     * Creates a world with random places, paths and paths between layers
+     */
+    static World createRandomWorld(long seed, int layers, int size) throws Exception {
+        Random random = new Random(seed);
+        World world = new World("Unittest");
+        Place[][][] grid = new Place[layers][size][size];
+        for(int l = 0; l < layers; ++l){
+            Layer layer = world.getNewLayer();
+            for(int x = 0; x < size; ++x){
+                for(int y = 0; y < size; ++y){
+                    if(random.nextInt(10) < 8){
+                        Place place = new Place("p", x, y, layer);
+                        layer.put(place);
+                        place.setRiskLevel(world.getRiskLevel(random.nextInt(5)));
+                        grid[l][x][y] = place;
+                    }
+                }
+            }
+            for(int x = 0; x < size; ++x){
+                for(int y = 0; y < size; ++y){
+                    Place place = grid[l][x][y];
+                    if(place == null) continue;
+                    if(x + 1 < size && grid[l][x + 1][y] != null && random.nextBoolean()){
+                        place.connectPath(new Path(place, "e", grid[l][x + 1][y], "w"));
+                    }
+                    if(y + 1 < size && grid[l][x][y + 1] != null && random.nextBoolean()){
+                        place.connectPath(new Path(place, "n", grid[l][x][y + 1], "s"));
+                    }
+                }
+            }
+        }
+        // long paths within a layer and between layers
+        for(int i = 0; i < layers * 3; ++i){
+            Place a = grid[random.nextInt(layers)][random.nextInt(size)][random.nextInt(size)];
+            Place b = grid[random.nextInt(layers)][random.nextInt(size)][random.nextInt(size)];
+            if(a != null && b != null && a != b){
+                a.connectPath(new Path(a, "u", b, "d"));
+            }
+        }
+        return world;
+    }
+
+    /**
+     * Compares the A* search with a full Dijkstra search
+     */
+    @Test
+    public void testSearch() throws Exception {
+        System.out.println("search");
+
+        CostProfile profile = CostProfile.createRiskAware();
+        profile.setExitCost("u", 3.0);
+
+        for(long seed = 0; seed < 5; ++seed){
+            PlaceGraph graph = new PlaceGraph(createRandomWorld(seed, 3, 12));
+            ShortestPathSearch astar = new ShortestPathSearch(graph, profile);
+            ShortestPathSearch dijkstra = new ShortestPathSearch(graph, profile);
+            Random random = new Random(seed);
+
+            for(int i = 0; i < 20; ++i){
+                int source = random.nextInt(graph.size());
+                dijkstra.searchAll(source);
+                for(int j = 0; j < 20; ++j){
+                    int target = random.nextInt(graph.size());
+                    double expected = dijkstra.getDistance(target);
+                    double result = astar.search(source, target);
+                    assertEquals(expected, result, 1e-9);
+
+                    if(result < Double.POSITIVE_INFINITY){
+                        Route route = astar.getRoute(target);
+                        assertEquals(graph.getPlace(source), route.getStart());
+                        assertEquals(graph.getPlace(target), route.getEnd());
+                        assertEquals(expected, route.getCost(), 1e-9);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of the heap used by the search
+     */
+    @Test
+    public void testIndexedMinHeap() {
+        System.out.println("IndexedMinHeap");
+
+        Random random = new Random(42);
+        IndexedMinHeap heap = new IndexedMinHeap(100);
+        double[] keys = new double[100];
+        for(int i = 0; i < 100; ++i){
+            keys[i] = random.nextDouble();
+            assertTrue(heap.insertOrDecrease(i, keys[i]));
+        }
+        // decrease some keys, increasing is ignored
+        for(int i = 0; i < 100; i += 3){
+            keys[i] /= 2;
+            assertTrue(heap.insertOrDecrease(i, keys[i]));
+            assertFalse(heap.insertOrDecrease(i, keys[i] + 1));
+        }
+
+        double previous = -1;
+        while(!heap.isEmpty()){
+            int node = heap.poll();
+            assertFalse(heap.contains(node));
+            assertTrue(keys[node] >= previous);
+            previous = keys[node];
+        }
+    }
+}
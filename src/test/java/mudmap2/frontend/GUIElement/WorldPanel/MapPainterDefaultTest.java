@@ -0,0 +1,196 @@
+/*  MUD Map (v2) - A tool to create and organize maps for text-based games
+ *  Copyright (C) 2018  Neop (email: mneop@web.de)
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, see <http://www.gnu.org/licenses/>.
+ */
+package mudmap2.frontend.GUIElement.WorldPanel;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Path;
+import mudmap2.backend.Place;
+import mudmap2.backend.PlaceGroup;
+import mudmap2.backend.World;
+import mudmap2.backend.WorldCoordinate;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author neop
+ */
+public class MapPainterDefaultTest {
+
+    static final int WIDTH = 400;
+    static final int HEIGHT = 300;
+    static final int TILE_SIZE = 80;
+
+    public MapPainterDefaultTest() {
+    }
+
+    private static Layer createLayer() throws Exception {
+        World world = new World("world");
+        Layer layer = world.getNewLayer();
+        Place place1 = new Place("place 1", 0, 0, layer);
+        Place place2 = new Place("place 2", 1, 0, layer);
+        Place place3 = new Place("place 3", 0, 1, layer);
+        layer.put(place1);
+        layer.put(place2);
+        layer.put(place3);
+        place1.connectPath(new Path(place1, "e", place2, "w"));
+        place1.connectPath(new Path(place1, "n", place3, "s"));
+        place1.connectChild(place2);
+        place2.setFlag("shop", true);
+        PlaceGroup placeGroup = new PlaceGroup("group", Color.cyan);
+        world.addPlaceGroup(placeGroup);
+        place3.setPlaceGroup(placeGroup);
+        return layer;
+    }
+
+    private static int[] paint(MapPainterDefault painter, Layer layer){
+        return paint(painter, layer, 0, 0);
+    }
+
+    private static int[] paint(MapPainterDefault painter, Layer layer, double x, double y){
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+        g.setClip(0, 0, WIDTH, HEIGHT);
+        painter.paint(g, TILE_SIZE, WIDTH, HEIGHT, layer, new WorldCoordinate(layer.getId(), x, y));
+        g.dispose();
+        return image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+    }
+
+    /**
+     * Test of paint method, of class MapPainterDefault, with cached tiles.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testPaintTileCache() throws Exception {
+        System.out.println("paintTileCache");
+
+        Layer layer = createLayer();
+        MapPainterDefault painter = new MapPainterDefault();
+        int[] first = paint(painter, layer);
+        assertEquals(3, painter.getTileCacheSize());
+
+        // the cached tiles look like newly rendered ones
+        int[] second = paint(painter, layer);
+        assertEquals(3, painter.getTileCacheSize());
+        assertTrue(Arrays.equals(first, second));
+
+        // changes of the world are drawn
+        Place place = layer.get(1, 0);
+        place.setName("renamed place");
+        int[] changed = paint(painter, layer);
+        assertFalse(Arrays.equals(first, changed));
+        assertTrue(Arrays.equals(paint(new MapPainterDefault(), layer), changed));
+
+        // colors that change without a world change event
+        place.getLayer().getWorld().getPlaceGroups().get(0).setColor(Color.orange);
+        changed = paint(painter, layer);
+        assertTrue(Arrays.equals(paint(new MapPainterDefault(), layer), changed));
+
+        // selected places are marked
+        painter.selectPlaceAt(5, 5);
+        painter.setSelectedPlaces(new java.util.HashSet<>(Arrays.asList(place)), null, null);
+        changed = paint(painter, layer);
+        MapPainterDefault other = new MapPainterDefault();
+        other.selectPlaceAt(5, 5);
+        other.setSelectedPlaces(new java.util.HashSet<>(Arrays.asList(place)), null, null);
+        assertTrue(Arrays.equals(paint(other, layer), changed));
+    }
+
+    /**
+     * Test of the tile cache, only the tiles of changed places are rendered
+     * again
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testTileCacheChanges() throws Exception {
+        System.out.println("tileCacheChanges");
+
+        Layer layer = createLayer();
+        Place place1 = layer.get(0, 0);
+        Place place2 = layer.get(1, 0);
+        Place place3 = layer.get(0, 1);
+        MapPainterDefault painter = new MapPainterDefault();
+        paint(painter, layer);
+        assertEquals(3, painter.getTileCacheSize());
+
+        // the parent shows the name of its child
+        place2.setComments("comment");
+        assertEquals(1, painter.getTileCacheSize());
+        assertTrue(painter.tileCache.containsKey(place3));
+        assertTrue(Arrays.equals(paint(new MapPainterDefault(), layer), paint(painter, layer)));
+
+        // the former child isn't a child anymore when the event is sent
+        place1.removeChild(place2);
+        assertEquals(1, painter.getTileCacheSize());
+        assertTrue(Arrays.equals(paint(new MapPainterDefault(), layer), paint(painter, layer)));
+
+        // both places of a path show its exits
+        place1.getExit("n").remove();
+        assertEquals(1, painter.getTileCacheSize());
+        assertTrue(painter.tileCache.containsKey(place2));
+        assertTrue(Arrays.equals(paint(new MapPainterDefault(), layer), paint(painter, layer)));
+
+        // places with the same name show their id
+        place3.setName("place 2");
+        assertTrue(Arrays.equals(paint(new MapPainterDefault(), layer), paint(painter, layer)));
+        place3.setName("place 3");
+        assertTrue(Arrays.equals(paint(new MapPainterDefault(), layer), paint(painter, layer)));
+
+        // world settings affect all tiles
+        layer.getWorld().setTileCenterColor(Color.yellow);
+        assertEquals(0, painter.getTileCacheSize());
+        assertTrue(Arrays.equals(paint(new MapPainterDefault(), layer), paint(painter, layer)));
+    }
+
+    /**
+     * Test of paint method, of class MapPainterDefault, with the reused path
+     * overlay.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testPaintPathOverlay() throws Exception {
+        System.out.println("paintPathOverlay");
+
+        Layer layer = createLayer();
+        MapPainterDefault painter = new MapPainterDefault();
+        paint(painter, layer);
+        BufferedImage pathImage = painter.pathImage;
+        assertNotNull(pathImage);
+
+        // paths of the previous frame don't remain while panning
+        for(int i = 1; i <= 3; ++i){
+            int[] moved = paint(painter, layer, 0.5 * i, -0.3 * i);
+            assertTrue(Arrays.equals(paint(new MapPainterDefault(), layer, 0.5 * i, -0.3 * i), moved));
+        }
+        assertSame(pathImage, painter.pathImage);
+
+        // hidden paths
+        painter.setShowPaths(false);
+        MapPainterDefault other = new MapPainterDefault();
+        other.setShowPaths(false);
+        assertTrue(Arrays.equals(paint(other, layer), paint(painter, layer)));
+        painter.setShowPaths(true);
+        assertTrue(Arrays.equals(paint(new MapPainterDefault(), layer, 1, 1), paint(painter, layer, 1, 1)));
+    }
+
+}
@@ -18,7 +18,14 @@ package mudmap2.frontend;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import javax.swing.SwingUtilities;
+import mudmap2.backend.Layer;
+import mudmap2.backend.Place;
 import mudmap2.backend.World;
+import mudmap2.backend.WorldCoordinate;
 import mudmap2.backend.WorldFileReader.current.WorldFileDefault;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -27,6 +34,8 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.junit.Ignore;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
 
 /**
  *
@@ -34,6 +43,9 @@ import org.junit.Ignore;
  */
 public class WorldTabTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     public WorldTabTest() {
     }
 
@@ -104,6 +116,7 @@ public class WorldTabTest {
 
             WorldTab instance = new WorldTab(null, world, false);
             instance.save();
+            instance.waitForSave();
 
             assertTrue(file.exists());
             file.delete();
@@ -113,6 +126,130 @@ public class WorldTabTest {
         }
     }
 
+    /**
+     * Test of isModified method, of class WorldTab.
+     */
+    @Test
+    public void testIsModified() {
+        System.out.println("isModified");
+
+        World world = new World();
+        Layer layer = world.getNewLayer("Layer");
+        WorldTab instance = new WorldTab(null, world, false);
+        assertFalse(instance.isModified());
+
+        world.setHome(new WorldCoordinate(layer.getId(), 1, 2));
+        assertTrue(instance.isModified());
+
+        world = new World();
+        layer = world.getNewLayer("Layer");
+        instance = new WorldTab(null, world, false);
+        assertFalse(instance.isModified());
+
+        layer.setName("Renamed");
+        assertTrue(instance.isModified());
+    }
+
+    /**
+     * Test of reload method, of class WorldTab, while a save is running.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testReloadPending() throws Exception {
+        System.out.println("reload pending");
+
+        File file = folder.newFile("world.m2w");
+        WorldFileDefault worldFile = new WorldFileDefault(file.getAbsolutePath());
+        worldFile.writeFile(new World("World"));
+        World world = worldFile.readFile();
+        final WorldTab instance = new WorldTab(null, world, false);
+
+        // a save that doesn't finish until the file was changed
+        final CountDownLatch latch = new CountDownLatch(1);
+        instance.pendingSave = WorldTab.saveExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException ex) {
+                    fail(ex.getMessage());
+                }
+            }
+        });
+
+        World changed = new World("World");
+        Layer layer = changed.getNewLayer("Layer");
+        layer.put(new Place("Place", 0, 0, layer));
+        new WorldFileDefault(file.getAbsolutePath()).writeFile(changed);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                instance.reload();
+            }
+        });
+        assertTrue(instance.reloadPending);
+        latch.countDown();
+
+        // wait for the queued reload
+        WorldTab.saveExecutor.submit(new Runnable() {
+            @Override
+            public void run() {}
+        }).get();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {}
+        });
+        assertFalse(instance.reloadPending);
+        instance.waitForSave();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {}
+        });
+
+        assertEquals(1, world.getLayers().size());
+        assertEquals(1, world.getLayers().iterator().next().getPlaces().size());
+        assertFalse(instance.isModified());
+    }
+
+    /**
+     * Test of importLog method, of class WorldTab.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testImportLog() throws Exception {
+        System.out.println("importLog");
+
+        final File file = folder.newFile("session.log");
+        Files.write(file.toPath(), "Market\n[Exits: east]\n> e\nSmithy\n[Exits: west]\n".getBytes(StandardCharsets.UTF_8));
+
+        World world = new World("World");
+        final Layer layer = world.getNewLayer("Layer");
+        final WorldTab instance = new WorldTab(null, world, false);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                instance.importLog(file, layer);
+            }
+        });
+
+        // a batch is read in the background and added afterwards, then the
+        // end of the log is read
+        for(int i = 0; i < 2; ++i){
+            WorldTab.saveExecutor.submit(new Runnable() {
+                @Override
+                public void run() {}
+            }).get();
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {}
+            });
+        }
+
+        assertEquals(2, layer.getPlaces().size());
+        assertEquals("Smithy", layer.get(1, 0).getName());
+        assertTrue(instance.isModified());
+    }
+
     /**
      * Test of layerSelected method, of class WorldTab.
      */